@@ -7,6 +7,7 @@ import com.reuters.rfa.common.Token;
 import com.reuters.rfa.dictionary.DictionaryException;
 import com.reuters.rfa.dictionary.FieldDictionary;
 import com.reuters.rfa.example.utility.CommandLine;
+import com.reuters.rfa.example.utility.DictionaryRegistry;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMEncoder;
 import com.reuters.rfa.omm.OMMMsg;
@@ -61,12 +62,10 @@ public class DictionaryMgr extends AbstractProvDomainMgr
     {
         try
         {
-            _fieldDictionary = FieldDictionary.create();
             String fieldfilename = CommandLine.variable("rdmFieldDictionary");
-            FieldDictionary.readRDMFieldDictionary(_fieldDictionary, fieldfilename);
-            _pubContext.getPrintStream().println("Loaded RDM Field Dicitonary: " + fieldfilename);
             String enumfilename = CommandLine.variable("enumType");
-            FieldDictionary.readEnumTypeDef(_fieldDictionary, enumfilename);
+            _fieldDictionary = DictionaryRegistry.loadText(fieldfilename, enumfilename);
+            _pubContext.getPrintStream().println("Loaded RDM Field Dicitonary: " + fieldfilename);
             _pubContext.getPrintStream().println("Loaded Enum Dicitonary: " + enumfilename);
             _pubContext.setDictionary(_fieldDictionary);
             return true;
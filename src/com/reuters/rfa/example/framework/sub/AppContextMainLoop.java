@@ -1,9 +1,7 @@
 package com.reuters.rfa.example.framework.sub;
 
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.reuters.rfa.common.Context;
 import com.reuters.rfa.common.DispatchException;
@@ -12,10 +10,31 @@ import com.reuters.rfa.common.DispatchableNotificationClient;
 import com.reuters.rfa.common.EventQueue;
 import com.reuters.rfa.example.utility.CommandLine;
 
+/**
+ * Main loop of the framework applications, which dispatches their event
+ * queue.
+ * <p>
+ * By default there is one event queue, dispatched by the thread which calls
+ * {@link #run()}. With -dispatchThreads greater than 1, the main loop owns an
+ * event queue for each dispatch thread: the first one is dispatched by the
+ * thread which calls run(), the others by worker threads. The events of an
+ * item stream must be dispatched by one thread to keep their order, so an
+ * item is given a queue by {@link #getEventQueue(String)} with a hash of its
+ * name, and the events of the item are always dispatched by the same thread.
+ * The clients of such items must be thread safe, as they may be called by
+ * several threads.
+ * <p>
+ * {@link #runAwt()} dispatches all the queues in the AWT event dispatch
+ * thread instead. The notifications of the queues are coalesced, so that only
+ * one runnable is waiting in the AWT event queue at a time, however many
+ * events arrive meanwhile.
+ */
 public class AppContextMainLoop implements DispatchableNotificationClient
 {
     private EventQueue _eventQueue;
-    private List<Runnable> _runnables = Collections.synchronizedList(new ArrayList<Runnable>());
+    private EventQueue[] _eventQueues;
+    private Thread[] _workers;
+    private final AtomicBoolean _awtPending = new AtomicBoolean();
     private long _runTime;
     private PrintStream _printStream;
 
@@ -23,7 +42,12 @@ public class AppContextMainLoop implements DispatchableNotificationClient
     {
         _printStream = (printStream == null) ? System.out : printStream;
 
-        _eventQueue = EventQueue.create("RDMProvider EventQueue");
+        int dispatchThreads = Math.max(CommandLine.intVariable("dispatchThreads"), 1);
+        _eventQueues = new EventQueue[dispatchThreads];
+        _eventQueues[0] = EventQueue.create("RDMProvider EventQueue");
+        for (int i = 1; i < dispatchThreads; i++)
+            _eventQueues[i] = EventQueue.create("RDMProvider EventQueue " + i);
+        _eventQueue = _eventQueues[0];
         _runTime = CommandLine.intVariable("runTime"); // -1 is
                                                        // Dispatchable.INFINITE_WAIT
     }
@@ -31,19 +55,62 @@ public class AppContextMainLoop implements DispatchableNotificationClient
     static public void addCommandLineOptions()
     {
         CommandLine.addOption("runTime", -1, "How long application should run before exiting (in seconds)");
+        CommandLine.addOption("dispatchThreads", 1,
+                              "number of threads dispatching item events, each with its own queue");
     }
 
     public void cleanup()
     {
-        _eventQueue.deactivate();
-        _eventQueue.destroy();
+        for (int i = 0; i < _eventQueues.length; i++)
+            _eventQueues[i].deactivate();
+        if (_workers != null)
+        {
+            for (int i = 0; i < _workers.length; i++)
+            {
+                try
+                {
+                    _workers[i].join(1000);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            _workers = null;
+        }
+        for (int i = 0; i < _eventQueues.length; i++)
+            _eventQueues[i].destroy();
     }
 
+    /**
+     * @return the first event queue, for the events which are not of an item,
+     *         e.g. login and directory
+     */
     public EventQueue getEventQueue()
     {
         return _eventQueue;
     }
 
+    /**
+     * @param key identifies the stream, e.g. service and item name
+     * @return the event queue of the streams with the key. It is the same for
+     *         every call with an equal key.
+     */
+    public EventQueue getEventQueue(String key)
+    {
+        if (_eventQueues.length == 1)
+            return _eventQueue;
+        return _eventQueues[(key.hashCode() & 0x7fffffff) % _eventQueues.length];
+    }
+
+    /**
+     * @return the number of event queues, each with its dispatch thread
+     */
+    public int getEventQueueCount()
+    {
+        return _eventQueues.length;
+    }
+
     public PrintStream getPrintStream()
     {
         return _printStream;
@@ -61,6 +128,7 @@ public class AppContextMainLoop implements DispatchableNotificationClient
     public void run()
     {
         runInit();
+        startWorkers();
         if (_runTime == -1)
             runInfinite();
         else
@@ -68,21 +136,15 @@ public class AppContextMainLoop implements DispatchableNotificationClient
     }
 
     /**
-     * Dispatch events in {@link java.awt.EventQueue}'s thread. This is
-     * non-blocking.
+     * Dispatch events of all the queues in {@link java.awt.EventQueue}'s
+     * thread. This is non-blocking.
      */
     public void runAwt()
     {
-        _eventQueue.registerNotificationClient(this, null);
+        for (int i = 0; i < _eventQueues.length; i++)
+            _eventQueues[i].registerNotificationClient(this, null);
         // clear any pending events
-        try
-        {
-            while (_eventQueue.dispatch(0) > 0)
-                ;
-        }
-        catch (DispatchException e)
-        {
-        }
+        dispatchAll();
         runInit();
     }
 
@@ -93,32 +155,81 @@ public class AppContextMainLoop implements DispatchableNotificationClient
     {
     }
 
-    private Runnable getRunnable()
+    private final Runnable _awtRunnable = new Runnable()
     {
-        if (_runnables.size() > 0)
+        public void run()
         {
-            return _runnables.remove(_runnables.size() - 1);
+            // events arriving from now on need another run
+            _awtPending.set(false);
+            dispatchAll();
         }
-        return new Runnable()
+    };
+
+    /*
+     * Dispatch the events of all the queues until they are empty
+     */
+    private void dispatchAll()
+    {
+        try
         {
-            public void run()
+            boolean dispatched = true;
+            while (dispatched)
             {
-                try
+                dispatched = false;
+                for (int i = 0; i < _eventQueues.length; i++)
                 {
-                    while (_eventQueue.dispatch(0) > 0)
-                        ;
+                    if (_eventQueues[i].dispatch(0) > 0)
+                        dispatched = true;
                 }
-                catch (DispatchException de)
-                {
-                    _printStream.println("Queue deactivated");
-                }
-                catch (Exception dae)
+            }
+        }
+        catch (DispatchException de)
+        {
+            _printStream.println("Queue deactivated");
+        }
+        catch (Exception dae)
+        {
+            dae.printStackTrace();
+        }
+    }
+
+    /*
+     * Start a thread for each queue but the first one, which is dispatched by
+     * the caller of run()
+     */
+    private void startWorkers()
+    {
+        if (_eventQueues.length == 1 || _workers != null)
+            return;
+        _workers = new Thread[_eventQueues.length - 1];
+        for (int i = 0; i < _workers.length; i++)
+        {
+            final EventQueue queue = _eventQueues[i + 1];
+            _workers[i] = new Thread(new Runnable()
+            {
+                public void run()
                 {
-                    dae.printStackTrace();
+                    while (true)
+                    {
+                        try
+                        {
+                            queue.dispatch(Dispatchable.INFINITE_WAIT);
+                        }
+                        catch (DispatchException de)
+                        {
+                            return; // deactivated by cleanup()
+                        }
+                        catch (RuntimeException re)
+                        {
+                            // keep dispatching the other items of the queue
+                            re.printStackTrace();
+                        }
+                    }
                 }
-                _runnables.add(this);
-            }
-        };
+            }, queue.getDispatchableName());
+            _workers[i].setDaemon(true);
+            _workers[i].start();
+        }
     }
 
     /*
@@ -163,8 +274,9 @@ public class AppContextMainLoop implements DispatchableNotificationClient
 
     public void notify(Dispatchable dispSource, Object closure)
     {
-        Runnable runnable = getRunnable();
-        java.awt.EventQueue.invokeLater(runnable);
+        // the runnable already waiting dispatches the new events as well
+        if (_awtPending.compareAndSet(false, true))
+            java.awt.EventQueue.invokeLater(_awtRunnable);
     }
 
 }
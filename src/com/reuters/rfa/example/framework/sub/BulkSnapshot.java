@@ -0,0 +1,377 @@
+package com.reuters.rfa.example.framework.sub;
+
+import java.io.PrintStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.reuters.rfa.common.Client;
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.common.Handle;
+import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.session.event.MarketDataItemEvent;
+import com.reuters.rfa.session.omm.OMMItemEvent;
+
+/**
+ * BulkSnapshot requests snapshots of many items through a
+ * {@link SubAppContext}, with at most a window of requests outstanding at a
+ * time. When the stream of a request ends, the request of the next item is
+ * sent, so the items are fetched as fast as the provider answers without
+ * flooding it.
+ * <p>
+ * {@link #request(Collection)} returns a future for each item, which is done
+ * with a {@link SnapshotResult} when the stream of the item is closed, and
+ * {@link #getFutures()} returns the futures of all the items requested so far.
+ * The events of the items are passed on to the client given to the
+ * constructor, if any, to read the data. The futures and the statistics can be
+ * read from any thread, but a future must not be waited for in the thread
+ * which dispatches the event queue of the context.
+ * <p>
+ * Items that never answer are closed by RFA when its request timeout expires,
+ * or can be cancelled with their future or {@link #cancel()}.
+ *
+ * <pre>
+ * BulkSnapshot snapshot = new BulkSnapshot(appContext, serviceName, 100, client);
+ * Map&lt;String, Future&lt;SnapshotResult&gt;&gt; results = snapshot.request(itemNames);
+ * ...
+ * // dispatch until snapshot.isComplete()
+ * snapshot.printStatistics(System.out);
+ * </pre>
+ */
+public class BulkSnapshot implements Client
+{
+    /**
+     * @param serviceName The service to request. If null, uses the configured
+     *            service
+     * @param window maximum number of outstanding requests
+     * @param client client which receives the events of the items, or null
+     */
+    public BulkSnapshot(SubAppContext context, String serviceName, int window, Client client)
+    {
+        if (window < 1)
+            throw new IllegalArgumentException("window must be positive");
+        _context = context;
+        _serviceName = (serviceName != null && serviceName.length() > 0) ? serviceName
+                : context.getServiceName();
+        _window = window;
+        _client = client;
+    }
+
+    /**
+     * Queues snapshot requests for the items and sends as many as the window
+     * allows. An item which is already requested by this snapshot is not
+     * requested again, and gets the future of its first request.
+     *
+     * @return futures of the results by item name, in the order of the items
+     */
+    public Map<String, Future<SnapshotResult>> request(Collection<String> itemNames)
+    {
+        Map<String, Future<SnapshotResult>> futures =
+                new LinkedHashMap<String, Future<SnapshotResult>>();
+        synchronized (this)
+        {
+            long now = System.nanoTime();
+            if (_startTime == 0)
+                _startTime = now;
+            for (Iterator<String> iter = itemNames.iterator(); iter.hasNext();)
+            {
+                String itemName = iter.next();
+                ItemRequest request = _requests.get(itemName);
+                if (request == null)
+                {
+                    request = new ItemRequest(itemName);
+                    _requests.put(itemName, request);
+                    _queued.add(request);
+                    _requestCount++;
+                }
+                futures.put(itemName, request);
+            }
+            sendRequests();
+            if (isComplete() && _endTime == 0)
+                _endTime = now; // nothing to request
+        }
+        return futures;
+    }
+
+    /**
+     * @return futures of the results of all items requested by this snapshot,
+     *         by item name, in the order of the requests
+     */
+    public synchronized Map<String, Future<SnapshotResult>> getFutures()
+    {
+        return new LinkedHashMap<String, Future<SnapshotResult>>(_requests);
+    }
+
+    /**
+     * Cancels the queued requests and unregisters the outstanding ones.
+     */
+    public void cancel()
+    {
+        synchronized (this)
+        {
+            while (!_queued.isEmpty())
+                cancel(_queued.getFirst());
+            while (!_outstanding.isEmpty())
+                cancel(_outstanding.values().iterator().next());
+        }
+    }
+
+    /**
+     * @return whether all requested items are done
+     */
+    public synchronized boolean isComplete()
+    {
+        return _queued.isEmpty() && _outstanding.isEmpty();
+    }
+
+    public synchronized int getRequestCount()
+    {
+        return _requestCount;
+    }
+
+    public synchronized int getSuccessCount()
+    {
+        return _successCount;
+    }
+
+    public synchronized int getFailureCount()
+    {
+        return _failureCount;
+    }
+
+    public synchronized int getCancelCount()
+    {
+        return _cancelCount;
+    }
+
+    public synchronized int getOutstandingCount()
+    {
+        return _outstanding.size();
+    }
+
+    /**
+     * @return nanoseconds from the first request to the end of the last
+     *         stream, or until now if not complete
+     */
+    public synchronized long getElapsedNanos()
+    {
+        if (_startTime == 0)
+            return 0;
+        return (isComplete() ? _endTime : System.nanoTime()) - _startTime;
+    }
+
+    /**
+     * Prints the number of items, the elapsed time and the latency of the
+     * items.
+     */
+    public synchronized void printStatistics(PrintStream ps)
+    {
+        int done = _successCount + _failureCount;
+        ps.println("Snapshots: " + _requestCount + " requested, " + _successCount + " succeeded, "
+                + _failureCount + " failed, " + _cancelCount + " cancelled, "
+                + _outstanding.size() + " outstanding, " + _queued.size() + " queued");
+        ps.println("Elapsed: " + getElapsedNanos() / 1000000 + " ms, window " + _window);
+        if (done > 0)
+            ps.println("Latency: average " + _totalLatency / done / 1000 + " us, min "
+                    + _minLatency / 1000 + " us, max " + _maxLatency / 1000 + " us");
+    }
+
+    public void processEvent(Event event)
+    {
+        ItemRequest request;
+        synchronized (this)
+        {
+            request = _outstanding.get(event.getHandle());
+        }
+        if (request == null)
+            return; // cancelled
+
+        if (_client != null)
+            _client.processEvent(event);
+
+        SnapshotResult result = request._result;
+        boolean closed = event.isEventStreamClosed();
+        if (event instanceof OMMItemEvent)
+        {
+            OMMMsg msg = ((OMMItemEvent)event).getMsg();
+            if (msg.getMsgType() == OMMMsg.MsgType.REFRESH_RESP)
+                request._refreshed = true;
+            if (msg.has(OMMMsg.HAS_STATE))
+                result._statusText = msg.getState().toString();
+            closed |= msg.isFinal();
+        }
+        else if (event instanceof MarketDataItemEvent)
+        {
+            MarketDataItemEvent mdEvent = (MarketDataItemEvent)event;
+            if (mdEvent.getMarketDataMsgType() == MarketDataItemEvent.IMAGE
+                    || mdEvent.getMarketDataMsgType() == MarketDataItemEvent.UNSOLICITED_IMAGE)
+                request._refreshed = true;
+            if (mdEvent.getStatus() != null)
+                result._statusText = mdEvent.getStatus().toString();
+        }
+        if (!closed)
+            return;
+
+        synchronized (this)
+        {
+            if (_outstanding.remove(event.getHandle()) == null)
+                return;
+            result._success = request._refreshed;
+            complete(request, false);
+            sendRequests();
+        }
+    }
+
+    /*
+     * Sends queued requests until the window is full
+     */
+    private void sendRequests()
+    {
+        while (_outstanding.size() < _window && !_queued.isEmpty())
+        {
+            ItemRequest request = _queued.removeFirst();
+            request._requestTime = System.nanoTime();
+            request._handle = _context.register(this, _serviceName, request._result
+                    .getItemName(), false);
+            _outstanding.put(request._handle, request);
+        }
+    }
+
+    private void complete(ItemRequest request, boolean cancelled)
+    {
+        long now = System.nanoTime();
+        SnapshotResult result = request._result;
+        if (!cancelled)
+        {
+            result._latencyNanos = now - request._requestTime;
+            if (result._success)
+                _successCount++;
+            else
+                _failureCount++;
+            _totalLatency += result._latencyNanos;
+            if (_successCount + _failureCount == 1 || result._latencyNanos < _minLatency)
+                _minLatency = result._latencyNanos;
+            if (result._latencyNanos > _maxLatency)
+                _maxLatency = result._latencyNanos;
+        }
+        if (isComplete())
+            _endTime = now;
+        request.done(cancelled);
+    }
+
+    /*
+     * Returns false if the request is already done
+     */
+    private synchronized boolean cancel(ItemRequest request)
+    {
+        if (_queued.remove(request))
+        {
+            _cancelCount++;
+        }
+        else if (_outstanding.remove(request._handle) != null)
+        {
+            _cancelCount++;
+            _context.unregister(request._handle);
+        }
+        else
+        {
+            return false;
+        }
+        complete(request, true);
+        sendRequests();
+        return true;
+    }
+
+    /*
+     * Request of one item, and its future
+     */
+    private class ItemRequest implements Future<SnapshotResult>
+    {
+        ItemRequest(String itemName)
+        {
+            _result = new SnapshotResult(_serviceName, itemName);
+        }
+
+        synchronized void done(boolean cancelled)
+        {
+            _done = true;
+            _cancelled = cancelled;
+            notifyAll();
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            return BulkSnapshot.this.cancel(this);
+        }
+
+        public synchronized boolean isCancelled()
+        {
+            return _cancelled;
+        }
+
+        public synchronized boolean isDone()
+        {
+            return _done;
+        }
+
+        public synchronized SnapshotResult get() throws InterruptedException, ExecutionException
+        {
+            while (!_done)
+                wait();
+            return result();
+        }
+
+        public synchronized SnapshotResult get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException
+        {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!_done)
+            {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    throw new TimeoutException();
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return result();
+        }
+
+        private SnapshotResult result()
+        {
+            if (_cancelled)
+                throw new CancellationException(_result.getItemName());
+            return _result;
+        }
+
+        final SnapshotResult _result;
+        Handle _handle;
+        long _requestTime;
+        boolean _refreshed;
+        boolean _done;
+        boolean _cancelled;
+    }
+
+    private final SubAppContext _context;
+    private final String _serviceName;
+    private final int _window;
+    private final Client _client;
+    private final Map<String, ItemRequest> _requests = new LinkedHashMap<String, ItemRequest>();
+    private final LinkedList<ItemRequest> _queued = new LinkedList<ItemRequest>();
+    private final Map<Handle, ItemRequest> _outstanding = new HashMap<Handle, ItemRequest>();
+    private int _requestCount;
+    private int _successCount;
+    private int _failureCount;
+    private int _cancelCount;
+    private long _startTime;
+    private long _endTime;
+    private long _totalLatency;
+    private long _minLatency;
+    private long _maxLatency;
+}
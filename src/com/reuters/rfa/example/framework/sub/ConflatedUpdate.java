@@ -0,0 +1,42 @@
+package com.reuters.rfa.example.framework.sub;
+
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.example.framework.sub.ItemImage.SharedEvent;
+
+/**
+ * Updates of one item merged by a {@link Conflator} until they are
+ * delivered: the latest value of each field, with the header of the last
+ * update. An update is used by one thread at a time.
+ */
+abstract class ConflatedUpdate
+{
+    /**
+     * Merges event if it is an update which can be merged.
+     * 
+     * @return false if event is not merged, and must be delivered as is
+     */
+    abstract boolean merge(Event event);
+
+    /**
+     * @return the number of updates merged since the last delivery
+     */
+    abstract int getCount();
+
+    /**
+     * @return a new event to deliver the merged updates
+     */
+    abstract SharedEvent newEvent();
+
+    /**
+     * Sets event to one update made from the merged updates, and clears them.
+     * Only called when there are merged updates.
+     * 
+     * @param interval milliseconds during which the updates were merged
+     */
+    abstract void setUpdate(SharedEvent event, long interval);
+
+    /**
+     * Releases the merged updates.
+     */
+    abstract void clear();
+}
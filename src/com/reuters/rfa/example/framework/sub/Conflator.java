@@ -0,0 +1,204 @@
+package com.reuters.rfa.example.framework.sub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.reuters.rfa.common.Client;
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.common.Handle;
+import com.reuters.rfa.example.framework.sub.ItemImage.SharedEvent;
+import com.reuters.rfa.omm.OMMPool;
+import com.reuters.rfa.session.event.MarketDataItemEvent;
+import com.reuters.rfa.session.omm.OMMItemEvent;
+
+/**
+ * Conflator is a client which stands between a {@link SubAppContext} and a
+ * client that only needs the latest values of its items, e.g. a display. The
+ * field list updates of each item are merged, and the client receives at
+ * most one merged update per item per interval. Other events, and updates
+ * that can not be merged, are delivered at once, after the merged update of
+ * their item so that the order of the values is kept.
+ *
+ * <pre>
+ * Conflator conflator = new Conflator(appContext, client, 250);
+ * appContext.register(conflator, serviceName, itemName, true);
+ * </pre>
+ * <p>
+ * The merged updates are delivered by a timer of the event queue of the
+ * context, or by {@link #flush()}. With an interval of 0, or a context which
+ * has no timers, they are only delivered by flush(). The events of a Conflator may be dispatched by
+ * several threads, as with -dispatchThreads, and are then delivered to the
+ * client one at a time.
+ *
+ * @see OMMConflatedUpdate
+ * @see MarketDataConflatedUpdate
+ */
+public class Conflator implements Client
+{
+    /**
+     * @param client The client which receives the merged updates
+     * @param interval milliseconds between the deliveries of merged updates,
+     *            0 to deliver them only with {@link #flush()}
+     */
+    public Conflator(SubAppContext context, Client client, long interval)
+    {
+        _context = context;
+        _client = client;
+        _interval = interval;
+        _items = new HashMap<Handle, Item>();
+        _pendingItems = new ArrayList<Item>();
+    }
+
+    public synchronized void processEvent(Event event)
+    {
+        if (event.getType() == Event.TIMER_EVENT)
+        {
+            _timerHandle = null;
+            flush();
+            return;
+        }
+
+        Handle handle = event.getHandle();
+        Item item = _items.get(handle);
+        if (item == null)
+        {
+            ConflatedUpdate update = createUpdate(event);
+            if (update == null)
+            {
+                _client.processEvent(event);
+                return;
+            }
+            item = new Item(handle, update);
+            item._event._eventQueue = event.getEventQueue();
+            _items.put(handle, item);
+        }
+
+        if (item._update.merge(event))
+        {
+            _updateCount++;
+            if (!item._pending)
+            {
+                item._pending = true;
+                _pendingItems.add(item);
+                if (_timerHandle == null && _interval > 0)
+                    _timerHandle = _context.registerTimer(this, _interval);
+            }
+            return;
+        }
+
+        deliver(item);
+        _client.processEvent(event);
+        if (event.isEventStreamClosed())
+        {
+            item._update.clear();
+            _items.remove(handle);
+        }
+    }
+
+    /**
+     * Delivers the merged updates of all items now.
+     */
+    public synchronized void flush()
+    {
+        for (int i = 0; i < _pendingItems.size(); i++)
+        {
+            Item item = _pendingItems.get(i);
+            if (item._handle.isActive())
+            {
+                deliver(item);
+            }
+            else
+            {
+                // unregistered by the client
+                item._update.clear();
+                _items.remove(item._handle);
+            }
+            item._pending = false;
+        }
+        _pendingItems.clear();
+    }
+
+    /**
+     * @return the number of updates merged
+     */
+    public synchronized long getUpdateCount()
+    {
+        return _updateCount;
+    }
+
+    /**
+     * @return the number of merged updates delivered
+     */
+    public synchronized long getDeliveredCount()
+    {
+        return _deliveredCount;
+    }
+
+    /**
+     * @return the number of updates which were not delivered because they
+     *         were merged into a later one
+     */
+    public synchronized long getConflatedCount()
+    {
+        return _conflatedCount;
+    }
+
+    private void deliver(Item item)
+    {
+        int count = item._update.getCount();
+        if (count == 0)
+            return;
+        item._update.setUpdate(item._event, _interval);
+        _deliveredCount++;
+        _conflatedCount += count - 1;
+        _client.processEvent(item._event);
+    }
+
+    /*
+     * Returns null if the events of the stream can not be merged
+     */
+    private ConflatedUpdate createUpdate(Event event)
+    {
+        if (event instanceof OMMItemEvent)
+        {
+            if (_pool == null)
+                _pool = OMMPool.create();
+            return new OMMConflatedUpdate(_pool, _context);
+        }
+        if (event instanceof MarketDataItemEvent)
+            return new MarketDataConflatedUpdate();
+        return null;
+    }
+
+    /*
+     * Merged updates of an item, and the event which delivers them
+     */
+    private static class Item
+    {
+        Item(Handle handle, ConflatedUpdate update)
+        {
+            _handle = handle;
+            _update = update;
+            _event = update.newEvent();
+            _event._handle = handle;
+        }
+
+        final Handle _handle;
+        final ConflatedUpdate _update;
+        final SharedEvent _event;
+        boolean _pending;
+    }
+
+    private final SubAppContext _context;
+    private final Client _client;
+    private final long _interval;
+    private final Map<Handle, Item> _items;
+    private final List<Item> _pendingItems;
+    private OMMPool _pool;
+    private Handle _timerHandle;
+    private long _updateCount;
+    private long _deliveredCount;
+    private long _conflatedCount;
+}
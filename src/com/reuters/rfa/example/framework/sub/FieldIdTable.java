@@ -0,0 +1,97 @@
+package com.reuters.rfa.example.framework.sub;
+
+import java.util.Arrays;
+
+/**
+ * Table from field id to a slot number, for the field indexes of the
+ * normalized events and the field caches of the items. The table is open
+ * addressed and grows with the number of fields, so a table of a few fields
+ * stays small, and {@link #clear()} only starts a new generation of entries
+ * instead of clearing them.
+ */
+class FieldIdTable
+{
+    static final int NOT_FOUND = -1;
+
+    static final int MAX_SLOTS = 0x10000;
+
+    private static final int MIN_CAPACITY = 16;
+
+    // by entry: the fid, and generation << 16 | slot
+    private short[] _fids = new short[MIN_CAPACITY];
+    private int[] _entries = new int[MIN_CAPACITY];
+    private int _size;
+    private int _generation = 1;
+
+    void clear()
+    {
+        _size = 0;
+        if (++_generation > 0xFFFF)
+        {
+            Arrays.fill(_entries, 0);
+            _generation = 1;
+        }
+    }
+
+    /**
+     * @return the slot of fid, or {@link #NOT_FOUND}
+     */
+    int get(short fid)
+    {
+        int mask = _entries.length - 1;
+        for (int i = hash(fid) & mask;; i = (i + 1) & mask)
+        {
+            int entry = _entries[i];
+            if ((entry >>> 16) != _generation)
+                return NOT_FOUND;
+            if (_fids[i] == fid)
+                return entry & 0xFFFF;
+        }
+    }
+
+    /**
+     * Sets the slot of fid, unless fid already has one.
+     *
+     * @return false if fid already has a slot or slot is too large
+     */
+    boolean put(short fid, int slot)
+    {
+        if (slot >= MAX_SLOTS || get(fid) != NOT_FOUND)
+            return false;
+        // keep at least half of the entries free
+        if ((_size + 1) * 2 > _entries.length)
+            resize(_entries.length * 2);
+        insert(fid, (_generation << 16) | slot);
+        _size++;
+        return true;
+    }
+
+    private static int hash(short fid)
+    {
+        int h = (fid & 0xFFFF) * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+
+    private void insert(short fid, int entry)
+    {
+        int mask = _entries.length - 1;
+        int i = hash(fid) & mask;
+        while ((_entries[i] >>> 16) == _generation)
+            i = (i + 1) & mask;
+        _fids[i] = fid;
+        _entries[i] = entry;
+    }
+
+    private void resize(int capacity)
+    {
+        short[] fids = _fids;
+        int[] entries = _entries;
+        _fids = new short[capacity];
+        _entries = new int[capacity];
+        for (int i = 0; i < entries.length; i++)
+        {
+            if ((entries[i] >>> 16) == _generation)
+                insert(fids[i], entries[i]);
+        }
+    }
+}
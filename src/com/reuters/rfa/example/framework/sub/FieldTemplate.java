@@ -0,0 +1,215 @@
+package com.reuters.rfa.example.framework.sub;
+
+import com.reuters.rfa.dictionary.FidDef;
+import com.reuters.rfa.dictionary.FieldDictionary;
+import com.reuters.rfa.omm.OMMTypes;
+
+/**
+ * Layout of the fields of an item record of an {@link ImageCache}. Each field
+ * of the template has a fixed place in the record: a status byte, then the
+ * value in the size of its type. A string has a two byte length and room for
+ * the maximum length of the field in the dictionary, up to
+ * {@link #MAX_STRING_LENGTH}.
+ * <p>
+ * The record starts with a header of {@link #HEADER_LENGTH} bytes: the id of
+ * the item which uses the record, and the flags of the image.
+ */
+class FieldTemplate
+{
+    // kinds of values
+    static final byte INT = 1; // INT, UINT
+    static final byte DOUBLE = 2; // FLOAT, DOUBLE
+    static final byte REAL = 3; // mantissa and hint
+    static final byte DATE = 4;
+    static final byte TIME = 5;
+    static final byte DATETIME = 6;
+    static final byte ENUM = 7;
+    static final byte STRING = 8; // ASCII, RMTES, BUFFER
+    static final byte UTF8_STRING = 9;
+
+    // status of a field
+    static final byte UNSET = 0;
+    static final byte SET = 1;
+    static final byte BLANK = 2;
+
+    // header
+    static final int ID_OFFSET = 0;
+    static final int FLAGS_OFFSET = 4;
+    static final int HEADER_LENGTH = 8;
+
+    static final byte COMPLETE = 0x01;
+    static final byte STALE = 0x02;
+
+    static final int MAX_STRING_LENGTH = 256;
+
+    private final short _msgModelType;
+    private final FieldIdTable _slots = new FieldIdTable();
+
+    // by slot
+    private final short[] _fieldIds;
+    private final short[] _ommTypes;
+    private final byte[] _kinds;
+    private final int[] _offsets;
+    private final int[] _maxLengths;
+    private final int _count;
+    private final int _recordLength;
+
+    /**
+     * @throws IllegalArgumentException if a field is not in the dictionary, or
+     *             its type can not be cached
+     */
+    FieldTemplate(short msgModelType, short[] fieldIds, FieldDictionary dictionary)
+    {
+        _msgModelType = msgModelType;
+        _fieldIds = new short[fieldIds.length];
+        _ommTypes = new short[fieldIds.length];
+        _kinds = new byte[fieldIds.length];
+        _offsets = new int[fieldIds.length];
+        _maxLengths = new int[fieldIds.length];
+        int offset = HEADER_LENGTH;
+        int count = 0;
+        for (int i = 0; i < fieldIds.length; i++)
+        {
+            short fid = fieldIds[i];
+            FidDef fidDef = dictionary.getFidDef(fid);
+            if (fidDef == null)
+                throw new IllegalArgumentException("field " + fid + " is not in the dictionary");
+            byte kind = kindOf(fidDef.getOMMType());
+            if (kind == 0)
+                throw new IllegalArgumentException("field " + fidDef.getName() + " of type "
+                        + OMMTypes.toString(fidDef.getOMMType()) + " can not be cached");
+            if (!_slots.put(fid, count))
+                continue; // twice in fieldIds
+            _fieldIds[count] = fid;
+            _ommTypes[count] = fidDef.getOMMType();
+            _kinds[count] = kind;
+            _offsets[count] = offset;
+            if (kind == STRING || kind == UTF8_STRING)
+            {
+                int maxLength = fidDef.getMaxOMMLength();
+                _maxLengths[count] = (maxLength > 0 && maxLength < MAX_STRING_LENGTH) ? maxLength
+                        : MAX_STRING_LENGTH;
+            }
+            offset += 1 + valueLength(kind, _maxLengths[count]);
+            count++;
+        }
+        _count = count;
+        // keep longs of the next record aligned
+        _recordLength = (offset + 7) & ~7;
+    }
+
+    short getMsgModelType()
+    {
+        return _msgModelType;
+    }
+
+    int getCount()
+    {
+        return _count;
+    }
+
+    int getRecordLength()
+    {
+        return _recordLength;
+    }
+
+    /**
+     * @return the slot of fid, or {@link FieldIdTable#NOT_FOUND}
+     */
+    int getSlot(short fid)
+    {
+        return _slots.get(fid);
+    }
+
+    short getFieldId(int slot)
+    {
+        return _fieldIds[slot];
+    }
+
+    short getOMMType(int slot)
+    {
+        return _ommTypes[slot];
+    }
+
+    byte getKind(int slot)
+    {
+        return _kinds[slot];
+    }
+
+    /**
+     * @return the offset of the status byte of the field in the record, which
+     *         is followed by its value
+     */
+    int getOffset(int slot)
+    {
+        return _offsets[slot];
+    }
+
+    int getMaxLength(int slot)
+    {
+        return _maxLengths[slot];
+    }
+
+    /*
+     * Returns the kind of the values of an OMM type, or 0
+     */
+    private static byte kindOf(short ommType)
+    {
+        switch (ommType)
+        {
+            case OMMTypes.INT:
+            case OMMTypes.UINT:
+                return INT;
+            case OMMTypes.FLOAT:
+            case OMMTypes.DOUBLE:
+                return DOUBLE;
+            case OMMTypes.REAL:
+            case OMMTypes.REAL_4RB:
+            case OMMTypes.REAL_8RB:
+                return REAL;
+            case OMMTypes.DATE:
+            case OMMTypes.DATE_4:
+                return DATE;
+            case OMMTypes.TIME:
+            case OMMTypes.TIME_3:
+            case OMMTypes.TIME_5:
+                return TIME;
+            case OMMTypes.DATETIME:
+            case OMMTypes.DATETIME_7:
+            case OMMTypes.DATETIME_9:
+                return DATETIME;
+            case OMMTypes.ENUM:
+                return ENUM;
+            case OMMTypes.ASCII_STRING:
+            case OMMTypes.RMTES_STRING:
+            case OMMTypes.BUFFER:
+                return STRING;
+            case OMMTypes.UTF8_STRING:
+                return UTF8_STRING;
+            default:
+                return 0;
+        }
+    }
+
+    private static int valueLength(byte kind, int maxLength)
+    {
+        switch (kind)
+        {
+            case INT:
+            case DOUBLE:
+                return 8;
+            case REAL:
+                return 9; // mantissa, hint
+            case DATE:
+                return 4; // year, month, day
+            case TIME:
+                return 5; // hour, minute, second, millisecond
+            case DATETIME:
+                return 9;
+            case ENUM:
+                return 2;
+            default:
+                return 2 + maxLength;
+        }
+    }
+}
@@ -0,0 +1,729 @@
+package com.reuters.rfa.example.framework.sub;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import com.reuters.rfa.common.Client;
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.common.Handle;
+import com.reuters.rfa.omm.OMMData;
+import com.reuters.rfa.omm.OMMDataBuffer;
+import com.reuters.rfa.omm.OMMDateTime;
+import com.reuters.rfa.omm.OMMEnum;
+import com.reuters.rfa.omm.OMMFieldEntry;
+import com.reuters.rfa.omm.OMMFieldList;
+import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.omm.OMMNumeric;
+import com.reuters.rfa.omm.OMMState;
+import com.reuters.rfa.omm.OMMTypes;
+import com.reuters.rfa.session.omm.OMMItemEvent;
+
+/**
+ * ImageCache keeps the current values of the fields of many OMM items out of
+ * the Java heap, and lets any thread read a consistent snapshot of an item.
+ * <p>
+ * The fields to keep are given for each message model type by
+ * {@link #addTemplate(short, short[])}, once the dictionary is loaded. Each
+ * item has a record of fixed length laid out by the template of its type, in
+ * direct buffers of {@link #SLAB_LENGTH} bytes. A refresh clears the record
+ * and an update changes its fields in place; the other fields of the messages
+ * are not kept, and an event does not allocate.
+ *
+ * <pre>
+ * ImageCache cache = new ImageCache(appContext, null);
+ * cache.addTemplate(RDMMsgTypes.MARKET_PRICE, new short[] { 22, 25, 6, 32 });
+ * Handle handle = cache.register(serviceName, itemName, RDMMsgTypes.MARKET_PRICE);
+ * ...
+ * // in any thread
+ * ImageCache.Snapshot snapshot = new ImageCache.Snapshot();
+ * if (cache.snapshot(RDMMsgTypes.MARKET_PRICE, serviceName, itemName, snapshot))
+ *     bid = snapshot.getDouble((short)22);
+ * </pre>
+ * <p>
+ * A record is written under a sequence lock: its version is odd while it is
+ * written. A reader copies the record between two reads of an even version,
+ * and copies it again if the version changed, so readers never block the
+ * dispatch threads nor each other.
+ */
+public class ImageCache
+{
+    public static final int SLAB_LENGTH = 1 << 20;
+
+    /**
+     * @param client The client which receives the events of the items after
+     *            they are applied, or null
+     */
+    public ImageCache(SubAppContext context, Client client)
+    {
+        _context = context;
+        _client = client;
+    }
+
+    /**
+     * Sets the fields kept for the items of a message model type. The
+     * dictionary of the context must be loaded.
+     *
+     * @throws IllegalArgumentException if a field is not in the dictionary or
+     *             can not be cached
+     * @throws IllegalStateException if the type already has a template
+     */
+    public synchronized void addTemplate(short msgModelType, short[] fieldIds)
+    {
+        Short key = Short.valueOf(msgModelType);
+        if (_domains.containsKey(key))
+            throw new IllegalStateException("message model type " + msgModelType
+                    + " already has a template");
+        FieldTemplate template = new FieldTemplate(msgModelType, fieldIds,
+                _context.getFieldDictionary());
+        _domains.put(key, new Domain(template));
+    }
+
+    /**
+     * Registers a streaming interest in an item, and keeps its fields.
+     *
+     * @return the handle, to {@link #unregister(Handle)} the item
+     */
+    public Handle register(String serviceName, String itemName, short msgModelType)
+    {
+        String key = key(msgModelType, serviceName, itemName);
+        Item item;
+        synchronized (this)
+        {
+            Domain domain = _domains.get(Short.valueOf(msgModelType));
+            if (domain == null)
+                throw new IllegalArgumentException("message model type " + msgModelType
+                        + " has no template");
+            if (_items.containsKey(key))
+                throw new IllegalArgumentException(key + " is already cached");
+            int id = ++_lastId;
+            item = new Item(key, domain, domain.allocate(id), id);
+            _items.put(key, item);
+        }
+        Handle handle = _context.registerItem(item, serviceName, itemName, true, msgModelType);
+        synchronized (this)
+        {
+            item._handle = handle;
+            if (!item._closed)
+                _handles.put(handle, item);
+        }
+        return handle;
+    }
+
+    /**
+     * Unregisters an item and removes it from the cache.
+     */
+    public void unregister(Handle handle)
+    {
+        Item item;
+        synchronized (this)
+        {
+            item = _handles.get(handle);
+        }
+        if (item != null)
+            remove(item);
+        _context.unregister(handle);
+    }
+
+    /**
+     * Copies the record of an item into snapshot. May be called by any
+     * thread.
+     *
+     * @return false if the item is not in the cache
+     */
+    public boolean snapshot(short msgModelType, String serviceName, String itemName,
+            Snapshot snapshot)
+    {
+        Item item = _items.get(key(msgModelType, serviceName, itemName));
+        if (item == null)
+            return false;
+        Domain domain = item._domain;
+        return snapshot.read(domain.getSlab(item._index), domain.getRecord(item._index),
+                             domain._template, item._id);
+    }
+
+    /**
+     * @return the number of items in the cache
+     */
+    public int getItemCount()
+    {
+        return _items.size();
+    }
+
+    /**
+     * @return the number of bytes of the direct buffers of the records
+     */
+    public synchronized long getOffHeapLength()
+    {
+        long length = 0;
+        for (Iterator<Domain> iter = _domains.values().iterator(); iter.hasNext();)
+        {
+            Domain domain = iter.next();
+            length += (long)domain._slabs.length * domain._slabLength;
+        }
+        return length;
+    }
+
+    private static String key(short msgModelType, String serviceName, String itemName)
+    {
+        return msgModelType + "/" + serviceName + "/" + itemName;
+    }
+
+    private void remove(Item item)
+    {
+        synchronized (this)
+        {
+            if (item._closed)
+                return;
+            item._closed = true;
+            _items.remove(item._key);
+            if (item._handle != null)
+                _handles.remove(item._handle);
+        }
+        item.clear();
+        synchronized (this)
+        {
+            item._domain.free(item._index);
+        }
+    }
+
+    /*
+     * Direct buffer of records, with the version of each record
+     */
+    private static class Slab
+    {
+        Slab(int length, int records)
+        {
+            _buffer = ByteBuffer.allocateDirect(length);
+            _versions = new AtomicIntegerArray(records);
+        }
+
+        /*
+         * Makes the version odd. As a volatile read, it keeps the writes of
+         * the record after it.
+         */
+        void beginWrite(int record)
+        {
+            _versions.incrementAndGet(record);
+        }
+
+        /*
+         * Makes the version even. As a volatile write, it keeps the writes of
+         * the record before it.
+         */
+        void endWrite(int record)
+        {
+            _versions.incrementAndGet(record);
+        }
+
+        final ByteBuffer _buffer;
+        final AtomicIntegerArray _versions;
+    }
+
+    /*
+     * Records of the items of a message model type
+     */
+    private static class Domain
+    {
+        Domain(FieldTemplate template)
+        {
+            _template = template;
+            _recordLength = template.getRecordLength();
+            _recordsPerSlab = Math.max(SLAB_LENGTH / _recordLength, 1);
+            _slabLength = _recordsPerSlab * _recordLength;
+        }
+
+        Slab getSlab(int index)
+        {
+            return _slabs[index / _recordsPerSlab];
+        }
+
+        int getRecord(int index)
+        {
+            return index % _recordsPerSlab;
+        }
+
+        /*
+         * Returns the index of a cleared record for the item with id
+         */
+        int allocate(int id)
+        {
+            int index;
+            if (_freeCount > 0)
+            {
+                index = _free[--_freeCount];
+            }
+            else
+            {
+                index = _count++;
+                if (index / _recordsPerSlab == _slabs.length)
+                {
+                    Slab[] slabs = Arrays.copyOf(_slabs, _slabs.length + 1);
+                    slabs[_slabs.length] = new Slab(_slabLength, _recordsPerSlab);
+                    _slabs = slabs;
+                }
+            }
+            Slab slab = getSlab(index);
+            int record = getRecord(index);
+            int offset = record * _recordLength;
+            slab.beginWrite(record);
+            for (int i = 0; i < _recordLength; i++)
+                slab._buffer.put(offset + i, (byte)0);
+            slab._buffer.putInt(offset + FieldTemplate.ID_OFFSET, id);
+            slab.endWrite(record);
+            return index;
+        }
+
+        void free(int index)
+        {
+            if (_freeCount == _free.length)
+                _free = Arrays.copyOf(_free, Math.max(_free.length * 2, 64));
+            _free[_freeCount++] = index;
+        }
+
+        final FieldTemplate _template;
+        final int _recordLength;
+        final int _recordsPerSlab;
+        final int _slabLength;
+        // copied on write, read by any thread
+        volatile Slab[] _slabs = new Slab[0];
+        int _count;
+        int[] _free = new int[0];
+        int _freeCount;
+    }
+
+    /*
+     * Item in the cache, and the client of its stream which writes its record
+     */
+    private class Item implements Client
+    {
+        Item(String key, Domain domain, int index, int id)
+        {
+            _key = key;
+            _domain = domain;
+            _index = index;
+            _id = id;
+        }
+
+        public void processEvent(Event event)
+        {
+            if (event instanceof OMMItemEvent)
+                apply(((OMMItemEvent)event).getMsg());
+            if (_client != null)
+                _client.processEvent(event);
+            if (event.isEventStreamClosed())
+                remove(this);
+        }
+
+        /*
+         * Applies a refresh, an update or a state to the record
+         */
+        synchronized void apply(OMMMsg msg)
+        {
+            byte msgType = msg.getMsgType();
+            boolean refresh = msgType == OMMMsg.MsgType.REFRESH_RESP;
+            boolean update = msgType == OMMMsg.MsgType.UPDATE_RESP;
+            if (_closed || (!refresh && !update && !msg.has(OMMMsg.HAS_STATE)))
+                return;
+
+            FieldTemplate template = _domain._template;
+            Slab slab = _domain.getSlab(_index);
+            int record = _domain.getRecord(_index);
+            int offset = record * _domain._recordLength;
+            ByteBuffer buffer = slab._buffer;
+            slab.beginWrite(record);
+            try
+            {
+                byte flags = buffer.get(offset + FieldTemplate.FLAGS_OFFSET);
+                if (refresh)
+                {
+                    if (!_refreshing)
+                    {
+                        // first part of a new image
+                        for (int slot = 0; slot < template.getCount(); slot++)
+                            buffer.put(offset + template.getOffset(slot), FieldTemplate.UNSET);
+                        flags &= ~FieldTemplate.COMPLETE;
+                        _refreshing = true;
+                    }
+                    if (msg.isSet(OMMMsg.Indication.REFRESH_COMPLETE))
+                    {
+                        flags |= FieldTemplate.COMPLETE;
+                        _refreshing = false;
+                    }
+                }
+                if (msg.has(OMMMsg.HAS_STATE))
+                {
+                    if (msg.getState().getDataState() == OMMState.Data.OK)
+                        flags &= ~FieldTemplate.STALE;
+                    else
+                        flags |= FieldTemplate.STALE;
+                }
+                buffer.put(offset + FieldTemplate.FLAGS_OFFSET, flags);
+
+                if ((refresh || update) && msg.getDataType() == OMMTypes.FIELD_LIST)
+                {
+                    OMMFieldList fieldList = (OMMFieldList)msg.getPayload();
+                    for (Iterator<?> iter = fieldList.iterator(); iter.hasNext();)
+                    {
+                        OMMFieldEntry fe = (OMMFieldEntry)iter.next();
+                        int slot = template.getSlot(fe.getFieldId());
+                        if (slot != FieldIdTable.NOT_FOUND)
+                            putValue(buffer, offset + template.getOffset(slot), template, slot,
+                                     fe.getData(template.getOMMType(slot)));
+                    }
+                }
+            }
+            finally
+            {
+                slab.endWrite(record);
+            }
+        }
+
+        /*
+         * Marks the record as not used by the item
+         */
+        synchronized void clear()
+        {
+            Slab slab = _domain.getSlab(_index);
+            int record = _domain.getRecord(_index);
+            slab.beginWrite(record);
+            slab._buffer.putInt(record * _domain._recordLength + FieldTemplate.ID_OFFSET, 0);
+            slab.endWrite(record);
+        }
+
+        final String _key;
+        final Domain _domain;
+        final int _index;
+        final int _id;
+        Handle _handle;
+        boolean _closed;
+        boolean _refreshing;
+    }
+
+    /*
+     * Writes the status and the value of a field at pos
+     */
+    private static void putValue(ByteBuffer buffer, int pos, FieldTemplate template, int slot,
+            OMMData data)
+    {
+        if (data.isBlank())
+        {
+            buffer.put(pos, FieldTemplate.BLANK);
+            return;
+        }
+        switch (template.getKind(slot))
+        {
+            case FieldTemplate.INT:
+                buffer.putLong(pos + 1, ((OMMNumeric)data).toLong());
+                break;
+            case FieldTemplate.DOUBLE:
+                buffer.putDouble(pos + 1, ((OMMNumeric)data).toDouble());
+                break;
+            case FieldTemplate.REAL:
+                buffer.putLong(pos + 1, ((OMMNumeric)data).getLongValue());
+                buffer.put(pos + 9, ((OMMNumeric)data).getHint());
+                break;
+            case FieldTemplate.DATE:
+                putDate(buffer, pos + 1, (OMMDateTime)data);
+                break;
+            case FieldTemplate.TIME:
+                putTime(buffer, pos + 1, (OMMDateTime)data);
+                break;
+            case FieldTemplate.DATETIME:
+                putDate(buffer, pos + 1, (OMMDateTime)data);
+                putTime(buffer, pos + 5, (OMMDateTime)data);
+                break;
+            case FieldTemplate.ENUM:
+                buffer.putShort(pos + 1, (short)((OMMEnum)data).getValue());
+                break;
+            default:
+            {
+                OMMDataBuffer dataBuffer = (OMMDataBuffer)data;
+                if (dataBuffer.hasPartialUpdates())
+                {
+                    // the partial updates of the previous value are not kept
+                    buffer.put(pos, FieldTemplate.UNSET);
+                    return;
+                }
+                byte[] bytes = SCRATCH.get();
+                if (bytes.length < data.getEncodedLength())
+                {
+                    bytes = new byte[data.getEncodedLength()];
+                    SCRATCH.set(bytes);
+                }
+                int length = Math.min(dataBuffer.getBytes(bytes, 0), template.getMaxLength(slot));
+                buffer.putShort(pos + 1, (short)length);
+                for (int i = 0; i < length; i++)
+                    buffer.put(pos + 3 + i, bytes[i]);
+            }
+        }
+        buffer.put(pos, FieldTemplate.SET);
+    }
+
+    private static void putDate(ByteBuffer buffer, int pos, OMMDateTime date)
+    {
+        buffer.putShort(pos, (short)date.getYear());
+        buffer.put(pos + 2, (byte)date.getMonth());
+        buffer.put(pos + 3, (byte)date.getDate());
+    }
+
+    private static void putTime(ByteBuffer buffer, int pos, OMMDateTime time)
+    {
+        buffer.put(pos, (byte)time.getHour());
+        buffer.put(pos + 1, (byte)time.getMinute());
+        buffer.put(pos + 2, (byte)time.getSecond());
+        buffer.putShort(pos + 3, (short)time.getMillisecond());
+    }
+
+    /**
+     * Copy of the record of an item, read by
+     * {@link ImageCache#snapshot(short, String, String, Snapshot)}. A
+     * snapshot can be used again for another read, but not by two threads at
+     * a time. A field which is not in the template, or not set, has the value
+     * 0, NaN or null.
+     */
+    public static class Snapshot
+    {
+        /*
+         * Copies a record under its sequence lock
+         */
+        boolean read(Slab slab, int record, FieldTemplate template, int id)
+        {
+            int length = template.getRecordLength();
+            if (_record.length < length)
+            {
+                _record = new byte[length];
+                _data = ByteBuffer.wrap(_record);
+            }
+            if (_viewSlab != slab)
+            {
+                _view = slab._buffer.duplicate();
+                _viewSlab = slab;
+            }
+            for (int tries = 1;; tries++)
+            {
+                int version = slab._versions.get(record);
+                if ((version & 1) == 0)
+                {
+                    _view.position(record * length);
+                    _view.get(_record, 0, length);
+                    // a volatile write, which keeps the reads of the record
+                    // before it, and fails if the record was written
+                    if (slab._versions.compareAndSet(record, version, version))
+                        break;
+                }
+                if (tries % SPINS == 0)
+                    Thread.yield();
+            }
+            _template = template;
+            // the record is used by another item if the item was removed
+            return _data.getInt(FieldTemplate.ID_OFFSET) == id;
+        }
+
+        /**
+         * @return whether the last refresh is complete
+         */
+        public boolean isComplete()
+        {
+            return (_data.get(FieldTemplate.FLAGS_OFFSET) & FieldTemplate.COMPLETE) != 0;
+        }
+
+        /**
+         * @return whether the data state of the stream is not OK
+         */
+        public boolean isStale()
+        {
+            return (_data.get(FieldTemplate.FLAGS_OFFSET) & FieldTemplate.STALE) != 0;
+        }
+
+        /**
+         * @return the number of fields of the template, which are read by
+         *         their index with {@link #getFieldId(int)}
+         */
+        public int getFieldCount()
+        {
+            return _template.getCount();
+        }
+
+        public short getFieldId(int index)
+        {
+            return _template.getFieldId(index);
+        }
+
+        /**
+         * @return whether the field has a value which is not blank
+         */
+        public boolean isSet(short fid)
+        {
+            return status(fid) == FieldTemplate.SET;
+        }
+
+        public boolean isBlank(short fid)
+        {
+            return status(fid) == FieldTemplate.BLANK;
+        }
+
+        /**
+         * @return the value of an INT, UINT or ENUM field, or the mantissa of
+         *         a REAL
+         */
+        public long getLong(short fid)
+        {
+            int pos = valuePosition(fid);
+            if (pos < 0)
+                return 0;
+            switch (_template.getKind(_template.getSlot(fid)))
+            {
+                case FieldTemplate.INT:
+                case FieldTemplate.REAL:
+                    return _data.getLong(pos);
+                case FieldTemplate.ENUM:
+                    return _data.getShort(pos) & 0xFFFF;
+                default:
+                    return 0;
+            }
+        }
+
+        /**
+         * @return the hint of a REAL field, from
+         *         {@link com.reuters.rfa.omm.OMMNumeric}
+         */
+        public byte getHint(short fid)
+        {
+            int pos = valuePosition(fid);
+            if (pos < 0 || _template.getKind(_template.getSlot(fid)) != FieldTemplate.REAL)
+                return 0;
+            return _data.get(pos + 8);
+        }
+
+        /**
+         * @return the value of a numeric field
+         */
+        public double getDouble(short fid)
+        {
+            int pos = valuePosition(fid);
+            if (pos < 0)
+                return Double.NaN;
+            switch (_template.getKind(_template.getSlot(fid)))
+            {
+                case FieldTemplate.INT:
+                    return _data.getLong(pos);
+                case FieldTemplate.DOUBLE:
+                    return _data.getDouble(pos);
+                case FieldTemplate.REAL:
+                {
+                    long mantissa = _data.getLong(pos);
+                    int hint = _data.get(pos + 8);
+                    if (hint <= OMMNumeric.EXPONENT_POS7)
+                        return mantissa * Math.pow(10, hint - OMMNumeric.EXPONENT_0);
+                    return (double)mantissa / (1 << (hint - OMMNumeric.DIVISOR_1));
+                }
+                case FieldTemplate.ENUM:
+                    return _data.getShort(pos) & 0xFFFF;
+                default:
+                    return Double.NaN;
+            }
+        }
+
+        /**
+         * @return the value of a field as a string
+         */
+        public String getString(short fid)
+        {
+            int pos = valuePosition(fid);
+            if (pos < 0)
+                return null;
+            switch (_template.getKind(_template.getSlot(fid)))
+            {
+                case FieldTemplate.INT:
+                case FieldTemplate.ENUM:
+                    return Long.toString(getLong(fid));
+                case FieldTemplate.DOUBLE:
+                    return Double.toString(getDouble(fid));
+                case FieldTemplate.REAL:
+                {
+                    int hint = _data.get(pos + 8);
+                    if (hint <= OMMNumeric.EXPONENT_POS7)
+                        return BigDecimal.valueOf(_data.getLong(pos),
+                                                  OMMNumeric.EXPONENT_0 - hint).toPlainString();
+                    return Double.toString(getDouble(fid));
+                }
+                case FieldTemplate.DATE:
+                    return dateString(pos);
+                case FieldTemplate.TIME:
+                    return timeString(pos);
+                case FieldTemplate.DATETIME:
+                    return dateString(pos) + " " + timeString(pos + 4);
+                case FieldTemplate.UTF8_STRING:
+                    return new String(_record, pos + 2, _data.getShort(pos), UTF8);
+                default:
+                    return new String(_record, pos + 2, _data.getShort(pos), ISO_8859_1);
+            }
+        }
+
+        private String dateString(int pos)
+        {
+            return String.format("%04d-%02d-%02d", _data.getShort(pos), _data.get(pos + 2),
+                                 _data.get(pos + 3));
+        }
+
+        private String timeString(int pos)
+        {
+            return String.format("%02d:%02d:%02d:%03d", _data.get(pos), _data.get(pos + 1),
+                                 _data.get(pos + 2), _data.getShort(pos + 3));
+        }
+
+        private byte status(short fid)
+        {
+            if (_template == null)
+                return FieldTemplate.UNSET;
+            int slot = _template.getSlot(fid);
+            if (slot == FieldIdTable.NOT_FOUND)
+                return FieldTemplate.UNSET;
+            return _data.get(_template.getOffset(slot));
+        }
+
+        /*
+         * Returns the position of the value of the field, or -1 if not set
+         */
+        private int valuePosition(short fid)
+        {
+            if (status(fid) != FieldTemplate.SET)
+                return -1;
+            return _template.getOffset(_template.getSlot(fid)) + 1;
+        }
+
+        private byte[] _record = new byte[0];
+        private ByteBuffer _data = ByteBuffer.wrap(_record);
+        private FieldTemplate _template;
+        private Slab _viewSlab;
+        private ByteBuffer _view;
+    }
+
+    private static final int SPINS = 100;
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>()
+    {
+        protected byte[] initialValue()
+        {
+            return new byte[FieldTemplate.MAX_STRING_LENGTH];
+        }
+    };
+
+    private final SubAppContext _context;
+    private final Client _client;
+    private final Map<Short, Domain> _domains = new HashMap<Short, Domain>();
+    // read by any thread
+    private final Map<String, Item> _items = new ConcurrentHashMap<String, Item>();
+    private final Map<Handle, Item> _handles = new HashMap<Handle, Item>();
+    private int _lastId;
+}
@@ -0,0 +1,116 @@
+package com.reuters.rfa.example.framework.sub;
+
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.common.EventQueue;
+import com.reuters.rfa.common.EventSource;
+import com.reuters.rfa.common.Handle;
+import com.reuters.rfa.common.InterestSpec;
+
+/**
+ * Latest image of an item stream shared by {@link SharedStreams}, so that a
+ * client who subscribes to the item after the refresh of the stream can be
+ * given the image without a new request. The image is the refresh with the
+ * updates since merged into it, as far as the data format allows. Once the
+ * stream has data that can not be merged, the image is not complete any more
+ * until the next refresh.
+ * <p>
+ * The image also makes the events which deliver the stream to each client,
+ * see {@link SharedEvent}. An image is used by one thread at a time.
+ */
+abstract class ItemImage
+{
+    /**
+     * Merges an event of the stream into the image.
+     */
+    abstract void apply(Event event);
+
+    /**
+     * @return whether nothing has been received for the image yet
+     */
+    abstract boolean isEmpty();
+
+    /**
+     * @return whether the image has been received and can be given to a new
+     *         client
+     */
+    abstract boolean isComplete();
+
+    /**
+     * @return a new event for a client of the stream
+     */
+    abstract SharedEvent newEvent();
+
+    /**
+     * Sets event to a refresh made from the image. Only called when the image
+     * is complete.
+     */
+    abstract void setImage(SharedEvent event);
+
+    /**
+     * Releases the image, after the stream was closed.
+     */
+    abstract void clear();
+
+    /**
+     * Event of a shared stream as seen by one client: either an event of the
+     * stream, which is delegated to, or an image of the stream. Both have the
+     * handle of the client. The event is reused for each event of the stream,
+     * so a client must not keep it.
+     */
+    abstract static class SharedEvent implements Event
+    {
+        Event _event; // null for an image
+        Handle _handle;
+        EventQueue _eventQueue;
+
+        void set(Event event)
+        {
+            _event = event;
+        }
+
+        public Handle getHandle()
+        {
+            return _handle;
+        }
+
+        public Object getClosure()
+        {
+            return null;
+        }
+
+        public EventQueue getEventQueue()
+        {
+            return _eventQueue;
+        }
+
+        public EventSource getEventSource()
+        {
+            return (_event != null) ? _event.getEventSource() : null;
+        }
+
+        public InterestSpec getInterestSpec()
+        {
+            return (_event != null) ? _event.getInterestSpec() : null;
+        }
+
+        public boolean isEventStreamClosed()
+        {
+            return (_event != null) ? _event.isEventStreamClosed() : false;
+        }
+
+        public long getEventAge()
+        {
+            return (_event != null) ? _event.getEventAge() : 0;
+        }
+
+        public long getEventAgeNano()
+        {
+            return (_event != null) ? _event.getEventAgeNano() : 0;
+        }
+
+        public String toString()
+        {
+            return (_event != null) ? _event.toString() : super.toString();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.reuters.rfa.example.framework.sub;
+
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.common.QualityOfService;
+import com.reuters.rfa.example.framework.sub.ItemImage.SharedEvent;
+import com.reuters.rfa.example.framework.sub.MarketDataItemImage.SharedMarketDataItemEvent;
+import com.reuters.rfa.example.utility.MarketfeedDecoder;
+import com.reuters.rfa.example.utility.MarketfeedEncoder;
+import com.reuters.rfa.session.MarketDataEnums;
+import com.reuters.rfa.session.event.MarketDataItemEvent;
+import com.reuters.rfa.session.event.MarketDataItemStatus;
+
+/**
+ * Merged MarketData updates in Marketfeed format. The update delivered is a
+ * Marketfeed update with the tag and record transaction level of the last
+ * update. Corrections, closing runs, other data formats and updates with
+ * intra-field positioning are not merged, and are delivered after the merged
+ * update.
+ */
+class MarketDataConflatedUpdate extends ConflatedUpdate
+{
+    private final MarketfeedDecoder _decoder = new MarketfeedDecoder();
+    private final MarketfeedEncoder _fields = new MarketfeedEncoder();
+    private final MarketfeedEncoder _update = new MarketfeedEncoder();
+    private int _count;
+
+    // from the last update
+    private String _tag;
+    private String _ric;
+    private int _rtl;
+    private String _subject;
+    private String _itemName;
+    private String _serviceName;
+    private QualityOfService _qos;
+    private MarketDataItemStatus _status;
+    private long _groupId;
+
+    @SuppressWarnings("deprecation")
+    boolean merge(Event event)
+    {
+        if (!(event instanceof MarketDataItemEvent))
+            return false;
+        MarketDataItemEvent mdEvent = (MarketDataItemEvent)event;
+        if (mdEvent.getMarketDataMsgType() != MarketDataItemEvent.UPDATE
+                || mdEvent.getDataFormat() != MarketDataEnums.DataFormat.MARKETFEED
+                || !_decoder.setBuffer(mdEvent.getData()))
+            return false;
+
+        if (!MarketDataItemImage.mergeFields(_decoder, mdEvent.getData(), _fields))
+            return false;
+        _tag = _decoder.getTag();
+        _ric = _decoder.getRicName();
+        _rtl = _decoder.getRTL();
+        _subject = mdEvent.getSubject();
+        _itemName = mdEvent.getItemName();
+        _serviceName = mdEvent.getServiceName();
+        _qos = mdEvent.getQualityOfService();
+        _status = mdEvent.getStatus();
+        _groupId = mdEvent.getGroupID();
+        _count++;
+        return true;
+    }
+
+    int getCount()
+    {
+        return _count;
+    }
+
+    SharedEvent newEvent()
+    {
+        return new SharedMarketDataItemEvent();
+    }
+
+    void setUpdate(SharedEvent event, long interval)
+    {
+        _update.startUpdate(MarketfeedDecoder.UPDATE, _tag, _ric, _rtl);
+        _update.appendFields(_fields);
+
+        SharedMarketDataItemEvent update = (SharedMarketDataItemEvent)event;
+        update.set(null);
+        update._msgType = MarketDataItemEvent.UPDATE;
+        update._data = _update.getBytes();
+        update._subject = _subject;
+        update._itemName = _itemName;
+        update._serviceName = _serviceName;
+        update._qos = _qos;
+        update._status = _status;
+        update._groupId = _groupId;
+        clear();
+    }
+
+    void clear()
+    {
+        _fields.clear();
+        _count = 0;
+    }
+}
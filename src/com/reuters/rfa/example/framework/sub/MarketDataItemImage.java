@@ -0,0 +1,275 @@
+package com.reuters.rfa.example.framework.sub;
+
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.common.QualityOfService;
+import com.reuters.rfa.example.utility.MarketfeedDecoder;
+import com.reuters.rfa.example.utility.MarketfeedEncoder;
+import com.reuters.rfa.session.MarketDataEnums;
+import com.reuters.rfa.session.event.MarketDataItemEvent;
+import com.reuters.rfa.session.event.MarketDataItemStatus;
+import com.reuters.rfa.session.event.MarketDataItemEvent.MarketDataMessageType;
+
+/**
+ * Image of a MarketData item stream in Marketfeed format. The fields of the
+ * updates, corrections and closing runs are merged into the fields of the
+ * last image, and the image given to a new client is a Marketfeed response
+ * with the header of the last image and the record transaction level of the
+ * last update.
+ * <p>
+ * Other data formats and values with intra-field positioning can not be
+ * merged, so a stream in another format or with such a value has no complete
+ * image.
+ */
+class MarketDataItemImage extends ItemImage
+{
+    private final MarketfeedDecoder _decoder = new MarketfeedDecoder();
+    private final MarketfeedEncoder _fields = new MarketfeedEncoder();
+    private final MarketfeedEncoder _image = new MarketfeedEncoder();
+
+    private boolean _received;
+    private boolean _complete;
+
+    // from the last image
+    private String _tag;
+    private String _ric;
+    private String _recordStatus;
+    private int _fieldListNumber;
+    private int _rtl;
+    private String _subject;
+    private String _itemName;
+    private String _serviceName;
+    private QualityOfService _qos;
+    private MarketDataItemStatus _status;
+    private long _groupId;
+
+    @SuppressWarnings("deprecation")
+    void apply(Event event)
+    {
+        if (!(event instanceof MarketDataItemEvent))
+            return;
+        MarketDataItemEvent mdEvent = (MarketDataItemEvent)event;
+        MarketDataMessageType msgType = mdEvent.getMarketDataMsgType();
+        if (msgType == MarketDataItemEvent.IMAGE
+                || msgType == MarketDataItemEvent.UNSOLICITED_IMAGE)
+        {
+            _received = true;
+            _complete = isMarketfeed(mdEvent) && _decoder.setBuffer(mdEvent.getData());
+            if (!_complete)
+                return;
+            _tag = _decoder.getTag();
+            _ric = _decoder.getRicName();
+            _recordStatus = _decoder.getStatus();
+            _fieldListNumber = _decoder.getFieldListNumber();
+            _rtl = _decoder.getRTL();
+            _subject = mdEvent.getSubject();
+            _itemName = mdEvent.getItemName();
+            _serviceName = mdEvent.getServiceName();
+            _qos = mdEvent.getQualityOfService();
+            _status = mdEvent.getStatus();
+            _groupId = mdEvent.getGroupID();
+            _fields.clear();
+            mergeFields(mdEvent.getData());
+        }
+        else if (msgType == MarketDataItemEvent.UPDATE
+                || msgType == MarketDataItemEvent.CORRECTION
+                || msgType == MarketDataItemEvent.CLOSING_RUN)
+        {
+            if (!_complete)
+                return;
+            _complete = isMarketfeed(mdEvent) && _decoder.setBuffer(mdEvent.getData());
+            if (!_complete)
+                return;
+            _rtl = _decoder.getRTL();
+            mergeFields(mdEvent.getData());
+        }
+        else if (msgType == MarketDataItemEvent.STATUS)
+        {
+            _status = mdEvent.getStatus();
+        }
+        else if (msgType == MarketDataItemEvent.GROUP_CHANGE)
+        {
+            _groupId = mdEvent.getGroupID();
+        }
+        else if (msgType == MarketDataItemEvent.RENAME)
+        {
+            _complete = false;
+        }
+    }
+
+    boolean isEmpty()
+    {
+        return !_received;
+    }
+
+    boolean isComplete()
+    {
+        return _complete;
+    }
+
+    SharedEvent newEvent()
+    {
+        return new SharedMarketDataItemEvent();
+    }
+
+    void setImage(SharedEvent event)
+    {
+        _image.startResponse(_tag, _ric, _recordStatus, _fieldListNumber, _rtl);
+        _image.appendFields(_fields);
+
+        SharedMarketDataItemEvent image = (SharedMarketDataItemEvent)event;
+        image.set(null);
+        image._msgType = MarketDataItemEvent.IMAGE;
+        image._data = _image.getBytes();
+        image._subject = _subject;
+        image._itemName = _itemName;
+        image._serviceName = _serviceName;
+        image._qos = _qos;
+        image._status = _status;
+        image._groupId = _groupId;
+    }
+
+    void clear()
+    {
+        _fields.clear();
+        _received = false;
+        _complete = false;
+        _qos = null;
+        _status = null;
+    }
+
+    private static boolean isMarketfeed(MarketDataItemEvent event)
+    {
+        return event.getDataFormat() == MarketDataEnums.DataFormat.MARKETFEED;
+    }
+
+    /*
+     * Merges the fields of the message set to the decoder
+     */
+    private void mergeFields(byte[] data)
+    {
+        if (!mergeFields(_decoder, data, _fields))
+            _complete = false;
+    }
+
+    /**
+     * Changes or appends the fields of the message set to decoder in fields.
+     * The fields are checked first, so nothing is merged from a message which
+     * can not be merged.
+     * 
+     * @return false if the message has an error, or a partial value which
+     *         can not replace the value of the field
+     */
+    static boolean mergeFields(MarketfeedDecoder decoder, byte[] data, MarketfeedEncoder fields)
+    {
+        while (decoder.nextField())
+        {
+            if (decoder.isPartialValue())
+                return false;
+        }
+        if (decoder.hasError())
+            return false;
+        decoder.rewind();
+        while (decoder.nextField())
+        {
+            int fid = decoder.getFieldId();
+            int offset = decoder.getValueOffset();
+            int length = decoder.getValueLength();
+            if (!fields.changeField(fid, data, offset, length))
+                fields.appendField(fid, data, offset, length);
+        }
+        return true;
+    }
+
+    /**
+     * Event of a MarketData stream, or a message made from the stream with
+     * the values of the fields below.
+     */
+    static class SharedMarketDataItemEvent extends SharedEvent implements MarketDataItemEvent
+    {
+        MarketDataMessageType _msgType;
+        byte[] _data;
+        String _subject;
+        String _itemName;
+        String _serviceName;
+        QualityOfService _qos;
+        MarketDataItemStatus _status;
+        long _groupId;
+
+        private MarketDataItemEvent event()
+        {
+            return (MarketDataItemEvent)_event;
+        }
+
+        public int getType()
+        {
+            return (_event != null) ? _event.getType() : Event.MARKET_DATA_ITEM_EVENT;
+        }
+
+        public String getSubject()
+        {
+            return (_event != null) ? event().getSubject() : _subject;
+        }
+
+        public String getItemName()
+        {
+            return (_event != null) ? event().getItemName() : _itemName;
+        }
+
+        public String getServiceName()
+        {
+            return (_event != null) ? event().getServiceName() : _serviceName;
+        }
+
+        public String getNewSubject()
+        {
+            return (_event != null) ? event().getNewSubject() : null;
+        }
+
+        public String getNewItemName()
+        {
+            return (_event != null) ? event().getNewItemName() : null;
+        }
+
+        public MarketDataMessageType getMarketDataMsgType()
+        {
+            return (_event != null) ? event().getMarketDataMsgType() : _msgType;
+        }
+
+        public byte[] getData()
+        {
+            return (_event != null) ? event().getData() : _data;
+        }
+
+        public QualityOfService getQualityOfService()
+        {
+            return (_event != null) ? event().getQualityOfService() : _qos;
+        }
+
+        public MarketDataItemStatus getStatus()
+        {
+            return (_event != null) ? event().getStatus() : _status;
+        }
+
+        @SuppressWarnings("deprecation")
+        public long getGroupID()
+        {
+            return (_event != null) ? event().getGroupID() : _groupId;
+        }
+
+        public int getDataFormat()
+        {
+            return (_event != null) ? event().getDataFormat()
+                    : MarketDataEnums.DataFormat.MARKETFEED;
+        }
+
+        public String getPreviousName()
+        {
+            return (_event != null) ? event().getPreviousName() : null;
+        }
+
+        public String getNextName()
+        {
+            return (_event != null) ? event().getNextName() : null;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.Iterator;
 
 import com.reuters.rfa.dictionary.FidDef;
 import com.reuters.rfa.dictionary.FieldDictionary;
+import com.reuters.rfa.example.utility.MarketfeedDecoder;
 import com.reuters.rfa.omm.OMMTypes;
 import com.reuters.rfa.rdm.RDMInstrument;
 import com.reuters.rfa.session.MarketDataEnums;
@@ -18,6 +19,22 @@ import com.reuters.tibmsg.TibException;
 import com.reuters.tibmsg.TibField;
 import com.reuters.tibmsg.TibMsg;
 
+/**
+ * NormalizedEvent for a MarketDataItemEvent.
+ * <p>
+ * The fields of a Marketfeed message are read in place with a
+ * {@link MarketfeedDecoder}: the first field access indexes the positions of
+ * the fields by field id, and the accessors parse the values from the payload,
+ * so reading fields allocates nothing except for Strings. The text and bytes
+ * of a field are the ones of the message, and an enumerated field is expanded
+ * to its display value. The numbers are converted like TibMsg converts them,
+ * according to the Marketfeed type of the field: PRICE and INTEGER fields are
+ * parsed, including fractions, and blank is 0. The other formats are read with
+ * TibMsg.
+ * <p>
+ * An event can be reused for the next MarketDataItemEvent with
+ * {@link #setEvent(MarketDataItemEvent)}.
+ */
 public class MarketDataNormalizedEvent implements NormalizedEvent
 {
     /**
@@ -112,11 +129,18 @@ public class MarketDataNormalizedEvent implements NormalizedEvent
     TibMsgIterator _iterator;
     MarketfeedHeaderParser _headerParser;
 
+    // positions of the Marketfeed fields by field id, indexed on first use
+    FieldIdTable _fieldIds;
+    int[] _fieldPositions;
+    boolean _indexed;
+
     public MarketDataNormalizedEvent(FieldDictionary dictionary, MarketDataItemEvent event)
     {
         _dictionary = dictionary;
         _headerParser = new MarketfeedHeaderParser();
         _tibmsg = new TibMsg();
+        _fieldIds = new FieldIdTable();
+        _fieldPositions = new int[64];
         setEvent(event);
     }
 
@@ -125,16 +149,19 @@ public class MarketDataNormalizedEvent implements NormalizedEvent
         _event = event;
         _headerParser.clear();
         _tibmsg.ReUse();
+        _indexed = false;
         if (event.getMarketDataMsgType() == MarketDataItemEvent.PERMISSION_DATA)
             return;
         byte[] data = _event.getData();
         if (data != null && data.length != 0)
         {
+            if (isMarketfeed())
+            {
+                _headerParser.setBuffer(data);
+                return;
+            }
             try
             {
-
-                if (_event.getDataFormat() == MarketDataEnums.DataFormat.MARKETFEED)
-                    _headerParser.setBuffer(data);
                 _tibmsg.UnPack(data);
             }
             catch (TibException e)
@@ -163,6 +190,56 @@ public class MarketDataNormalizedEvent implements NormalizedEvent
                 || _event.getDataFormat() != MarketDataEnums.DataFormat.TIBMSG;
     }
 
+    private boolean isMarketfeed()
+    {
+        return _event.getDataFormat() == MarketDataEnums.DataFormat.MARKETFEED;
+    }
+
+    /*
+     * Moves the decoder to the first field with fid, indexing the fields of
+     * the message on first use
+     */
+    private boolean findMarketfeedField(short fid)
+    {
+        MarketfeedDecoder decoder = _headerParser.getDecoder();
+        if (!_indexed)
+        {
+            _fieldIds.clear();
+            int count = 0;
+            decoder.rewind();
+            while (decoder.nextField())
+            {
+                if (count == _fieldPositions.length)
+                {
+                    int[] positions = new int[count * 2];
+                    System.arraycopy(_fieldPositions, 0, positions, 0, count);
+                    _fieldPositions = positions;
+                }
+                // only the first of a repeated fid is indexed
+                if (_fieldIds.put((short)decoder.getFieldId(), count))
+                    _fieldPositions[count++] = decoder.getFieldPosition();
+            }
+            _indexed = true;
+        }
+        int slot = _fieldIds.get(fid);
+        return slot != FieldIdTable.NOT_FOUND && decoder.seekField(_fieldPositions[slot]);
+    }
+
+    /*
+     * Returns the Marketfeed type of fid, where PRICE also stands for the
+     * INTEGER fields too wide for an int, which TibMsg unpacks as doubles too
+     */
+    private short getMfeedType(short fid)
+    {
+        FidDef fieldDef = _dictionary.getFidDef(fid);
+        if (fieldDef == null)
+            return FidDef.MfeedType.NONE;
+        if (fieldDef.getMfeedType() == FidDef.MfeedType.INTEGER
+                && fieldDef.getMaxMfeedLength() > 9)
+            return FidDef.MfeedType.PRICE;
+        return fieldDef.getMfeedType();
+    }
+
     private TibField getField(String fieldName)
     {
         if (!isFieldListDataFormat())
@@ -182,6 +259,21 @@ public class MarketDataNormalizedEvent implements NormalizedEvent
 
     public String getFieldString(short fid)
     {
+        if (isMarketfeed())
+        {
+            if (!findMarketfeedField(fid))
+                return null;
+            MarketfeedDecoder decoder = _headerParser.getDecoder();
+            if (getMfeedType(fid) == FidDef.MfeedType.ENUMERATED)
+            {
+                long value = decoder.getLong(-1);
+                if (value >= 0 && value <= Integer.MAX_VALUE)
+                    return _dictionary.expandedValueFor(fid, (int)value);
+            }
+            // the text of the message, e.g. "12 3/4" for a price
+            return decoder.getString();
+        }
+
         FidDef fieldDef = _dictionary.getFidDef(fid);
         TibField field = getField(fieldDef.getName());
         if (field != null)
@@ -199,6 +291,24 @@ public class MarketDataNormalizedEvent implements NormalizedEvent
 
     public int getFieldInt(short fid, int defaultValue)
     {
+        if (isMarketfeed())
+        {
+            if (!findMarketfeedField(fid))
+                return defaultValue;
+            MarketfeedDecoder decoder = _headerParser.getDecoder();
+            switch (getMfeedType(fid))
+            {
+                case FidDef.MfeedType.PRICE:
+                case FidDef.MfeedType.INTEGER:
+                    return (int)decoder.getDouble(0);
+                default:
+                    long value = decoder.getLong(Long.MIN_VALUE);
+                    if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+                        return defaultValue;
+                    return (int)value;
+            }
+        }
+
         FidDef fieldDef = _dictionary.getFidDef(fid);
         TibField field = getField(fieldDef.getName());
         if (field != null)
@@ -216,6 +326,22 @@ public class MarketDataNormalizedEvent implements NormalizedEvent
 
     public double getFieldDouble(short fid, double defaultValue)
     {
+        if (isMarketfeed())
+        {
+            if (!findMarketfeedField(fid))
+                return defaultValue;
+            MarketfeedDecoder decoder = _headerParser.getDecoder();
+            switch (getMfeedType(fid))
+            {
+                case FidDef.MfeedType.PRICE:
+                    return decoder.getDouble(0);
+                case FidDef.MfeedType.INTEGER:
+                    return (long)decoder.getDouble(0);
+                default:
+                    return decoder.getDouble(defaultValue);
+            }
+        }
+
         FidDef fieldDef = _dictionary.getFidDef(fid);
         TibField field = getField(fieldDef.getName());
         if (field != null)
@@ -233,6 +359,13 @@ public class MarketDataNormalizedEvent implements NormalizedEvent
 
     public int getFieldBytes(short fid, byte[] dest, int offset)
     {
+        if (isMarketfeed())
+        {
+            if (!findMarketfeedField(fid))
+                return 0;
+            return _headerParser.getDecoder().getBytes(dest, offset);
+        }
+
         FidDef fieldDef = _dictionary.getFidDef(fid);
         TibField field = getField(fieldDef.getName());
         if (field != null)
@@ -420,6 +553,35 @@ public class MarketDataNormalizedEvent implements NormalizedEvent
         return EmptyIterator;
     }
 
+    /**
+     * @return whether the event has an RTL in its Marketfeed header or a SEQ_NO
+     *         field in its QForm, else {@link #getSeqNum()} is 0
+     */
+    public boolean hasSeqNum()
+    {
+        switch (_event.getDataFormat())
+        {
+            case MarketDataEnums.DataFormat.MARKETFEED:
+                return _headerParser.getDecoder().hasRTL();
+            case MarketDataEnums.DataFormat.QFORM:
+            case MarketDataEnums.DataFormat.IFORM:
+            case MarketDataEnums.DataFormat.TIBMSG:
+            {
+                try
+                {
+                    _tibmsg.Get("SEQ_NO");
+                    return true;
+                }
+                catch (TibException e)
+                {
+                    return false;
+                }
+            }
+            default:
+                return false;
+        }
+    }
+
     /**
      * @return RTL from Marketfeed header or SEQ_NO from QForm
      */
@@ -428,7 +590,7 @@ public class MarketDataNormalizedEvent implements NormalizedEvent
         switch (_event.getDataFormat())
         {
             case MarketDataEnums.DataFormat.MARKETFEED:
-                return _headerParser.getRTL();
+                return _headerParser.getDecoder().getRTL();
             case MarketDataEnums.DataFormat.QFORM:
             case MarketDataEnums.DataFormat.IFORM:
             case MarketDataEnums.DataFormat.TIBMSG:
@@ -456,7 +618,7 @@ public class MarketDataNormalizedEvent implements NormalizedEvent
         switch (_event.getDataFormat())
         {
             case MarketDataEnums.DataFormat.MARKETFEED:
-                return _headerParser.getFieldListNumber();
+                return _headerParser.getDecoder().getFieldListNumber();
             case MarketDataEnums.DataFormat.QFORM:
             case MarketDataEnums.DataFormat.IFORM:
             case MarketDataEnums.DataFormat.TIBMSG:
@@ -26,6 +26,7 @@ import com.reuters.rfa.session.MarketDataItemSub;
 import com.reuters.rfa.session.MarketDataSubscriber;
 import com.reuters.rfa.session.MarketDataSubscriberInterestSpec;
 import com.reuters.rfa.session.Session;
+import com.reuters.rfa.session.TimerIntSpec;
 import com.reuters.rfa.session.event.ConnectionEvent;
 import com.reuters.rfa.session.event.MarketDataDictEvent;
 import com.reuters.rfa.session.event.MarketDataDictStatus;
@@ -70,6 +71,7 @@ public class MarketDataSubAppContext extends SubAppContext
         _services = new HashMap<String, ServiceInfo>();
         boolean fileDictionary = CommandLine.booleanVariable("fileDictionary");
         _dictionary = FieldDictionary.create();
+        _normalizedEvents = new ThreadLocal<MarketDataNormalizedEvent>();
         if (fileDictionary)
             loadDictionary();
         MarketDataSubscriberInterestSpec marketDataSubscriberInterestSpec = new MarketDataSubscriberInterestSpec();
@@ -88,6 +90,26 @@ public class MarketDataSubAppContext extends SubAppContext
         return new MarketDataNormalizedEvent(_dictionary, (MarketDataItemEvent)event);
     }
 
+    /**
+     * Returns the normalized event of the thread, set to event.
+     */
+    public NormalizedEvent getReusableNormalizedEvent(Event event)
+    {
+        if (event.getType() != Event.MARKET_DATA_ITEM_EVENT)
+            throw new IllegalArgumentException("Event must be MarketDataItemEvent");
+        MarketDataNormalizedEvent nevent = _normalizedEvents.get();
+        if (nevent == null || nevent._dictionary != _dictionary)
+        {
+            nevent = new MarketDataNormalizedEvent(_dictionary, (MarketDataItemEvent)event);
+            _normalizedEvents.set(nevent);
+        }
+        else
+        {
+            nevent.setEvent((MarketDataItemEvent)event);
+        }
+        return nevent;
+    }
+
     /*
      * override from SubAppContext because we need to acquire session with
      * tokenizedPI
@@ -157,9 +179,23 @@ public class MarketDataSubAppContext extends SubAppContext
 
     public void unregister(Handle handle)
     {
+        if (unregisterShared(handle))
+            return;
         _marketDataSubscriber.unsubscribe(handle);
     }
 
+    Handle registerTimer(Client client, long delay)
+    {
+        TimerIntSpec timer = new TimerIntSpec();
+        timer.setDelay(delay);
+        return _marketDataSubscriber.registerClient(_eventQueue, timer, client, null);
+    }
+
+    ItemImage createItemImage()
+    {
+        return new MarketDataItemImage();
+    }
+
     public void cleanup()
     {
         _marketDataSubscriber.unregisterClient(_mdsClientHandle);
@@ -288,6 +324,8 @@ public class MarketDataSubAppContext extends SubAppContext
         ServiceInfo si = (ServiceInfo)_services.get(event.getServiceName());
         if (si != null)
         {
+            if (_serviceRouter != null)
+                _serviceRouter.processServiceUpdated(si);
             if (_directoryClient != null)
                 _directoryClient.processServiceUpdated(si);
         }
@@ -300,6 +338,8 @@ public class MarketDataSubAppContext extends SubAppContext
             // MarketDataSvcStatus status = event.getStatus();
 
             _services.put(event.getServiceName(), si);
+            if (_serviceRouter != null)
+                _serviceRouter.processNewService(si);
             if (_directoryClient != null)
                 _directoryClient.processNewService(si);
         }
@@ -310,7 +350,8 @@ public class MarketDataSubAppContext extends SubAppContext
             requestDictionaries(event.getDataDictInfo());
         }
 
-        if (!_isComplete && (_serviceName.length() == 0 || _services.containsKey(_serviceName))
+        if (!_isComplete && (_serviceName.length() == 0 || _services.containsKey(_serviceName)
+                    || isServiceGroupDiscovered(_serviceName))
                 && _pendingDictionaries.isEmpty())
         {
             _isComplete = true;
@@ -359,7 +400,8 @@ public class MarketDataSubAppContext extends SubAppContext
             _loadedDictionaries.add(ddinfo);
             initFieldDictionaryFromTibMsg();
 
-            if (!_isComplete && (_serviceName.length() == 0 || _services.containsKey(_serviceName))
+            if (!_isComplete && (_serviceName.length() == 0 || _services.containsKey(_serviceName)
+                    || isServiceGroupDiscovered(_serviceName))
                     && _pendingDictionaries.isEmpty())
             {
                 _isComplete = true;
@@ -380,6 +422,8 @@ public class MarketDataSubAppContext extends SubAppContext
     {
         ServiceInfo service = new MarketDataServiceInfo(serviceName);
         _services.put(serviceName, service);
+        if (_serviceRouter != null)
+            _serviceRouter.processNewService(service);
         if (_directoryClient != null)
         {
             _directoryClient.processNewService(service);
@@ -392,6 +436,7 @@ public class MarketDataSubAppContext extends SubAppContext
     Map<String, ServiceInfo> _services;
     FieldDictionary _dictionary;
     Map<String, FidDef> _dictionaryMap;
+    ThreadLocal<MarketDataNormalizedEvent> _normalizedEvents;
     MarketDataSubscriber _marketDataSubscriber;
     boolean _mounttpi;
     StandardPrincipalIdentity _standardPI;
@@ -105,7 +105,12 @@ public interface NormalizedEvent
     String getStatusText();
 
     /**
-     * @return sequence number
+     * @return whether the event has a sequence number
+     */
+    boolean hasSeqNum();
+
+    /**
+     * @return sequence number, or 0 if the event has none
      */
     int getSeqNum();
 
@@ -0,0 +1,113 @@
+package com.reuters.rfa.example.framework.sub;
+
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.dictionary.FieldDictionary;
+import com.reuters.rfa.example.framework.sub.ItemImage.SharedEvent;
+import com.reuters.rfa.example.framework.sub.OMMItemImage.SharedOMMItemEvent;
+import com.reuters.rfa.omm.OMMEncoder;
+import com.reuters.rfa.omm.OMMFieldList;
+import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.omm.OMMPool;
+import com.reuters.rfa.omm.OMMTypes;
+import com.reuters.rfa.session.omm.OMMItemEvent;
+
+/**
+ * Merged OMM updates whose payload is a field list. The update delivered
+ * has the header of the last update, with the number of updates merged and
+ * the interval as its conflation info.
+ * <p>
+ * Updates with the DO_NOT_CONFLATE indication, another payload, a field which
+ * is not in the dictionary or a value with partial updates are not merged,
+ * and are delivered after the merged update.
+ */
+class OMMConflatedUpdate extends ConflatedUpdate
+{
+    private final OMMPool _pool;
+    private final SubAppContext _context;
+    private final OMMFieldCache _fields;
+    private OMMEncoder _encoder; // reused for each update
+
+    private OMMMsg _header; // last update without its payload
+    private int _count;
+    private boolean _hasInfo;
+    private short _dictId;
+    private short _listNum;
+
+    OMMConflatedUpdate(OMMPool pool, SubAppContext context)
+    {
+        _pool = pool;
+        _context = context;
+        _fields = new OMMFieldCache(pool);
+    }
+
+    boolean merge(Event event)
+    {
+        if (!(event instanceof OMMItemEvent))
+            return false;
+        OMMMsg msg = ((OMMItemEvent)event).getMsg();
+        FieldDictionary dictionary = _context.getFieldDictionary();
+        if (msg.getMsgType() != OMMMsg.MsgType.UPDATE_RESP
+                || msg.isSet(OMMMsg.Indication.DO_NOT_CONFLATE)
+                || msg.getDataType() != OMMTypes.FIELD_LIST || dictionary == null)
+            return false;
+
+        OMMFieldList fieldList = (OMMFieldList)msg.getPayload();
+        if (!_fields.merge(fieldList, dictionary))
+            return false;
+        _hasInfo = fieldList.has(OMMFieldList.HAS_INFO);
+        _dictId = fieldList.getDictId();
+        _listNum = fieldList.getListNum();
+        if (_header != null)
+            _pool.releaseMsg(_header);
+        _header = _pool.acquireCopy(msg, false);
+        _count++;
+        return true;
+    }
+
+    int getCount()
+    {
+        return _count;
+    }
+
+    SharedEvent newEvent()
+    {
+        return new SharedOMMItemEvent();
+    }
+
+    void setUpdate(SharedEvent event, long interval)
+    {
+        _header.setConflationInfo((short)Math.min(_count, Short.MAX_VALUE), (int)interval);
+        // the event delivered before has been processed
+        if (_encoder == null)
+            _encoder = _pool.acquireEncoder();
+        OMMEncoder encoder = _encoder;
+        encoder.initialize(OMMTypes.MSG, 1000 + _fields.getEncodedLength());
+        encoder.encodeMsgInit(_header, OMMTypes.NO_DATA, OMMTypes.FIELD_LIST);
+        encoder.encodeFieldListInit(OMMFieldList.HAS_STANDARD_DATA
+                | (_hasInfo ? OMMFieldList.HAS_INFO : 0), _dictId, _listNum, (short)0);
+        _fields.encode(encoder);
+        encoder.encodeAggregateComplete();
+
+        SharedOMMItemEvent update = (SharedOMMItemEvent)event;
+        update.set(null);
+        update._msg = (OMMMsg)encoder.getEncodedObject();
+        reset();
+    }
+
+    void clear()
+    {
+        reset();
+        if (_encoder != null)
+            _pool.releaseEncoder(_encoder);
+        _encoder = null;
+    }
+
+    private void reset()
+    {
+        _fields.clear();
+        if (_header != null)
+            _pool.releaseMsg(_header);
+        _header = null;
+        _count = 0;
+    }
+}
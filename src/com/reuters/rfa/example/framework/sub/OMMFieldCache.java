@@ -0,0 +1,135 @@
+package com.reuters.rfa.example.framework.sub;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.reuters.rfa.dictionary.FidDef;
+import com.reuters.rfa.dictionary.FieldDictionary;
+import com.reuters.rfa.omm.OMMData;
+import com.reuters.rfa.omm.OMMDataBuffer;
+import com.reuters.rfa.omm.OMMEncoder;
+import com.reuters.rfa.omm.OMMFieldEntry;
+import com.reuters.rfa.omm.OMMFieldList;
+import com.reuters.rfa.omm.OMMPool;
+
+/**
+ * Latest value of each field of a series of field lists, to encode them again
+ * as one field list. The values are copies acquired from an OMMPool, and the
+ * fields keep the order in which they were first merged. The type of a field,
+ * needed to encode it, comes from the dictionary.
+ * <p>
+ * Used for the images of {@link SharedStreams} and the updates of a
+ * {@link Conflator}.
+ */
+class OMMFieldCache
+{
+    private final OMMPool _pool;
+    private final FieldIdTable _slots = new FieldIdTable();
+
+    // by slot
+    private int _count;
+    private short[] _fieldIds = new short[16];
+    private short[] _types = new short[16];
+    private OMMData[] _values = new OMMData[16];
+    private int _encodedLength;
+
+    OMMFieldCache(OMMPool pool)
+    {
+        _pool = pool;
+    }
+
+    /**
+     * Merges the fields of fieldList, the last value of a field replacing the
+     * value it had. The fields are checked first, so nothing is merged from a
+     * field list which can not be merged.
+     *
+     * @return false if fieldList has a field which is not in the dictionary,
+     *         or a value with partial updates, and can not be merged
+     */
+    boolean merge(OMMFieldList fieldList, FieldDictionary dictionary)
+    {
+        for (Iterator<?> iter = fieldList.iterator(); iter.hasNext();)
+        {
+            OMMFieldEntry fe = (OMMFieldEntry)iter.next();
+            FidDef fidDef = dictionary.getFidDef(fe.getFieldId());
+            if (fidDef == null)
+                return false;
+            // the cache would keep the parts as if they were the whole value,
+            // and the parts of earlier updates would be lost
+            OMMData data = fe.getData(fidDef.getOMMType());
+            if (data instanceof OMMDataBuffer && ((OMMDataBuffer)data).hasPartialUpdates())
+                return false;
+        }
+        for (Iterator<?> iter = fieldList.iterator(); iter.hasNext();)
+        {
+            OMMFieldEntry fe = (OMMFieldEntry)iter.next();
+            short type = dictionary.getFidDef(fe.getFieldId()).getOMMType();
+            setField(fe.getFieldId(), type, fe.getData(type));
+        }
+        return true;
+    }
+
+    boolean isEmpty()
+    {
+        return _count == 0;
+    }
+
+    /**
+     * @return the number of bytes of the fields, to size an encoder
+     */
+    int getEncodedLength()
+    {
+        return _encodedLength + _count * 8;
+    }
+
+    /**
+     * Encodes the fields, after encodeFieldListInit().
+     */
+    void encode(OMMEncoder encoder)
+    {
+        for (int slot = 0; slot < _count; slot++)
+        {
+            encoder.encodeFieldEntryInit(_fieldIds[slot], _types[slot]);
+            encoder.encodeData(_values[slot]);
+        }
+    }
+
+    void clear()
+    {
+        for (int slot = 0; slot < _count; slot++)
+        {
+            _pool.releaseData(_values[slot]);
+            _values[slot] = null;
+        }
+        _count = 0;
+        _encodedLength = 0;
+        _slots.clear();
+    }
+
+    private void setField(short fid, short type, OMMData data)
+    {
+        int slot = _slots.get(fid);
+        if (slot == FieldIdTable.NOT_FOUND)
+        {
+            slot = _count;
+            if (!_slots.put(fid, slot))
+                return;
+            if (slot == _fieldIds.length)
+            {
+                _fieldIds = Arrays.copyOf(_fieldIds, slot * 2);
+                _types = Arrays.copyOf(_types, slot * 2);
+                _values = Arrays.copyOf(_values, slot * 2);
+            }
+            _count++;
+        }
+        else
+        {
+            _encodedLength -= _values[slot].getEncodedLength();
+            _pool.releaseData(_values[slot]);
+        }
+        _fieldIds[slot] = fid;
+        _types[slot] = type;
+        _values[slot] = _pool.acquireCopy(data);
+        _encodedLength += _values[slot].getEncodedLength();
+    }
+}
@@ -0,0 +1,362 @@
+package com.reuters.rfa.example.framework.sub;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.reuters.rfa.dictionary.FidDef;
+import com.reuters.rfa.dictionary.FieldDictionary;
+import com.reuters.rfa.example.utility.Price;
+import com.reuters.rfa.omm.OMMData;
+import com.reuters.rfa.omm.OMMEnum;
+import com.reuters.rfa.omm.OMMFieldEntry;
+import com.reuters.rfa.omm.OMMFieldList;
+import com.reuters.rfa.omm.OMMNumeric;
+import com.reuters.rfa.omm.OMMTypes;
+
+/**
+ * Index from field id to the fields of one field list, used by
+ * {@link OMMNormalizedEvent} so that reading many fields of an event does not
+ * scan the field list once per field.
+ * <p>
+ * The index is filled lazily: looking up a field continues the iteration of
+ * the field list up to that field, and each entry passed on the way is added
+ * to a slot. Since the iterator of a field list reuses its entry, a slot holds
+ * a copy of the value: the numeric value of numeric fields, and the enum value
+ * and the bytes of the others. Fields read again, or passed by an earlier
+ * lookup, are found with one table access, and their text is made from the
+ * slot.
+ * <p>
+ * {@link #reset(Object, OMMFieldList, FieldDictionary)} starts a new field
+ * list without clearing the table or the slots, so once an index has seen its
+ * largest field list it allocates nothing more. There is one index per
+ * thread, see {@link #get()}.
+ */
+class OMMFieldIndex
+{
+    static final int NOT_FOUND = FieldIdTable.NOT_FOUND;
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    private static final String[] MONTHS = { "JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL",
+            "AUG", "SEP", "OCT", "NOV", "DEC" };
+
+    private static final ThreadLocal<OMMFieldIndex> INDEXES = new ThreadLocal<OMMFieldIndex>()
+    {
+        protected OMMFieldIndex initialValue()
+        {
+            return new OMMFieldIndex();
+        }
+    };
+
+    private final FieldIdTable _table = new FieldIdTable();
+
+    private Object _owner;
+    private OMMFieldList _fieldList;
+    private FieldDictionary _dictionary;
+    private Iterator<?> _iterator;
+    private int _count;
+
+    // by slot
+    private short[] _fieldIds;
+    private FidDef[] _fidDefs;
+    private boolean[] _numeric;
+    private boolean[] _blank;
+    private long[] _values; // value of INT, UINT & ENUM, mantissa of REAL
+    private byte[] _hints;
+    private long[] _longs;
+    private double[] _doubles;
+    private int[] _offsets;
+    private int[] _lengths;
+
+    private byte[] _bytes;
+    private int _bytesLength;
+
+    private final Price _price = new Price(0, OMMNumeric.EXPONENT_0);
+    private final StringBuilder _text = new StringBuilder(32);
+
+    /**
+     * @return the index of the current thread
+     */
+    static OMMFieldIndex get()
+    {
+        return INDEXES.get();
+    }
+
+    OMMFieldIndex()
+    {
+        allocateSlots(64);
+        _bytes = new byte[1024];
+    }
+
+    /**
+     * Starts indexing fieldList for owner.
+     */
+    void reset(Object owner, OMMFieldList fieldList, FieldDictionary dictionary)
+    {
+        _owner = owner;
+        _fieldList = fieldList;
+        _dictionary = dictionary;
+        _iterator = null;
+        _count = 0;
+        _bytesLength = 0;
+        _table.clear();
+    }
+
+    /**
+     * @return whether the index is indexing the field list of owner, i.e.
+     *         has not been reset for another event since
+     */
+    boolean isOwner(Object owner)
+    {
+        return _owner == owner;
+    }
+
+    /**
+     * @return the slot of the first field with fid, or {@link #NOT_FOUND}
+     */
+    int find(short fid)
+    {
+        int slot = _table.get(fid);
+        if (slot != NOT_FOUND)
+            return slot;
+
+        if (_iterator == null)
+            _iterator = _fieldList.iterator();
+        while (_iterator.hasNext())
+        {
+            OMMFieldEntry fe = (OMMFieldEntry)_iterator.next();
+            slot = add(fe);
+            if (slot != NOT_FOUND && fe.getFieldId() == fid)
+                return slot;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the field is not numeric
+     */
+    long getLong(int slot)
+    {
+        checkNumeric(slot);
+        return _longs[slot];
+    }
+
+    /**
+     * @throws IllegalArgumentException if the field is not numeric
+     */
+    double getDouble(int slot)
+    {
+        checkNumeric(slot);
+        return _doubles[slot];
+    }
+
+    /**
+     * Copies the bytes of the data, as {@link OMMData#getBytes(byte[], int)}.
+     *
+     * @return number of bytes copied, -1 for a numeric field, whose bytes are
+     *         not kept
+     */
+    int getBytes(int slot, byte[] dest, int offset)
+    {
+        if (_numeric[slot])
+            return -1;
+        System.arraycopy(_bytes, _offsets[slot], dest, offset, _lengths[slot]);
+        return _lengths[slot];
+    }
+
+    /**
+     * Returns the text of a field, the same as OMMData.toString().
+     *
+     * @return the text, or null if it is made by the data itself: a string
+     *         with other characters than printable ASCII, a fraction, a
+     *         date or time of an unknown length, or another type
+     */
+    String getString(int slot)
+    {
+        FidDef fidDef = _fidDefs[slot];
+        if (fidDef == null)
+            return null;
+        switch (fidDef.getOMMType())
+        {
+            case OMMTypes.ASCII_STRING:
+            case OMMTypes.RMTES_STRING:
+            case OMMTypes.UTF8_STRING:
+                // RMTES escapes and other characters are converted by the data
+                if (!isPrintable(slot))
+                    return null;
+                return new String(_bytes, _offsets[slot], _lengths[slot], ISO_8859_1);
+            case OMMTypes.BUFFER:
+                return new String(_bytes, _offsets[slot], _lengths[slot], ISO_8859_1);
+            case OMMTypes.DATE:
+            case OMMTypes.TIME:
+            case OMMTypes.DATETIME:
+                if (_blank[slot])
+                    return "";
+                _text.setLength(0);
+                if (!appendDateTime(fidDef.getOMMType(), _offsets[slot], _lengths[slot]))
+                    return null;
+                return _text.toString();
+            case OMMTypes.ENUM:
+                return _dictionary.expandedValueFor(_fieldIds[slot], (int)_values[slot]);
+            case OMMTypes.INT:
+            case OMMTypes.UINT:
+                if (!_numeric[slot])
+                    return null;
+                return _blank[slot] ? "" : Long.toString(_values[slot]);
+            case OMMTypes.REAL:
+                if (!_numeric[slot])
+                    return null;
+                if (_blank[slot])
+                    return "";
+                int hint = _hints[slot];
+                if (hint < OMMNumeric.EXPONENT_NEG14 || hint > OMMNumeric.EXPONENT_POS7)
+                    return null; // fractions
+                _text.setLength(0);
+                return _price.set(_values[slot], hint).appendTo(_text).toString();
+            default:
+                return null;
+        }
+    }
+
+    private boolean isPrintable(int slot)
+    {
+        for (int i = _offsets[slot], end = i + _lengths[slot]; i < end; i++)
+        {
+            if (_bytes[i] < 0x20 || _bytes[i] > 0x7E)
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Appends a date as 'DD MON YYYY', a time as 'HH:MM[:SS[:mmm]]', or a
+     * date and time separated by two spaces
+     */
+    private boolean appendDateTime(short type, int offset, int length)
+    {
+        if (type != OMMTypes.TIME)
+        {
+            if (length < 4)
+                return false;
+            int month = _bytes[offset + 1];
+            if (month < 1 || month > 12)
+                return false;
+            appendDigits(_bytes[offset] & 0xFF, 2);
+            _text.append(' ').append(MONTHS[month - 1]).append(' ');
+            appendDigits(((_bytes[offset + 2] & 0xFF) << 8) | (_bytes[offset + 3] & 0xFF), 4);
+            if (type == OMMTypes.DATE)
+                return length == 4;
+            _text.append("  ");
+            offset += 4;
+            length -= 4;
+        }
+        if (length != 2 && length != 3 && length != 5)
+            return false;
+        appendDigits(_bytes[offset] & 0xFF, 2);
+        _text.append(':');
+        appendDigits(_bytes[offset + 1] & 0xFF, 2);
+        if (length >= 3)
+        {
+            _text.append(':');
+            appendDigits(_bytes[offset + 2] & 0xFF, 2);
+        }
+        if (length == 5)
+        {
+            _text.append(':');
+            appendDigits(((_bytes[offset + 3] & 0xFF) << 8) | (_bytes[offset + 4] & 0xFF), 3);
+        }
+        return true;
+    }
+
+    // appends value with leading zeros up to digits
+    private void appendDigits(int value, int digits)
+    {
+        for (int limit = 10; --digits > 0; limit *= 10)
+        {
+            if (value < limit)
+                _text.append('0');
+        }
+        _text.append(value);
+    }
+
+    private int add(OMMFieldEntry fe)
+    {
+        short fid = fe.getFieldId();
+        int slot = _count;
+        if (!_table.put(fid, slot))
+            return NOT_FOUND; // only the first of a repeated fid is indexed
+        if (slot == _fieldIds.length)
+            allocateSlots(slot * 2);
+        _count++;
+
+        FidDef fidDef = _dictionary.getFidDef(fid);
+        _fieldIds[slot] = fid;
+        _fidDefs[slot] = fidDef;
+        _numeric[slot] = false;
+        _blank[slot] = false;
+        _values[slot] = 0;
+        _offsets[slot] = _bytesLength;
+        _lengths[slot] = 0;
+        if (fidDef != null)
+        {
+            OMMData data = fe.getData(fidDef.getOMMType());
+            _blank[slot] = data.isBlank();
+            if (data instanceof OMMNumeric)
+            {
+                OMMNumeric numeric = (OMMNumeric)data;
+                _numeric[slot] = true;
+                _values[slot] = numeric.getLongValue();
+                _hints[slot] = numeric.getHint();
+                _longs[slot] = numeric.toLong();
+                _doubles[slot] = numeric.toDouble();
+            }
+            else
+            {
+                if (data instanceof OMMEnum)
+                    _values[slot] = ((OMMEnum)data).getValue();
+                int length = data.getEncodedLength();
+                if (_bytesLength + length > _bytes.length)
+                    _bytes = Arrays.copyOf(_bytes, Math.max(_bytes.length * 2, _bytesLength
+                            + length));
+                _lengths[slot] = data.getBytes(_bytes, _bytesLength);
+                _bytesLength += _lengths[slot];
+            }
+        }
+        return slot;
+    }
+
+    private void checkNumeric(int slot)
+    {
+        if (!_numeric[slot])
+            throw new IllegalArgumentException("Field " + _fieldIds[slot] + " is not numeric");
+    }
+
+    private void allocateSlots(int size)
+    {
+        if (_fieldIds == null)
+        {
+            _fieldIds = new short[size];
+            _fidDefs = new FidDef[size];
+            _numeric = new boolean[size];
+            _blank = new boolean[size];
+            _values = new long[size];
+            _hints = new byte[size];
+            _longs = new long[size];
+            _doubles = new double[size];
+            _offsets = new int[size];
+            _lengths = new int[size];
+            return;
+        }
+        _fieldIds = Arrays.copyOf(_fieldIds, size);
+        _fidDefs = Arrays.copyOf(_fidDefs, size);
+        _numeric = Arrays.copyOf(_numeric, size);
+        _blank = Arrays.copyOf(_blank, size);
+        _values = Arrays.copyOf(_values, size);
+        _hints = Arrays.copyOf(_hints, size);
+        _longs = Arrays.copyOf(_longs, size);
+        _doubles = Arrays.copyOf(_doubles, size);
+        _offsets = Arrays.copyOf(_offsets, size);
+        _lengths = Arrays.copyOf(_lengths, size);
+    }
+}
@@ -0,0 +1,173 @@
+package com.reuters.rfa.example.framework.sub;
+
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.dictionary.FieldDictionary;
+import com.reuters.rfa.omm.OMMEncoder;
+import com.reuters.rfa.omm.OMMFieldList;
+import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.omm.OMMPool;
+import com.reuters.rfa.omm.OMMTypes;
+import com.reuters.rfa.session.omm.OMMItemEvent;
+
+/**
+ * Image of an OMM item stream whose payload is a field list. The image keeps
+ * a copy of the header of the last refresh, with the state of later status
+ * messages, and a copy of the latest value of each field. The image given to
+ * a new client is a solicited refresh encoded from them.
+ * <p>
+ * The type of a field, needed to encode it again, comes from the dictionary,
+ * so a stream with a field that is not in the dictionary, or with another
+ * payload than a field list, has no complete image. Neither has a stream with
+ * a value of partial updates, which can not be kept as the whole value.
+ */
+class OMMItemImage extends ItemImage
+{
+    private final OMMPool _pool;
+    private final SubAppContext _context;
+    private final OMMFieldCache _fields;
+    private OMMEncoder _encoder; // reused for each image
+
+    private OMMMsg _header; // last refresh without its payload
+    private boolean _received;
+    private boolean _refreshing; // between the parts of a refresh
+    private boolean _mergeable;
+    private boolean _complete;
+    private boolean _hasInfo;
+    private short _dictId;
+    private short _listNum;
+
+    OMMItemImage(OMMPool pool, SubAppContext context)
+    {
+        _pool = pool;
+        _context = context;
+        _fields = new OMMFieldCache(pool);
+    }
+
+    void apply(Event event)
+    {
+        if (!(event instanceof OMMItemEvent))
+            return;
+        OMMMsg msg = ((OMMItemEvent)event).getMsg();
+        switch (msg.getMsgType())
+        {
+            case OMMMsg.MsgType.REFRESH_RESP:
+                if (!_refreshing)
+                {
+                    _fields.clear();
+                    _refreshing = true;
+                    _mergeable = true;
+                }
+                _received = true;
+                _complete = false;
+                if (!mergeFields(msg, true))
+                    _mergeable = false;
+                if (_header != null)
+                    _pool.releaseMsg(_header);
+                _header = _pool.acquireCopy(msg, false);
+                // a multi-part refresh is complete with its last part
+                if (msg.isSet(OMMMsg.Indication.REFRESH_COMPLETE))
+                {
+                    _refreshing = false;
+                    _complete = _mergeable;
+                }
+                break;
+            case OMMMsg.MsgType.UPDATE_RESP:
+                if (_mergeable && _received && !mergeFields(msg, false))
+                {
+                    _mergeable = false;
+                    _complete = false;
+                }
+                break;
+            case OMMMsg.MsgType.STATUS_RESP:
+                if (_header != null && msg.has(OMMMsg.HAS_STATE))
+                    _header.setState(msg.getState());
+                break;
+            default:
+        }
+    }
+
+    boolean isEmpty()
+    {
+        return !_received;
+    }
+
+    boolean isComplete()
+    {
+        return _complete;
+    }
+
+    SharedEvent newEvent()
+    {
+        return new SharedOMMItemEvent();
+    }
+
+    void setImage(SharedEvent event)
+    {
+        _header.setRespTypeNum(OMMMsg.RespType.SOLICITED);
+        // the event delivered before has been processed
+        if (_encoder == null)
+            _encoder = _pool.acquireEncoder();
+        OMMEncoder encoder = _encoder;
+        encoder.initialize(OMMTypes.MSG, 1000 + _fields.getEncodedLength());
+        encoder.encodeMsgInit(_header, OMMTypes.NO_DATA, OMMTypes.FIELD_LIST);
+        encoder.encodeFieldListInit(OMMFieldList.HAS_STANDARD_DATA
+                | (_hasInfo ? OMMFieldList.HAS_INFO : 0), _dictId, _listNum, (short)0);
+        _fields.encode(encoder);
+        encoder.encodeAggregateComplete();
+
+        SharedOMMItemEvent image = (SharedOMMItemEvent)event;
+        image.set(null);
+        image._msg = (OMMMsg)encoder.getEncodedObject();
+    }
+
+    void clear()
+    {
+        _fields.clear();
+        if (_header != null)
+            _pool.releaseMsg(_header);
+        _header = null;
+        if (_encoder != null)
+            _pool.releaseEncoder(_encoder);
+        _encoder = null;
+        _received = false;
+        _refreshing = false;
+        _complete = false;
+    }
+
+    /*
+     * Returns false if the payload is not a field list, or has a field which
+     * is not in the dictionary
+     */
+    private boolean mergeFields(OMMMsg msg, boolean refresh)
+    {
+        if (msg.getDataType() == OMMTypes.NO_DATA)
+            return true;
+        FieldDictionary dictionary = _context.getFieldDictionary();
+        if (msg.getDataType() != OMMTypes.FIELD_LIST || dictionary == null)
+            return false;
+
+        OMMFieldList fieldList = (OMMFieldList)msg.getPayload();
+        if (refresh)
+        {
+            _hasInfo = fieldList.has(OMMFieldList.HAS_INFO);
+            _dictId = fieldList.getDictId();
+            _listNum = fieldList.getListNum();
+        }
+        return _fields.merge(fieldList, dictionary);
+    }
+
+    static class SharedOMMItemEvent extends SharedEvent implements OMMItemEvent
+    {
+        OMMMsg _msg; // the image
+
+        public int getType()
+        {
+            return (_event != null) ? _event.getType() : Event.OMM_ITEM_EVENT;
+        }
+
+        public OMMMsg getMsg()
+        {
+            return (_event != null) ? ((OMMItemEvent)_event).getMsg() : _msg;
+        }
+    }
+}
@@ -2,17 +2,14 @@ package com.reuters.rfa.example.framework.sub;
 
 import java.util.Iterator;
 
-import com.reuters.rfa.dictionary.FidDef;
 import com.reuters.rfa.dictionary.FieldDictionary;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMData;
 import com.reuters.rfa.omm.OMMFieldEntry;
 import com.reuters.rfa.omm.OMMFieldList;
 import com.reuters.rfa.omm.OMMMsg;
-import com.reuters.rfa.omm.OMMNumeric;
 import com.reuters.rfa.omm.OMMState;
 import com.reuters.rfa.omm.OMMTypes;
-import com.reuters.rfa.omm.OMMEnum;
 import com.reuters.rfa.session.omm.OMMItemEvent;
 
 public class OMMNormalizedEvent implements NormalizedEvent
@@ -74,6 +71,7 @@ public class OMMNormalizedEvent implements NormalizedEvent
 
     FieldDictionary _dictionary;
     OMMItemEvent _event;
+    OMMFieldIndex _index;
 
     public OMMNormalizedEvent(FieldDictionary dictionary, OMMItemEvent event)
     {
@@ -95,6 +93,24 @@ public class OMMNormalizedEvent implements NormalizedEvent
         return new byte[0];
     }
 
+    /*
+     * Returns the slot of fid in the field index, which is reset for this
+     * event on first use, or again if another event of the thread used the
+     * index since
+     */
+    private int findField(short fid)
+    {
+        if (_index == null || !_index.isOwner(this))
+        {
+            OMMMsg msg = _event.getMsg();
+            if (msg.getDataType() != OMMTypes.FIELD_LIST)
+                throw new IllegalArgumentException("OMMMsg payload must be field list");
+            _index = OMMFieldIndex.get();
+            _index.reset(this, (OMMFieldList)msg.getPayload(), _dictionary);
+        }
+        return _index.find(fid);
+    }
+
     private OMMData getFieldData(short fid)
     {
         OMMMsg msg = _event.getMsg();
@@ -111,41 +127,42 @@ public class OMMNormalizedEvent implements NormalizedEvent
 
     public String getFieldString(short fid)
     {
-        OMMData data = getFieldData(fid);
-        if(data != null)
-        {
-        	FidDef fiddef = _dictionary.getFidDef(fid);
-        	if(fiddef.getOMMType() == OMMTypes.ENUM)
-        		return _dictionary.expandedValueFor(fid, ((OMMEnum)data).getValue());
-        	else
-        		return data.toString();
-        }
-
-        return null;
+        int slot = findField(fid);
+        if (slot == OMMFieldIndex.NOT_FOUND)
+            return null;
+        String text = _index.getString(slot);
+        if (text != null)
+            return text;
+
+        // fractions, RMTES escapes and other types are formatted by the data
+        return getFieldData(fid).toString();
     }
 
     public int getFieldInt(short fid, int defaultValue)
     {
-        OMMData data = getFieldData(fid);
-        if (data != null)
-            return (int)((OMMNumeric)data).toLong();
+        int slot = findField(fid);
+        if (slot != OMMFieldIndex.NOT_FOUND)
+            return (int)_index.getLong(slot);
         return defaultValue;
     }
 
     public double getFieldDouble(short fid, double defaultValue)
     {
-        OMMData data = getFieldData(fid);
-        if (data != null)
-            return ((OMMNumeric)data).toDouble();
+        int slot = findField(fid);
+        if (slot != OMMFieldIndex.NOT_FOUND)
+            return _index.getDouble(slot);
         return defaultValue;
     }
 
     public int getFieldBytes(short fid, byte[] dest, int offset)
     {
-        OMMData data = getFieldData(fid);
-        if (data != null)
-            return data.getBytes(dest, offset);
-        return 0;
+        int slot = findField(fid);
+        if (slot == OMMFieldIndex.NOT_FOUND)
+            return 0;
+        int length = _index.getBytes(slot, dest, offset);
+        if (length >= 0)
+            return length;
+        return getFieldData(fid).getBytes(dest, offset);
     }
 
     public boolean isSuspect()
@@ -259,6 +276,11 @@ public class OMMNormalizedEvent implements NormalizedEvent
             throw new IllegalArgumentException("OMMMsg payload must be field list");
     }
 
+    public boolean hasSeqNum()
+    {
+        return _event.getMsg().has(OMMMsg.HAS_SEQ_NUM);
+    }
+
     public int getSeqNum()
     {
         return (int)_event.getMsg().getSeqNum();
@@ -19,6 +19,7 @@ import com.reuters.rfa.dictionary.DictionaryException;
 import com.reuters.rfa.dictionary.FidDef;
 import com.reuters.rfa.dictionary.FieldDictionary;
 import com.reuters.rfa.example.utility.CommandLine;
+import com.reuters.rfa.example.utility.DictionaryRegistry;
 import com.reuters.rfa.example.utility.GenericOMMParser;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMElementEntry;
@@ -37,6 +38,7 @@ import com.reuters.rfa.rdm.RDMInstrument;
 import com.reuters.rfa.rdm.RDMMsgTypes;
 import com.reuters.rfa.rdm.RDMService;
 import com.reuters.rfa.rdm.RDMUser;
+import com.reuters.rfa.session.TimerIntSpec;
 import com.reuters.rfa.session.omm.OMMConsumer;
 import com.reuters.rfa.session.omm.OMMItemEvent;
 import com.reuters.rfa.session.omm.OMMItemIntSpec;
@@ -161,14 +163,34 @@ public class OMMSubAppContext extends SubAppContext
      */
     public Handle register(Client client, String serviceName, String itemName, boolean streaming, short msgModelType)
     {
-        return register(client, _eventQueue, serviceName, itemName, streaming, msgModelType);
+        return registerItem(client, serviceName, itemName, streaming, msgModelType);
     }
 
     public void unregister(Handle handle)
     {
+        if (unregisterShared(handle))
+            return;
         _ommConsumer.unregisterClient(handle);
     }
 
+    Handle registerStream(Client client, EventQueue queue, String serviceName, String itemName,
+            boolean streaming, short msgModelType)
+    {
+        return register(client, queue, serviceName, itemName, streaming, msgModelType);
+    }
+
+    Handle registerTimer(Client client, long delay)
+    {
+        TimerIntSpec timer = new TimerIntSpec();
+        timer.setDelay(delay);
+        return _ommConsumer.registerClient(_eventQueue, timer, client, null);
+    }
+
+    ItemImage createItemImage()
+    {
+        return new OMMItemImage(_pool, this);
+    }
+
     public void cleanup()
     {
         _ommConsumer.unregisterClient(_directoryHandle);
@@ -236,6 +258,15 @@ public class OMMSubAppContext extends SubAppContext
 
         OMMSeries series = (OMMSeries)msg.getPayload();
 
+        // a registered dictionary is read by other sessions, decode a new
+        // version into a new one
+        if (_sharedDictionary)
+        {
+            _dictionary = FieldDictionary.create();
+            _dictionaryMap = null;
+            _sharedDictionary = false;
+        }
+
         // rfaj1781 - handle multi part refreshes.
         // cache the dictType since only first part of multi part refresh has
         // summaryData.
@@ -275,15 +306,21 @@ public class OMMSubAppContext extends SubAppContext
         {
             String dictionaryName = _pendingDictionaries.remove(handle);
             _loadedDictionaries.add(dictionaryName);
+            // the dictionary is only published once it is no longer
+            // decoded into: use the copy of another session if it has the
+            // same version, the parser gets its dictionaries from the registry
+            if (_pendingDictionaries.isEmpty())
+            {
+                _dictionary = DictionaryRegistry.register(_dictionary);
+                _dictionaryMap = null;
+                _sharedDictionary = true;
+            }
             if (_pendingDictionaries.isEmpty() && !_isComplete)
             {
                 _isComplete = true;
                 if (_client != null)
                     _client.processComplete();
             }
-            // set the dictionary to the parser, we need dictionary to parse
-            // field list
-            GenericOMMParser.initializeDictionary(_dictionary);
         }
     }
 
@@ -325,6 +362,8 @@ public class OMMSubAppContext extends SubAppContext
 
                 OMMFilterList flist = (OMMFilterList)mentry.getData();
                 service.process(flist);
+                if (_serviceRouter != null)
+                    _serviceRouter.processServiceUpdated(service);
 
                 if (_directoryClient != null)
                 {
@@ -346,6 +385,8 @@ public class OMMSubAppContext extends SubAppContext
                     continue;
                 OMMFilterList flist = (OMMFilterList)mentry.getData();
                 service.process(flist);
+                if (_serviceRouter != null)
+                    _serviceRouter.processServiceUpdated(service);
 
                 if (_directoryClient != null)
                 {
@@ -360,6 +401,8 @@ public class OMMSubAppContext extends SubAppContext
             // (mentry.getAction() == OMMMapEntry.DELETE_ACTION)
             {
                 ServiceInfo si = _services.remove(serviceName);
+                if (_serviceRouter != null)
+                    _serviceRouter.processServiceRemoved(si);
                 if (_directoryClient != null)
                     _directoryClient.processServiceRemoved(si);
             }
@@ -372,7 +415,8 @@ public class OMMSubAppContext extends SubAppContext
         }
 
         if (_pendingDictionaries.isEmpty() && !_isComplete
-                && (_serviceName.length() == 0 || _services.containsKey(_serviceName)))
+                && (_serviceName.length() == 0 || _services.containsKey(_serviceName)
+                        || isServiceGroupDiscovered(_serviceName)))
         {
             _isComplete = true;
             if (_client != null)
@@ -436,9 +480,9 @@ public class OMMSubAppContext extends SubAppContext
         msg.setMsgModelType(RDMMsgTypes.DIRECTORY);
         msg.setIndicationFlags(OMMMsg.Indication.REFRESH);
         OMMAttribInfo ai = _pool.acquireAttribInfo();
-        if (_serviceName.length() > 0)
+        if (_serviceName.length() > 0 && !isServiceGroup(_serviceName))
             ai.setServiceName(_serviceName);
-        ai.setFilter(RDMService.Filter.INFO | RDMService.Filter.STATE);
+        ai.setFilter(RDMService.Filter.INFO | RDMService.Filter.STATE | RDMService.Filter.LOAD);
         msg.setAttribInfo(ai);
         spec.setMsg(msg);
         Handle handle = _ommConsumer.registerClient(_eventQueue, spec, client, null);
@@ -536,11 +580,11 @@ public class OMMSubAppContext extends SubAppContext
         try
         {
             String fieldfilename = CommandLine.variable("rdmFieldDictionary");
-            FieldDictionary.readRDMFieldDictionary(_dictionary, fieldfilename);
+            String enumfilename = CommandLine.variable("enumType");
+            _dictionary = DictionaryRegistry.load(fieldfilename, enumfilename);
+            _sharedDictionary = true;
             _printStream.println("Loaded RDM Field Dicitonary: " + fieldfilename);
             _loadedDictionaries.add("RWFFld");
-            String enumfilename = CommandLine.variable("enumType");
-            FieldDictionary.readEnumTypeDef(_dictionary, enumfilename);
             _printStream.println("Loaded Enum Dicitonary: " + enumfilename);
             _loadedDictionaries.add("RWFEnum");
         }
@@ -586,7 +630,8 @@ public class OMMSubAppContext extends SubAppContext
     }
 
     /*
-     * Reissue an item request
+     * Reissue an item request. The request of a shared stream is reissued for
+     * all its clients.
      */
     public void reissue(Handle handle, String serviceName, String itemName, byte msgType,
             short msgModelType, int indicationFlags, byte priorityClass, int priorityCount)
@@ -598,7 +643,7 @@ public class OMMSubAppContext extends SubAppContext
         msg.setPriority(priorityClass, priorityCount);
         msg.setIndicationFlags(indicationFlags);
         _spec.setMsg(msg);
-        _ommConsumer.reissueClient(handle, _spec);
+        _ommConsumer.reissueClient(getStreamHandle(handle), _spec);
         _pool.releaseMsg(msg);
     }
 
@@ -641,6 +686,8 @@ public class OMMSubAppContext extends SubAppContext
     {
         ServiceInfo service = new RDMServiceInfo(serviceName);
         _services.put(serviceName, service);
+        if (_serviceRouter != null)
+            _serviceRouter.processNewService(service);
         if (_directoryClient != null)
         {
             _directoryClient.processNewService(service);
@@ -655,6 +702,7 @@ public class OMMSubAppContext extends SubAppContext
     Map<Handle, String> _pendingDictionaries;
     List<String> _loadedDictionaries;
     FieldDictionary _dictionary;
+    boolean _sharedDictionary; // _dictionary is in the DictionaryRegistry
     private HashMap<Handle, Integer> _dictHandles; // Key handle : Value
                                                    // dictionaryType - rfaj1781
     Map<String, FidDef> _dictionaryMap;
@@ -40,8 +40,10 @@ public class RDMServiceInfo implements ServiceInfo
         {
             OMMFilterEntry fentry = (OMMFilterEntry)fiter.next();
         
-            // save State, AcceptingRequests
-            if (fentry.getFilterId() == RDMService.FilterId.STATE)
+            // save State, AcceptingRequests, and OpenLimit, OpenWindow,
+            // LoadFactor
+            if (fentry.getFilterId() == RDMService.FilterId.STATE
+                    || fentry.getFilterId() == RDMService.FilterId.LOAD)
             {
                 OMMElementList elist = (OMMElementList)fentry.getData();
                 for (Iterator<?> eiter = elist.iterator(); eiter.hasNext();)
@@ -0,0 +1,472 @@
+package com.reuters.rfa.example.framework.sub;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.reuters.rfa.common.Client;
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.common.Handle;
+import com.reuters.rfa.omm.OMMAttribInfo;
+import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.session.MarketDataEnums;
+import com.reuters.rfa.session.event.MarketDataItemEvent;
+import com.reuters.rfa.session.event.MarketDataItemEvent.MarketDataMessageType;
+import com.reuters.rfa.session.omm.OMMItemEvent;
+
+/**
+ * SequenceGapDetector is a client which stands between a {@link SubAppContext}
+ * and a client, and checks the sequence numbers of the item streams: the
+ * sequence number of an OMM message, or the one of
+ * {@link NormalizedEvent#getSeqNum()} for MarketData, i.e. the RTL of
+ * Marketfeed.
+ *
+ * <pre>
+ * SequenceGapDetector detector = new SequenceGapDetector(appContext, client, true);
+ * appContext.register(detector, serviceName, itemName, true);
+ * ...
+ * detector.printStatistics(System.out, 10);
+ * </pre>
+ * <p>
+ * A refresh or an image sets the sequence number of its stream, and each
+ * update must have the next one:
+ * <ul>
+ * <li>a higher number is a gap, and the numbers skipped are counted as
+ * missed</li>
+ * <li>the number of the last update again is a duplicate</li>
+ * <li>a lower number is out of order, unless it is more than
+ * {@link #MAX_REORDER} behind, which is taken as a restart of the sequence,
+ * e.g. the wrap of an RTL</li>
+ * </ul>
+ * Conflated OMM updates and messages without a sequence number are not
+ * checked. After a gap, the detector can reissue the request of an OMM stream
+ * for a new refresh, which ends the gap.
+ * <p>
+ * The streams are kept in an open addressed table by the identity of their
+ * handle, with the numbers of a stream in arrays by slot, so an event does
+ * not allocate. A stream is removed when it is closed. The events may be
+ * dispatched by several threads, as with -dispatchThreads.
+ */
+public class SequenceGapDetector implements Client
+{
+    /**
+     * Numbers further behind are a restart of the sequence
+     */
+    public static final int MAX_REORDER = 1024;
+
+    /**
+     * @param client The client which receives the events, or null
+     * @param reissue whether to reissue the request of an OMM stream after a
+     *            gap
+     */
+    public SequenceGapDetector(SubAppContext context, Client client, boolean reissue)
+    {
+        _context = context;
+        _client = client;
+        _reissue = reissue && (context instanceof OMMSubAppContext);
+        allocate(64);
+    }
+
+    public void processEvent(Event event)
+    {
+        Handle handle = event.getHandle();
+        String serviceName = null;
+        String itemName = null;
+        boolean refresh = false;
+        boolean update = false;
+        boolean sequenced = true;
+        long seqNum = 0;
+        if (event instanceof OMMItemEvent)
+        {
+            OMMMsg msg = ((OMMItemEvent)event).getMsg();
+            refresh = msg.getMsgType() == OMMMsg.MsgType.REFRESH_RESP;
+            update = msg.getMsgType() == OMMMsg.MsgType.UPDATE_RESP
+                    && !msg.has(OMMMsg.HAS_CONFLATION_INFO);
+            sequenced = msg.has(OMMMsg.HAS_SEQ_NUM);
+            if (sequenced)
+                seqNum = msg.getSeqNum();
+            if (refresh && msg.has(OMMMsg.HAS_ATTRIB_INFO))
+            {
+                OMMAttribInfo ai = msg.getAttribInfo();
+                if (ai.has(OMMAttribInfo.HAS_SERVICE_NAME))
+                    serviceName = ai.getServiceName();
+                if (ai.has(OMMAttribInfo.HAS_NAME))
+                    itemName = ai.getName();
+            }
+        }
+        else if (event instanceof MarketDataItemEvent)
+        {
+            MarketDataItemEvent mdEvent = (MarketDataItemEvent)event;
+            MarketDataMessageType msgType = mdEvent.getMarketDataMsgType();
+            refresh = msgType == MarketDataItemEvent.IMAGE
+                    || msgType == MarketDataItemEvent.UNSOLICITED_IMAGE;
+            update = msgType == MarketDataItemEvent.UPDATE;
+            int format = mdEvent.getDataFormat();
+            if ((refresh || update)
+                    && (format == MarketDataEnums.DataFormat.MARKETFEED
+                            || format == MarketDataEnums.DataFormat.QFORM
+                            || format == MarketDataEnums.DataFormat.IFORM
+                            || format == MarketDataEnums.DataFormat.TIBMSG))
+            {
+                // only the feeds which carry a RTL or SEQ_NO are sequenced
+                NormalizedEvent nevent = _context.getReusableNormalizedEvent(event);
+                sequenced = nevent.hasSeqNum();
+                if (sequenced)
+                    seqNum = nevent.getSeqNum() & 0xFFFFFFFFL;
+            }
+            serviceName = mdEvent.getServiceName();
+            itemName = mdEvent.getItemName();
+        }
+
+        boolean reissue = false;
+        synchronized (this)
+        {
+            if (refresh)
+            {
+                int slot = slot(handle, sequenced);
+                if (slot != NOT_FOUND)
+                {
+                    if (serviceName != null)
+                        _serviceNames[slot] = serviceName;
+                    if (itemName != null)
+                        _itemNames[slot] = itemName;
+                    // a refresh without a number ends the sequence
+                    _sequenced[slot] = sequenced;
+                    _lastSeqNums[slot] = seqNum;
+                    if (_reissued[slot])
+                    {
+                        _reissued[slot] = false;
+                        _recoveryCount++;
+                    }
+                }
+            }
+            else if (update && sequenced)
+            {
+                int slot = slot(handle, false);
+                if (slot != NOT_FOUND && _sequenced[slot] && check(slot, seqNum) && _reissue)
+                {
+                    reissue = !_reissued[slot] && _itemNames[slot] != null;
+                    if (reissue)
+                    {
+                        _reissued[slot] = true;
+                        _reissueCount++;
+                        serviceName = (_serviceNames[slot] != null) ? _serviceNames[slot]
+                                : _context.getServiceName();
+                        itemName = _itemNames[slot];
+                    }
+                }
+            }
+        }
+
+        if (_client != null)
+            _client.processEvent(event);
+
+        if (event.isEventStreamClosed())
+        {
+            remove(handle);
+        }
+        else if (reissue)
+        {
+            // ask for a refresh, which starts the sequence again
+            OMMMsg msg = ((OMMItemEvent)event).getMsg();
+            ((OMMSubAppContext)_context).reissue(handle, serviceName, itemName,
+                                                 OMMMsg.MsgType.REQUEST, msg.getMsgModelType(),
+                                                 OMMMsg.Indication.REFRESH, (byte)1, 1);
+        }
+    }
+
+    /**
+     * Forgets the stream of handle, e.g. after it is unregistered.
+     */
+    public synchronized void remove(Handle handle)
+    {
+        int slot = slot(handle, false);
+        if (slot == NOT_FOUND)
+            return;
+        _size--;
+        // move back the entries of the same probe sequence which follow slot
+        int mask = _handles.length - 1;
+        int next = (slot + 1) & mask;
+        while (_handles[next] != null)
+        {
+            int home = hash(_handles[next]) & mask;
+            if (((next - home) & mask) >= ((next - slot) & mask))
+            {
+                move(next, slot);
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        clear(slot);
+    }
+
+    /**
+     * @return the number of streams with a sequence
+     */
+    public synchronized int getStreamCount()
+    {
+        return _size;
+    }
+
+    public synchronized long getUpdateCount()
+    {
+        return _updateCount;
+    }
+
+    public synchronized long getGapCount()
+    {
+        return _gapCount;
+    }
+
+    /**
+     * @return the number of sequence numbers skipped by the gaps
+     */
+    public synchronized long getMissedCount()
+    {
+        return _missedCount;
+    }
+
+    public synchronized long getDuplicateCount()
+    {
+        return _duplicateCount;
+    }
+
+    public synchronized long getOutOfOrderCount()
+    {
+        return _outOfOrderCount;
+    }
+
+    public synchronized long getResetCount()
+    {
+        return _resetCount;
+    }
+
+    public synchronized long getReissueCount()
+    {
+        return _reissueCount;
+    }
+
+    /**
+     * @return the number of reissues answered by a refresh
+     */
+    public synchronized long getRecoveryCount()
+    {
+        return _recoveryCount;
+    }
+
+    /**
+     * Prints the totals, and the open streams with the most missed sequence
+     * numbers.
+     *
+     * @param worst the maximum number of streams to print
+     */
+    public synchronized void printStatistics(PrintStream ps, int worst)
+    {
+        ps.println("Sequence: " + _size + " streams, " + _updateCount + " updates, " + _gapCount
+                + " gaps, " + _missedCount + " missed, " + _duplicateCount + " duplicates, "
+                + _outOfOrderCount + " out of order, " + _resetCount + " resets");
+        if (_reissue)
+            ps.println("Reissues: " + _reissueCount + ", recovered " + _recoveryCount);
+
+        Integer[] slots = new Integer[_size];
+        int count = 0;
+        for (int slot = 0; slot < _handles.length; slot++)
+        {
+            if (_handles[slot] != null
+                    && (_gaps[slot] > 0 || _duplicates[slot] > 0 || _outOfOrder[slot] > 0))
+                slots[count++] = Integer.valueOf(slot);
+        }
+        Arrays.sort(slots, 0, count, new Comparator<Integer>()
+        {
+            public int compare(Integer slot1, Integer slot2)
+            {
+                long missed1 = _missed[slot1.intValue()];
+                long missed2 = _missed[slot2.intValue()];
+                if (missed1 != missed2)
+                    return (missed1 > missed2) ? -1 : 1;
+                return _gaps[slot2.intValue()] - _gaps[slot1.intValue()];
+            }
+        });
+        for (int i = 0; i < count && i < worst; i++)
+        {
+            int slot = slots[i].intValue();
+            String name = (_itemNames[slot] != null) ? _itemNames[slot] : _handles[slot]
+                    .toString();
+            ps.println("  " + name + ": " + _gaps[slot] + " gaps, " + _missed[slot] + " missed, "
+                    + _duplicates[slot] + " duplicates, " + _outOfOrder[slot] + " out of order");
+        }
+    }
+
+    /*
+     * Checks the sequence number of an update of the stream in slot, and
+     * returns true if it has a gap
+     */
+    private boolean check(int slot, long seqNum)
+    {
+        _updateCount++;
+        long last = _lastSeqNums[slot];
+        // distance in the unsigned 32 bit sequence, which wraps
+        int distance = (int)(seqNum - last);
+        if (distance == 1)
+        {
+            _lastSeqNums[slot] = seqNum;
+        }
+        else if (distance > 1)
+        {
+            _gapCount++;
+            _missedCount += distance - 1;
+            _gaps[slot]++;
+            _missed[slot] += distance - 1;
+            _lastSeqNums[slot] = seqNum;
+            return true;
+        }
+        else if (distance == 0)
+        {
+            _duplicateCount++;
+            _duplicates[slot]++;
+        }
+        else if (distance >= -MAX_REORDER)
+        {
+            _outOfOrderCount++;
+            _outOfOrder[slot]++;
+        }
+        else
+        {
+            _resetCount++;
+            _lastSeqNums[slot] = seqNum;
+        }
+        return false;
+    }
+
+    private static int hash(Handle handle)
+    {
+        int h = System.identityHashCode(handle);
+        return h ^ (h >>> 16);
+    }
+
+    /*
+     * Returns the slot of handle, adding it if add is set, or NOT_FOUND
+     */
+    private int slot(Handle handle, boolean add)
+    {
+        int mask = _handles.length - 1;
+        int slot = hash(handle) & mask;
+        while (_handles[slot] != null)
+        {
+            if (_handles[slot] == handle)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        if (!add)
+            return NOT_FOUND;
+        if ((_size + 1) * 2 > _handles.length)
+        {
+            resize();
+            return slot(handle, true);
+        }
+        _handles[slot] = handle;
+        _size++;
+        return slot;
+    }
+
+    private void resize()
+    {
+        Handle[] handles = _handles;
+        long[] lastSeqNums = _lastSeqNums;
+        boolean[] sequenced = _sequenced;
+        boolean[] reissued = _reissued;
+        int[] gaps = _gaps;
+        long[] missed = _missed;
+        int[] duplicates = _duplicates;
+        int[] outOfOrder = _outOfOrder;
+        String[] serviceNames = _serviceNames;
+        String[] itemNames = _itemNames;
+        allocate(handles.length * 2);
+        _size = 0;
+        for (int i = 0; i < handles.length; i++)
+        {
+            if (handles[i] == null)
+                continue;
+            int slot = slot(handles[i], true);
+            _lastSeqNums[slot] = lastSeqNums[i];
+            _sequenced[slot] = sequenced[i];
+            _reissued[slot] = reissued[i];
+            _gaps[slot] = gaps[i];
+            _missed[slot] = missed[i];
+            _duplicates[slot] = duplicates[i];
+            _outOfOrder[slot] = outOfOrder[i];
+            _serviceNames[slot] = serviceNames[i];
+            _itemNames[slot] = itemNames[i];
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        _handles = new Handle[capacity];
+        _lastSeqNums = new long[capacity];
+        _sequenced = new boolean[capacity];
+        _reissued = new boolean[capacity];
+        _gaps = new int[capacity];
+        _missed = new long[capacity];
+        _duplicates = new int[capacity];
+        _outOfOrder = new int[capacity];
+        _serviceNames = new String[capacity];
+        _itemNames = new String[capacity];
+    }
+
+    private void move(int from, int to)
+    {
+        _handles[to] = _handles[from];
+        _lastSeqNums[to] = _lastSeqNums[from];
+        _sequenced[to] = _sequenced[from];
+        _reissued[to] = _reissued[from];
+        _gaps[to] = _gaps[from];
+        _missed[to] = _missed[from];
+        _duplicates[to] = _duplicates[from];
+        _outOfOrder[to] = _outOfOrder[from];
+        _serviceNames[to] = _serviceNames[from];
+        _itemNames[to] = _itemNames[from];
+    }
+
+    private void clear(int slot)
+    {
+        _handles[slot] = null;
+        _lastSeqNums[slot] = 0;
+        _sequenced[slot] = false;
+        _reissued[slot] = false;
+        _gaps[slot] = 0;
+        _missed[slot] = 0;
+        _duplicates[slot] = 0;
+        _outOfOrder[slot] = 0;
+        _serviceNames[slot] = null;
+        _itemNames[slot] = null;
+    }
+
+    private static final int NOT_FOUND = -1;
+
+    private final SubAppContext _context;
+    private final Client _client;
+    private final boolean _reissue;
+
+    // by slot
+    private Handle[] _handles;
+    private long[] _lastSeqNums;
+    private boolean[] _sequenced;
+    private boolean[] _reissued;
+    private int[] _gaps;
+    private long[] _missed;
+    private int[] _duplicates;
+    private int[] _outOfOrder;
+    private String[] _serviceNames;
+    private String[] _itemNames;
+    private int _size;
+
+    private long _updateCount;
+    private long _gapCount;
+    private long _missedCount;
+    private long _duplicateCount;
+    private long _outOfOrderCount;
+    private long _resetCount;
+    private long _reissueCount;
+    private long _recoveryCount;
+}
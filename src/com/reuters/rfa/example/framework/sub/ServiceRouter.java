@@ -0,0 +1,371 @@
+package com.reuters.rfa.example.framework.sub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import com.reuters.rfa.common.Client;
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.common.Handle;
+import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.rdm.RDMService;
+import com.reuters.rfa.session.event.MarketDataItemEvent;
+import com.reuters.rfa.session.omm.OMMItemEvent;
+
+/**
+ * ServiceRouter spreads the requests of a logical service group between the
+ * redundant services of the group. The groups are given with -serviceGroups,
+ * e.g. <code>-serviceGroups IDN=IDN_A,IDN_B;ELEKTRON=EED_A,EED_B</code>, and a
+ * request of {@link SubAppContext#register(Client, String, String, boolean)
+ * register()} with the name of a group is sent to one of its services.
+ * <p>
+ * A service is chosen for each new request, among the services of the group
+ * that are up, accept requests and have the capability of the message model
+ * type of the request, from the values of the STATE and LOAD filters of the
+ * directory:
+ * <ul>
+ * <li>a service is saturated when the streams opened on it reach its
+ * OpenLimit, or its requests waiting for a refresh reach its OpenWindow</li>
+ * <li>among the services which are not saturated, the one with the lowest
+ * LoadFactor is chosen, then the one with the fewest open streams</li>
+ * <li>if all of them are saturated, the same order is used between them</li>
+ * </ul>
+ * So new requests move to the other services when a service goes down or
+ * saturates, and come back when it recovers. The streams already open are not
+ * moved. MarketData services have no directory values, and are only balanced
+ * by their open streams.
+ */
+class ServiceRouter implements DirectoryClient
+{
+    private final Map<String, Group> _groups = new HashMap<String, Group>();
+    private final Map<String, Member> _members = new HashMap<String, Member>();
+    private final Map<Handle, Route> _routes = new HashMap<Handle, Route>();
+
+    /**
+     * @param groups the groups, as in -serviceGroups
+     */
+    ServiceRouter(String groups)
+    {
+        for (StringTokenizer st = new StringTokenizer(groups, ";"); st.hasMoreTokens();)
+        {
+            String group = st.nextToken().trim();
+            int index = group.indexOf('=');
+            if (index <= 0)
+                throw new IllegalArgumentException("service group must be name=services: " + group);
+            Group g = new Group(group.substring(0, index).trim());
+            for (StringTokenizer mt = new StringTokenizer(group.substring(index + 1), ","); mt
+                    .hasMoreTokens();)
+            {
+                String serviceName = mt.nextToken().trim();
+                Member member = _members.get(serviceName);
+                if (member == null)
+                {
+                    member = new Member(serviceName);
+                    _members.put(serviceName, member);
+                }
+                g._members.add(member);
+            }
+            if (g._members.isEmpty())
+                throw new IllegalArgumentException("service group has no service: " + group);
+            _groups.put(g._name, g);
+        }
+        for (Iterator<String> iter = _members.keySet().iterator(); iter.hasNext();)
+        {
+            String serviceName = iter.next();
+            if (_groups.containsKey(serviceName))
+                throw new IllegalArgumentException("service " + serviceName
+                        + " has the name of a service group");
+        }
+    }
+
+    /**
+     * @return whether serviceName is the name of a group
+     */
+    synchronized boolean isGroup(String serviceName)
+    {
+        return _groups.containsKey(serviceName);
+    }
+
+    /**
+     * @return whether a service of the group has been discovered
+     */
+    synchronized boolean isDiscovered(String groupName)
+    {
+        Group group = _groups.get(groupName);
+        if (group == null)
+            return false;
+        for (int i = 0; i < group._members.size(); i++)
+        {
+            if (group._members.get(i)._discovered)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Chooses the service of a new request of the group and registers it,
+     * with a client which follows the stream to count it.
+     */
+    Handle register(SubAppContext context, Client client, String groupName, String itemName,
+            boolean streaming, short msgModelType)
+    {
+        Route route;
+        synchronized (this)
+        {
+            Member member = select(_groups.get(groupName), msgModelType);
+            route = new Route(member, client);
+            member._open++;
+            member._waiting++;
+        }
+        Handle handle = context.registerItem(route, route._member._serviceName, itemName,
+                                             streaming, msgModelType);
+        synchronized (this)
+        {
+            if (!route._closed)
+                _routes.put(handle, route);
+        }
+        return handle;
+    }
+
+    /**
+     * Counts the stream of handle closed, if it was routed.
+     */
+    synchronized void unregister(Handle handle)
+    {
+        Route route = _routes.remove(handle);
+        if (route != null)
+            route.close();
+    }
+
+    public synchronized void processNewService(ServiceInfo serviceInfo)
+    {
+        update(serviceInfo);
+    }
+
+    public synchronized void processServiceUpdated(ServiceInfo serviceInfo)
+    {
+        update(serviceInfo);
+    }
+
+    public synchronized void processServiceRemoved(ServiceInfo serviceInfo)
+    {
+        if (serviceInfo == null)
+            return;
+        Member member = _members.get(serviceInfo.getServiceName());
+        if (member != null)
+            member._discovered = false;
+    }
+
+    public synchronized String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<Group> iter = _groups.values().iterator(); iter.hasNext();)
+        {
+            Group group = iter.next();
+            sb.append(group._name).append(':');
+            List<Member> members = group._members;
+            for (int i = 0; i < members.size(); i++)
+                sb.append(' ').append(members.get(i));
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void update(ServiceInfo serviceInfo)
+    {
+        Member member = _members.get(serviceInfo.getServiceName());
+        if (member == null)
+            return;
+        member._discovered = true;
+        member._up = getInt(serviceInfo, RDMService.SvcState.ServiceState,
+                            RDMService.State.UP) != RDMService.State.DOWN;
+        member._acceptingRequests = getInt(serviceInfo, RDMService.SvcState.AcceptingRequests,
+                                           1) != 0;
+        member._openLimit = getInt(serviceInfo, RDMService.Load.OpenLimit, 0);
+        member._openWindow = getInt(serviceInfo, RDMService.Load.OpenWindow, 0);
+        member._loadFactor = getInt(serviceInfo, RDMService.Load.LoadFactor, 0);
+        Object capabilities = serviceInfo.get(RDMService.Info.Capabilities);
+        member._capabilities = (capabilities instanceof String[]) ? (String[])capabilities : null;
+    }
+
+    private static int getInt(ServiceInfo serviceInfo, String key, int defaultValue)
+    {
+        Object value = serviceInfo.get(key);
+        if (!(value instanceof String))
+            return defaultValue;
+        try
+        {
+            return Integer.parseInt((String)value);
+        }
+        catch (NumberFormatException e)
+        {
+            return defaultValue;
+        }
+    }
+
+    /*
+     * Returns the available member with the least load, preferring the ones
+     * which are not saturated, or the first member if none is available so
+     * that the request waits for it to come up
+     */
+    private Member select(Group group, short msgModelType)
+    {
+        Member best = null;
+        for (int i = 0; i < group._members.size(); i++)
+        {
+            Member member = group._members.get(i);
+            if (!member.isAvailable(msgModelType))
+                continue;
+            if (best == null || member.compareLoad(best) < 0)
+                best = member;
+        }
+        return (best != null) ? best : group._members.get(0);
+    }
+
+    /*
+     * Services of a group name
+     */
+    private static class Group
+    {
+        Group(String name)
+        {
+            _name = name;
+        }
+
+        final String _name;
+        final List<Member> _members = new ArrayList<Member>();
+    }
+
+    /*
+     * Service of one or more groups, with its directory values and the
+     * streams routed to it
+     */
+    private static class Member
+    {
+        Member(String serviceName)
+        {
+            _serviceName = serviceName;
+        }
+
+        boolean isAvailable(short msgModelType)
+        {
+            if (!_discovered || !_up || !_acceptingRequests)
+                return false;
+            if (_capabilities == null)
+                return true;
+            String type = Short.toString(msgModelType);
+            for (int i = 0; i < _capabilities.length; i++)
+            {
+                if (type.equals(_capabilities[i]))
+                    return true;
+            }
+            return false;
+        }
+
+        boolean isSaturated()
+        {
+            return (_openLimit > 0 && _open >= _openLimit)
+                    || (_openWindow > 0 && _waiting >= _openWindow);
+        }
+
+        int compareLoad(Member member)
+        {
+            if (isSaturated() != member.isSaturated())
+                return isSaturated() ? 1 : -1;
+            if (_loadFactor != member._loadFactor)
+                return (_loadFactor < member._loadFactor) ? -1 : 1;
+            return _open - member._open;
+        }
+
+        public String toString()
+        {
+            return _serviceName + "(" + (_discovered && _up ? "UP" : "DOWN")
+                    + (isSaturated() ? " SATURATED" : "") + " open " + _open + "/" + _openLimit
+                    + " waiting " + _waiting + "/" + _openWindow + " load " + _loadFactor + ")";
+        }
+
+        final String _serviceName;
+        boolean _discovered;
+        boolean _up;
+        boolean _acceptingRequests;
+        String[] _capabilities;
+        int _openLimit;
+        int _openWindow;
+        int _loadFactor;
+        int _open;
+        int _waiting;
+    }
+
+    /*
+     * Client of a routed stream, which counts the stream in its service until
+     * it is closed
+     */
+    private class Route implements Client
+    {
+        Route(Member member, Client client)
+        {
+            _member = member;
+            _client = client;
+        }
+
+        public void processEvent(Event event)
+        {
+            boolean refreshed = false;
+            boolean closed = event.isEventStreamClosed();
+            if (event instanceof OMMItemEvent)
+            {
+                OMMMsg msg = ((OMMItemEvent)event).getMsg();
+                refreshed = msg.getMsgType() == OMMMsg.MsgType.REFRESH_RESP
+                        && msg.isSet(OMMMsg.Indication.REFRESH_COMPLETE);
+                closed |= msg.isFinal();
+            }
+            else if (event instanceof MarketDataItemEvent)
+            {
+                refreshed = ((MarketDataItemEvent)event).getMarketDataMsgType()
+                        == MarketDataItemEvent.IMAGE;
+            }
+            if (refreshed || closed)
+            {
+                synchronized (ServiceRouter.this)
+                {
+                    if (closed)
+                    {
+                        _routes.remove(event.getHandle());
+                        close();
+                    }
+                    else
+                    {
+                        refreshed();
+                    }
+                }
+            }
+            _client.processEvent(event);
+        }
+
+        void refreshed()
+        {
+            if (_waiting)
+            {
+                _waiting = false;
+                _member._waiting--;
+            }
+        }
+
+        void close()
+        {
+            if (_closed)
+                return;
+            refreshed();
+            _closed = true;
+            _member._open--;
+        }
+
+        final Member _member;
+        final Client _client;
+        boolean _waiting = true;
+        boolean _closed;
+    }
+}
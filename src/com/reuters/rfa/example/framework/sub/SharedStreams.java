@@ -0,0 +1,258 @@
+package com.reuters.rfa.example.framework.sub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.reuters.rfa.common.Client;
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.common.Handle;
+import com.reuters.rfa.example.framework.sub.ItemImage.SharedEvent;
+
+/**
+ * Shares one stream per service, item and message model type between the
+ * clients of a {@link SubAppContext}, enabled by -shareStreams.
+ * <p>
+ * The first client to register an item opens the stream, and later clients
+ * are given a handle of their own on the same stream. The events of the stream
+ * are delivered to each client with its handle, see
+ * {@link ItemImage.SharedEvent}. The stream is unregistered when its last
+ * client unregisters.
+ * <p>
+ * The latest image of each stream is cached in an {@link ItemImage}. A client
+ * who registers after the image was received gets the image as its refresh
+ * without a new request. The image is delivered from the event queue by a
+ * timer, like the events of the stream, so it comes after register() returns
+ * and before any update. A client who registers while a stream has no
+ * complete image, e.g. in the middle of a multi-part refresh, opens its own
+ * stream instead.
+ */
+class SharedStreams implements Client
+{
+    private final SubAppContext _context;
+    private final Map<String, Stream> _streams = new HashMap<String, Stream>();
+    private final Map<Handle, Stream> _handles = new HashMap<Handle, Stream>();
+    private final List<Subscriber> _pendingImages = new ArrayList<Subscriber>();
+    private Handle _timerHandle;
+
+    SharedStreams(SubAppContext context)
+    {
+        _context = context;
+    }
+
+    /**
+     * Registers a streaming interest on the shared stream of the item.
+     *
+     * @return the handle of the client, or null if the client must open its
+     *         own stream
+     */
+    synchronized Handle register(Client client, String serviceName, String itemName,
+            short msgModelType)
+    {
+        String key = msgModelType + "/" + serviceName + "/" + itemName;
+        Stream stream = _streams.get(key);
+        if (stream != null && !stream._image.isEmpty() && !stream._image.isComplete())
+            return null;
+
+        if (stream == null)
+        {
+            ItemImage image = _context.createItemImage();
+            if (image == null)
+                return null; // the context can not share streams
+            stream = new Stream(key, image);
+            stream._handle = _context.registerStream(this, _context._eventQueue, serviceName,
+                                                     itemName, true, msgModelType);
+            _streams.put(key, stream);
+            _handles.put(stream._handle, stream);
+        }
+
+        Subscriber subscriber = new Subscriber(client, stream);
+        if (stream._image.isComplete())
+        {
+            subscriber._pendingImage = true;
+            _pendingImages.add(subscriber);
+            if (_timerHandle == null)
+                _timerHandle = _context.registerTimer(this, 0);
+        }
+        stream.add(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Unregisters a handle returned by
+     * {@link #register(Client, String, String, short) register()}, and the
+     * stream if it has no other client.
+     *
+     * @return false if handle was not returned by register()
+     */
+    boolean unregister(Handle handle)
+    {
+        if (!(handle instanceof Subscriber))
+            return false;
+
+        Subscriber subscriber = (Subscriber)handle;
+        Stream stream = subscriber._stream;
+        synchronized (this)
+        {
+            if (!subscriber._active)
+                return true;
+            subscriber._active = false;
+            if (!stream.remove(subscriber) || stream._closed)
+                return true;
+            close(stream);
+        }
+        _context.unregister(stream._handle);
+        return true;
+    }
+
+    /**
+     * @return the handle of the stream shared by handle, or handle if it is
+     *         not shared
+     */
+    Handle getStreamHandle(Handle handle)
+    {
+        if (handle instanceof Subscriber)
+            return ((Subscriber)handle)._stream._handle;
+        return handle;
+    }
+
+    public void processEvent(Event event)
+    {
+        if (event.getType() == Event.TIMER_EVENT)
+        {
+            processTimerEvent();
+            return;
+        }
+
+        Subscriber[] subscribers;
+        boolean closed = event.isEventStreamClosed();
+        synchronized (this)
+        {
+            Stream stream = _handles.get(event.getHandle());
+            if (stream == null)
+                return; // unregistered
+            stream._image.apply(event);
+            subscribers = stream._subscribers;
+            if (closed)
+                close(stream);
+        }
+
+        for (int i = 0; i < subscribers.length; i++)
+        {
+            Subscriber subscriber = subscribers[i];
+            if (!subscriber._active || (subscriber._pendingImage && !closed))
+                continue;
+            if (closed)
+                subscriber._active = false;
+            subscriber._event.set(event);
+            subscriber._client.processEvent(subscriber._event);
+        }
+    }
+
+    /*
+     * Delivers the images to the clients registered since the last timer
+     */
+    private void processTimerEvent()
+    {
+        Subscriber[] subscribers;
+        synchronized (this)
+        {
+            subscribers = _pendingImages.toArray(new Subscriber[_pendingImages.size()]);
+            _pendingImages.clear();
+            _timerHandle = null;
+        }
+
+        for (int i = 0; i < subscribers.length; i++)
+        {
+            Subscriber subscriber = subscribers[i];
+            synchronized (this)
+            {
+                subscriber._pendingImage = false;
+                // a new refresh is on its way otherwise
+                if (!subscriber._active || !subscriber._stream._image.isComplete())
+                    continue;
+                subscriber._stream._image.setImage(subscriber._event);
+            }
+            subscriber._client.processEvent(subscriber._event);
+        }
+    }
+
+    private void close(Stream stream)
+    {
+        stream._closed = true;
+        if (_streams.get(stream._key) == stream)
+            _streams.remove(stream._key);
+        _handles.remove(stream._handle);
+        stream._image.clear();
+    }
+
+    private static class Stream
+    {
+        final String _key;
+        final ItemImage _image;
+        Handle _handle;
+        boolean _closed;
+        Subscriber[] _subscribers = new Subscriber[0]; // copied on write
+
+        Stream(String key, ItemImage image)
+        {
+            _key = key;
+            _image = image;
+        }
+
+        void add(Subscriber subscriber)
+        {
+            Subscriber[] subscribers = new Subscriber[_subscribers.length + 1];
+            System.arraycopy(_subscribers, 0, subscribers, 0, _subscribers.length);
+            subscribers[_subscribers.length] = subscriber;
+            _subscribers = subscribers;
+        }
+
+        /*
+         * Returns true if the stream has no subscriber left
+         */
+        boolean remove(Subscriber subscriber)
+        {
+            int length = _subscribers.length;
+            for (int i = 0; i < length; i++)
+            {
+                if (_subscribers[i] == subscriber)
+                {
+                    Subscriber[] subscribers = new Subscriber[length - 1];
+                    System.arraycopy(_subscribers, 0, subscribers, 0, i);
+                    System.arraycopy(_subscribers, i + 1, subscribers, i, length - i - 1);
+                    _subscribers = subscribers;
+                    break;
+                }
+            }
+            return _subscribers.length == 0;
+        }
+    }
+
+    /*
+     * A client of a stream, and its handle
+     */
+    private class Subscriber implements Handle
+    {
+        final Client _client;
+        final Stream _stream;
+        final SharedEvent _event;
+        volatile boolean _active = true;
+        boolean _pendingImage;
+
+        Subscriber(Client client, Stream stream)
+        {
+            _client = client;
+            _stream = stream;
+            _event = stream._image.newEvent();
+            _event._handle = this;
+            _event._eventQueue = _context._eventQueue;
+        }
+
+        public boolean isActive()
+        {
+            return _active;
+        }
+    }
+}
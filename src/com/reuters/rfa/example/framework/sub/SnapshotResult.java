@@ -0,0 +1,60 @@
+package com.reuters.rfa.example.framework.sub;
+
+/**
+ * Result of the snapshot of one item requested by a {@link BulkSnapshot}.
+ */
+public class SnapshotResult
+{
+    SnapshotResult(String serviceName, String itemName)
+    {
+        _serviceName = serviceName;
+        _itemName = itemName;
+    }
+
+    public String getServiceName()
+    {
+        return _serviceName;
+    }
+
+    public String getItemName()
+    {
+        return _itemName;
+    }
+
+    /**
+     * @return true if a refresh was received before the stream was closed
+     */
+    public boolean isSuccess()
+    {
+        return _success;
+    }
+
+    /**
+     * @return the text of the last state or status of the stream, or null if
+     *         it had none
+     */
+    public String getStatusText()
+    {
+        return _statusText;
+    }
+
+    /**
+     * @return nanoseconds from the request to the end of the stream
+     */
+    public long getLatencyNanos()
+    {
+        return _latencyNanos;
+    }
+
+    public String toString()
+    {
+        return _serviceName + ":" + _itemName + (_success ? " OK " : " FAILED ")
+                + (_latencyNanos / 1000) + " us" + (_statusText != null ? " " + _statusText : "");
+    }
+
+    final String _serviceName;
+    final String _itemName;
+    boolean _success;
+    String _statusText;
+    long _latencyNanos;
+}
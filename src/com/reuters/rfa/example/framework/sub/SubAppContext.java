@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.net.InetAddress;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.ConsoleHandler;
@@ -23,6 +24,7 @@ import com.reuters.rfa.config.ConfigDb;
 import com.reuters.rfa.dictionary.FidDef;
 import com.reuters.rfa.dictionary.FieldDictionary;
 import com.reuters.rfa.example.utility.CommandLine;
+import com.reuters.rfa.rdm.RDMMsgTypes;
 import com.reuters.rfa.session.Session;
 
 /**
@@ -64,7 +66,12 @@ import com.reuters.rfa.session.Session;
  * 
  * </p>
  * The application uses register() or registerSync() to specify an interest and
- * use unregister() to unregister the interest.
+ * use unregister() to unregister the interest. snapshot() requests the
+ * snapshots of many items at once. A request of a group of -serviceGroups is
+ * sent to the least loaded service of the group, see {@link ServiceRouter}.
+ * With -dispatchThreads, the events of the
+ * items registered by register() are dispatched by several threads, each
+ * item by one of them, so their clients must be thread safe.
  * <p>
  * The application may choose to implement and register
  * {@link SubAppContextClient}. The SubAppContext will notify its client when
@@ -100,6 +107,12 @@ public abstract class SubAppContext implements Client
         CommandLine.addOption("debug", false, "enable debug tracing");
         CommandLine.addOption("serviceName", "IDN_RDF", "service to request");
         CommandLine.addOption("session", "myNS::RSSLSession", "Session name to use");
+        CommandLine.addOption("shareStreams", false,
+                              "share one stream per item between the registered clients");
+        CommandLine.addOption("snapshotWindow", 100,
+                              "maximum number of outstanding requests of snapshot()");
+        CommandLine.addOption("serviceGroups", "",
+                              "service groups to spread requests, e.g. IDN=IDN_A,IDN_B;...");
         AppContextMainLoop.addCommandLineOptions();
         String username = "rfa";
         try
@@ -275,6 +288,11 @@ public abstract class SubAppContext implements Client
 
         _serviceName = CommandLine.variable("serviceName");
         _runSyncs = new HashMap<Handle, RunSync>();
+        if (CommandLine.booleanVariable("shareStreams"))
+            _sharedStreams = new SharedStreams(this);
+        String serviceGroups = CommandLine.variable("serviceGroups");
+        if (serviceGroups.length() > 0)
+            _serviceRouter = new ServiceRouter(serviceGroups);
     }
 
     protected SubAppContext(AppContextMainLoop mainLoop, ConfigDb configDb)
@@ -306,6 +324,11 @@ public abstract class SubAppContext implements Client
 
         _serviceName = CommandLine.variable("serviceName");
         _runSyncs = new HashMap<Handle, RunSync>();
+        if (CommandLine.booleanVariable("shareStreams"))
+            _sharedStreams = new SharedStreams(this);
+        String serviceGroups = CommandLine.variable("serviceGroups");
+        if (serviceGroups.length() > 0)
+            _serviceRouter = new ServiceRouter(serviceGroups);
     }
 
     /**
@@ -367,7 +390,8 @@ public abstract class SubAppContext implements Client
     }
 
     /**
-     * Register for an interest.
+     * Register for an interest. With -shareStreams, streaming interests in the
+     * same item share one stream, see {@link SharedStreams}.
      * 
      * @param client The callback client
      * @param serviceName The service to request. If null, uses the configured
@@ -385,11 +409,13 @@ public abstract class SubAppContext implements Client
 
         if (isServiceNameSet)
         {
-            return register(client, _eventQueue, serviceName, itemName, streaming);
+            return registerItem(client, serviceName, itemName, streaming,
+                                RDMMsgTypes.MARKET_PRICE);
         }
         else if (_serviceName.length() > 0)
         {
-            return register(client, _eventQueue, _serviceName, itemName, streaming);
+            return registerItem(client, _serviceName, itemName, streaming,
+                                RDMMsgTypes.MARKET_PRICE);
         }
         else
         {
@@ -397,6 +423,27 @@ public abstract class SubAppContext implements Client
         }
     }
 
+    /*
+     * Registers on a service of the group if serviceName is a service group,
+     * on the shared stream of the item if streams are shared, or on a new
+     * stream in the event queue of the item
+     */
+    Handle registerItem(Client client, String serviceName, String itemName, boolean streaming,
+            short msgModelType)
+    {
+        if (isServiceGroup(serviceName))
+            return _serviceRouter.register(this, client, serviceName, itemName, streaming,
+                                           msgModelType);
+        if (streaming && _sharedStreams != null)
+        {
+            Handle handle = _sharedStreams.register(client, serviceName, itemName, msgModelType);
+            if (handle != null)
+                return handle;
+        }
+        return registerStream(client, _mainLoop.getEventQueue(serviceName + "/" + itemName),
+                              serviceName, itemName, streaming, msgModelType);
+    }
+
     /**
      * Register for an interest and wait for the response. registerSync will
      * block until {@link #setSyncReceived(Handle) setSyncReceived()} is called.
@@ -411,6 +458,26 @@ public abstract class SubAppContext implements Client
         return ret;
     }
 
+    /**
+     * Requests snapshots of many items without waiting, with at most
+     * -snapshotWindow requests outstanding at a time.
+     * 
+     * @param client The client which receives the events of the items, or
+     *            null
+     * @param serviceName The service to request. If null, uses the configured
+     *            service
+     * @return the snapshot, to get the results of the items with
+     *         {@link BulkSnapshot#getFutures()}
+     * @see BulkSnapshot
+     */
+    public BulkSnapshot snapshot(Client client, String serviceName, Collection<String> itemNames)
+    {
+        BulkSnapshot snapshot = new BulkSnapshot(this, serviceName,
+                CommandLine.intVariable("snapshotWindow"), client);
+        snapshot.request(itemNames);
+        return snapshot;
+    }
+
     /**
      * Must be called in the application to notify SubAppContext to exit from
      * {@link #registerSync(Client, String, String) registerSync()}.
@@ -433,6 +500,82 @@ public abstract class SubAppContext implements Client
     protected abstract Handle register(Client client, EventQueue queue, String serviceName,
             String itemName, boolean streaming);
 
+    /**
+     * Opens a stream of an item of a message model type. MarketData has only
+     * market price items, so the type is ignored unless overridden.
+     */
+    Handle registerStream(Client client, EventQueue queue, String serviceName, String itemName,
+            boolean streaming, short msgModelType)
+    {
+        return register(client, queue, serviceName, itemName, streaming);
+    }
+
+    /**
+     * Registers a timer which delivers a timer event to client from the event
+     * queue of the context after delay milliseconds.
+     * 
+     * @return the handle of the timer, or null if the context has no timers
+     */
+    Handle registerTimer(Client client, long delay)
+    {
+        return null;
+    }
+
+    /**
+     * A context which creates images must also register timers, to deliver
+     * the images.
+     * 
+     * @return a new image for a stream shared by {@link SharedStreams}, or
+     *         null if the streams of the context can not be shared
+     */
+    ItemImage createItemImage()
+    {
+        return null;
+    }
+
+    /**
+     * Unregisters handle if it is the handle of a shared stream, see
+     * {@link SharedStreams#unregister(Handle)}. A routed stream is removed
+     * from the load of its service.
+     * 
+     * @return false if handle is not a handle of a shared stream, and must be
+     *         unregistered by the subclass
+     */
+    boolean unregisterShared(Handle handle)
+    {
+        if (_serviceRouter != null)
+            _serviceRouter.unregister(handle);
+        return _sharedStreams != null && _sharedStreams.unregister(handle);
+    }
+
+    /**
+     * @return whether serviceName is a group of -serviceGroups, whose requests
+     *         are routed by {@link ServiceRouter}
+     */
+    boolean isServiceGroup(String serviceName)
+    {
+        return _serviceRouter != null && _serviceRouter.isGroup(serviceName);
+    }
+
+    /**
+     * @return whether serviceName is a service group with a discovered service
+     */
+    boolean isServiceGroupDiscovered(String serviceName)
+    {
+        return _serviceRouter != null && _serviceRouter.isDiscovered(serviceName);
+    }
+
+    /**
+     * @return the handle of the stream of handle, which is different when the
+     *         stream is shared
+     */
+    Handle getStreamHandle(Handle handle)
+    {
+        if (_sharedStreams == null)
+            return handle;
+        return _sharedStreams.getStreamHandle(handle);
+    }
+
     /**
      * Unregister an interest
      * 
@@ -475,12 +618,30 @@ public abstract class SubAppContext implements Client
         _mainLoop.runAwt();
     }
 
+    /**
+     * @return a new normalized event for event, which the caller may keep
+     */
     public abstract NormalizedEvent getNormalizedEvent(Event event);
 
+    /**
+     * Returns a normalized event for event which may be reused by the next
+     * call of the same thread, for clients that read the fields of each event
+     * while they process it. The normalized event must not be kept, nor used
+     * after another call of the thread, even for another item.
+     * <p>
+     * The default returns {@link #getNormalizedEvent(Event)}.
+     */
+    public NormalizedEvent getReusableNormalizedEvent(Event event)
+    {
+        return getNormalizedEvent(event);
+    }
+
     boolean _autoDictionaryDownload;
     Session _session;
     String _serviceName;
     Map<Handle, RunSync> _runSyncs;
+    SharedStreams _sharedStreams;
+    ServiceRouter _serviceRouter;
 
     // callback client
     SubAppContextClient _client;
@@ -9,7 +9,6 @@ import com.reuters.rfa.common.Handle;
 import com.reuters.rfa.common.Token;
 import com.reuters.rfa.dictionary.FieldDictionary;
 import com.reuters.rfa.example.utility.GenericOMMParser;
-import com.reuters.rfa.example.utility.Rounding;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMData;
 import com.reuters.rfa.omm.OMMElementEntry;
@@ -987,29 +986,22 @@ public class BatchViewProviderClientSession implements Client
                 case 6:
                     // TRDPRC_1
                     encoder.encodeFieldEntryInit((short)6, OMMTypes.REAL);
-                    double value = itemInfo.getTradePrice1();
-                    long longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-                    
                     // Encode the real number with the price and the hint value.
-                    encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+                    itemInfo.getTradePrice1().encode(encoder);
                     
                     break;
                 case 22:
                     // BID
                     // Initialize the entry with the field id and data/ type from/ RDMFieldDictionary for BID.
                     encoder.encodeFieldEntryInit((short)22, OMMTypes.REAL);
-                    value = itemInfo.getBid();
-                    longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-                    encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+                    itemInfo.getBid().encode(encoder);
                     break;
                 case 25:
                     // ASK
                     // Initialize the entry with the field id and data type from RDMFieldDictionary for
                     // ASK.
                     encoder.encodeFieldEntryInit((short)25, OMMTypes.REAL);
-                    value = itemInfo.getAsk();
-                    longValue = Rounding.roundDouble2Long((float)value, OMMNumeric.EXPONENT_NEG4);
-                    encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+                    itemInfo.getAsk().encode(encoder);
                     break;
                 case 32:
                     // ACVOL_1
@@ -1037,29 +1029,22 @@ public class BatchViewProviderClientSession implements Client
                     // TRDPRC_1
                     // Initialize the entry with the field id and data type from RDMFieldDictionary for TRDPRC_1.
                     encoder.encodeFieldEntryInit((short)6, OMMTypes.REAL);
-                    double value = itemInfo.getTradePrice1();
-                    long longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-                    
                     // Encode the real number with the price and the hint value.
-                    encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+                    itemInfo.getTradePrice1().encode(encoder);
                     break;
                 case 22:
                     // BID
                     // Initialize the entry with the field id and data type from RDMFieldDictionary for BID.
                     encoder.encodeFieldEntryInit((short)22, OMMTypes.REAL);
                     
-                    value = itemInfo.getBid();
-                    longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-                    encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+                    itemInfo.getBid().encode(encoder);
                     break;
                 case 25:
                     // ASK
                     // Initialize the entry with the field id and data type from RDMFieldDictionary for ASK.
                     encoder.encodeFieldEntryInit((short)25, OMMTypes.REAL);
                     
-                    value = itemInfo.getAsk();
-                    longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-                    encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+                    itemInfo.getAsk().encode(encoder);
                     break;
                 case 32:
                     // ACVOL_1
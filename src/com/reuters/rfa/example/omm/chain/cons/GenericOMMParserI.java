@@ -1,7 +1,6 @@
 package com.reuters.rfa.example.omm.chain.cons;
 
 import java.io.ByteArrayInputStream;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -12,6 +11,7 @@ import com.reuters.rfa.dictionary.FidDef;
 import com.reuters.rfa.dictionary.FieldDictionary;
 import com.reuters.rfa.example.omm.chain.cons.ItemManager;
 import com.reuters.rfa.example.omm.chain.cons.TextAreaPrintStream;
+import com.reuters.rfa.example.utility.DictionaryRegistry;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMData;
 import com.reuters.rfa.omm.OMMDataBuffer;
@@ -49,7 +49,6 @@ import com.reuters.rfa.utility.HexDump;
  */
 public final class GenericOMMParserI
 {
-    private static HashMap<Integer, FieldDictionary> DICTIONARIES = new HashMap<Integer, FieldDictionary>();
     private static FieldDictionary CURRENT_DICTIONARY;
     private static Page CURRENT_PAGE;
     /**
@@ -62,16 +61,11 @@ public final class GenericOMMParserI
     public static void initializeDictionary(String fieldDictionaryFilename,
             String enumDictionaryFilename) throws DictionaryException
     {
-        FieldDictionary dictionary = FieldDictionary.create();
         try
         {
-            FieldDictionary.readRDMFieldDictionary(dictionary, fieldDictionaryFilename);
+            DictionaryRegistry.load(fieldDictionaryFilename, enumDictionaryFilename);
             System.out.println("field dictionary read from RDMFieldDictionary file");
-
-            FieldDictionary.readEnumTypeDef(dictionary, enumDictionaryFilename);
             System.out.println("enum dictionary read from enumtype.def file");
-
-            initializeDictionary(dictionary);
         }
         catch (DictionaryException e)
         {
@@ -81,19 +75,14 @@ public final class GenericOMMParserI
     }
 
     // This method can be used to initialize a downloaded dictionary
-    public synchronized static void initializeDictionary(FieldDictionary dict)
+    public static void initializeDictionary(FieldDictionary dict)
     {
-        int dictId = dict.getDictId();
-        if (dictId == 0)
-            dictId = 1; // dictId == 0 is the same as dictId 1
-        DICTIONARIES.put(new Integer(dictId), dict);
+        DictionaryRegistry.register(dict);
     }
 
     public static FieldDictionary getDictionary(int dictId)
     {
-        if (dictId == 0)
-            dictId = 1;
-        return (FieldDictionary)DICTIONARIES.get(new Integer(dictId));
+        return DictionaryRegistry.get(dictId);
     }
 
     /**
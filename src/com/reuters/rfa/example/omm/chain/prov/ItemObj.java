@@ -1,6 +1,8 @@
 package com.reuters.rfa.example.omm.chain.prov;
 
 import com.reuters.rfa.common.Handle;
+import com.reuters.rfa.example.utility.Price;
+import com.reuters.rfa.omm.OMMNumeric;
 
 /**
  * ItemObj is a class that contains all the relevant information regarding an item.
@@ -11,9 +13,12 @@ public class ItemObj
 {
     String _name;
 
-    double _trdPrice = 10.0000;
-    double _bid = 9.8000;
-    double _ask = 10.2000;
+    static final Price PRICE_STEP = Price.valueOf("0.0500", OMMNumeric.EXPONENT_NEG4);
+    static final Price PRICE_LIMIT = Price.valueOf("100.0000", OMMNumeric.EXPONENT_NEG4);
+
+    Price _trdPrice = Price.valueOf("10.0000", OMMNumeric.EXPONENT_NEG4);
+    Price _bid = Price.valueOf("9.8000", OMMNumeric.EXPONENT_NEG4);
+    Price _ask = Price.valueOf("10.2000", OMMNumeric.EXPONENT_NEG4);
     long _acvol = 100;
 
     boolean _attribInUpdates = false;
@@ -41,17 +46,17 @@ public class ItemObj
         return _attribInUpdates;
     }
 
-    public double getTradePrice1()
+    public Price getTradePrice1()
     {
         return _trdPrice;
     }
 
-    public double getBid()
+    public Price getBid()
     {
         return _bid;
     }
 
-    public double getAsk()
+    public Price getAsk()
     {
         return _ask;
     }
@@ -63,18 +68,19 @@ public class ItemObj
 
     public void increment()
     {
-        if ((_trdPrice >= 100.0000) || (_bid >= 100.0000) || (_ask > 100.0000))
+        if ((_trdPrice.compareTo(PRICE_LIMIT) >= 0) || (_bid.compareTo(PRICE_LIMIT) >= 0)
+                || (_ask.compareTo(PRICE_LIMIT) > 0))
         {
             // reset prices
-            _trdPrice = 10.0000;
-            _bid = 9.8000;
-            _ask = 10.2000;
+            _trdPrice.set(100000, OMMNumeric.EXPONENT_NEG4);
+            _bid.set(98000, OMMNumeric.EXPONENT_NEG4);
+            _ask.set(102000, OMMNumeric.EXPONENT_NEG4);
         }
         else
         {
-            _trdPrice += 0.0500; // 0.0500
-            _bid += 0.0500; // 0.0500
-            _ask += 0.0500; // 0.0500
+            _trdPrice.add(PRICE_STEP);
+            _bid.add(PRICE_STEP);
+            _ask.add(PRICE_STEP);
         }
 
         if (_acvol < 1000000)
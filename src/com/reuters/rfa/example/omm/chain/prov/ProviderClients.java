@@ -13,7 +13,6 @@ import com.reuters.rfa.common.Handle;
 import com.reuters.rfa.common.Token;
 import com.reuters.rfa.dictionary.FieldDictionary;
 import com.reuters.rfa.example.utility.GenericOMMParser;
-import com.reuters.rfa.example.utility.Rounding;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMData;
 import com.reuters.rfa.omm.OMMElementEntry;
@@ -229,17 +228,11 @@ public class ProviderClients implements Client
                                              (short)0);
 
                 _encoder.encodeFieldEntryInit((short)6, OMMTypes.REAL);
-                double value = itemObj.getTradePrice1();
-                int intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-                _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+                itemObj.getTradePrice1().encode(_encoder);
                 _encoder.encodeFieldEntryInit((short)22, OMMTypes.REAL);
-                value = itemObj.getBid();
-                intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-                _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+                itemObj.getBid().encode(_encoder);
                 _encoder.encodeFieldEntryInit((short)25, OMMTypes.REAL);
-                value = itemObj.getAsk();
-                intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-                _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+                itemObj.getAsk().encode(_encoder);
                 _encoder.encodeFieldEntryInit((short)32, OMMTypes.REAL);
                 _encoder.encodeReal(itemObj.getACVol1(), OMMNumeric.EXPONENT_0);
 
@@ -812,17 +805,11 @@ public class ProviderClients implements Client
                 _encoder.encodeFieldEntryInit((short)38, OMMTypes.DATE); // DIVPAYDATE
                 _encoder.encodeDate(2006, 12, 25);
                 _encoder.encodeFieldEntryInit((short)6, OMMTypes.REAL); // TRDPRC_1
-                double value = itemObj.getTradePrice1();
-                int intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-                _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+                itemObj.getTradePrice1().encode(_encoder);
                 _encoder.encodeFieldEntryInit((short)22, OMMTypes.REAL); // BID
-                value = itemObj.getBid();
-                intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-                _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+                itemObj.getBid().encode(_encoder);
                 _encoder.encodeFieldEntryInit((short)25, OMMTypes.REAL); // ASK
-                value = itemObj.getAsk();
-                intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-                _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+                itemObj.getAsk().encode(_encoder);
                 _encoder.encodeFieldEntryInit((short)32, OMMTypes.REAL); // ACVOL_1
                 _encoder.encodeReal(itemObj.getACVol1(), OMMNumeric.EXPONENT_0);
                 _encoder.encodeFieldEntryInit((short)267, OMMTypes.TIME); // ASK_TIME
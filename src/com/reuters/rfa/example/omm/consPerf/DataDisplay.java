@@ -1,9 +1,30 @@
 package com.reuters.rfa.example.omm.consPerf;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.reuters.rfa.dictionary.DictionaryException;
+import com.reuters.rfa.dictionary.FidDef;
+import com.reuters.rfa.dictionary.FieldDictionary;
 import com.reuters.rfa.example.utility.CommandLine;
 import com.reuters.rfa.example.utility.GenericOMMParser;
+import com.reuters.rfa.example.utility.MicroClock;
+import com.reuters.rfa.example.utility.OMMJsonEncoder;
+import com.reuters.rfa.omm.OMMData;
+import com.reuters.rfa.omm.OMMDateTime;
+import com.reuters.rfa.omm.OMMFieldEntry;
+import com.reuters.rfa.omm.OMMFieldList;
 import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.omm.OMMNumeric;
+import com.reuters.rfa.omm.OMMState;
+import com.reuters.rfa.omm.OMMTypes;
+import com.reuters.rfa.rdm.RDMMsgTypes;
 
 /**
  * <p>
@@ -12,6 +33,26 @@ import com.reuters.rfa.omm.OMMMsg;
  * 
  * It uses {@link com.reuters.rfa.example.utility.GenericOMMParser GenericOMMParser}
  * to parse {@link com.reuters.rfa.omm.OMMMsg OMMMsg} response messages.
+ * 
+ * If latencyFid is set, the provider's send time is read from that field of
+ * each update and the receive-minus-send latency is recorded in a
+ * {@link LatencyHistogram}. Percentiles are printed for every display interval
+ * and for the whole run by {@link #printSummary()}. Numeric fields are
+ * expected to hold microseconds since the epoch, TIME and DATETIME fields the
+ * UTC time of day.
+ * 
+ * Message counts are kept in a {@link MetricsRegistry}, striped by dispatch
+ * shard and service so that the dispatch threads never contend. The display
+ * path samples the registry without stopping dispatch and prints the deltas
+ * since the previous sample by message type, domain, service and stream/data
+ * state.
+ * 
+ * The time from the first item request until every item has received its
+ * complete image (or a final status) is printed once when it happens and in
+ * the summary at exit.
+ * 
+ * With printFormat json, messages are printed as one line of JSON each by an
+ * {@link OMMJsonEncoder} per dispatch thread, to System.out or printFile.
  */
 public class DataDisplay
 {
@@ -19,14 +60,34 @@ public class DataDisplay
     boolean _printStatistics;
     int _displayInterval;
     StringBuilder _text;
+    boolean _printJson;
+    String _printFileName;
+    OutputStream _printFile;
+    ThreadLocal<OMMJsonEncoder> _jsonEncoders;
     String _fieldDictionaryFilename;
     String _enumDictionaryFilename;
 
-    private int _totalRefreshCount;
-    private int _totalStatusCount;
-    private int _totalUpdateCount;
-    private int _updateCount;
-    private int _refreshCount;
+    MetricsRegistry _metrics;
+    MetricsRegistry.Stripe _loginStripe;
+    MetricsRegistry.Snapshot _sample;
+    MetricsRegistry.Snapshot _previousSample;
+
+    static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+    static final long MICROS_PER_DAY = 24L * 60 * 60 * 1000 * 1000;
+
+    long _imageStartNanos;
+    volatile int _imagesExpected = -1;
+    final AtomicInteger _imagesReceived = new AtomicInteger();
+    final AtomicBoolean _allImagesReceived = new AtomicBoolean();
+    volatile long _allImagesMillis;
+
+    int _latencyFid;
+    short _latencyFieldType;
+    LatencyHistogram _latencyHistogram;
+    long[] _intervalLatencyCounts;
+    long[] _totalLatencyCounts;
+    long _intervalLatencyMax;
+    long _totalLatencyMax;
 
     public DataDisplay()
     {
@@ -35,12 +96,105 @@ public class DataDisplay
         _displayInterval = CommandLine.intVariable("displayInterval");
         _fieldDictionaryFilename = CommandLine.variable("rdmFieldDictionary");
         _enumDictionaryFilename = CommandLine.variable("enumType");
+        _latencyFid = CommandLine.intVariable("latencyFid");
+        _printJson = CommandLine.variable("printFormat").equalsIgnoreCase("json");
+        _printFileName = CommandLine.variable("printFile");
         _text = new StringBuilder();
+
+        boolean nullEQ = CommandLine.booleanVariable("nullEQ");
+        int shardCount = nullEQ ? 1 : Math.max(1, CommandLine.intVariable("dispatchThreads"));
+        _metrics = new MetricsRegistry(shardCount, nullEQ);
+        _loginStripe = _metrics.getStripe(0, "Login");
+        _sample = new MetricsRegistry.Snapshot(shardCount);
+        _previousSample = new MetricsRegistry.Snapshot(shardCount);
+    }
+
+    /**
+     * @return counters of the shard and service, used as the closure of item
+     *         requests
+     */
+    MetricsRegistry.Stripe getStripe(int shard, String serviceName)
+    {
+        return _metrics.getStripe(shard, serviceName);
     }
 
     public void init() throws DictionaryException
     {
         GenericOMMParser.initializeDictionary(_fieldDictionaryFilename, _enumDictionaryFilename);
+        initPrintFormat();
+
+        if (_latencyFid != 0)
+        {
+            FieldDictionary dictionary = GenericOMMParser.getDictionary(1);
+            FidDef fidDef = dictionary.getFidDef((short)_latencyFid);
+            if (fidDef == null)
+            {
+                System.out.println("ERROR: latencyFid " + _latencyFid
+                        + " is not in the field dictionary, latency is not measured.");
+                _latencyFid = 0;
+                return;
+            }
+            _latencyFieldType = fidDef.getOMMType();
+            _latencyHistogram = new LatencyHistogram();
+            _intervalLatencyCounts = new long[LatencyHistogram.BUCKET_COUNT];
+            _totalLatencyCounts = new long[LatencyHistogram.BUCKET_COUNT];
+            System.out.println("Measuring latency from field " + fidDef.getName() + " ("
+                    + _latencyFid + ")");
+        }
+    }
+
+    private void initPrintFormat()
+    {
+        if (!_printJson)
+            return;
+
+        final OutputStream out;
+        if (_printFileName.length() > 0)
+        {
+            try
+            {
+                _printFile = new BufferedOutputStream(new FileOutputStream(_printFileName),
+                        64 * 1024);
+            }
+            catch (IOException e)
+            {
+                System.out.println("ERROR: Unable to create " + _printFileName + ": "
+                        + e.getMessage() + ", printing to System.out");
+            }
+        }
+        out = (_printFile != null) ? _printFile : System.out;
+        _jsonEncoders = new ThreadLocal<OMMJsonEncoder>()
+        {
+            protected OMMJsonEncoder initialValue()
+            {
+                return new OMMJsonEncoder(out);
+            }
+        };
+        System.out.println("Printing messages as JSON to "
+                + ((_printFile != null) ? _printFileName : "System.out"));
+    }
+
+    /**
+     * Flushes and closes printFile, if messages are printed to a file
+     */
+    public void closePrintFile()
+    {
+        if (_printFile == null)
+            return;
+        try
+        {
+            _printFile.close();
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Unable to close " + _printFileName + ": "
+                    + e.getMessage());
+        }
+    }
+
+    public boolean isLatencyEnabled()
+    {
+        return _latencyFid != 0;
     }
 
     // print update rate, total images and total status messages received so far
@@ -51,57 +205,260 @@ public class DataDisplay
         if (_printStatistics)
         {
             getStats(_text, _displayInterval);
+            if (_latencyFid != 0)
+                getLatencyStats(_text);
             System.out.println(_text);
         }
+        if (_printFile != null)
+        {
+            try
+            {
+                _printFile.flush();
+            }
+            catch (IOException e)
+            {
+                // reported by closePrintFile()
+            }
+        }
+    }
+
+    /**
+     * Starts timing the images of the item requests
+     */
+    public void startImageTimer()
+    {
+        _imageStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Sets the number of items requested, once all requests have been sent
+     */
+    public void setImagesExpected(int itemCount)
+    {
+        _imagesExpected = itemCount;
+        checkAllImages(_imagesReceived.get());
+    }
+
+    /**
+     * Counts the first complete image (or final status) of an item. Called
+     * from the dispatch threads.
+     */
+    public void imageReceived()
+    {
+        checkAllImages(_imagesReceived.incrementAndGet());
+    }
+
+    private void checkAllImages(int received)
+    {
+        int expected = _imagesExpected;
+        if (expected >= 0 && received >= expected && _allImagesReceived.compareAndSet(false, true))
+        {
+            _allImagesMillis = (System.nanoTime() - _imageStartNanos) / 1000000;
+            System.out.println("All images received: " + received + " items in "
+                    + _allImagesMillis + " ms");
+        }
+    }
+
+    /**
+     * Prints image time and latency percentiles over the whole run. Called
+     * once at shutdown.
+     */
+    public void printSummary()
+    {
+        if (_allImagesReceived.get())
+            System.out.println("Time To All Images: " + _allImagesMillis + " ms");
+        else
+            System.out.println("Images Received: " + _imagesReceived.get() + " of "
+                    + (_imagesExpected < 0 ? "?" : String.valueOf(_imagesExpected)));
+
+        if (_latencyFid == 0)
+            return;
+
+        StringBuilder text = new StringBuilder();
+        synchronized (this)
+        {
+            drainLatency();
+            text.append("Latency Summary (usec)\t");
+            appendPercentiles(text, _totalLatencyCounts, _totalLatencyMax);
+        }
+        if (_latencyHistogram.getNegativeCount() > 0)
+        {
+            text.append("\tNegative Latency Count: ");
+            text.append(_latencyHistogram.getNegativeCount());
+        }
+        System.out.println(text);
+    }
+
+    /**
+     * @return number of updates received so far
+     */
+    public long getUpdateCount()
+    {
+        MetricsRegistry.Snapshot sample = new MetricsRegistry.Snapshot(_metrics._shardCount);
+        _metrics.sample(sample);
+        return sample.getMsgTypeCount(OMMMsg.MsgType.UPDATE_RESP);
+    }
+
+    public int getImagesReceived()
+    {
+        return _imagesReceived.get();
+    }
+
+    /**
+     * @return time from the first item request until all images were
+     *         received in ms, -1 if not all images are received
+     */
+    public long getAllImagesMillis()
+    {
+        return _allImagesReceived.get() ? _allImagesMillis : -1;
+    }
+
+    /**
+     * Copies the latency histogram of the whole run, for reports combining
+     * several consumers.
+     * 
+     * @param counts receives the bucket counts, of
+     *            {@link LatencyHistogram#BUCKET_COUNT} length
+     * @return the maximum latency, -1 if latency is not measured
+     */
+    public synchronized long getLatencyCounts(long[] counts)
+    {
+        if (_latencyFid == 0)
+            return -1;
+        drainLatency();
+        System.arraycopy(_totalLatencyCounts, 0, counts, 0, LatencyHistogram.BUCKET_COUNT);
+        return _totalLatencyMax;
     }
 
     public void printData(OMMMsg respMsg)
     {
         if (_printData || respMsg.getMsgType() == OMMMsg.MsgType.STATUS_RESP)
         {
-            GenericOMMParser.parse(respMsg);
+            if (_printJson)
+                _jsonEncoders.get().write(respMsg);
+            else
+                GenericOMMParser.parse(respMsg);
         }
     }
 
-    public void updateStats(byte msgType)
+    /**
+     * Counts a login response
+     */
+    public void updateStats(OMMMsg respMsg)
     {
-        if (msgType == OMMMsg.MsgType.REFRESH_RESP)
-        {
-            _totalRefreshCount++;
-            _refreshCount++;
+        _loginStripe.record(respMsg);
+    }
+
+    /**
+     * Counts an item response. Called from the dispatch thread of the stripe.
+     */
+    public void updateStats(MetricsRegistry.Stripe stripe, OMMMsg respMsg)
+    {
+        stripe.record(respMsg);
+    }
 
+    /**
+     * Records the latency of an update. Called from the dispatch thread.
+     */
+    public void updateLatency(OMMMsg respMsg)
+    {
+        if (respMsg.getDataType() != OMMTypes.FIELD_LIST)
+            return;
+
+        OMMFieldList fieldList = (OMMFieldList)respMsg.getPayload();
+        OMMFieldEntry fieldEntry = fieldList.find((short)_latencyFid);
+        if (fieldEntry == null)
+            return;
+
+        OMMData data = fieldEntry.getData(_latencyFieldType);
+        if (data.isBlank())
+            return;
+
+        long now = currentTimeMicros();
+        long latency;
+        if (data instanceof OMMDateTime)
+        {
+            OMMDateTime time = (OMMDateTime)data;
+            long sent = (((time.getHour() * 60L + time.getMinute()) * 60L + time.getSecond())
+                    * 1000L + time.getMillisecond()) * 1000L;
+            latency = (now % MICROS_PER_DAY) - sent;
+            // sent before midnight, received after
+            if (latency < -MICROS_PER_DAY / 2)
+                latency += MICROS_PER_DAY;
         }
-        else if (msgType == OMMMsg.MsgType.STATUS_RESP)
+        else if (data instanceof OMMNumeric)
         {
-            _totalStatusCount++;
+            latency = now - ((OMMNumeric)data).toLong();
         }
-        else if (msgType == OMMMsg.MsgType.UPDATE_RESP)
+        else
         {
-            _updateCount++;
-            _totalUpdateCount++;
+            return;
         }
+        _latencyHistogram.record(latency);
     }
 
-    private void getStats(StringBuilder textStats, int interval)
+    long currentTimeMicros()
     {
-        textStats.setLength(0);
-        int totalRefreshes;
-        int totalStatuses;
-        int totalUpdateCount;
-        int refreshes;
-        int updates;
-        synchronized (this)
+        return MicroClock.currentTimeMicros();
+    }
+
+    // moves the latencies recorded since the last call into the interval
+    // and cumulative counts
+    private void drainLatency()
+    {
+        long max = _latencyHistogram.sample(_intervalLatencyCounts);
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++)
+            _totalLatencyCounts[i] += _intervalLatencyCounts[i];
+        if (max > _totalLatencyMax)
+            _totalLatencyMax = max;
+        _intervalLatencyMax = max;
+    }
+
+    private synchronized void getLatencyStats(StringBuilder textStats)
+    {
+        // getStats() ends the line with two newlines
+        textStats.setLength(textStats.length() - 1);
+        drainLatency();
+        textStats.append("Latency (usec)\t");
+        appendPercentiles(textStats, _intervalLatencyCounts, _intervalLatencyMax);
+        textStats.append("\n");
+    }
+
+    private void appendPercentiles(StringBuilder text, long[] counts, long max)
+    {
+        long total = LatencyHistogram.totalCount(counts);
+        text.append("Count: ");
+        text.append(total);
+        for (int i = 0; i < PERCENTILES.length; i++)
         {
-            // collect all data
-            totalRefreshes = _totalRefreshCount;
-            totalStatuses = _totalStatusCount;
-            totalUpdateCount = _totalUpdateCount;
-            refreshes = _refreshCount;
-            updates = _updateCount;
-            // clear the counters of refreshes and updates for the last period
-            _refreshCount = 0;
-            _updateCount = 0;
+            text.append("\tp");
+            if (PERCENTILES[i] == (int)PERCENTILES[i])
+                text.append((int)PERCENTILES[i]);
+            else
+                text.append(PERCENTILES[i]);
+            text.append(": ");
+            text.append(LatencyHistogram.valueAtPercentile(counts, total, PERCENTILES[i], max));
         }
+        text.append("\tMax: ");
+        text.append(max);
+    }
+
+    private void getStats(StringBuilder textStats, int interval)
+    {
+        textStats.setLength(0);
+
+        // sample without stopping dispatch, the previous sample gives the
+        // deltas for this interval
+        MetricsRegistry.Snapshot previous = _sample;
+        _sample = _previousSample;
+        _previousSample = previous;
+        _metrics.sample(_sample);
+
+        long totalRefreshes = _sample.getMsgTypeCount(OMMMsg.MsgType.REFRESH_RESP);
+        long totalStatuses = _sample.getMsgTypeCount(OMMMsg.MsgType.STATUS_RESP);
+        long totalUpdateCount = _sample.getMsgTypeCount(OMMMsg.MsgType.UPDATE_RESP);
+        long refreshes = totalRefreshes - previous.getMsgTypeCount(OMMMsg.MsgType.REFRESH_RESP);
+        long updates = totalUpdateCount - previous.getMsgTypeCount(OMMMsg.MsgType.UPDATE_RESP);
 
         // now format the output
         textStats.append("Total Refresh Count: ");
@@ -122,6 +479,94 @@ public class DataDisplay
 
         textStats.append("Update Rate: ");
         textStats.append((int)(updates / interval));
+
+        if (_allImagesReceived.get())
+        {
+            textStats.append("\tTime To All Images: ");
+            textStats.append(_allImagesMillis);
+            textStats.append(" ms");
+        }
+        else if (_imagesExpected != 0)
+        {
+            textStats.append("\tImages Received: ");
+            textStats.append(_imagesReceived.get());
+        }
+
+        if (_metrics._shardCount > 1)
+        {
+            textStats.append("\nShard Update Rates:");
+            for (int i = 0; i < _metrics._shardCount; i++)
+            {
+                long shardUpdates = _sample.getShardUpdates(i) - previous.getShardUpdates(i);
+                textStats.append(" ");
+                textStats.append((int)(shardUpdates / interval));
+            }
+        }
+        appendDeltas(textStats, previous, interval);
         textStats.append("\n\n");
     }
+
+    // appends the non zero deltas by domain, service and state
+    private void appendDeltas(StringBuilder textStats, MetricsRegistry.Snapshot previous,
+            int interval)
+    {
+        textStats.append("\nMessages: ");
+        textStats.append(_sample.get(MetricsRegistry.MESSAGES)
+                - previous.get(MetricsRegistry.MESSAGES));
+        textStats.append("\tByte Rate: ");
+        textStats.append((_sample.get(MetricsRegistry.BYTES) - previous.get(MetricsRegistry.BYTES))
+                / interval);
+
+        textStats.append("\tDomains:");
+        for (int i = 0; i < MetricsRegistry.DOMAIN_COUNT; i++)
+        {
+            long delta = _sample.get(MetricsRegistry.DOMAIN_BASE + i)
+                    - previous.get(MetricsRegistry.DOMAIN_BASE + i);
+            if (delta != 0)
+            {
+                textStats.append(" ");
+                textStats.append(RDMMsgTypes.toString((short)i));
+                textStats.append("=");
+                textStats.append(delta);
+            }
+        }
+
+        textStats.append("\tServices:");
+        Map<String, long[]> previousServices = previous.getServiceCounts();
+        for (Iterator<Map.Entry<String, long[]>> iter = _sample.getServiceCounts().entrySet()
+                .iterator(); iter.hasNext();)
+        {
+            Map.Entry<String, long[]> entry = iter.next();
+            long delta = entry.getValue()[MetricsRegistry.MESSAGES]
+                    - MetricsRegistry.Snapshot.get(previousServices.get(entry.getKey()),
+                                                   MetricsRegistry.MESSAGES);
+            if (delta != 0)
+            {
+                textStats.append(" ");
+                textStats.append(entry.getKey());
+                textStats.append("=");
+                textStats.append(delta);
+            }
+        }
+
+        textStats.append("\tStates:");
+        for (int stream = 0; stream < MetricsRegistry.STREAM_STATE_COUNT; stream++)
+        {
+            for (int data = 0; data < MetricsRegistry.DATA_STATE_COUNT; data++)
+            {
+                int counter = MetricsRegistry.STATE_BASE + stream
+                        * MetricsRegistry.DATA_STATE_COUNT + data;
+                long delta = _sample.get(counter) - previous.get(counter);
+                if (delta != 0)
+                {
+                    textStats.append(" ");
+                    textStats.append(OMMState.Stream.toString((byte)stream));
+                    textStats.append("/");
+                    textStats.append(OMMState.Data.toString((byte)data));
+                    textStats.append("=");
+                    textStats.append(delta);
+                }
+            }
+        }
+    }
 }
@@ -10,6 +10,9 @@ import com.reuters.rfa.common.EventQueue;
  * {@link com.reuters.rfa.common.EventQueue EventQueue} response queue. In case
  * of null response queue, it simple waits until application is running for time
  * specified by runTime parameter.
+ * 
+ * StarterConsumer_Perf starts one Dispatcher per response queue when
+ * dispatchThreads is greater than 1.
  */
 public class Dispatcher extends Thread
 {
@@ -60,6 +63,15 @@ public class Dispatcher extends Thread
     {
         System.out.println("Controller: terminating...");
         reqMgr.cleanup(0);
+        stopDispatch();
+    }
+
+    /**
+     * Stops this thread without cleaning up, used for the additional
+     * dispatchers once the first one has terminated the RequestManager.
+     */
+    public void stopDispatch()
+    {
         _isRunning = false;
         this.interrupt();
     }
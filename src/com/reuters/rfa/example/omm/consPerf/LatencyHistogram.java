@@ -0,0 +1,143 @@
+package com.reuters.rfa.example.omm.consPerf;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * Fixed memory, log-linear latency histogram.
+ * </p>
+ * Values (in microseconds) are counted in buckets that are linear within each
+ * power of two, so the relative error of any reported value is bounded by
+ * 1/{@link #SUB_BUCKET_COUNT}. The number of buckets is fixed when the class is
+ * loaded and no memory is allocated while recording.
+ * <p>
+ * {@link #record(long)} may be called concurrently from any number of dispatch
+ * threads without locking. A single reader periodically calls
+ * {@link #sample(long[])} which drains the counts recorded since the previous
+ * sample into a caller supplied array. The reader keeps the cumulative counts
+ * itself, so the recording threads only ever touch one array.
+ */
+public class LatencyHistogram
+{
+    // 32 linear sub buckets per power of two, ~3% resolution
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    // largest trackable value is 2^36 usec (~19 hours), larger values are
+    // counted in the last bucket
+    static final int MAX_VALUE_BITS = 36;
+    public static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1)
+            * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong _intervalMax = new AtomicLong();
+    private final AtomicLong _negativeCount = new AtomicLong();
+
+    /**
+     * Records one latency value in microseconds. Negative values (clock skew
+     * between provider and consumer) are counted separately and otherwise
+     * ignored.
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+        {
+            _negativeCount.incrementAndGet();
+            return;
+        }
+        _counts.incrementAndGet(bucketIndex(value));
+
+        long max = _intervalMax.get();
+        while (value > max)
+        {
+            if (_intervalMax.compareAndSet(max, value))
+                break;
+            max = _intervalMax.get();
+        }
+    }
+
+    /**
+     * Moves the counts recorded since the previous call into
+     * <code>intervalCounts</code> (which must have {@link #BUCKET_COUNT}
+     * entries) and returns the maximum value recorded in the interval.
+     */
+    public long sample(long[] intervalCounts)
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            intervalCounts[i] = _counts.getAndSet(i, 0);
+        return _intervalMax.getAndSet(0);
+    }
+
+    /**
+     * @return number of negative values seen so far
+     */
+    public long getNegativeCount()
+    {
+        return _negativeCount.get();
+    }
+
+    static int bucketIndex(long value)
+    {
+        if (value < (SUB_BUCKET_COUNT << 1))
+            return (int)value;
+
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        if (msb >= MAX_VALUE_BITS)
+            return BUCKET_COUNT - 1;
+        int shift = msb - SUB_BUCKET_BITS;
+        return (shift * SUB_BUCKET_COUNT) + (int)(value >>> shift);
+    }
+
+    /**
+     * @return the highest value which is counted in the bucket
+     */
+    static long bucketHighValue(int index)
+    {
+        if (index < (SUB_BUCKET_COUNT << 1))
+            return index;
+
+        int shift = (index / SUB_BUCKET_COUNT) - 1;
+        long subBucket = index - (shift * SUB_BUCKET_COUNT);
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @return total number of values in <code>counts</code>
+     */
+    public static long totalCount(long[] counts)
+    {
+        long total = 0;
+        for (int i = 0; i < counts.length; i++)
+            total += counts[i];
+        return total;
+    }
+
+    /**
+     * Returns the value at the given percentile of <code>counts</code>, capped
+     * by <code>max</code> since the bucket high value may exceed the largest
+     * value actually recorded.
+     *
+     * @param counts bucket counts, as filled by {@link #sample(long[])}
+     * @param total total number of values in <code>counts</code>
+     * @param percentile percentile, between 0 and 100
+     * @param max maximum value recorded
+     */
+    public static long valueAtPercentile(long[] counts, long total, double percentile, long max)
+    {
+        if (total == 0)
+            return 0;
+
+        long rank = (long)Math.ceil((percentile / 100.0) * total);
+        if (rank < 1)
+            rank = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(bucketHighValue(i), max);
+        }
+        return max;
+    }
+}
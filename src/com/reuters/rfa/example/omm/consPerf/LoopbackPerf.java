@@ -0,0 +1,574 @@
+package com.reuters.rfa.example.omm.consPerf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import com.reuters.rfa.common.Context;
+import com.reuters.rfa.common.DispatchException;
+import com.reuters.rfa.common.EventQueue;
+import com.reuters.rfa.config.ConfigDb;
+import com.reuters.rfa.example.omm.domainServer.DomainServer;
+import com.reuters.rfa.example.utility.CommandLine;
+
+/**
+ * This is a main class to run an end-to-end benchmark of StarterConsumer_Perf
+ * against a {@link DomainServer} on a local port, with one command and without
+ * configuration files.</p>
+ *
+ * This class is responsible for the following:
+ * <ul>
+ * <li>Configure the provider and consumer sessions in a
+ * {@link com.reuters.rfa.config.ConfigDb ConfigDb}, so no RFA configuration
+ * is needed
+ * <li>Start a DomainServer publishing MARKET_PRICE on the local port and
+ * dispatch its events
+ * <li>Run one or more StarterConsumer_Perf consumers requesting itemCount
+ * items, each on its own session and connection, in this JVM or each in a
+ * forked JVM
+ * <li>Measure the update rate of each consumer from the time all its images
+ * are received until runTime expires, and the latency of the updates from
+ * their send time
+ * <li>Print a throughput / latency report
+ * </ul>
+ *
+ * The provider sends an update for every item each update interval of
+ * itemCount * 1000 / updateRate ms, so the update rate of each consumer is
+ * about updateRate. The send time is stamped into latencyFid (TRDTIM_MS by
+ * default) in microseconds since the epoch.
+ *
+ * @see StarterConsumer_Perf
+ * @see DomainServer
+ *
+ *      The following command line parameters are added to those of
+ *      StarterConsumer_Perf and DomainServer. -port Local port of the
+ *      provider. Defaults to 14050 -itemCount Number of items requested by
+ *      each consumer. Defaults to 1000 -updateRate Updates per second sent to
+ *      each consumer. Defaults to 10000 -consumers Number of consumers.
+ *      Defaults to 1 -fork Run each consumer in a forked JVM. Defaults to
+ *      false -forkJvmOptions Options of the forked JVMs, e.g. -Xmx512m
+ */
+public class LoopbackPerf
+{
+    private static final String _className = "LoopbackPerf";
+    private static final String NAMESPACE = "Loopback";
+    private static final String RESULT_PREFIX = "LoopbackPerf result: ";
+
+    DomainServer _server;
+    Thread _providerThread;
+    volatile boolean _providerRunning;
+
+    /**
+     * Result of one consumer
+     */
+    static class ConsumerResult
+    {
+        String _name;
+        int _images;
+        long _allImagesMillis = -1;
+        long _updates;
+        long _windowUpdates;
+        double _windowSecs;
+        long[] _latencyCounts;
+        long _latencyMax = -1;
+
+        String toLine()
+        {
+            StringBuilder line = new StringBuilder(RESULT_PREFIX);
+            line.append("name=").append(_name);
+            line.append(" images=").append(_images);
+            line.append(" allImagesMillis=").append(_allImagesMillis);
+            line.append(" updates=").append(_updates);
+            line.append(" windowUpdates=").append(_windowUpdates);
+            line.append(" windowSecs=").append(_windowSecs);
+            line.append(" latencyMax=").append(_latencyMax);
+            if (_latencyCounts != null)
+            {
+                // non empty buckets only
+                line.append(" latency=");
+                for (int i = 0; i < _latencyCounts.length; i++)
+                {
+                    if (_latencyCounts[i] == 0)
+                        continue;
+                    line.append(i).append(':').append(_latencyCounts[i]).append(',');
+                }
+            }
+            return line.toString();
+        }
+
+        static ConsumerResult fromLine(String line)
+        {
+            ConsumerResult result = new ConsumerResult();
+            StringTokenizer st = new StringTokenizer(line.substring(RESULT_PREFIX.length()), " ");
+            while (st.hasMoreTokens())
+            {
+                String token = st.nextToken();
+                int equals = token.indexOf('=');
+                String key = token.substring(0, equals);
+                String value = token.substring(equals + 1);
+                if (key.equals("name"))
+                    result._name = value;
+                else if (key.equals("images"))
+                    result._images = Integer.parseInt(value);
+                else if (key.equals("allImagesMillis"))
+                    result._allImagesMillis = Long.parseLong(value);
+                else if (key.equals("updates"))
+                    result._updates = Long.parseLong(value);
+                else if (key.equals("windowUpdates"))
+                    result._windowUpdates = Long.parseLong(value);
+                else if (key.equals("windowSecs"))
+                    result._windowSecs = Double.parseDouble(value);
+                else if (key.equals("latencyMax"))
+                    result._latencyMax = Long.parseLong(value);
+                else if (key.equals("latency"))
+                {
+                    result._latencyCounts = new long[LatencyHistogram.BUCKET_COUNT];
+                    StringTokenizer buckets = new StringTokenizer(value, ",");
+                    while (buckets.hasMoreTokens())
+                    {
+                        String bucket = buckets.nextToken();
+                        int colon = bucket.indexOf(':');
+                        result._latencyCounts[Integer.parseInt(bucket.substring(0, colon))] = Long
+                                .parseLong(bucket.substring(colon + 1));
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Relays the output of a forked consumer and picks up its result line
+     */
+    static class ForkedConsumer extends Thread
+    {
+        Process _process;
+        String _prefix;
+        ConsumerResult _result;
+
+        ForkedConsumer(Process process, String name)
+        {
+            super(_className + " " + name + " Output");
+            _process = process;
+            _prefix = "[" + name + "] ";
+        }
+
+        public void run()
+        {
+            try
+            {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(_process
+                        .getInputStream()));
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    if (line.startsWith(RESULT_PREFIX))
+                        _result = ConsumerResult.fromLine(line);
+                    else
+                        System.out.println(_prefix + line);
+                }
+                reader.close();
+            }
+            catch (IOException e)
+            {
+                System.out.println(_prefix + "ERROR: " + e.getMessage());
+            }
+        }
+    }
+
+    public LoopbackPerf()
+    {
+        System.out.println("*****************************************************************************");
+        System.out.println("*          Begin RFA Java LoopbackPerf Program                              *");
+        System.out.println("*****************************************************************************");
+    }
+
+    /**
+     * Configures the sessions of the provider, if any, and of the consumers
+     * in this JVM, then initializes the context. Must be called before any
+     * other context initialization.
+     */
+    static void initContext(boolean provider, int firstConsumer, int consumerCount)
+    {
+        String port = CommandLine.variable("port");
+        ConfigDb configDb = new ConfigDb();
+        if (provider)
+        {
+            configDb.addVariable(NAMESPACE + ".Sessions.provider.connectionList",
+                                 "providerConnection");
+            configDb.addVariable(NAMESPACE + ".Connections.providerConnection.connectionType",
+                                 "RSSL_PROV");
+            configDb.addVariable(NAMESPACE + ".Connections.providerConnection.portNumber", port);
+        }
+        for (int i = firstConsumer; i < firstConsumer + consumerCount; i++)
+        {
+            String name = consumerName(i);
+            configDb.addVariable(NAMESPACE + ".Sessions." + name + ".connectionList", name
+                    + "Connection");
+            configDb.addVariable(NAMESPACE + ".Connections." + name + "Connection.connectionType",
+                                 "RSSL");
+            configDb.addVariable(NAMESPACE + ".Connections." + name + "Connection.serverList",
+                                 "localhost:" + port);
+        }
+        Context.initialize(configDb);
+    }
+
+    static String consumerName(int index)
+    {
+        return "consumer" + (index + 1);
+    }
+
+    /**
+     * Starts the DomainServer and a thread dispatching its events
+     */
+    void startProvider()
+    {
+        System.out.println(_className + ": Starting DomainServer on port "
+                + CommandLine.variable("port") + ", update interval "
+                + CommandLine.intVariable("updateIntervalMillis") + " ms");
+        _server = new DomainServer();
+        _server.start();
+
+        final EventQueue queue = _server.getMainLoop().getEventQueue();
+        _providerRunning = true;
+        _providerThread = new Thread(_className + " Provider")
+        {
+            public void run()
+            {
+                try
+                {
+                    while (_providerRunning)
+                        queue.dispatch(1000);
+                }
+                catch (DispatchException de)
+                {
+                    // deactivated by stopProvider()
+                }
+            }
+        };
+        _providerThread.start();
+    }
+
+    void stopProvider()
+    {
+        _providerRunning = false;
+        _server.getMainLoop().getEventQueue().deactivate();
+        try
+        {
+            _providerThread.join(5000);
+        }
+        catch (InterruptedException e)
+        {
+        }
+        _server.cleanup();
+    }
+
+    /**
+     * Runs consumers in this JVM for runTime and measures them
+     */
+    static List<ConsumerResult> runConsumers(int firstConsumer, int consumerCount)
+    {
+        StarterConsumer_Perf[] consumers = new StarterConsumer_Perf[consumerCount];
+        Thread[] threads = new Thread[consumerCount];
+        for (int i = 0; i < consumerCount; i++)
+        {
+            final StarterConsumer_Perf consumer = new StarterConsumer_Perf();
+            consumer.init(NAMESPACE + "::" + consumerName(firstConsumer + i));
+            consumers[i] = consumer;
+            threads[i] = new Thread(_className + " " + consumerName(firstConsumer + i))
+            {
+                public void run()
+                {
+                    consumer.run();
+                }
+            };
+            threads[i].start();
+        }
+
+        // the measurement window starts when all consumers have their images
+        while (!allImagesReceived(consumers) && anyAlive(threads))
+        {
+            try
+            {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException e)
+            {
+            }
+        }
+        long startNanos = System.nanoTime();
+        long[] startUpdates = new long[consumerCount];
+        for (int i = 0; i < consumerCount; i++)
+            startUpdates[i] = consumers[i]._responseMgr._dataDisplay.getUpdateCount();
+
+        for (int i = 0; i < consumerCount; i++)
+        {
+            try
+            {
+                threads[i].join();
+            }
+            catch (InterruptedException e)
+            {
+            }
+        }
+        double windowSecs = (System.nanoTime() - startNanos) / 1e9;
+
+        List<ConsumerResult> results = new ArrayList<ConsumerResult>();
+        for (int i = 0; i < consumerCount; i++)
+        {
+            DataDisplay display = consumers[i]._responseMgr._dataDisplay;
+            ConsumerResult result = new ConsumerResult();
+            result._name = consumerName(firstConsumer + i);
+            result._images = display.getImagesReceived();
+            result._allImagesMillis = display.getAllImagesMillis();
+            result._updates = display.getUpdateCount();
+            result._windowUpdates = result._updates - startUpdates[i];
+            result._windowSecs = windowSecs;
+            long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+            result._latencyMax = display.getLatencyCounts(counts);
+            if (result._latencyMax >= 0)
+                result._latencyCounts = counts;
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static boolean allImagesReceived(StarterConsumer_Perf[] consumers)
+    {
+        for (int i = 0; i < consumers.length; i++)
+        {
+            if (consumers[i]._responseMgr._dataDisplay.getAllImagesMillis() < 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean anyAlive(Thread[] threads)
+    {
+        for (int i = 0; i < threads.length; i++)
+        {
+            if (threads[i].isAlive())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs each consumer in a forked JVM with the same arguments and
+     * collects their results
+     */
+    static List<ConsumerResult> forkConsumers(String[] argv, int consumerCount)
+    {
+        ForkedConsumer[] forked = new ForkedConsumer[consumerCount];
+        for (int i = 0; i < consumerCount; i++)
+        {
+            List<String> command = new ArrayList<String>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator
+                    + "java");
+            StringTokenizer jvmOptions = new StringTokenizer(CommandLine.variable("forkJvmOptions"));
+            while (jvmOptions.hasMoreTokens())
+                command.add(jvmOptions.nextToken());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(LoopbackPerf.class.getName());
+            for (int j = 0; j < argv.length; j++)
+                command.add(argv[j]);
+            command.add("-role");
+            command.add("consumer");
+            command.add("-consumerIndex");
+            command.add(String.valueOf(i));
+
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            try
+            {
+                forked[i] = new ForkedConsumer(builder.start(), consumerName(i));
+                forked[i].start();
+            }
+            catch (IOException e)
+            {
+                System.out.println(_className + ": Unable to fork " + consumerName(i) + ": "
+                        + e.getMessage());
+            }
+        }
+
+        List<ConsumerResult> results = new ArrayList<ConsumerResult>();
+        for (int i = 0; i < consumerCount; i++)
+        {
+            if (forked[i] == null)
+                continue;
+            try
+            {
+                forked[i]._process.waitFor();
+                forked[i].join();
+            }
+            catch (InterruptedException e)
+            {
+            }
+            if (forked[i]._result != null)
+                results.add(forked[i]._result);
+            else
+                System.out.println(_className + ": No result from " + consumerName(i));
+        }
+        return results;
+    }
+
+    /**
+     * Prints the update rate & latency of each consumer and of all consumers
+     */
+    static void printReport(List<ConsumerResult> results, int consumerCount)
+    {
+        int itemCount = CommandLine.intVariable("itemCount");
+        int updateInterval = CommandLine.intVariable("updateIntervalMillis");
+        long targetRate = (updateInterval > 0) ? itemCount * 1000L / updateInterval : 0;
+
+        System.out.println();
+        System.out.println("Loopback Report: " + consumerCount + " consumer(s)"
+                + (CommandLine.booleanVariable("fork") ? " (forked)" : "") + ", " + itemCount
+                + " items, target " + targetRate + " upd/s per consumer");
+        String format = "%-10s %7s %9s %12s %10s %8s %8s %8s %8s %8s%n";
+        System.out.printf(format, "Consumer", "Images", "ImagesMs", "Updates", "Upd/s", "p50",
+                          "p90", "p99", "p99.9", "Max");
+
+        ConsumerResult all = new ConsumerResult();
+        all._name = "all";
+        for (int i = 0; i < results.size(); i++)
+        {
+            ConsumerResult result = results.get(i);
+            printResult(format, result);
+
+            all._images += result._images;
+            all._allImagesMillis = Math.max(all._allImagesMillis, result._allImagesMillis);
+            all._updates += result._updates;
+            all._windowUpdates += result._windowUpdates;
+            all._windowSecs = Math.max(all._windowSecs, result._windowSecs);
+            if (result._latencyCounts != null)
+            {
+                if (all._latencyCounts == null)
+                    all._latencyCounts = new long[LatencyHistogram.BUCKET_COUNT];
+                for (int j = 0; j < LatencyHistogram.BUCKET_COUNT; j++)
+                    all._latencyCounts[j] += result._latencyCounts[j];
+                all._latencyMax = Math.max(all._latencyMax, result._latencyMax);
+            }
+        }
+        if (results.size() > 1)
+            printResult(format, all);
+        System.out.println("Upd/s from all images received until runTime; latency in usec");
+    }
+
+    private static void printResult(String format, ConsumerResult result)
+    {
+        Object[] values = new Object[10];
+        values[0] = result._name;
+        values[1] = String.valueOf(result._images);
+        values[2] = (result._allImagesMillis < 0) ? "-" : String.valueOf(result._allImagesMillis);
+        values[3] = String.valueOf(result._updates);
+        values[4] = (result._windowSecs > 0) ? String
+                .valueOf((long)(result._windowUpdates / result._windowSecs)) : "-";
+        long total = (result._latencyCounts == null) ? 0 : LatencyHistogram
+                .totalCount(result._latencyCounts);
+        for (int i = 0; i < DataDisplay.PERCENTILES.length; i++)
+        {
+            values[5 + i] = (total == 0) ? "-" : String.valueOf(LatencyHistogram
+                    .valueAtPercentile(result._latencyCounts, total, DataDisplay.PERCENTILES[i],
+                                       result._latencyMax));
+        }
+        values[9] = (total == 0) ? "-" : String.valueOf(result._latencyMax);
+        System.out.printf(format, values);
+    }
+
+    /**
+     * Initialize and set the default for the command line options
+     */
+    static void addCommandLineOptions()
+    {
+        DomainServer.addCommandLineOptions();
+        // the consumer defaults win for the options of both
+        StarterConsumer_Perf.addCommandLineOptions();
+
+        CommandLine.addOption("port", 14050, "Local port of the provider");
+        CommandLine.addOption("itemCount", 1000, "Number of items requested by each consumer");
+        CommandLine.addOption("updateRate", 10000,
+                              "Updates per second sent to each consumer, 0 for no updates");
+        CommandLine.addOption("consumers", 1, "Number of consumers");
+        CommandLine.addOption("fork", false, "Run each consumer in a forked JVM");
+        CommandLine.addOption("forkJvmOptions", "", "Options of the forked JVMs, e.g. -Xmx512m");
+        CommandLine.addOption("role", "harness", "Set to consumer in the forked JVMs");
+        CommandLine.addOption("consumerIndex", 0, "Index of the consumer of a forked JVM");
+
+        CommandLine.changeDefault("runTime", 60);
+        CommandLine.changeDefault("printData", false);
+        CommandLine.changeDefault("latencyFid", 3853);
+        CommandLine.changeDefault("mmt", "MARKET_PRICE");
+        CommandLine.changeDefault("provSession", NAMESPACE + "::provider");
+    }
+
+    /**
+     * Derives the options of the provider and the item names from the
+     * loopback options
+     */
+    static void setDerivedDefaults()
+    {
+        int itemCount = CommandLine.intVariable("itemCount");
+        int updateRate = CommandLine.intVariable("updateRate");
+        if (updateRate > 0)
+        {
+            CommandLine.changeDefault("updateIntervalMillis", (int)Math.max(1, Math
+                    .round(itemCount * 1000.0 / updateRate)));
+        }
+        else
+        {
+            CommandLine.changeDefault("MARKET_PRICE_updateInterval", 0);
+        }
+        CommandLine.changeDefault("MARKET_PRICE_sendTimeFid", CommandLine.variable("latencyFid"));
+        CommandLine.changeDefault("pubServiceName", CommandLine.variable("serviceName"));
+
+        StringBuilder itemNames = new StringBuilder(itemCount * 8);
+        for (int i = 0; i < itemCount; i++)
+        {
+            if (i > 0)
+                itemNames.append(',');
+            itemNames.append("LB").append(i).append(".N");
+        }
+        CommandLine.changeDefault("itemName", itemNames.toString());
+    }
+
+    public static void main(String argv[])
+    {
+        Thread currThread = Thread.currentThread();
+        currThread.setName(_className + " Application");
+
+        addCommandLineOptions();
+        CommandLine.setArguments(argv);
+        setDerivedDefaults();
+
+        int consumerCount = Math.max(1, CommandLine.intVariable("consumers"));
+        boolean fork = CommandLine.booleanVariable("fork");
+
+        if (CommandLine.variable("role").equals("consumer"))
+        {
+            // forked consumer, the result line is picked up by the harness
+            int consumerIndex = CommandLine.intVariable("consumerIndex");
+            initContext(false, consumerIndex, 1);
+            List<ConsumerResult> results = runConsumers(consumerIndex, 1);
+            System.out.println(results.get(0).toLine());
+            System.exit(0);
+        }
+
+        LoopbackPerf harness = new LoopbackPerf();
+        initContext(true, 0, fork ? 0 : consumerCount);
+        harness.startProvider();
+
+        List<ConsumerResult> results = fork ? forkConsumers(argv, consumerCount) : runConsumers(0,
+                consumerCount);
+
+        System.out.println("Exiting " + _className + " ...");
+        harness.stopProvider();
+        printReport(results, consumerCount);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,225 @@
+package com.reuters.rfa.example.omm.consPerf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.omm.OMMState;
+
+/**
+ * <p>
+ * Lock-free registry of response message counters.
+ * </p>
+ * Counters are striped by dispatch shard and service: every item request uses
+ * the {@link Stripe} of its (shard, service) pair as its closure, so each
+ * stripe is only written by the thread dispatching that shard's event queue.
+ * A single writer can publish its counts with ordered stores instead of
+ * atomic read-modify-write instructions, and stripes never share cache lines
+ * with each other. When responses are dispatched on RFA's threads (null event
+ * queue) the writers are not known, and the stripes use atomic adds instead.
+ * <p>
+ * Each stripe counts messages by message type, by message model type (domain)
+ * and by stream state / data state, plus the number of messages and encoded
+ * bytes. {@link #sample(Snapshot)} sums all stripes while dispatch continues;
+ * the result is not an atomic view across counters, but every counter is
+ * exact and monotonic, so differences of consecutive samples are accurate
+ * interval deltas.
+ */
+public class MetricsRegistry
+{
+    public static final int MSG_TYPE_COUNT = 16;
+    public static final int DOMAIN_COUNT = 256;
+    public static final int STREAM_STATE_COUNT = 8;
+    public static final int DATA_STATE_COUNT = 4;
+
+    // counter layout of a stripe
+    public static final int MSG_TYPE_BASE = 0;
+    public static final int DOMAIN_BASE = MSG_TYPE_BASE + MSG_TYPE_COUNT;
+    public static final int STATE_BASE = DOMAIN_BASE + DOMAIN_COUNT;
+    public static final int MESSAGES = STATE_BASE + STREAM_STATE_COUNT * DATA_STATE_COUNT;
+    public static final int BYTES = MESSAGES + 1;
+    public static final int COUNTER_COUNT = BYTES + 1;
+
+    // unused longs before and after the counters of a stripe, so the counters
+    // of two stripes are never in the same cache line
+    static final int PADDING = 8;
+
+    final int _shardCount;
+    final boolean _sharedWriters;
+    private final CopyOnWriteArrayList<Stripe> _stripes = new CopyOnWriteArrayList<Stripe>();
+    private final List<ConcurrentHashMap<String, Stripe>> _stripesByService;
+
+    /**
+     * @param shardCount number of dispatch shards
+     * @param sharedWriters true if a stripe may be written by more than one
+     *            thread
+     */
+    public MetricsRegistry(int shardCount, boolean sharedWriters)
+    {
+        _shardCount = shardCount;
+        _sharedWriters = sharedWriters;
+        _stripesByService = new ArrayList<ConcurrentHashMap<String, Stripe>>(shardCount);
+        for (int i = 0; i < shardCount; i++)
+            _stripesByService.add(new ConcurrentHashMap<String, Stripe>());
+    }
+
+    /**
+     * Returns the stripe of the shard and service, creating it on first use.
+     * Called when requests are made, never from the dispatch path.
+     */
+    public Stripe getStripe(int shard, String serviceName)
+    {
+        ConcurrentHashMap<String, Stripe> stripes = _stripesByService.get(shard);
+        Stripe stripe = stripes.get(serviceName);
+        if (stripe == null)
+        {
+            stripe = new Stripe(shard, serviceName, _sharedWriters);
+            Stripe existing = stripes.putIfAbsent(serviceName, stripe);
+            if (existing != null)
+                return existing;
+            _stripes.add(stripe);
+        }
+        return stripe;
+    }
+
+    /**
+     * Sums the counters of all stripes into <code>snapshot</code>.
+     */
+    public void sample(Snapshot snapshot)
+    {
+        snapshot.clear();
+        for (Iterator<Stripe> iter = _stripes.iterator(); iter.hasNext();)
+        {
+            Stripe stripe = iter.next();
+            long[] service = snapshot.serviceCounts(stripe._serviceName);
+            for (int i = 0; i < COUNTER_COUNT; i++)
+            {
+                long count = stripe._counts.get(PADDING + i);
+                snapshot._totals[i] += count;
+                service[i] += count;
+            }
+            snapshot._shardUpdates[stripe._shard] += stripe._counts.get(PADDING + MSG_TYPE_BASE
+                    + OMMMsg.MsgType.UPDATE_RESP);
+        }
+    }
+
+    /**
+     * Counters of one (shard, service) pair.
+     */
+    public static class Stripe
+    {
+        final int _shard;
+        final String _serviceName;
+        final boolean _sharedWriters;
+        final AtomicLongArray _counts = new AtomicLongArray(PADDING + COUNTER_COUNT + PADDING);
+
+        Stripe(int shard, String serviceName, boolean sharedWriters)
+        {
+            _shard = shard;
+            _serviceName = serviceName;
+            _sharedWriters = sharedWriters;
+        }
+
+        /**
+         * Counts a response message. Called from the dispatch thread.
+         */
+        public void record(OMMMsg msg)
+        {
+            add(MESSAGES, 1);
+            add(BYTES, msg.getEncodedLength());
+            add(MSG_TYPE_BASE + (msg.getMsgType() & (MSG_TYPE_COUNT - 1)), 1);
+            add(DOMAIN_BASE + (msg.getMsgModelType() & (DOMAIN_COUNT - 1)), 1);
+            if (msg.has(OMMMsg.HAS_STATE))
+            {
+                OMMState state = msg.getState();
+                add(STATE_BASE + (state.getStreamState() & (STREAM_STATE_COUNT - 1))
+                        * DATA_STATE_COUNT + (state.getDataState() & (DATA_STATE_COUNT - 1)), 1);
+            }
+        }
+
+        private void add(int counter, long delta)
+        {
+            int index = PADDING + counter;
+            if (_sharedWriters)
+                _counts.addAndGet(index, delta);
+            else
+                _counts.lazySet(index, _counts.get(index) + delta);
+        }
+    }
+
+    /**
+     * Sum of all stripes at one point in time, reused between samples.
+     */
+    public static class Snapshot
+    {
+        final long[] _totals = new long[COUNTER_COUNT];
+        final long[] _shardUpdates;
+        final LinkedHashMap<String, long[]> _services = new LinkedHashMap<String, long[]>();
+
+        public Snapshot(int shardCount)
+        {
+            _shardUpdates = new long[shardCount];
+        }
+
+        void clear()
+        {
+            Arrays.fill(_totals, 0);
+            Arrays.fill(_shardUpdates, 0);
+            for (Iterator<long[]> iter = _services.values().iterator(); iter.hasNext();)
+                Arrays.fill(iter.next(), 0);
+        }
+
+        long[] serviceCounts(String serviceName)
+        {
+            long[] counts = _services.get(serviceName);
+            if (counts == null)
+            {
+                counts = new long[COUNTER_COUNT];
+                _services.put(serviceName, counts);
+            }
+            return counts;
+        }
+
+        /**
+         * @return total of the counter over all stripes
+         */
+        public long get(int counter)
+        {
+            return _totals[counter];
+        }
+
+        public long getMsgTypeCount(byte msgType)
+        {
+            return _totals[MSG_TYPE_BASE + msgType];
+        }
+
+        public long getShardUpdates(int shard)
+        {
+            return _shardUpdates[shard];
+        }
+
+        /**
+         * @return counters per service name
+         */
+        public Map<String, long[]> getServiceCounts()
+        {
+            return _services;
+        }
+
+        /**
+         * @return value of the counter in the given service counts, 0 if the
+         *         service was not sampled
+         */
+        public static long get(long[] counts, int counter)
+        {
+            return counts == null ? 0 : counts[counter];
+        }
+    }
+}
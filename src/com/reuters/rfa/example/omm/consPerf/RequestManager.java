@@ -1,14 +1,19 @@
 package com.reuters.rfa.example.omm.consPerf;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
 
 import com.reuters.rfa.common.Context;
 import com.reuters.rfa.common.EventQueue;
 import com.reuters.rfa.common.EventSource;
 import com.reuters.rfa.common.Handle;
 import com.reuters.rfa.example.utility.CommandLine;
+import com.reuters.rfa.example.utility.ItemListReader;
 import com.reuters.rfa.omm.OMMElementList;
 import com.reuters.rfa.omm.OMMEncoder;
 import com.reuters.rfa.omm.OMMMsg;
@@ -29,15 +34,18 @@ import com.reuters.rfa.session.omm.OMMItemIntSpec;
  * This class is responsible for the following methods:
  * <ul>
  * <li>Create a {@link com.reuters.rfa.session.Session Session} and optionally
- * an {@link com.reuters.rfa.common.EventQueue EventQueue} for response
- * messages.
+ * one or more {@link com.reuters.rfa.common.EventQueue EventQueues} for
+ * response messages. With more than one queue, item requests are sharded
+ * across the queues by item name hash.
  * <li>Create an {@link com.reuters.rfa.session.omm.OMMConsumer OMMConsumer}
  * event source, an {@link com.reuters.rfa.omm.OMMEncoder OMMEncoder} and an
  * {@link com.reuters.rfa.omm.OMMPool OMMPool}.
  * <li>Encode and register streaming request message for Login using OMM message
  * to RFA.
  * <li>Encode and register streaming request message for multiple items in
- * {@linkplain com.reuters.rfa.rdm.RDMMsgTypes#MARKET_PRICE MARKET_PRICE} domain.
+ * {@linkplain com.reuters.rfa.rdm.RDMMsgTypes#MARKET_PRICE MARKET_PRICE} domain,
+ * individually or as batch requests, optionally paced by a window of
+ * outstanding requests.
  * <li>Register timer for display statistics at displayInterval.
  * <li>Close the item requests.
  * <li>Unregistered login, logout from server.
@@ -58,6 +66,7 @@ public class RequestManager
     // RFA objects
     Session _session;
     EventQueue _eventQueue;
+    EventQueue[] _eventQueues;
     OMMConsumer _ommConsumer;
     OMMEncoder _encoder;
     OMMPool _pool;
@@ -69,13 +78,31 @@ public class RequestManager
     int _dispInterval;
     boolean _nullEQ;
 
+    // batch requests and pacing
+    int _batchSize;
+    int _requestWindowSize;
+    Semaphore _requestWindow;
+    ArrayList<String>[] _batches;
+    String[] _batchServiceNames;
+    short[] _batchMsgModelTypes;
+    ConcurrentHashMap<Handle, Boolean> _batchHandles;
+    ConcurrentHashMap<Handle, Boolean> _answeredHandles;
+
     public void init(ResponseManager responseMgr)
+    {
+        init(responseMgr, CommandLine.variable("session"));
+    }
+
+    /**
+     * Initializes with the given session instead of the session option, for
+     * several consumers in the same JVM.
+     */
+    public void init(ResponseManager responseMgr, String sessionName)
     {
         this._responseMgr = responseMgr;
         _dispInterval = CommandLine.intVariable("displayInterval");
 
         // Create a Session
-        String sessionName = CommandLine.variable("session");
         _session = Session.acquire(sessionName);
         if (_session == null)
         {
@@ -87,8 +114,17 @@ public class RequestManager
 
         _nullEQ = CommandLine.booleanVariable("nullEQ");
 
-        // Event Queue
-        _eventQueue = _nullEQ ? null : EventQueue.create("myEventQueue");
+        // Event Queues, one per dispatch thread. Login and timer events are
+        // dispatched from the first queue.
+        int queueCount = _nullEQ ? 1 : Math.max(1, CommandLine.intVariable("dispatchThreads"));
+        _eventQueues = new EventQueue[queueCount];
+        if (!_nullEQ)
+        {
+            for (int i = 0; i < queueCount; i++)
+                _eventQueues[i] = EventQueue.create(queueCount == 1 ? "myEventQueue"
+                        : "myEventQueue" + i);
+        }
+        _eventQueue = _eventQueues[0];
 
         // Create a OMMPool.
         _pool = OMMPool.create();
@@ -109,6 +145,27 @@ public class RequestManager
                                                                "myOMMConsumer", false);
 
         _itemHandles = new LinkedList<Handle>();
+
+        _batchSize = CommandLine.intVariable("batchSize");
+        _requestWindowSize = CommandLine.intVariable("requestWindow");
+        if (_requestWindowSize > 0)
+            _requestWindow = new Semaphore(_requestWindowSize);
+        _batchHandles = new ConcurrentHashMap<Handle, Boolean>();
+        _answeredHandles = new ConcurrentHashMap<Handle, Boolean>();
+    }
+
+    /**
+     * Initializes the request state only, without a session, for replaying a
+     * capture. No requests can be made.
+     */
+    public void initReplay(ResponseManager responseMgr)
+    {
+        this._responseMgr = responseMgr;
+        _dispInterval = CommandLine.intVariable("displayInterval");
+        _eventQueues = new EventQueue[1];
+        _itemHandles = new LinkedList<Handle>();
+        _batchHandles = new ConcurrentHashMap<Handle, Boolean>();
+        _answeredHandles = new ConcurrentHashMap<Handle, Boolean>();
     }
 
     public void requestLogin()
@@ -139,42 +196,254 @@ public class RequestManager
     }
 
     /**
-     * Encodes streaming request messages and register them to RFA
+     * Encodes streaming request messages and register them to RFA. Items are
+     * taken from itemFile if it is set, otherwise from the itemName list, and
+     * requested as they are read. They are requested individually or, if
+     * batchSize is greater than 1, in batch requests of up to batchSize items.
+     * If requestWindow is set, no more than requestWindow items are
+     * outstanding (requested but without a complete image or a final status)
+     * at any time.
      */
     public void requestItems()
     {
         System.out.println(_className + ".requestItems: Requesting item(s)...");
         String serviceName = CommandLine.variable("serviceName");
-        String itemNames = CommandLine.variable("itemName");
-        // Note: "," is a valid character for RIC name.
-        // This application need to be modified if RIC names have ",".
-        StringTokenizer st = new StringTokenizer(itemNames, ",");
-        LinkedList<String> itemNamesList = new LinkedList<String>();
-        while (st.hasMoreTokens())
-            itemNamesList.add(st.nextToken().trim());
+        String itemFile = CommandLine.variable("itemFile");
+        int itemCount = 0;
 
-        Iterator<String> iter = itemNamesList.iterator();
+        _responseMgr.startImageTimer();
+        if (itemFile.length() > 0)
+        {
+            ItemListReader reader = null;
+            try
+            {
+                reader = new ItemListReader(itemFile, serviceName, RDMMsgTypes.MARKET_PRICE,
+                        CommandLine.booleanVariable("mapItemFile"));
+                while (reader.next())
+                {
+                    if (reader.getMsgModelType() < 0)
+                    {
+                        System.out.println(_className + ": Unknown message model type in line "
+                                + reader.getLineNumber() + " of " + itemFile);
+                        continue;
+                    }
+                    requestNext(reader.getServiceName(), reader.getItemName(),
+                                reader.getMsgModelType());
+                    itemCount++;
+                }
+            }
+            catch (IOException e)
+            {
+                System.out.println(_className + ": Error reading " + itemFile + ": "
+                        + e.getMessage());
+            }
+            finally
+            {
+                if (reader != null)
+                    reader.close();
+            }
+        }
+        else
+        {
+            String itemNames = CommandLine.variable("itemName");
+            // Note: "," is a valid character for RIC name.
+            // This application need to be modified if RIC names have ",".
+            StringTokenizer st = new StringTokenizer(itemNames, ",");
+            while (st.hasMoreTokens())
+            {
+                requestNext(serviceName, st.nextToken().trim(), RDMMsgTypes.MARKET_PRICE);
+                itemCount++;
+            }
+        }
+        flushBatches();
+        _responseMgr.setImagesExpected(itemCount);
+    }
 
-        while (iter.hasNext())
+    // requests the item now or adds it to the batch of its shard
+    private void requestNext(String serviceName, String itemName, short msgModelType)
+    {
+        if (_batchSize > 1)
+        {
+            addToBatch(serviceName, itemName, msgModelType);
+        }
+        else
         {
-            // Preparing to send item request message
-            _requestMessage.clear();
-            _requestMessage.setMsgType(OMMMsg.MsgType.REQUEST);
-            _requestMessage.setMsgModelType(RDMMsgTypes.MARKET_PRICE);
-            _requestMessage.setIndicationFlags(OMMMsg.Indication.REFRESH);
-            _requestMessage.setPriority((byte)1, 1);
-            String itemName = (String)iter.next();
+            acquireRequestWindow(1);
             System.out.println(_className + ": Subscribing to " + itemName);
+            Handle itemHandle = requestItem(serviceName, itemName, msgModelType);
+            _itemHandles.add(itemHandle);
+        }
+    }
 
-            _requestMessage.setAttribInfo(serviceName, itemName, RDMInstrument.NameType.RIC);
+    private Handle requestItem(String serviceName, String itemName, short msgModelType)
+    {
+        // Preparing to send item request message
+        _requestMessage.clear();
+        _requestMessage.setMsgType(OMMMsg.MsgType.REQUEST);
+        _requestMessage.setMsgModelType(msgModelType);
+        _requestMessage.setIndicationFlags(OMMMsg.Indication.REFRESH);
+        _requestMessage.setPriority((byte)1, 1);
+        _requestMessage.setAttribInfo(serviceName, itemName, RDMInstrument.NameType.RIC);
+
+        // Set the message into interest spec
+        _ommItemIntSpec.setMsg(_requestMessage);
+        int shard = shardOf(itemName);
+        return _ommConsumer.registerClient(_eventQueues[shard], _ommItemIntSpec, _responseMgr,
+                                           _responseMgr.getStripe(shard, serviceName));
+    }
 
-            // Set the message into interest spec
-            _ommItemIntSpec.setMsg(_requestMessage);
-            Handle itemHandle = _ommConsumer.registerClient(_nullEQ ? null : _eventQueue,
-                                                            _ommItemIntSpec, _responseMgr, null);
-            // _requestMessage.clear();
-            _itemHandles.add(itemHandle);
+    /**
+     * Adds the item to the batch of its shard. The batch is sent when it has
+     * batchSize items or before an item for another service or message model
+     * type is added.
+     */
+    @SuppressWarnings("unchecked")
+    private void addToBatch(String serviceName, String itemName, short msgModelType)
+    {
+        if (_batches == null)
+        {
+            _batches = new ArrayList[_eventQueues.length];
+            _batchServiceNames = new String[_eventQueues.length];
+            _batchMsgModelTypes = new short[_eventQueues.length];
+            for (int i = 0; i < _batches.length; i++)
+                _batches[i] = new ArrayList<String>(_batchSize);
+        }
+
+        // a batch larger than the window would never be sent
+        int batchSize = _batchSize;
+        if (_requestWindow != null && batchSize > _requestWindowSize)
+            batchSize = _requestWindowSize;
+
+        int shard = shardOf(itemName);
+        ArrayList<String> batch = _batches[shard];
+        if (!batch.isEmpty()
+                && (_batchMsgModelTypes[shard] != msgModelType || !_batchServiceNames[shard]
+                        .equals(serviceName)))
+            requestBatch(shard);
+
+        _batchServiceNames[shard] = serviceName;
+        _batchMsgModelTypes[shard] = msgModelType;
+        batch.add(itemName);
+        if (batch.size() >= batchSize)
+            requestBatch(shard);
+    }
+
+    private void flushBatches()
+    {
+        if (_batches == null)
+            return;
+        for (int i = 0; i < _batches.length; i++)
+        {
+            if (!_batches[i].isEmpty())
+                requestBatch(i);
+        }
+    }
+
+    /**
+     * Encodes the item names of the shard's batch into the ItemList of a batch
+     * request, registers it and clears the batch
+     */
+    private void requestBatch(int shard)
+    {
+        ArrayList<String> itemNames = _batches[shard];
+        acquireRequestWindow(itemNames.size());
+        System.out.println(_className + ": Subscribing to batch of " + itemNames.size()
+                + " items starting with " + itemNames.get(0));
+
+        int estimatedSize = 200; // ElementList/Entry, Array
+        for (int i = 0; i < itemNames.size(); i++)
+            estimatedSize += itemNames.get(i).length() + 3;
+
+        _requestMessage.clear();
+        _requestMessage.setMsgType(OMMMsg.MsgType.REQUEST);
+        _requestMessage.setMsgModelType(_batchMsgModelTypes[shard]);
+        _requestMessage.setIndicationFlags(OMMMsg.Indication.REFRESH | OMMMsg.Indication.BATCH_REQ);
+        _requestMessage.setPriority((byte)1, 1);
+        _requestMessage.setAttribInfo(_batchServiceNames[shard], null, RDMInstrument.NameType.RIC);
+
+        _encoder.initialize(OMMTypes.MSG, estimatedSize);
+        _encoder.encodeMsgInit(_requestMessage, OMMTypes.NO_DATA, OMMTypes.ELEMENT_LIST);
+        _encoder.encodeElementListInit(OMMElementList.HAS_STANDARD_DATA, (short)0, (short)0);
+        _encoder.encodeElementEntryInit(RDMUser.Feature.ItemList, OMMTypes.ARRAY);
+        _encoder.encodeArrayInit(OMMTypes.ASCII_STRING, 0);
+        for (int i = 0; i < itemNames.size(); i++)
+        {
+            _encoder.encodeArrayEntryInit();
+            _encoder.encodeString(itemNames.get(i), OMMTypes.ASCII_STRING);
+        }
+        _encoder.encodeAggregateComplete(); // completes the array
+        _encoder.encodeAggregateComplete(); // completes the element list
+
+        _ommItemIntSpec.setMsg((OMMMsg)_encoder.getEncodedObject());
+        // another thread may dispatch the status of the batch stream before
+        // registerClient returns, so itemAnswered waits for its handle
+        Object closure = _responseMgr.getStripe(shard, _batchServiceNames[shard]);
+        synchronized (_batchHandles)
+        {
+            Handle batchHandle = _ommConsumer.registerClient(_eventQueues[shard],
+                                                             _ommItemIntSpec, _responseMgr,
+                                                             closure);
+            _batchHandles.put(batchHandle, Boolean.TRUE);
+        }
+        itemNames.clear();
+    }
+
+    /**
+     * Blocks until <code>count</code> more requests fit in the request window
+     */
+    private void acquireRequestWindow(int count)
+    {
+        if (_requestWindow == null)
+            return;
+
+        boolean interrupted = false;
+        while (true)
+        {
+            try
+            {
+                _requestWindow.acquire(count);
+                break;
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Called by ResponseManager when an item stream receives its complete
+     * image or a final status. Only the first answer for each item counts.
+     * 
+     * @return true if this is the first answer for the item
+     */
+    boolean itemAnswered(Handle itemHandle)
+    {
+        // the batch stream itself is not an item
+        if (_batchSize > 1)
+        {
+            synchronized (_batchHandles)
+            {
+                if (_batchHandles.containsKey(itemHandle))
+                    return false;
+            }
         }
+        if (_answeredHandles.putIfAbsent(itemHandle, Boolean.TRUE) != null)
+            return false;
+
+        if (_requestWindow != null)
+            _requestWindow.release();
+        return true;
+    }
+
+    /**
+     * @return index of the event queue which dispatches the item
+     */
+    int shardOf(String itemName)
+    {
+        return (itemName.hashCode() & 0x7fffffff) % _eventQueues.length;
     }
 
     public void registerTimer()
@@ -201,6 +470,16 @@ public class RequestManager
             _ommConsumer.unregisterClient(itemHandle);
         }
         _itemHandles.clear();
+
+        // items requested in batches are only known by the handles of their
+        // responses
+        if (_batchSize > 1)
+        {
+            iter = _answeredHandles.keySet().iterator();
+            while (iter.hasNext())
+                _ommConsumer.unregisterClient((Handle)iter.next());
+        }
+        _answeredHandles.clear();
     }
 
     /**
@@ -231,8 +510,11 @@ public class RequestManager
 
         if (_ommConsumer != null)
             _ommConsumer.destroy();
-        if (_eventQueue != null)
-            _eventQueue.deactivate();
+        for (int i = 0; i < _eventQueues.length; i++)
+        {
+            if (_eventQueues[i] != null)
+                _eventQueues[i].deactivate();
+        }
         if (_session != null)
             _session.release();
         System.out.println(_className + " exiting.");
@@ -244,4 +526,9 @@ public class RequestManager
     {
         return _eventQueue;
     }
+
+    public EventQueue[] getResponseQueues()
+    {
+        return _eventQueues;
+    }
 }
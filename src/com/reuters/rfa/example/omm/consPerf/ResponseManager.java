@@ -1,9 +1,13 @@
 package com.reuters.rfa.example.omm.consPerf;
 
+import java.io.IOException;
+
 import com.reuters.rfa.common.Client;
 import com.reuters.rfa.common.Event;
 import com.reuters.rfa.dictionary.DictionaryException;
 import com.reuters.rfa.dictionary.FieldDictionary;
+import com.reuters.rfa.example.utility.CommandLine;
+import com.reuters.rfa.example.utility.MessageCapture;
 import com.reuters.rfa.omm.OMMMsg;
 import com.reuters.rfa.omm.OMMState;
 import com.reuters.rfa.rdm.RDMMsgTypes;
@@ -13,11 +17,14 @@ import com.reuters.rfa.session.omm.OMMItemEvent;
  * <p>
  * This class handles responses for login, timers and item requests (in
  * {@linkplain com.reuters.rfa.rdm.RDMMsgTypes#MARKET_PRICE MARKET_PRICE} RDM
- * domain).
+ * domain, or the market data domains selected by the item file).
  * 
  * It uses {@link com.reuters.rfa.example.omm.consPerf.DataDisplay
  * DataDisplay} to print statistics at display interval. DataDisplay class also
  * prints the messages at it arrives.
+ * <p>
+ * If captureFile is set, every OMM item event is also appended to a
+ * {@link MessageCapture} which can be replayed with -replayFile.
  * 
  * @see DataDisplay
  */
@@ -29,11 +36,14 @@ public class ResponseManager implements Client
     DataDisplay _dataDisplay;
 
     boolean _loginSuccessful;
+    boolean _printData;
+    MessageCapture _capture;
 
     public void init(RequestManager reqMgr)
     {
         this._reqManager = reqMgr;
         _dataDisplay = new DataDisplay();
+        _printData = CommandLine.booleanVariable("printData");
 
         try
         {
@@ -47,6 +57,22 @@ public class ResponseManager implements Client
                 System.err.println(": " + ex.getCause().getMessage());
             _reqManager.cleanup(-1);
         }
+
+        String captureFile = CommandLine.variable("captureFile");
+        if (captureFile.length() > 0)
+        {
+            try
+            {
+                _capture = new MessageCapture(captureFile, CommandLine
+                        .intVariable("captureSegmentSize") * 1024 * 1024);
+                System.out.println("Capturing responses into " + captureFile);
+            }
+            catch (IOException e)
+            {
+                System.out.println("ERROR: Unable to create capture " + captureFile + ": "
+                        + e.getMessage());
+            }
+        }
     }
 
     public void processEvent(Event event)
@@ -66,6 +92,8 @@ public class ResponseManager implements Client
         }
         OMMItemEvent ie = (OMMItemEvent)event;
         OMMMsg respMsg = ie.getMsg();
+        if (_capture != null)
+            _capture.append(ie);
 
         _dataDisplay.printData(respMsg);
 
@@ -82,15 +110,31 @@ public class ResponseManager implements Client
     private void processItemEvent(OMMItemEvent itemEvent)
     {
         OMMMsg respMsg = itemEvent.getMsg();
+        _dataDisplay.updateStats((MetricsRegistry.Stripe)itemEvent.getClosure(), respMsg);
         if (respMsg.getMsgType() == OMMMsg.MsgType.GENERIC)
         {
             System.out.print(_className + ": Generic Message received, ignoring...");
             return;
         }
-        System.out.println(_className + ".processEvent: Received Item Response... ");
-        if (respMsg.getMsgModelType() == RDMMsgTypes.MARKET_PRICE)
+        // printing every response would serialize the dispatch threads on
+        // System.out
+        if (_printData)
+            System.out.println(_className + ".processEvent: Received Item Response... ");
+        // only MARKET_PRICE unless the item file selects other domains
+        if (isItemDomain(respMsg.getMsgModelType()))
         {
-            _dataDisplay.updateStats(respMsg.getMsgType());
+            // first complete image or final status of an item
+            if ((respMsg.getMsgType() == OMMMsg.MsgType.REFRESH_RESP && respMsg
+                    .isSet(OMMMsg.Indication.REFRESH_COMPLETE))
+                    || (respMsg.getMsgType() == OMMMsg.MsgType.STATUS_RESP && respMsg.isFinal()))
+            {
+                if (_reqManager.itemAnswered(itemEvent.getHandle()))
+                    _dataDisplay.imageReceived();
+            }
+
+            if (respMsg.getMsgType() == OMMMsg.MsgType.UPDATE_RESP
+                    && _dataDisplay.isLatencyEnabled())
+                _dataDisplay.updateLatency(respMsg);
         }
         else
         {
@@ -99,6 +143,26 @@ public class ResponseManager implements Client
         }
     }
 
+    /*
+     * Returns whether items of the message model type can be requested from
+     * the item list or item file
+     */
+    private static boolean isItemDomain(short msgModelType)
+    {
+        switch (msgModelType)
+        {
+            case RDMMsgTypes.MARKET_PRICE:
+            case RDMMsgTypes.MARKET_BY_ORDER:
+            case RDMMsgTypes.MARKET_BY_PRICE:
+            case RDMMsgTypes.MARKET_MAKER:
+            case RDMMsgTypes.SYMBOL_LIST:
+            case RDMMsgTypes.YIELD_CURVE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
     private void processLogin(OMMMsg respMsg)
     {
         System.out.println(_className + ".processEvent: Received Login Response... ");
@@ -111,7 +175,7 @@ public class ResponseManager implements Client
             return;
         }
 
-        _dataDisplay.updateStats(respMsg.getMsgType());
+        _dataDisplay.updateStats(respMsg);
         if ((respMsg.getMsgType() == OMMMsg.MsgType.STATUS_RESP) && (respMsg.has(OMMMsg.HAS_STATE))
                 && (respMsg.getState().getStreamState() == OMMState.Stream.OPEN)
                 && (respMsg.getState().getDataState() == OMMState.Data.OK))
@@ -126,6 +190,48 @@ public class ResponseManager implements Client
         }
     }
 
+    MetricsRegistry.Stripe getStripe(int shard, String serviceName)
+    {
+        return _dataDisplay.getStripe(shard, serviceName);
+    }
+
+    void startImageTimer()
+    {
+        _dataDisplay.startImageTimer();
+    }
+
+    void setImagesExpected(int itemCount)
+    {
+        _dataDisplay.setImagesExpected(itemCount);
+    }
+
+    public void printStats()
+    {
+        _dataDisplay.printStats();
+    }
+
+    public void printSummary()
+    {
+        _dataDisplay.printSummary();
+    }
+
+    /**
+     * Closes the capture, if responses are captured
+     */
+    public void closeCapture()
+    {
+        if (_capture != null)
+            _capture.close();
+    }
+
+    /**
+     * Closes printFile, if messages are printed to a file
+     */
+    public void closePrintFile()
+    {
+        _dataDisplay.closePrintFile();
+    }
+
     public boolean isReady()
     {
         return _loginSuccessful;
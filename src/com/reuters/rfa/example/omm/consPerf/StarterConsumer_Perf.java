@@ -1,13 +1,18 @@
 package com.reuters.rfa.example.omm.consPerf;
 
+import java.io.IOException;
 import java.net.InetAddress;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.reuters.rfa.common.Context;
+import com.reuters.rfa.common.EventQueue;
 import com.reuters.rfa.example.utility.CommandLine;
+import com.reuters.rfa.example.utility.MessageReplay;
 
 /**
  * This is a main class to run StarterConsumer_Perf application.</p>
@@ -22,11 +27,15 @@ import com.reuters.rfa.example.utility.CommandLine;
  * {@link com.reuters.rfa.omm.OMMPool OMMPool}.
  * <li>Create RequestManager and ResponseManager to handle Login / item request
  * and response messages.
- * <li>Dispatcher which dispatches events from an response EventQueue, if there
- * is one.
+ * <li>Dispatchers which dispatch events from the response EventQueues, if
+ * there are any. Item requests are sharded over dispatchThreads queues.
  * <li>Cleanup a Session
  * </ul>
  * 
+ * With replayFile set, no session is created; the messages of a capture
+ * written with captureFile are replayed into the ResponseManager from the
+ * main thread instead, to measure the decode and statistics path offline.
+ * 
  * @see RequestManager
  * @see ResponseManager
  * 
@@ -40,14 +49,29 @@ import com.reuters.rfa.example.utility.CommandLine;
  *      -enumType RDMEnum dictionary name and location. Defaults to
  *      /var/rdm/enumtype.def -displayInterval Throughput display rate (in
  *      seconds). Defaults to 5 -printData Flag to print update response
- *      -printStatistics Flag to print statistics
+ *      -printFormat Format of printed messages, text or json. Defaults to
+ *      text -printFile File to print json messages into, empty for
+ *      System.out -printStatistics Flag to print statistics -latencyFid Field id of
+ *      the provider's send time, 0 to disable latency measurement. Defaults
+ *      to 0 -dispatchThreads Number of response queues and dispatch threads
+ *      to shard item requests over. Defaults to 1 -batchSize Number of items
+ *      per batch request, 0 or 1 to request items individually. Defaults to 0
+ *      -requestWindow Maximum number of outstanding item requests, 0 for no
+ *      limit. Defaults to 0 -itemFile File with one item per line,
+ *      optionally followed by service and message model type; replaces
+ *      itemName if set -mapItemFile Memory-map the itemFile. Defaults to
+ *      false -captureFile Base name of the files to capture responses into,
+ *      empty for no capture -captureSegmentSize Size of each capture file
+ *      in MB. Defaults to 64 -replayFile Capture to replay instead of
+ *      connecting, empty to connect -replaySpeed Replay speed relative to the
+ *      capture, 0 for as fast as possible. Defaults to 1
  */
 
 public class StarterConsumer_Perf
 {
     private static final String _className = "OMMSimpleConsumerPerf";
 
-    Dispatcher _dispatcher = null;
+    Dispatcher[] _dispatchers = null;
 
     RequestManager _reqMgr;
     ResponseManager _responseMgr;
@@ -63,6 +87,14 @@ public class StarterConsumer_Perf
      * Initialize OMM Consumer application and clients
      */
     public void init()
+    {
+        init(CommandLine.variable("session"));
+    }
+
+    /**
+     * Initialize OMM Consumer application and clients on the given session
+     */
+    public void init(String sessionName)
     {
         boolean debug = CommandLine.booleanVariable("debug");
         if (debug)
@@ -88,7 +120,10 @@ public class StarterConsumer_Perf
         _reqMgr = new RequestManager();
 
         _responseMgr.init(_reqMgr);
-        _reqMgr.init(_responseMgr);
+        if (CommandLine.variable("replayFile").length() > 0)
+            _reqMgr.initReplay(_responseMgr);
+        else
+            _reqMgr.init(_responseMgr, sessionName);
 
     }
 
@@ -111,11 +146,23 @@ public class StarterConsumer_Perf
 
     public void run()
     {
-        _dispatcher = new Dispatcher(_reqMgr.getResponseQueue());
+        if (CommandLine.variable("replayFile").length() > 0)
+        {
+            runReplay();
+            return;
+        }
+
+        EventQueue[] queues = _reqMgr.getResponseQueues();
+        _dispatchers = new Dispatcher[queues.length];
+        for (int i = 0; i < queues.length; i++)
+        {
+            _dispatchers[i] = new Dispatcher(queues[i]);
 
-        // start dispatcher
-        _dispatcher.setName(_className + " Controller");
-        _dispatcher.start();
+            // start dispatcher
+            _dispatchers[i].setName(queues.length == 1 ? _className + " Controller" : _className
+                    + " Controller " + i);
+            _dispatchers[i].start();
+        }
 
         // request login, wait for successful login and request items
         _reqMgr.registerTimer();
@@ -140,7 +187,113 @@ public class StarterConsumer_Perf
             System.exit(1);
         }
         System.out.println("Exiting " + _className + " ...");
-        _dispatcher.terminate(_reqMgr);
+        _responseMgr.printSummary();
+        _dispatchers[0].terminate(_reqMgr);
+        for (int i = 1; i < _dispatchers.length; i++)
+            _dispatchers[i].stopDispatch();
+        // the dispatchers capture and print messages until they stop
+        joinDispatchers();
+        _responseMgr.closeCapture();
+        _responseMgr.closePrintFile();
+    }
+
+    private void joinDispatchers()
+    {
+        boolean interrupted = false;
+        for (int i = 0; i < _dispatchers.length; i++)
+        {
+            while (_dispatchers[i].isAlive())
+            {
+                try
+                {
+                    _dispatchers[i].join();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Replays the capture into the ResponseManager until it ends or runTime
+     * expires. All items are counted under shard 0; the service of an item
+     * is taken from the capture, or serviceName if it was not captured.
+     */
+    void runReplay()
+    {
+        String replayFile = CommandLine.variable("replayFile");
+        final MessageReplay replay;
+        try
+        {
+            replay = new MessageReplay(replayFile);
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Unable to open capture " + replayFile + ": "
+                    + e.getMessage());
+            _reqMgr.cleanup(-1);
+            return;
+        }
+
+        final String defaultServiceName = CommandLine.variable("serviceName");
+        replay.setClosureFactory(new MessageReplay.ClosureFactory()
+        {
+            public Object closureFor(int handleId, String serviceName, String itemName)
+            {
+                if (serviceName == null || serviceName.length() == 0)
+                    serviceName = defaultServiceName;
+                return _responseMgr.getStripe(0, serviceName);
+            }
+        });
+        double speed = Double.parseDouble(CommandLine.variable("replaySpeed"));
+        replay.setSpeed(speed);
+        System.out.println("Replaying " + replay.getMessageCount() + " messages of "
+                + replay.getHandleCount() + " handles from " + replayFile
+                + (speed > 0 ? " at speed " + speed : " as fast as possible"));
+
+        // the timer thread prints the statistics & stops the replay after
+        // runTime
+        Timer timer = new Timer(_className + " Timer", true);
+        long displayInterval = CommandLine.intVariable("displayInterval") * 1000L;
+        timer.schedule(new TimerTask()
+        {
+            public void run()
+            {
+                _responseMgr.printStats();
+            }
+        }, displayInterval, displayInterval);
+        timer.schedule(new TimerTask()
+        {
+            public void run()
+            {
+                replay.stop();
+            }
+        }, CommandLine.intVariable("runTime") * 1000L);
+
+        _responseMgr.startImageTimer();
+        long start = System.nanoTime();
+        long replayed = 0;
+        try
+        {
+            replayed = replay.replay(_responseMgr);
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Replay of " + replayFile + " failed: " + e.getMessage());
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        timer.cancel();
+
+        System.out.println("Replayed " + replayed + " messages in " + (long)(secs * 1000)
+                + " msec (" + (secs > 0 ? (long)(replayed / secs) : 0) + " msgs/sec)");
+        System.out.println("Exiting " + _className + " ...");
+        _responseMgr.printSummary();
+        _responseMgr.closePrintFile();
+        _reqMgr.cleanup(0);
     }
 
     /**
@@ -152,6 +305,9 @@ public class StarterConsumer_Perf
         CommandLine.addOption("session", "myNamespace::mySession", "Session name to use");
         CommandLine.addOption("serviceName", "DIRECT_FEED", "service to request");
         CommandLine.addOption("itemName", "TRI.N", "List of items to open separated by ','.");
+        CommandLine.addOption("itemFile", "",
+                              "File of items to open, one 'itemName [serviceName [msgModelType]]' per line. Overrides itemName.");
+        CommandLine.addOption("mapItemFile", false, "Memory-map itemFile instead of reading it");
         CommandLine.addOption("rdmFieldDictionary", "/var/triarch/RDMFieldDictionary",
                               "RDMFieldDictionary filename");
         CommandLine.addOption("enumType", "/var/triarch/enumtype.def", "enumtype.def filename");
@@ -159,7 +315,26 @@ public class StarterConsumer_Perf
                               "How long application should run before exiting (in seconds)");
         CommandLine.addOption("displayInterval", 5, "Throughput display rate (in seconds)");
         CommandLine.addOption("printData", "true", "Display item updates?");
+        CommandLine.addOption("printFormat", "text",
+                              "Format of printed messages: text (indented) or json (one line per message)");
+        CommandLine.addOption("printFile", "",
+                              "File to print json messages into, empty for System.out");
         CommandLine.addOption("printStatistics", "true", "Display statistics at displayInterval?");
+        CommandLine.addOption("dispatchThreads", 1,
+                              "Number of response EventQueues and Dispatcher threads, items are sharded over them by name hash. Ignored with nullEQ.");
+        CommandLine.addOption("batchSize", 0,
+                              "Number of items per batch request, 0 or 1 to request items individually");
+        CommandLine.addOption("requestWindow", 0,
+                              "Maximum number of requested items still waiting for their image, 0 for no limit");
+        CommandLine.addOption("latencyFid", 0,
+                              "Field id holding the provider's send time (usec since epoch or TIME), 0 to disable latency measurement");
+        CommandLine.addOption("captureFile", "",
+                              "Base name of the files to capture all responses into, empty for no capture");
+        CommandLine.addOption("captureSegmentSize", 64, "Size of each capture file (in MB)");
+        CommandLine.addOption("replayFile", "",
+                              "Capture to replay instead of connecting, empty to connect");
+        CommandLine.addOption("replaySpeed", "1",
+                              "Replay speed relative to the capture, 0 for as fast as possible");
         CommandLine.addOption("nullEQ", "false",
                               "test with null EventQueue. In case of null queue, event processing is done in RFA's session layer thread.");
         String username = "guest";
@@ -62,6 +62,14 @@ import com.reuters.rfa.rdm.RDMMsgTypes;
  * <li><b>&lt;domain name&gt;_updateInterval</b>
  * example:MARKET_BY_ORDER_updateInterval - Interval time in seconds between
  * each update message. (default is &quot;3&quot;)
+ * <li><b>updateIntervalMillis</b> - Interval time in milliseconds between
+ * each update message of all domains; overrides the
+ * &lt;domain name&gt;_updateInterval if greater than 0. (default is
+ * &quot;0&quot;)
+ * <li><b>MARKET_PRICE_sendTimeFid</b> - Field id to stamp with the send time
+ * of each Market Price update, in microseconds since the epoch as UINT, e.g.
+ * for the latency measurement of consPerf. (default is &quot;0&quot;, no send
+ * time)
  * <li><b>&lt;domain name&gt;_encodeDataDef</b>
  * example:MARKET_BY_ORDER_encodeDataDef - Enabled option to optimized bandwidth
  * by using DataDefinitions. (default is &quot;true&quot;)
@@ -103,7 +111,7 @@ public class DomainServer
                      "com.reuters.rfa.example.omm.domainServer.symbollist.SymbolListGenerator");
     }
 
-    DomainServer()
+    public DomainServer()
     {
 
         _mainloop = new AppContextMainLoop(System.out);
@@ -155,13 +163,28 @@ public class DomainServer
         }
 
         int updateInterval = CommandLine.intVariable(domainMgrName + "_updateInterval");
+        int updateIntervalMillis = CommandLine.intVariable("updateIntervalMillis");
 
         System.out.println("Initializing ... " + domainMgrName + " domain [" + serviceName + "]");
-        return new RDMProvDomainMgr(_pubContext, dataGenerator, msgModelType, serviceName,
-                updateInterval);
+        RDMProvDomainMgr domainMgr = new RDMProvDomainMgr(_pubContext, dataGenerator,
+                msgModelType, serviceName, updateInterval);
+        if (updateIntervalMillis > 0 && updateInterval > 0)
+            domainMgr.setUpdateIntervalMillis(updateIntervalMillis);
+        return domainMgr;
     }
 
     void init()
+    {
+        start();
+        _mainloop.run();
+    }
+
+    /**
+     * Initializes the provider session and services without dispatching its
+     * events; the caller dispatches the event queue of {@link #getMainLoop()},
+     * e.g. to run the server next to consumers in the same JVM.
+     */
+    public void start()
     {
 
         _pubContext.init();
@@ -179,10 +202,14 @@ public class DomainServer
                 initializaedServices.add(domain.getServiceName());
             }
         }
-        _mainloop.run();
     }
 
-    void cleanup()
+    public AppContextMainLoop getMainLoop()
+    {
+        return _mainloop;
+    }
+
+    public void cleanup()
     {
         System.out.println("Cleaning up resources....");
         _pubContext.cleanup();
@@ -206,6 +233,10 @@ public class DomainServer
                 + " for MarketMaker domain");
         CommandLine.addOption("SYMBOL_LIST_updateInterval", 0, updateIntervalText
                 + " for SymbolList domain");
+        CommandLine.addOption("updateIntervalMillis", 0,
+                              "Interval time in milliseconds between each update message of all domains, overrides <domain name>_updateInterval if > 0");
+        CommandLine.addOption("MARKET_PRICE_sendTimeFid", 0,
+                              "Field id to stamp with the send time of MarketPrice updates (usec since epoch), 0 for none");
 
         String encodeDataDefText = "Enabled option to optimized bandwidth by using DataDefinitions";
         CommandLine.addOption("MARKET_BY_ORDER_encodeDataDef", true, encodeDataDefText
@@ -34,7 +34,7 @@ public class RDMProvDomainMgr extends AbstractProvDomainMgr
     Map<Token, StreamItem> _pendingStreamItems = new Hashtable<Token, StreamItem>();
     Client _timerTask;
     Handle _timerHandle;
-    int _updateInterval;
+    long _updateIntervalMillis;
     boolean _updating;
     DataGenerator _dataGenerator;
 
@@ -43,7 +43,7 @@ public class RDMProvDomainMgr extends AbstractProvDomainMgr
     {
 
         super(context, messageModelType, serviceName);
-        _updateInterval = updateInterval;
+        _updateIntervalMillis = updateInterval * 1000L;
         _dataGenerator = dataGenerator;
         _pubContext.addDomainMgr(this);
 
@@ -97,7 +97,7 @@ public class RDMProvDomainMgr extends AbstractProvDomainMgr
         if  (msg.isSet(OMMMsg.Indication.REFRESH))
             ((DataStreamItem)streamItem).sendRefresh(msg.isSet(OMMMsg.Indication.REFRESH));
 
-        if (_updateInterval > 0 && !_updating && (!msg.isSet(OMMMsg.Indication.NONSTREAMING)))
+        if (_updateIntervalMillis > 0 && !_updating && (!msg.isSet(OMMMsg.Indication.NONSTREAMING)))
         {
             startUpdating();
             _updating = true;
@@ -120,13 +120,26 @@ public class RDMProvDomainMgr extends AbstractProvDomainMgr
         }
     }
 
+    /**
+     * Sets the interval between the updates of all pending streamitems, in
+     * milliseconds, for update rates above one per second. Must be set before
+     * the first request.
+     * 
+     * @param updateIntervalMillis interval in milliseconds, 0 to send no
+     *            updates
+     */
+    public void setUpdateIntervalMillis(long updateIntervalMillis)
+    {
+        _updateIntervalMillis = updateIntervalMillis;
+    }
+
     /**
      * Starts sending update data for all pending streamitems.
      * 
      */
     public void startUpdating()
     {
-        _timerHandle = _pubContext.registerTimerTask(_timerTask, _updateInterval * 1000, true);
+        _timerHandle = _pubContext.registerTimerTask(_timerTask, _updateIntervalMillis, true);
     }
 
     /**
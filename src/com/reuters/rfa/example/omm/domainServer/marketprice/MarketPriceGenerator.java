@@ -8,6 +8,7 @@ import com.reuters.rfa.common.Token;
 import com.reuters.rfa.example.framework.prov.ProvDomainMgr;
 import com.reuters.rfa.example.omm.domainServer.DataGenerator;
 import com.reuters.rfa.example.omm.domainServer.DataStreamItem;
+import com.reuters.rfa.example.utility.CommandLine;
 import com.reuters.rfa.omm.OMMMsg;
 
 /**
@@ -19,7 +20,8 @@ import com.reuters.rfa.omm.OMMMsg;
  * </p>
  * 
  * The bid, ask, trade price and accumulated volume are generated and updated
- * randomly to generate more realistic data.
+ * randomly to generate more realistic data. If MARKET_PRICE_sendTimeFid is
+ * set, updates also carry their send time in that field.
  * 
  * @see MarketPriceStreamItem
  */
@@ -72,6 +74,7 @@ public class MarketPriceGenerator implements DataGenerator
     {
         MarketPriceStreamItem streamItem = new MarketPriceStreamItem(this, mgr, token, msg);
         streamItem.setEncodeDataDef(false);
+        streamItem.setSendTimeFid((short)CommandLine.intVariable("MARKET_PRICE_sendTimeFid"));
         return streamItem;
     }
 
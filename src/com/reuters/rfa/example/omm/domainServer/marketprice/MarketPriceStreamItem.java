@@ -7,6 +7,7 @@ import com.reuters.rfa.example.omm.domainServer.DataGenerator;
 import com.reuters.rfa.example.omm.domainServer.DataStreamItem;
 import com.reuters.rfa.example.omm.domainServer.ItemInfo;
 import com.reuters.rfa.example.omm.domainServer.marketprice.MarketPriceGenerator.Entry;
+import com.reuters.rfa.example.utility.MicroClock;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMEncoder;
 import com.reuters.rfa.omm.OMMFieldList;
@@ -30,6 +31,7 @@ public class MarketPriceStreamItem extends DataStreamItem
     ItemInfo _itemInfo;
     byte[] _preencodedSummaryDataBuffer;
     DataDefDictionary _dataDefDictionary;
+    short _sendTimeFid;
 
     public MarketPriceStreamItem(DataGenerator dataGenerator, ProvDomainMgr mgr, Token token,
             OMMMsg msg)
@@ -54,6 +56,17 @@ public class MarketPriceStreamItem extends DataStreamItem
 
     }
 
+    /**
+     * Sets the field id which carries the send time of updates, in
+     * microseconds since the epoch.
+     * 
+     * @param sendTimeFid field id, 0 to send no send time
+     */
+    public void setSendTimeFid(short sendTimeFid)
+    {
+        _sendTimeFid = sendTimeFid;
+    }
+
     protected void handlePriorityRequest(OMMMsg msg, ItemInfo itemInfo)
     {
         if (!msg.has(OMMMsg.HAS_PRIORITY))
@@ -204,5 +217,11 @@ public class MarketPriceStreamItem extends DataStreamItem
             _encoder.encodeFieldEntryInit((short)267, OMMTypes.TIME); // ASK_TIME
             _encoder.encodeTime(19, 12, 23, 0);
         }
+        else if (_sendTimeFid != 0)
+        {
+            // stamped last, as close to the submit as possible
+            _encoder.encodeFieldEntryInit(_sendTimeFid, OMMTypes.UINT);
+            _encoder.encodeUInt(MicroClock.currentTimeMicros());
+        }
     }
 }
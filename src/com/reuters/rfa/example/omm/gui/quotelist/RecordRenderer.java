@@ -257,7 +257,8 @@ public class RecordRenderer extends Observable implements Client
         if (_record == null)
             return;
 
-        NormalizedEvent nevent = _appContext.getNormalizedEvent(event);
+        // the fields are copied into the renderers before the next event
+        NormalizedEvent nevent = _appContext.getReusableNormalizedEvent(event);
         int msgType = nevent.getMsgType();
         switch (msgType)
         {
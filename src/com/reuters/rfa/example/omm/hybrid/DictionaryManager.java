@@ -11,6 +11,7 @@ import com.reuters.rfa.common.Event;
 import com.reuters.rfa.common.Handle;
 import com.reuters.rfa.dictionary.DictionaryException;
 import com.reuters.rfa.dictionary.FieldDictionary;
+import com.reuters.rfa.example.utility.DictionaryRegistry;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMElementList;
 import com.reuters.rfa.omm.OMMEncoder;
@@ -588,9 +589,7 @@ public class DictionaryManager
         FieldDictionary dictionary = null;
         try
         {
-            dictionary = FieldDictionary.create();
-            FieldDictionary.readRDMFieldDictionary(dictionary, fieldDictionary);
-            FieldDictionary.readEnumTypeDef(dictionary, enumType);
+            dictionary = DictionaryRegistry.loadText(fieldDictionary, enumType);
 
             Dictionary fieldDict = new Dictionary(dictionary.getFieldProperty("Name"),
                     dictionary.getFieldProperty("Version"), RDMDictionary.Type.FIELD_DEFINITIONS,
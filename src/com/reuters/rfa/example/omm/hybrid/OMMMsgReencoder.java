@@ -8,6 +8,7 @@ import com.reuters.rfa.dictionary.DataDefDictionary;
 import com.reuters.rfa.dictionary.DictionaryException;
 import com.reuters.rfa.dictionary.FidDef;
 import com.reuters.rfa.dictionary.FieldDictionary;
+import com.reuters.rfa.example.utility.DictionaryRegistry;
 import com.reuters.rfa.omm.OMMArray;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMData;
@@ -209,11 +210,10 @@ public class OMMMsgReencoder
     {
         try
         {
-            FieldDictionary.readRDMFieldDictionary(_localDictionary, fieldDictionaryFilename);
+            _localDictionary = DictionaryRegistry.load(fieldDictionaryFilename,
+                                                       enumDictionaryFilename);
             System.out.println(_className + " field dictionary read from "
                     + fieldDictionaryFilename);
-
-            FieldDictionary.readEnumTypeDef(_localDictionary, enumDictionaryFilename);
             System.out.println(_className + " enum dictionary read from " + enumDictionaryFilename);
         }
         catch (DictionaryException e)
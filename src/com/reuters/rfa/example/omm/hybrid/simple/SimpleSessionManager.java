@@ -9,6 +9,7 @@ import com.reuters.rfa.example.omm.hybrid.ProviderServer;
 import com.reuters.rfa.example.omm.hybrid.SessionClient;
 import com.reuters.rfa.example.omm.hybrid.SessionManager;
 import com.reuters.rfa.example.utility.CommandLine;
+import com.reuters.rfa.example.utility.DictionaryRegistry;
 
 /**
  * Used for creating {@link SimpleSessionClient SimpleSessionClient}
@@ -18,7 +19,7 @@ import com.reuters.rfa.example.utility.CommandLine;
 public class SimpleSessionManager extends SessionManager
 {
 
-    private final FieldDictionary _dictionary;
+    private FieldDictionary _dictionary;
     private final String _instanceName;
 
     public SimpleSessionManager(HybridDemo hybridDemo)
@@ -42,8 +43,7 @@ public class SimpleSessionManager extends SessionManager
 
         try
         {
-            FieldDictionary.readRDMFieldDictionary(_dictionary, fieldDictionary);
-            FieldDictionary.readEnumTypeDef(_dictionary, enumType);
+            _dictionary = DictionaryRegistry.load(fieldDictionary, enumType);
         }
         catch (DictionaryException e)
         {
@@ -1,5 +1,7 @@
 package com.reuters.rfa.example.omm.multipleConsumers;
 
+import java.io.IOException;
+
 import com.reuters.rfa.common.Client;
 import com.reuters.rfa.common.Event;
 import com.reuters.rfa.common.EventQueue;
@@ -7,6 +9,7 @@ import com.reuters.rfa.common.EventSource;
 import com.reuters.rfa.common.Handle;
 import com.reuters.rfa.example.utility.CommandLine;
 import com.reuters.rfa.example.utility.GenericOMMParser;
+import com.reuters.rfa.example.utility.MessageReplay;
 import com.reuters.rfa.omm.OMMElementList;
 import com.reuters.rfa.omm.OMMEncoder;
 import com.reuters.rfa.omm.OMMMsg;
@@ -38,10 +41,17 @@ import com.reuters.rfa.session.omm.OMMItemIntSpec;
  *       :                - RequestDispatcher thread - Create & Send Item requests
  * </pre>
  * 
+ * The dispatcher threads are platform threads or, in the virtual dispatch
+ * mode, virtual threads (see SessionThreads).
+ * 
+ * A replay session has no RFA session; its ReplayDispatcher thread replays a
+ * message capture into the ItemClient instead.
+ * 
  */
 public class ConsumerClient implements Client
 {
     Session m_session; // RFA session
+    String m_name; // session name
     OMMConsumer m_consumer; // Event Source
     OMMPool m_pool; // Pool
 
@@ -50,6 +60,8 @@ public class ConsumerClient implements Client
     // Response Message Dispatching
     private EventQueue m_responseQ;
     private ResponseDispatcher m_responseMessageDispatcher;
+    private ReplayDispatcher m_replayDispatcher;
+    int m_dispatchMode; // SessionThreads.THREAD, VIRTUAL or NULL_EQ
 
     // Login Status
     private Handle m_loginHandle;
@@ -62,18 +74,35 @@ public class ConsumerClient implements Client
     {
         // _application = application;
         m_session = session;
+        m_name = session.getName();
 
         m_loggedIn = false;
         m_responseQ = null;
         m_responseMessageDispatcher = null;
     }
 
+    /*
+     * Constructor of a replay session
+     */
+    protected ConsumerClient(String name)
+    {
+        m_name = name;
+        m_loggedIn = false;
+    }
+
     /*
      * Cleanup
      */
     void stopTest()
     {
         log("Shutting down....");
+        if (m_replayDispatcher != null)
+        {
+            log("Replay Dispatcher terminating...");
+            m_replayDispatcher.terminate();
+            m_replayDispatcher = null;
+        }
+
         if (m_responseQ != null)
         {
             if (m_responseQ != null)
@@ -131,8 +160,11 @@ public class ConsumerClient implements Client
      * Initialize, Setup EventQ if configured, Send Login Request, Start Item
      * request Dispatcher
      */
-    void login(boolean bUseEventQ, int itemCount, int decodeLevel)
+    void login(int dispatchMode, int itemCount, int decodeLevel)
     {
+        m_dispatchMode = dispatchMode;
+        boolean bVirtual = (dispatchMode == SessionThreads.VIRTUAL);
+
         log("Creating pool............");
         m_pool = OMMPool.create();
 
@@ -143,15 +175,16 @@ public class ConsumerClient implements Client
         m_consumer = (OMMConsumer)m_session.createEventSource(EventSource.OMM_CONSUMER, "Consumer",
                                                               false);
 
-        if (bUseEventQ)
+        if (dispatchMode != SessionThreads.NULL_EQ)
         {
-            log("Using EventQ for Response Dispatching............");
+            log("Using EventQ for Response Dispatching ("
+                    + SessionThreads.MODE_NAMES[dispatchMode] + " dispatcher)............");
 
-            m_responseQ = EventQueue.create(m_session.getName() + "Queue");
+            m_responseQ = EventQueue.create(m_name + "Queue");
 
-            m_responseMessageDispatcher = new ResponseDispatcher(this, m_session.getName(),
-                    m_responseQ); // this is a seperate
-                                  // thread
+            m_responseMessageDispatcher = new ResponseDispatcher(this, m_name,
+                    m_responseQ, bVirtual); // this is a seperate
+                                            // thread
             // TODO
             // _responseMessageDispatcher.setPriority(_dispatchPriority);
         }
@@ -160,13 +193,49 @@ public class ConsumerClient implements Client
         makeLoginRequest(m_responseQ);
 
         // start requestDispatcher
-        RequestDispatcher itemRequestDispatcher = new RequestDispatcher(this, m_session.getName());
+        RequestDispatcher itemRequestDispatcher = new RequestDispatcher(this, m_name,
+                bVirtual);
         itemRequestDispatcher.start();
 
         // log a blank line
         logLine("\n");
     }
 
+    /*
+     * Replay a message capture into the item client instead of logging in;
+     * every handle of the capture is an item. Returns false if the capture
+     * cannot be opened
+     */
+    boolean replay(String replayFile, double speed, int dispatchMode, int decodeLevel)
+    {
+        m_dispatchMode = dispatchMode;
+
+        MessageReplay replay;
+        try
+        {
+            replay = new MessageReplay(replayFile);
+        }
+        catch (IOException e)
+        {
+            log("Unable to open capture " + replayFile + ": " + e.getMessage());
+            return false;
+        }
+        replay.setSpeed(speed);
+
+        // a capture which was not closed has no handle count
+        int itemCount = replay.getHandleCount();
+        m_itemClient = new ItemClient(this, (itemCount < 0) ? Integer.MAX_VALUE : itemCount,
+                decodeLevel);
+        m_loggedIn = true;
+
+        log("Replaying " + replayFile + " (" + SessionThreads.MODE_NAMES[dispatchMode]
+                + " dispatcher)............");
+        m_replayDispatcher = new ReplayDispatcher(this, m_name, replay,
+                dispatchMode == SessionThreads.VIRTUAL);
+        m_replayDispatcher.start();
+        return true;
+    }
+
     /*
      * Create & Send Login Request
      */
@@ -214,6 +283,18 @@ public class ConsumerClient implements Client
         m_responseMessageDispatcher.start();
     }
 
+    /*
+     * Number of events waiting in the response eventQ; -1 if the eventQ is
+     * null
+     */
+    int getQueueDepth()
+    {
+        EventQueue responseQ = m_responseQ;
+        if (responseQ == null)
+            return -1;
+        return responseQ.getEventQueueCurrentSize();
+    }
+
     /*
      * Handle Login events delivered by RFA
      */
@@ -254,7 +335,7 @@ public class ConsumerClient implements Client
      */
     void log(String text)
     {
-        System.out.print("=>" + m_session.getName() + "-");
+        System.out.print("=>" + m_name + "-");
         System.out.println(text);
     }
 
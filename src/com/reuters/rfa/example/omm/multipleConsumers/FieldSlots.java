@@ -0,0 +1,272 @@
+package com.reuters.rfa.example.omm.multipleConsumers;
+
+import java.util.Iterator;
+
+import com.reuters.rfa.omm.OMMData;
+import com.reuters.rfa.omm.OMMDataBuffer;
+import com.reuters.rfa.omm.OMMDateTime;
+import com.reuters.rfa.omm.OMMEnum;
+import com.reuters.rfa.omm.OMMFieldEntry;
+import com.reuters.rfa.omm.OMMFieldList;
+import com.reuters.rfa.omm.OMMNumeric;
+import com.reuters.rfa.omm.OMMTypes;
+
+/**
+ * Latest field values of one item, kept in primitive slots; Used as the
+ * closure of the item request when decoding with ItemClient.DECODE_SLOTS
+ *
+ * <pre>
+ * Every field id of the item gets a slot the first time it is received:
+ * - numeric fields : mantissa (or value) & hint
+ * - enum fields    : enum value
+ * - date/time      : packed into the value, e.g. hour*3600000 + ... + msec
+ * - float/double   : raw bits of the double value
+ * - strings/buffers: a byte range of the item's byte store; the range is
+ *                    overwritten in place while the new value fits
+ * </pre>
+ *
+ * Slots & byte ranges are only allocated when a field id is seen for the
+ * first time or a string outgrows its range, i.e. mostly on the refresh.
+ * Updates usually carry their fields in the same order, so the slot after the
+ * previous hit is tried before searching. Not thread safe; an item is only
+ * decoded by the thread dispatching its events.
+ */
+class FieldSlots
+{
+    private static final int INITIAL_SLOTS = 16;
+    private static final int INITIAL_BYTES = 256;
+
+    short[] m_fids = new short[INITIAL_SLOTS];
+    long[] m_values = new long[INITIAL_SLOTS];
+    byte[] m_hints = new byte[INITIAL_SLOTS];
+    int[] m_enums = new int[INITIAL_SLOTS];
+    int[] m_offsets = new int[INITIAL_SLOTS];
+    int[] m_lengths = new int[INITIAL_SLOTS];
+    int[] m_capacities = new int[INITIAL_SLOTS];
+    int m_count;
+
+    byte[] m_bytes = new byte[INITIAL_BYTES];
+    int m_bytesUsed;
+
+    // slot expected for the next field
+    private int m_cursor;
+
+    /*
+     * Decode the field list into the slots; types are indexed by
+     * (fid & 0xFFFF), fields of unknown type are skipped
+     */
+    void decode(OMMFieldList fieldList, short[] fieldTypes)
+    {
+        m_cursor = 0;
+
+        // RWF field lists hand out the same iterator on every call
+        for (Iterator<?> iter = fieldList.iterator(); iter.hasNext();)
+        {
+            OMMFieldEntry fieldEntry = (OMMFieldEntry)iter.next();
+            short fid = fieldEntry.getFieldId();
+            short type = fieldTypes[fid & 0xFFFF];
+            if (type == OMMTypes.UNKNOWN)
+                continue;
+
+            int slot = slotOf(fid);
+            OMMData data = fieldEntry.getData(type);
+            if (data.isBlank())
+            {
+                m_values[slot] = 0;
+                m_hints[slot] = 0;
+                m_enums[slot] = 0;
+                m_lengths[slot] = 0;
+                continue;
+            }
+            decode(slot, data);
+        }
+    }
+
+    private void decode(int slot, OMMData data)
+    {
+        switch (data.getType())
+        {
+            case OMMTypes.REAL:
+            case OMMTypes.REAL_4RB:
+            case OMMTypes.REAL_8RB:
+                m_values[slot] = ((OMMNumeric)data).getLongValue();
+                m_hints[slot] = ((OMMNumeric)data).getHint();
+                break;
+            case OMMTypes.INT:
+            case OMMTypes.UINT:
+            case OMMTypes.INT_1:
+            case OMMTypes.INT_2:
+            case OMMTypes.INT_4:
+            case OMMTypes.INT_8:
+            case OMMTypes.UINT_1:
+            case OMMTypes.UINT_2:
+            case OMMTypes.UINT_4:
+            case OMMTypes.UINT_8:
+                m_values[slot] = ((OMMNumeric)data).toLong();
+                break;
+            case OMMTypes.FLOAT:
+            case OMMTypes.FLOAT_4:
+            case OMMTypes.DOUBLE:
+            case OMMTypes.DOUBLE_8:
+                m_values[slot] = Double.doubleToRawLongBits(((OMMNumeric)data).toDouble());
+                break;
+            case OMMTypes.ENUM:
+                m_enums[slot] = ((OMMEnum)data).getValue();
+                break;
+            case OMMTypes.TIME:
+            case OMMTypes.TIME_3:
+            case OMMTypes.TIME_5:
+            {
+                OMMDateTime dt = (OMMDateTime)data;
+                m_values[slot] = ((dt.getHour() * 60L + dt.getMinute()) * 60L + dt.getSecond())
+                        * 1000L + dt.getMillisecond();
+                break;
+            }
+            case OMMTypes.DATE:
+            case OMMTypes.DATE_4:
+            {
+                OMMDateTime dt = (OMMDateTime)data;
+                m_values[slot] = (dt.getYear() * 100L + dt.getMonth()) * 100L + dt.getDate();
+                break;
+            }
+            case OMMTypes.DATETIME:
+            case OMMTypes.DATETIME_7:
+            case OMMTypes.DATETIME_9:
+            {
+                // yyyymmdd in the high bits, msec of the day in the low 32 bits
+                OMMDateTime dt = (OMMDateTime)data;
+                long date = (dt.getYear() * 100L + dt.getMonth()) * 100L + dt.getDate();
+                long time = ((dt.getHour() * 60L + dt.getMinute()) * 60L + dt.getSecond())
+                        * 1000L + dt.getMillisecond();
+                m_values[slot] = (date << 32) | time;
+                break;
+            }
+            case OMMTypes.RMTES_STRING:
+            case OMMTypes.ASCII_STRING:
+            case OMMTypes.UTF8_STRING:
+            case OMMTypes.BUFFER:
+            case OMMTypes.OPAQUE_BUFFER:
+                copyBytes(slot, (OMMDataBuffer)data);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /*
+     * Copy the bytes of the buffer into the byte range of the slot
+     */
+    private void copyBytes(int slot, OMMDataBuffer data)
+    {
+        int length = data.getEncodedLength();
+        if (length > m_capacities[slot])
+        {
+            // new range at the end of the byte store; the old range is lost
+            // until the store is compacted on growth
+            if (m_bytesUsed + length > m_bytes.length)
+                growBytes(length);
+            m_offsets[slot] = m_bytesUsed;
+            m_capacities[slot] = length;
+            m_bytesUsed += length;
+        }
+        m_lengths[slot] = data.getBytes(m_bytes, m_offsets[slot]);
+    }
+
+    private void growBytes(int length)
+    {
+        int used = 0;
+        for (int i = 0; i < m_count; i++)
+            used += m_capacities[i];
+        int size = m_bytes.length;
+        while (size < (used + length) * 2)
+            size *= 2;
+
+        byte[] bytes = new byte[size];
+        int offset = 0;
+        for (int i = 0; i < m_count; i++)
+        {
+            System.arraycopy(m_bytes, m_offsets[i], bytes, offset, m_lengths[i]);
+            m_offsets[i] = offset;
+            offset += m_capacities[i];
+        }
+        m_bytes = bytes;
+        m_bytesUsed = offset;
+    }
+
+    /*
+     * Returns the slot of the field id, adding one if the field id is new
+     */
+    int slotOf(short fid)
+    {
+        int slot = m_cursor;
+        if (slot >= m_count || m_fids[slot] != fid)
+        {
+            slot = find(fid);
+            if (slot < 0)
+                slot = add(fid);
+        }
+        m_cursor = slot + 1;
+        return slot;
+    }
+
+    /*
+     * Returns the slot of the field id, -1 if not received yet
+     */
+    int find(short fid)
+    {
+        for (int i = 0; i < m_count; i++)
+        {
+            if (m_fids[i] == fid)
+                return i;
+        }
+        return -1;
+    }
+
+    private int add(short fid)
+    {
+        if (m_count == m_fids.length)
+        {
+            int size = m_count * 2;
+            m_fids = copyOf(m_fids, size);
+            m_values = copyOf(m_values, size);
+            m_hints = copyOf(m_hints, size);
+            m_enums = copyOf(m_enums, size);
+            m_offsets = copyOf(m_offsets, size);
+            m_lengths = copyOf(m_lengths, size);
+            m_capacities = copyOf(m_capacities, size);
+        }
+        m_fids[m_count] = fid;
+        return m_count++;
+    }
+
+    private static short[] copyOf(short[] array, int size)
+    {
+        short[] copy = new short[size];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static long[] copyOf(long[] array, int size)
+    {
+        long[] copy = new long[size];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static byte[] copyOf(byte[] array, int size)
+    {
+        byte[] copy = new byte[size];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static int[] copyOf(int[] array, int size)
+    {
+        int[] copy = new int[size];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+}
+// //////////////////////////////////////////////////////////////////////////////
+// / End of file
+// //////////////////////////////////////////////////////////////////////////////
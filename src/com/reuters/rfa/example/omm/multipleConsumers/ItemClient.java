@@ -1,11 +1,13 @@
 package com.reuters.rfa.example.omm.multipleConsumers;
 
+import java.io.IOException;
 import java.util.Iterator;
 
 import com.reuters.rfa.common.Client;
 import com.reuters.rfa.common.Event;
 import com.reuters.rfa.common.EventQueue;
 import com.reuters.rfa.example.utility.CommandLine;
+import com.reuters.rfa.example.utility.ItemListReader;
 import com.reuters.rfa.omm.OMMArray;
 import com.reuters.rfa.omm.OMMData;
 import com.reuters.rfa.omm.OMMDataBuffer;
@@ -32,8 +34,9 @@ public class ItemClient implements Client
     // parent
     private final ConsumerClient m_consumerClient;
 
-    // input configuration
-    int m_itemCount;
+    // input configuration; the item count of an item file is only known once
+    // the whole file has been requested
+    volatile int m_itemCount;
     int m_decodeLevel;
 
     // response data decoding
@@ -42,10 +45,11 @@ public class ItemClient implements Client
     static final int DECODE_DATA = 3;
     static final int DECODE_CONTENTS = 4;
     static final int DECODE_ALL = 5;
+    static final int DECODE_SLOTS = 6; // decode all into FieldSlots, no allocation
     private byte[] m_bytes;
 
     // statistics
-    boolean m_bAllImagesReceived;
+    volatile boolean m_bAllImagesReceived;
     int m_updateCurrentInterval;
     int m_refreshCurrentInterval;
     int m_statusCurrentInterval;
@@ -53,7 +57,10 @@ public class ItemClient implements Client
     int m_requestCurrentInterval;
 
     int m_requestTotal;
-    int m_refreshTotal;
+    volatile int m_refreshTotal; // read by makeRequests and StatisticsRecorder
+    long m_updateTotal;
+    long m_statusTotal;
+    long m_finalStatusTotal;
 
     /*
      * Constructor
@@ -76,12 +83,20 @@ public class ItemClient implements Client
     public void processEvent(Event event)
     {
         OMMMsg msg = ((OMMItemEvent)event).getMsg();
+        if (MultipleConsumers.m_capture != null)
+            MultipleConsumers.m_capture.append((OMMItemEvent)event);
+
+        // decode images & updates into the item's slots
+        if (m_decodeLevel == DECODE_SLOTS && msg.getDataType() == OMMTypes.FIELD_LIST)
+            ((FieldSlots)event.getClosure()).decode((OMMFieldList)msg.getPayload(),
+                                                    MultipleConsumers.m_fieldTypes);
 
         // decode update based on input configuration
         if (msg.getMsgType() == OMMMsg.MsgType.UPDATE_RESP)
         {
             m_updateCurrentInterval++;
-            if (m_decodeLevel >= DECODE_PAYLOAD)
+            m_updateTotal++;
+            if (m_decodeLevel >= DECODE_PAYLOAD && m_decodeLevel != DECODE_SLOTS)
             {
                 if (msg.getDataType() == OMMTypes.FIELD_LIST)
                 {
@@ -112,21 +127,34 @@ public class ItemClient implements Client
         if (msg.getMsgType() == OMMMsg.MsgType.REFRESH_RESP)
         {
             m_refreshCurrentInterval++;
-            m_refreshTotal++;
-            if (++m_refreshTotal == m_itemCount)
-            {
-                m_bAllImagesReceived = true;
-                m_consumerClient.log("Received all " + m_itemCount
-                        + " images; Ready to receive updates!");
-            }
+            if (++m_refreshTotal >= m_itemCount && !m_bAllImagesReceived)
+                allImagesReceived();
             return;
         }
 
         // handle status messages
         if (msg.isFinal())
+        {
             m_finalStatusCurrentInterval++;
+            m_finalStatusTotal++;
+        }
         else
+        {
             m_statusCurrentInterval++;
+            m_statusTotal++;
+        }
+    }
+
+    /*
+     * Called by the dispatch thread, or by makeRequests when the images came
+     * before the item count was known; only the first call is logged
+     */
+    synchronized void allImagesReceived()
+    {
+        if (m_bAllImagesReceived)
+            return;
+        m_bAllImagesReceived = true;
+        m_consumerClient.log("Received all " + m_itemCount + " images; Ready to receive updates!");
     }
 
     /*
@@ -329,6 +357,14 @@ public class ItemClient implements Client
 
         OMMItemIntSpec spec = new OMMItemIntSpec();
 
+        String itemFile = CommandLine.variable("itemFile");
+        if (itemFile.length() > 0)
+        {
+            makeRequests(eventQ, itemFile, servicename, mmt, msg, spec);
+            m_consumerClient.m_pool.releaseMsg(msg);
+            return;
+        }
+
         String[] buildRicList = buildRicList(m_itemCount, ".O");
         for (int i = 0; i < buildRicList.length; i++)
         {
@@ -336,7 +372,7 @@ public class ItemClient implements Client
 
             msg.setAttribInfo(servicename, itemName, RDMInstrument.NameType.RIC);
             spec.setMsg(msg);
-            m_consumerClient.m_consumer.registerClient(eventQ, spec, this, null);
+            m_consumerClient.m_consumer.registerClient(eventQ, spec, this, newClosure());
             m_requestCurrentInterval++;
             m_requestTotal++;
         }
@@ -345,6 +381,65 @@ public class ItemClient implements Client
         m_consumerClient.m_pool.releaseMsg(msg);
     }
 
+    /*
+     * Create & Send Item requests while reading them from the item file; every
+     * line may override the service name & message model type
+     */
+    private void makeRequests(EventQueue eventQ, String itemFile, String servicename, short mmt,
+            OMMMsg msg, OMMItemIntSpec spec)
+    {
+        // no "all images" until the item count is known
+        m_itemCount = Integer.MAX_VALUE;
+
+        int count = 0;
+        ItemListReader reader = null;
+        try
+        {
+            reader = new ItemListReader(itemFile, servicename, mmt,
+                    CommandLine.booleanVariable("mapItemFile"));
+            while (reader.next())
+            {
+                if (reader.getMsgModelType() < 0)
+                {
+                    m_consumerClient.log("Unknown message model type in line "
+                            + reader.getLineNumber() + " of " + itemFile);
+                    continue;
+                }
+                msg.setMsgModelType(reader.getMsgModelType());
+                msg.setAttribInfo(reader.getServiceName(), reader.getItemName(),
+                                  RDMInstrument.NameType.RIC);
+                spec.setMsg(msg);
+                m_consumerClient.m_consumer.registerClient(eventQ, spec, this, newClosure());
+                m_requestCurrentInterval++;
+                m_requestTotal++;
+                count++;
+            }
+        }
+        catch (IOException e)
+        {
+            m_consumerClient.log("Error reading " + itemFile + ": " + e.getMessage());
+        }
+        finally
+        {
+            if (reader != null)
+                reader.close();
+        }
+
+        m_itemCount = count;
+        m_consumerClient.log("Requested " + count + " items from " + itemFile);
+        if (m_refreshTotal >= count && !m_bAllImagesReceived)
+            allImagesReceived();
+    }
+
+    /*
+     * Closure of an item request; the item's field slots if decoding into
+     * slots
+     */
+    Object newClosure()
+    {
+        return (m_decodeLevel == DECODE_SLOTS) ? new FieldSlots() : null;
+    }
+
     /*
      * Build RIC list
      */
@@ -419,7 +514,7 @@ public class ItemClient implements Client
         // request, refresh, update, status
         dumpString.append(counter);
         dumpString.append(".(");
-        dumpString.append(m_consumerClient.m_session.getName());
+        dumpString.append(m_consumerClient.m_name);
         dumpString.append(") ");
 
         appendGeneralStatistics(dumpString);
@@ -437,7 +532,7 @@ public class ItemClient implements Client
     {
         dumpString.append(counter);
         dumpString.append(".(");
-        dumpString.append(m_consumerClient.m_session.getName());
+        dumpString.append(m_consumerClient.m_name);
         dumpString.append(") ");
 
         if (m_consumerClient.m_loggedIn == false) // pending login
@@ -0,0 +1,180 @@
+package com.reuters.rfa.example.omm.multipleConsumers;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Samples JVM statistics for the statistics timer
+ *
+ * <pre>
+ * - allocated bytes: sum of the bytes allocated by each live thread since the
+ *   previous sample, using the HotSpot thread allocation counters. Bytes
+ *   allocated by a thread which ended between two samples are not counted.
+ *   Virtual threads are counted as part of their carrier threads.
+ * - GC time & count: accumulated collection time (msec) & collections of all
+ *   garbage collectors since the previous sample
+ * - heap used: used heap memory at the sample
+ * </pre>
+ *
+ * Called from the statistics timer thread only.
+ */
+class JvmStats
+{
+    private final ThreadMXBean m_threadBean = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean m_memoryBean = ManagementFactory.getMemoryMXBean();
+    private final List<GarbageCollectorMXBean> m_gcBeans = ManagementFactory
+            .getGarbageCollectorMXBeans();
+    private com.sun.management.ThreadMXBean m_allocationBean;
+
+    // last sample
+    private long m_allocatedBytes;
+    private long m_gcTime;
+    private long m_gcCount;
+    private long m_heapUsed;
+
+    // totals at the last sample
+    private long m_lastGcTime;
+    private long m_lastGcCount;
+
+    // allocated bytes of each thread at the previous sample
+    private HashMap<Long, Long> m_lastAllocated = new HashMap<Long, Long>();
+    private HashMap<Long, Long> m_allocated = new HashMap<Long, Long>();
+
+    JvmStats()
+    {
+        if (m_threadBean instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)m_threadBean;
+            try
+            {
+                if (bean.isThreadAllocatedMemorySupported())
+                {
+                    bean.setThreadAllocatedMemoryEnabled(true);
+                    m_allocationBean = bean;
+                }
+            }
+            catch (UnsupportedOperationException e)
+            {
+            }
+        }
+        sample();
+    }
+
+    /*
+     * Take a sample; the getters return the values of the latest sample
+     */
+    void sample()
+    {
+        m_allocatedBytes = sampleAllocatedBytes();
+
+        long gcTime = 0;
+        long gcCount = 0;
+        for (Iterator<GarbageCollectorMXBean> iter = m_gcBeans.iterator(); iter.hasNext();)
+        {
+            GarbageCollectorMXBean gcBean = iter.next();
+            gcTime += Math.max(0, gcBean.getCollectionTime());
+            gcCount += Math.max(0, gcBean.getCollectionCount());
+        }
+        m_gcTime = gcTime - m_lastGcTime;
+        m_gcCount = gcCount - m_lastGcCount;
+        m_lastGcTime = gcTime;
+        m_lastGcCount = gcCount;
+
+        m_heapUsed = m_memoryBean.getHeapMemoryUsage().getUsed();
+    }
+
+    /*
+     * Bytes allocated between the last two samples, -1 if not supported
+     */
+    long getAllocatedBytes()
+    {
+        return m_allocatedBytes;
+    }
+
+    /*
+     * GC time (msec) between the last two samples
+     */
+    long getGcTime()
+    {
+        return m_gcTime;
+    }
+
+    /*
+     * Number of collections between the last two samples
+     */
+    long getGcCount()
+    {
+        return m_gcCount;
+    }
+
+    /*
+     * Used heap memory at the last sample
+     */
+    long getHeapUsed()
+    {
+        return m_heapUsed;
+    }
+
+    /*
+     * Returns false if allocated bytes are not available on this JVM
+     */
+    boolean isAllocationSupported()
+    {
+        return m_allocationBean != null;
+    }
+
+    /*
+     * Returns the bytes allocated since the previous sample, -1 if not
+     * supported
+     */
+    private long sampleAllocatedBytes()
+    {
+        if (m_allocationBean == null)
+            return -1;
+
+        long[] ids = m_threadBean.getAllThreadIds();
+        long[] allocated = m_allocationBean.getThreadAllocatedBytes(ids);
+
+        long total = 0;
+        for (int i = 0; i < ids.length; i++)
+        {
+            if (allocated[i] < 0) // thread ended
+                continue;
+            Long id = Long.valueOf(ids[i]);
+            Long last = m_lastAllocated.get(id);
+            total += allocated[i] - ((last == null) ? 0 : last.longValue());
+            m_allocated.put(id, Long.valueOf(allocated[i]));
+        }
+
+        // forget the threads which ended
+        HashMap<Long, Long> swap = m_lastAllocated;
+        m_lastAllocated = m_allocated;
+        m_allocated = swap;
+        m_allocated.clear();
+        return total;
+    }
+
+    /*
+     * Number of live platform threads
+     */
+    int getThreadCount()
+    {
+        return m_threadBean.getThreadCount();
+    }
+
+    /*
+     * Peak number of live platform threads
+     */
+    int getPeakThreadCount()
+    {
+        return m_threadBean.getPeakThreadCount();
+    }
+}
+// //////////////////////////////////////////////////////////////////////////////
+// / End of file
+// //////////////////////////////////////////////////////////////////////////////
@@ -1,5 +1,6 @@
 package com.reuters.rfa.example.omm.multipleConsumers;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.Timer;
@@ -8,8 +9,11 @@ import java.util.TimerTask;
 import com.reuters.rfa.common.Context;
 import com.reuters.rfa.config.ConfigDb;
 import com.reuters.rfa.dictionary.DictionaryException;
+import com.reuters.rfa.dictionary.FidDef;
 import com.reuters.rfa.dictionary.FieldDictionary;
 import com.reuters.rfa.example.utility.CommandLine;
+import com.reuters.rfa.example.utility.DictionaryRegistry;
+import com.reuters.rfa.example.utility.MessageCapture;
 import com.reuters.rfa.session.Session;
 
 /**
@@ -19,8 +23,12 @@ import com.reuters.rfa.session.Session;
  * For each session, creates ConsumerClient. The ConsumerClient creates an
  * OMMConsumer event source & requests Login <li>Maintains a timer to collect
  * and print message statistics every 5 secs <li>Supports input configuration
- * for itemCount, decodeLevel & eventQUsage/session <li>Executes the application
- * for a configurable time period
+ * for itemCount, decodeLevel & eventQUsage/session <li>Dispatches the eventQ of
+ * each session on a platform thread or a virtual thread (-dispatchMode), and
+ * compares the update rates of the dispatch modes in the statistics <li>
+ * Captures the responses of all sessions into a file (-captureFile), or
+ * replays a capture into each session instead of connecting (-replayFile)
+ * <li>Executes the application for a configurable time period
  * 
  * <pre>
  *   List of ConsumerClients
@@ -46,6 +54,13 @@ public class MultipleConsumers
     // -sessionCount 2 -runTime 1000 -nullEventQList 1 -autoSession true
     // -autoStartPort 14001
     //
+    // Thousands of sessions, dispatched by virtual threads (Java 21):
+    // -sessionCount 2000 -itemCount 100 -dispatchMode virtual
+    // -carrierThreads 8
+    //
+    // Offline, replaying a capture into 4 sessions as fast as possible:
+    // -replayFile capture.rcap -replaySpeed 0 -sessionCount 4 -decodeLevel 6
+    //
     // JVM options:
     // -server -Xms1024m -Xmx1024m -XX:+AggressiveOpts
     // -XX:+UseBiasedLocking -XX:+UseFastAccessorMethods
@@ -56,13 +71,20 @@ public class MultipleConsumers
     // field dictionary
     static protected FieldDictionary m_Dictionary;
 
+    // OMM type of each field id, indexed by (fid & 0xFFFF)
+    static protected short[] m_fieldTypes;
+
+    // capture of the responses of all sessions, if configured
+    static MessageCapture m_capture;
+    static private boolean m_bReplay;
+
     // statistics timer
     private static StatisticsTimerTask m_statsTimerTask;
     private static Timer m_statsTimer;
 
     // input configuration
     static int m_sessionCount;
-    static private boolean m_bUseEventQ[];
+    static private int m_dispatchMode[];
     static private int m_decodeLevel;
     static private int m_itemCount;
 
@@ -84,6 +106,7 @@ public class MultipleConsumers
         if (m_statsTimerTask != null)
         {
             m_statsTimerTask.cancel();
+            m_statsTimerTask.finish();
             m_statsTimerTask = null;
         }
 
@@ -94,8 +117,15 @@ public class MultipleConsumers
                 ((ConsumerClient)m_consumerClientList.get(i)).stopTest();
         }
 
+        if (m_capture != null)
+        {
+            m_capture.close();
+            m_capture = null;
+        }
+
         // uninitialize RFA
-        Context.uninitialize();
+        if (!m_bReplay)
+            Context.uninitialize();
     }
 
     /*
@@ -122,8 +152,17 @@ public class MultipleConsumers
 
         int sessionCount = CommandLine.intVariable("sessionCount");
 
+        String replayFile = CommandLine.variable("replayFile");
+        m_bReplay = (replayFile.length() > 0);
         boolean bAutoSession = CommandLine.booleanVariable("autoSession");
-        if (bAutoSession == false)
+        if (m_bReplay)
+        {
+            // no RFA sessions; every session replays the capture
+            for (int i = 0; i < Math.max(1, sessionCount); i++)
+                m_consumerClientList.add(new ConsumerClient("replay_" + (i + 1)));
+            sessionCount = m_consumerClientList.size();
+        }
+        else if (bAutoSession == false)
         {
             Context.initialize();
 
@@ -195,10 +234,36 @@ public class MultipleConsumers
             return false;
         }
 
+        // setup dispatch mode of the sessions using an eventQ
+        String dispatchModeName = CommandLine.variable("dispatchMode");
+        int dispatchMode = SessionThreads.modeOf(dispatchModeName);
+        if (dispatchMode != SessionThreads.THREAD && dispatchMode != SessionThreads.VIRTUAL)
+        {
+            System.out.println("Unknown dispatchMode " + dispatchModeName + "; using thread");
+            dispatchMode = SessionThreads.THREAD;
+        }
+        if (dispatchMode == SessionThreads.VIRTUAL)
+        {
+            int carrierThreads = CommandLine.intVariable("carrierThreads");
+            if (carrierThreads <= 0)
+                carrierThreads = Runtime.getRuntime().availableProcessors();
+            if (SessionThreads.initVirtualThreads(carrierThreads))
+            {
+                System.out.println("Dispatching with virtual threads on "
+                        + SessionThreads.getCarrierThreads() + " carrier threads");
+            }
+            else
+            {
+                System.out.println("Virtual threads are not supported by this JVM ("
+                        + System.getProperty("java.version") + "); using thread");
+                dispatchMode = SessionThreads.THREAD;
+            }
+        }
+
         // setup eventQ usage; default queues are used
-        m_bUseEventQ = new boolean[m_sessionCount];
+        m_dispatchMode = new int[m_sessionCount];
         for (int i = 0; i < m_sessionCount; i++)
-            m_bUseEventQ[i] = true;
+            m_dispatchMode[i] = dispatchMode;
 
         // setup eventQ usage based on input
         String eventQueueOptions = CommandLine.variable("nullEventQList");
@@ -217,8 +282,8 @@ public class MultipleConsumers
                 {
                     end = Integer.parseInt(individualPieces[1]);
                 }
-                if (end > m_bUseEventQ.length)
-                    end = m_bUseEventQ.length;
+                if (end > m_dispatchMode.length)
+                    end = m_dispatchMode.length;
                 if (begin > end)
                     continue;
 
@@ -227,7 +292,7 @@ public class MultipleConsumers
 
                 for (int j = begin; j <= end; j++)
                 {
-                    m_bUseEventQ[j - 1] = false;
+                    m_dispatchMode[j - 1] = SessionThreads.NULL_EQ;
                 }
             }
         }
@@ -237,17 +302,46 @@ public class MultipleConsumers
         if (m_decodeLevel > 0)
         {
             loadDictionary();
-            if (m_decodeLevel > 5) // max level
+            if (m_decodeLevel > ItemClient.DECODE_SLOTS) // max level
+            {
+                m_decodeLevel = ItemClient.DECODE_SLOTS;
+            }
+        }
+
+        // capture responses
+        String captureFile = CommandLine.variable("captureFile");
+        if (captureFile.length() > 0 && !m_bReplay)
+        {
+            try
+            {
+                m_capture = new MessageCapture(captureFile, CommandLine
+                        .intVariable("captureSegmentSize") * 1024 * 1024);
+                System.out.println("Capturing responses of all sessions into " + captureFile);
+            }
+            catch (IOException e)
+            {
+                System.out.println("Unable to create capture " + captureFile + ": "
+                        + e.getMessage());
+            }
+        }
+
+        // for each replay session, start replaying
+        if (m_bReplay)
+        {
+            double speed = Double.parseDouble(CommandLine.variable("replaySpeed"));
+            for (int i = 0; i < m_sessionCount; i++)
             {
-                m_decodeLevel = 5;
+                ConsumerClient consumerClient = (ConsumerClient)m_consumerClientList.get(i);
+                if (!consumerClient.replay(replayFile, speed, m_dispatchMode[i], m_decodeLevel))
+                    return false;
             }
         }
 
         // for each session-consumer, send login request;
-        for (int i = 0; i < m_sessionCount; i++)
+        for (int i = 0; i < m_sessionCount && !m_bReplay; i++)
         {
             ConsumerClient consumerClient = (ConsumerClient)m_consumerClientList.get(i);
-            consumerClient.login(m_bUseEventQ[i], m_itemCount, m_decodeLevel);
+            consumerClient.login(m_dispatchMode[i], m_itemCount, m_decodeLevel);
 
             // start response message dispatcher, if available
             consumerClient.startResponseDispatcher();
@@ -255,7 +349,12 @@ public class MultipleConsumers
 
         // start monitor
         m_statsTimer = new Timer("Statistics Timer");
-        m_statsTimerTask = new StatisticsTimerTask();
+        StatisticsRecorder recorder = new StatisticsRecorder(m_consumerClientList, m_sessionCount,
+                m_decodeLevel);
+        String statsFile = CommandLine.variable("statsFile");
+        if (statsFile.length() > 0)
+            recorder.open(statsFile, CommandLine.variable("statsFormat"));
+        m_statsTimerTask = new StatisticsTimerTask(recorder);
         m_statsTimer.scheduleAtFixedRate(m_statsTimerTask, 0, 5000);
 
         return true;
@@ -269,12 +368,19 @@ public class MultipleConsumers
         String _fieldDictionaryFilename = CommandLine.variable("rdmFieldDictionary");
         String _enumDictionaryFilename = CommandLine.variable("enumType");
         m_Dictionary = FieldDictionary.create();
+        m_fieldTypes = new short[0x10000];
         try
         {
-            FieldDictionary.readRDMFieldDictionary(m_Dictionary, _fieldDictionaryFilename);
-            FieldDictionary.readEnumTypeDef(m_Dictionary, _enumDictionaryFilename);
+            m_Dictionary = DictionaryRegistry.load(_fieldDictionaryFilename, _enumDictionaryFilename);
             System.out.println("Dictionary loaded from " + _fieldDictionaryFilename + ", "
                     + _enumDictionaryFilename);
+
+            for (int fid = m_Dictionary.getMinNegFieldId(); fid <= m_Dictionary.getMaxFieldId(); fid++)
+            {
+                FidDef fidDef = m_Dictionary.getFidDef((short)fid);
+                if (fidDef != null)
+                    m_fieldTypes[fid & 0xFFFF] = fidDef.getOMMType();
+            }
         }
         catch (DictionaryException e)
         {
@@ -319,8 +425,11 @@ public class MultipleConsumers
 
         CommandLine.addOption("itemCount", 50000,
                               "The number of items to request from each session");
+        CommandLine.addOption("itemFile", "",
+                              "File of items to request from each session, one 'itemName [serviceName [mmt]]' per line; overrides itemCount");
+        CommandLine.addOption("mapItemFile", false, "Memory-map itemFile instead of reading it");
         CommandLine.addOption("decodeLevel", 0,
-                           "Decode every update (0=no, 1=iterate, 2=fiddef, 3=data, 4=field content except strings, 5=decode all");
+                           "Decode every update (0=no, 1=iterate, 2=fiddef, 3=data, 4=field content except strings, 5=decode all, 6=decode all into per-item slots without allocation");
 
         CommandLine.addOption("sessionList", "localhost:14002,localhost:14003",
                               "comma separated list of hosts");
@@ -332,6 +441,22 @@ public class MultipleConsumers
 
         CommandLine.addOption("nullEventQList", "",
                               "comma separated list of null event Q usage for the sessions");
+        CommandLine.addOption("dispatchMode", "thread",
+                              "dispatcher threads of the sessions using an event Q (thread or virtual)");
+        CommandLine.addOption("carrierThreads", 0,
+                              "carrier threads of the virtual dispatchers; 0 = number of processors");
+
+        CommandLine.addOption("statsFile", "",
+                              "file to write the statistics of every interval to; none if empty");
+        CommandLine.addOption("statsFormat", "csv", "format of statsFile (csv or json)");
+
+        CommandLine.addOption("captureFile", "",
+                              "base name of the files to capture the responses of all sessions into; none if empty");
+        CommandLine.addOption("captureSegmentSize", 64, "size of each capture file (MB)");
+        CommandLine.addOption("replayFile", "",
+                              "capture to replay into each session instead of connecting; connect if empty");
+        CommandLine.addOption("replaySpeed", "1",
+                              "replay speed relative to the capture; 0 = as fast as possible");
 
         CommandLine.addOption("mmt", "MARKET_PRICE", "message model type");
         CommandLine.addOption("runTime", "600", "Run time (secs) of the application");
@@ -347,7 +472,19 @@ public class MultipleConsumers
         StringBuilder m_dumpString = new StringBuilder(100);
         boolean m_bUpdatesReadyOnAllClients = false;
 
-        public void run()
+        // dispatch mode & decode level comparison, time series
+        JvmStats m_jvmStats = new JvmStats();
+        StatisticsRecorder m_recorder;
+        long m_startTime = System.nanoTime();
+        long m_lastTime = m_startTime;
+        long[] m_lastUpdateTotal = new long[SessionThreads.MODE_COUNT];
+
+        StatisticsTimerTask(StatisticsRecorder recorder)
+        {
+            m_recorder = recorder;
+        }
+
+        public synchronized void run()
         {
             if (m_bUpdatesReadyOnAllClients == false)
             {
@@ -390,6 +527,112 @@ public class MultipleConsumers
 
             if (m_bUpdatesReadyOnAllClients == false)
                 System.out.println();
+
+            double secs = sampleInterval();
+            printDispatchStats(secs);
+            m_recorder.record(m_statsCounter, secs, m_jvmStats);
+        }
+
+        /*
+         * Sample the JVM at the end of an interval; returns the length of the
+         * interval in secs
+         */
+        private double sampleInterval()
+        {
+            long now = System.nanoTime();
+            double secs = (now - m_lastTime) / 1e9;
+            m_lastTime = now;
+            m_jvmStats.sample();
+            return secs;
+        }
+
+        /*
+         * Record the last, partial interval, print the summary table & close
+         * the statistics file; called once the task is cancelled, waits for
+         * a run in progress
+         */
+        synchronized void finish()
+        {
+            double secs = sampleInterval();
+            m_recorder.record(m_statsCounter + 1, secs, m_jvmStats);
+            m_recorder.printSummary((System.nanoTime() - m_startTime) / 1e9, m_jvmStats);
+            m_recorder.close();
+        }
+
+        /*
+         * Print the update rate of each dispatch mode in use, per session, the
+         * number of platform threads, and the allocation rate of the decode
+         * level; virtual threads are not counted as live threads
+         */
+        void printDispatchStats(double secs)
+        {
+            int[] sessions = new int[SessionThreads.MODE_COUNT];
+            long[] updateTotal = new long[SessionThreads.MODE_COUNT];
+            sumUpdates(sessions, updateTotal);
+
+            long allocated = m_jvmStats.getAllocatedBytes();
+            long updates = 0;
+
+            m_dumpString.setLength(0);
+            m_dumpString.append("Dispatch ");
+            for (int mode = 0; mode < SessionThreads.MODE_COUNT; mode++)
+            {
+                long modeUpdates = updateTotal[mode] - m_lastUpdateTotal[mode];
+                m_lastUpdateTotal[mode] = updateTotal[mode];
+                updates += modeUpdates;
+                appendMode(m_dumpString, mode, sessions[mode], modeUpdates, secs);
+            }
+            m_dumpString.append("| Threads: ");
+            m_dumpString.append(m_jvmStats.getThreadCount());
+            m_dumpString.append(" (peak ");
+            m_dumpString.append(m_jvmStats.getPeakThreadCount());
+            m_dumpString.append(')');
+            if (allocated >= 0)
+                appendAllocation(m_dumpString, allocated, updates, secs);
+            System.out.println(m_dumpString);
+            m_dumpString.setLength(0);
+        }
+
+        private void sumUpdates(int[] sessions, long[] updateTotal)
+        {
+            for (int i = 0; i < m_sessionCount; i++)
+            {
+                ConsumerClient consumerClient = (ConsumerClient)m_consumerClientList.get(i);
+                if (consumerClient.m_itemClient == null)
+                    continue;
+                sessions[consumerClient.m_dispatchMode]++;
+                updateTotal[consumerClient.m_dispatchMode] += consumerClient.m_itemClient.m_updateTotal;
+            }
+        }
+
+        // e.g. " | Alloc (decodeLevel 5): 81234 KB/s, 1650 B/update"
+        private void appendAllocation(StringBuilder dumpString, long allocated, long updates,
+                double secs)
+        {
+            dumpString.append(" | Alloc (decodeLevel ");
+            dumpString.append(m_decodeLevel);
+            dumpString.append("): ");
+            dumpString.append((secs > 0) ? (long)(allocated / secs / 1024) : 0);
+            dumpString.append(" KB/s, ");
+            dumpString.append((updates > 0) ? allocated / updates : 0);
+            dumpString.append(" B/update");
+        }
+
+        // e.g. "thread: 10 sessions 52000 upd/s (5200/session) "
+        private void appendMode(StringBuilder dumpString, int mode, int sessions, long updates,
+                double secs)
+        {
+            if (sessions == 0)
+                return;
+            long rate = (secs > 0) ? (long)(updates / secs) : 0;
+            dumpString.append(SessionThreads.MODE_NAMES[mode]);
+            dumpString.append(": ");
+            dumpString.append(sessions);
+            dumpString.append(" sessions ");
+            dumpString.append(rate);
+            dumpString.append(" upd/s (");
+            dumpString.append(rate / sessions);
+            dumpString.append("/session) ");
         }
     }
 
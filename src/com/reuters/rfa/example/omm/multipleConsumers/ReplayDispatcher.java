@@ -0,0 +1,65 @@
+package com.reuters.rfa.example.omm.multipleConsumers;
+
+import java.io.IOException;
+
+import com.reuters.rfa.example.utility.MessageReplay;
+
+/**
+ * Replays a message capture into the ItemClient of a session, in place of a
+ * connection; Exits when the capture ends or the test stops
+ */
+public class ReplayDispatcher implements Runnable, MessageReplay.ClosureFactory
+{
+    ConsumerClient m_parent;
+    private final MessageReplay m_replay;
+    private final Thread m_thread;
+
+    public ReplayDispatcher(ConsumerClient parent, String name, MessageReplay replay,
+            boolean bVirtual)
+    {
+        m_parent = parent;
+        m_replay = replay;
+        m_replay.setClosureFactory(this);
+        m_thread = SessionThreads.newThread(this, "App Replay Dispatcher-" + name, bVirtual);
+    }
+
+    public void start()
+    {
+        m_thread.start();
+    }
+
+    /*
+     * Stop the replay after the current message
+     */
+    public void terminate()
+    {
+        m_replay.stop();
+    }
+
+    public void run()
+    {
+        long start = System.nanoTime();
+        try
+        {
+            m_replay.replay(m_parent.m_itemClient);
+        }
+        catch (IOException e)
+        {
+            m_parent.log("Replay failed: " + e.getMessage());
+        }
+        long msecs = (System.nanoTime() - start) / 1000000;
+        m_parent.log("Replayed " + m_replay.getReplayedCount() + " messages in " + msecs
+                + " msec; Exiting Replay Dispatcher Thread.......");
+    }
+
+    /*
+     * The closure of every replayed item, as if it was requested
+     */
+    public Object closureFor(int handleId, String serviceName, String itemName)
+    {
+        return m_parent.m_itemClient.newClosure();
+    }
+}
+// //////////////////////////////////////////////////////////////////////////////
+// / End of file
+// //////////////////////////////////////////////////////////////////////////////
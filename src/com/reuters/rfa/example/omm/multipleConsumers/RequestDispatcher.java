@@ -1,16 +1,22 @@
 package com.reuters.rfa.example.omm.multipleConsumers;
 
 /**
- * Thread to dispatch item requests; Exits when all requests are made
+ * Dispatches item requests; Exits when all requests are made
  */
-public class RequestDispatcher extends Thread
+public class RequestDispatcher implements Runnable
 {
     ConsumerClient m_parent;
+    private final Thread m_thread;
 
-    public RequestDispatcher(ConsumerClient parent, String name)
+    public RequestDispatcher(ConsumerClient parent, String name, boolean bVirtual)
     {
-        setName("App Request Dispatcher-" + name);
         m_parent = parent;
+        m_thread = SessionThreads.newThread(this, "App Request Dispatcher-" + name, bVirtual);
+    }
+
+    public void start()
+    {
+        m_thread.start();
     }
 
     public void run()
@@ -38,4 +44,3 @@ public class RequestDispatcher extends Thread
 // //////////////////////////////////////////////////////////////////////////////
 // / End of file
 // //////////////////////////////////////////////////////////////////////////////
-
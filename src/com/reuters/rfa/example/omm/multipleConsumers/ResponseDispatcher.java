@@ -1,37 +1,69 @@
 package com.reuters.rfa.example.omm.multipleConsumers;
 
+import java.util.concurrent.locks.LockSupport;
+
 import com.reuters.rfa.common.DispatchException;
 import com.reuters.rfa.common.Dispatchable;
+import com.reuters.rfa.common.DispatchableNotificationClient;
 import com.reuters.rfa.common.EventQueue;
 
 /**
- * Thread to dispatch events; Created only is eventQ is used; Exits on shutdown
+ * Dispatches events; Created only is eventQ is used; Exits on shutdown
+ *
+ * <pre>
+ * - thread mode : blocks in the eventQ until an event arrives
+ * - virtual mode: a blocked virtual thread would hold on to its carrier
+ *                 thread, so the dispatcher drains the eventQ without waiting,
+ *                 then parks until the eventQ notifies that it is no longer empty
+ * </pre>
  */
-public class ResponseDispatcher extends Thread
+public class ResponseDispatcher implements Runnable, DispatchableNotificationClient
 {
+    // upper bound of a park, in case a notification is missed
+    private static final long MAX_PARK_NANOS = 100 * 1000 * 1000L;
+
     ConsumerClient m_parent;
     private EventQueue m_eventQueue = null;
+    private final boolean m_bVirtual;
+    private final Thread m_thread;
 
     private volatile boolean m_isRunning = true;
 
-    public ResponseDispatcher(ConsumerClient parent, String name, EventQueue eventQueue)
+    public ResponseDispatcher(ConsumerClient parent, String name, EventQueue eventQueue,
+            boolean bVirtual)
     {
-        setName("App ResponseQ Dispatcher-" + name);
         m_parent = parent;
         m_eventQueue = eventQueue;
+        m_thread = SessionThreads.newThread(this, "App ResponseQ Dispatcher-" + name, bVirtual);
+        m_bVirtual = bVirtual;
+    }
+
+    public void start()
+    {
+        m_thread.start();
     }
 
     public void terminate()
     {
         m_parent.log("Dispatcher: terminating...");
         m_isRunning = false;
-        this.interrupt();
+        m_thread.interrupt();
     }
 
-    public synchronized void run()
+    public void run()
     {
         m_parent.log("Start Dispatching Responses............");
 
+        if (m_bVirtual)
+            runNotified();
+        else
+            runBlocking();
+
+        m_parent.log("Dispatcher terminated...");
+    }
+
+    private void runBlocking()
+    {
         while (m_isRunning)
         {
             try
@@ -44,11 +76,38 @@ public class ResponseDispatcher extends Thread
                 break;
             }
         }
+    }
 
-        m_parent.log("Dispatcher terminated...");
+    private void runNotified()
+    {
+        m_eventQueue.registerNotificationClient(this, null);
+        while (m_isRunning)
+        {
+            try
+            {
+                while (m_eventQueue.dispatch(Dispatchable.NO_WAIT) > 0)
+                    ;
+            }
+            catch (DispatchException de)
+            {
+                m_parent.log("Queue deactivated");
+                break;
+            }
+
+            // an unpark since the last park returns immediately, so a
+            // notification between the dispatch & the park is not lost
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+        }
+    }
+
+    /*
+     * Called by RFA when an event is queued to the empty eventQ
+     */
+    public void notify(Dispatchable dispSource, Object closure)
+    {
+        LockSupport.unpark(m_thread);
     }
 }
 // //////////////////////////////////////////////////////////////////////////////
 // / End of file
 // //////////////////////////////////////////////////////////////////////////////
-
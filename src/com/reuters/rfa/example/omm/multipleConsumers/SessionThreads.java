@@ -0,0 +1,123 @@
+package com.reuters.rfa.example.omm.multipleConsumers;
+
+import java.lang.reflect.Method;
+
+/**
+ * Creates the dispatcher threads of the sessions
+ *
+ * <pre>
+ * Dispatch modes
+ * - thread  : a platform thread per session dispatches the session's EventQ
+ * - virtual : a virtual thread per session dispatches the session's EventQ;
+ *             all virtual threads share a bounded pool of carrier threads
+ * - nullEQ  : no EventQ, responses are dispatched by RFA's session threads
+ * </pre>
+ *
+ * Virtual threads need Java 21; they are created through reflection so the
+ * example still builds and runs on older JVMs, where the virtual mode falls
+ * back to platform threads.
+ */
+class SessionThreads
+{
+    static final int THREAD = 0;
+    static final int VIRTUAL = 1;
+    static final int NULL_EQ = 2;
+    static final int MODE_COUNT = 3;
+    static final String[] MODE_NAMES = { "thread", "virtual", "nullEQ" };
+
+    // Thread.ofVirtual() builder & Thread.Builder.unstarted(Runnable)
+    private static Object s_virtualBuilder;
+    private static Method s_unstarted;
+    private static int s_carrierThreads;
+
+    /*
+     * Returns the mode for the name, -1 if unknown
+     */
+    static int modeOf(String name)
+    {
+        for (int i = 0; i < MODE_COUNT; i++)
+        {
+            if (MODE_NAMES[i].equalsIgnoreCase(name))
+                return i;
+        }
+        return -1;
+    }
+
+    /*
+     * Sizes the carrier pool & looks up the virtual thread builder; must be
+     * called before the first virtual thread of the JVM is created. Returns
+     * false if the JVM does not support virtual threads.
+     */
+    static boolean initVirtualThreads(int carrierThreads)
+    {
+        if (s_unstarted != null)
+            return true;
+
+        // the default scheduler reads these once, when the first virtual
+        // thread is created; -D settings on the command line take precedence
+        String count = Integer.toString(carrierThreads);
+        if (System.getProperty("jdk.virtualThreadScheduler.parallelism") == null)
+            System.setProperty("jdk.virtualThreadScheduler.parallelism", count);
+        if (System.getProperty("jdk.virtualThreadScheduler.maxPoolSize") == null)
+            System.setProperty("jdk.virtualThreadScheduler.maxPoolSize", count);
+        s_carrierThreads = Integer.getInteger("jdk.virtualThreadScheduler.parallelism",
+                                              carrierThreads).intValue();
+
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method unstarted = Class.forName("java.lang.Thread$Builder")
+                    .getMethod("unstarted", Runnable.class);
+
+            // fails on JVMs where virtual threads are a preview feature
+            unstarted.invoke(builder, new Runnable()
+            {
+                public void run()
+                {
+                }
+            });
+
+            s_virtualBuilder = builder;
+            s_unstarted = unstarted;
+            return true;
+        }
+        catch (Exception e)
+        {
+            return false;
+        }
+    }
+
+    /*
+     * Number of carrier threads of the virtual threads
+     */
+    static int getCarrierThreads()
+    {
+        return s_carrierThreads;
+    }
+
+    /*
+     * Creates an unstarted thread; a virtual thread if requested & supported
+     */
+    static Thread newThread(Runnable runnable, String name, boolean bVirtual)
+    {
+        Thread thread = null;
+        if (bVirtual && s_unstarted != null)
+        {
+            try
+            {
+                thread = (Thread)s_unstarted.invoke(s_virtualBuilder, runnable);
+            }
+            catch (Exception e)
+            {
+                thread = null;
+            }
+        }
+        if (thread == null)
+            thread = new Thread(runnable);
+        thread.setName(name);
+        return thread;
+    }
+}
+// //////////////////////////////////////////////////////////////////////////////
+// / End of file
+// //////////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,354 @@
+package com.reuters.rfa.example.omm.multipleConsumers;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Records the statistics of every interval as time series & prints a summary
+ * table when the test stops
+ *
+ * <pre>
+ * One record per session & one aggregate record (session "all") per interval:
+ *   time          - msec since the epoch
+ *   interval      - statistics counter
+ *   intervalSecs  - length of the interval
+ *   session, mode, decodeLevel, sessions
+ *   refreshes, updates, statuses, finalStatuses - counts in the interval
+ *   queueDepth    - events waiting in the response eventQ(s); empty for null eventQ
+ *   gcPauseMs, gcCount, heapUsed, allocBytes    - JVM, aggregate record only
+ * </pre>
+ *
+ * Records are written as CSV with a header line, or as line-delimited JSON
+ * where empty values are left out. The file is flushed after every interval,
+ * so it can be followed while the test runs. Called from the statistics
+ * timer thread, except for the summary.
+ */
+class StatisticsRecorder
+{
+    static final String[] COLUMNS = { "time", "interval", "intervalSecs", "session", "mode",
+            "decodeLevel", "sessions", "refreshes", "updates", "statuses", "finalStatuses",
+            "queueDepth", "gcPauseMs", "gcCount", "heapUsed", "allocBytes" };
+
+    private PrintWriter m_writer;
+    private boolean m_bJson;
+    private final StringBuilder m_line = new StringBuilder(256);
+    private int m_column;
+
+    private final List<ConsumerClient> m_clients;
+    private final int m_sessionCount;
+    private final int m_decodeLevel;
+
+    // per session totals at the previous interval
+    private final long[] m_lastRefreshes;
+    private final long[] m_lastUpdates;
+    private final long[] m_lastStatuses;
+    private final long[] m_lastFinalStatuses;
+    private final int[] m_maxQueueDepth;
+
+    // JVM totals of the run
+    private long m_gcTime;
+    private long m_gcCount;
+    private long m_maxHeapUsed;
+    private long m_allocatedBytes;
+
+    StatisticsRecorder(List<ConsumerClient> clients, int sessionCount, int decodeLevel)
+    {
+        m_clients = clients;
+        m_sessionCount = sessionCount;
+        m_decodeLevel = decodeLevel;
+        m_lastRefreshes = new long[sessionCount];
+        m_lastUpdates = new long[sessionCount];
+        m_lastStatuses = new long[sessionCount];
+        m_lastFinalStatuses = new long[sessionCount];
+        m_maxQueueDepth = new int[sessionCount];
+        for (int i = 0; i < sessionCount; i++)
+            m_maxQueueDepth[i] = -1;
+    }
+
+    /*
+     * Open the time series file; format is "csv" or "json"
+     */
+    boolean open(String fileName, String format)
+    {
+        m_bJson = format.equalsIgnoreCase("json");
+        if (!m_bJson && !format.equalsIgnoreCase("csv"))
+            System.out.println("Unknown statsFormat " + format + "; using csv");
+        try
+        {
+            m_writer = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+        }
+        catch (IOException e)
+        {
+            System.out.println("Unable to open " + fileName + ": " + e.getMessage());
+            return false;
+        }
+
+        if (!m_bJson)
+        {
+            for (int i = 0; i < COLUMNS.length; i++)
+            {
+                if (i > 0)
+                    m_writer.print(',');
+                m_writer.print(COLUMNS[i]);
+            }
+            m_writer.println();
+        }
+        System.out.println("Writing statistics to " + fileName);
+        return true;
+    }
+
+    void close()
+    {
+        if (m_writer != null)
+        {
+            m_writer.close();
+            m_writer = null;
+        }
+    }
+
+    /*
+     * Record the interval which just ended; jvmStats holds its sample
+     */
+    void record(int interval, double secs, JvmStats jvmStats)
+    {
+        long time = System.currentTimeMillis();
+
+        long refreshes = 0, updates = 0, statuses = 0, finalStatuses = 0;
+        int queueDepth = -1;
+        for (int i = 0; i < m_sessionCount; i++)
+        {
+            ConsumerClient consumerClient = m_clients.get(i);
+            ItemClient itemClient = consumerClient.m_itemClient;
+            if (itemClient == null)
+                continue;
+
+            long sessionRefreshes = itemClient.m_refreshTotal - m_lastRefreshes[i];
+            long sessionUpdates = itemClient.m_updateTotal - m_lastUpdates[i];
+            long sessionStatuses = itemClient.m_statusTotal - m_lastStatuses[i];
+            long sessionFinalStatuses = itemClient.m_finalStatusTotal - m_lastFinalStatuses[i];
+            m_lastRefreshes[i] += sessionRefreshes;
+            m_lastUpdates[i] += sessionUpdates;
+            m_lastStatuses[i] += sessionStatuses;
+            m_lastFinalStatuses[i] += sessionFinalStatuses;
+
+            int sessionQueueDepth = consumerClient.getQueueDepth();
+            if (sessionQueueDepth > m_maxQueueDepth[i])
+                m_maxQueueDepth[i] = sessionQueueDepth;
+
+            refreshes += sessionRefreshes;
+            updates += sessionUpdates;
+            statuses += sessionStatuses;
+            finalStatuses += sessionFinalStatuses;
+            if (sessionQueueDepth >= 0)
+                queueDepth = Math.max(queueDepth, 0) + sessionQueueDepth;
+
+            if (m_writer != null)
+            {
+                beginRecord(time, interval, secs, consumerClient.m_name,
+                            SessionThreads.MODE_NAMES[consumerClient.m_dispatchMode], 1);
+                appendCounts(sessionRefreshes, sessionUpdates, sessionStatuses,
+                             sessionFinalStatuses, sessionQueueDepth);
+                for (int column = 12; column < COLUMNS.length; column++)
+                    appendEmpty();
+                endRecord();
+            }
+        }
+
+        m_gcTime += jvmStats.getGcTime();
+        m_gcCount += jvmStats.getGcCount();
+        m_maxHeapUsed = Math.max(m_maxHeapUsed, jvmStats.getHeapUsed());
+        long allocatedBytes = jvmStats.getAllocatedBytes();
+        if (allocatedBytes >= 0)
+            m_allocatedBytes += allocatedBytes;
+
+        if (m_writer != null)
+        {
+            beginRecord(time, interval, secs, "all", "all", m_sessionCount);
+            appendCounts(refreshes, updates, statuses, finalStatuses, queueDepth);
+            append(jvmStats.getGcTime());
+            append(jvmStats.getGcCount());
+            append(jvmStats.getHeapUsed());
+            if (allocatedBytes >= 0)
+                append(allocatedBytes);
+            else
+                appendEmpty();
+            endRecord();
+            m_writer.flush();
+        }
+    }
+
+    /*
+     * Print the totals of the run, per dispatch mode & for all sessions
+     */
+    void printSummary(double secs, JvmStats jvmStats)
+    {
+        int modes = SessionThreads.MODE_COUNT;
+        int[] sessions = new int[modes + 1];
+        long[] refreshes = new long[modes + 1];
+        long[] updates = new long[modes + 1];
+        long[] statuses = new long[modes + 1];
+        long[] finalStatuses = new long[modes + 1];
+        int[] maxQueueDepth = new int[modes + 1];
+        for (int mode = 0; mode <= modes; mode++)
+            maxQueueDepth[mode] = -1;
+
+        for (int i = 0; i < m_sessionCount; i++)
+        {
+            ConsumerClient consumerClient = m_clients.get(i);
+            ItemClient itemClient = consumerClient.m_itemClient;
+            if (itemClient == null)
+                continue;
+
+            // each session is added to its mode & to "all"
+            int[] rows = { consumerClient.m_dispatchMode, modes };
+            for (int j = 0; j < rows.length; j++)
+            {
+                int row = rows[j];
+                sessions[row]++;
+                refreshes[row] += itemClient.m_refreshTotal;
+                updates[row] += itemClient.m_updateTotal;
+                statuses[row] += itemClient.m_statusTotal;
+                finalStatuses[row] += itemClient.m_finalStatusTotal;
+                maxQueueDepth[row] = Math.max(maxQueueDepth[row], m_maxQueueDepth[i]);
+            }
+        }
+
+        int modesInUse = 0;
+        for (int mode = 0; mode < modes; mode++)
+        {
+            if (sessions[mode] > 0)
+                modesInUse++;
+        }
+
+        String format = "%-8s %9s %12s %14s %10s %8s %12s %14s %10s%n";
+        System.out.println();
+        System.out.println("Summary (" + (long)secs + " secs, decodeLevel " + m_decodeLevel + ")");
+        System.out.printf(format, "Mode", "Sessions", "Refreshes", "Updates", "Statuses",
+                          "Finals", "Upd/s", "Upd/s/Session", "MaxQDepth");
+        for (int row = 0; row <= modes; row++)
+        {
+            // "all" only if more than one mode is used
+            if (sessions[row] == 0 || (row == modes && modesInUse == 1))
+                continue;
+            long rate = (secs > 0) ? (long)(updates[row] / secs) : 0;
+            System.out.printf(format, (row == modes) ? "all" : SessionThreads.MODE_NAMES[row],
+                              sessions[row], refreshes[row], updates[row], statuses[row],
+                              finalStatuses[row], rate, rate / sessions[row],
+                              (maxQueueDepth[row] < 0) ? "-" : String.valueOf(maxQueueDepth[row]));
+        }
+
+        StringBuilder jvm = new StringBuilder(100);
+        jvm.append("Peak Threads: ");
+        jvm.append(jvmStats.getPeakThreadCount());
+        if (sessions[SessionThreads.VIRTUAL] > 0)
+        {
+            jvm.append(", Carrier Threads: ");
+            jvm.append(SessionThreads.getCarrierThreads());
+        }
+        jvm.append(" | GC: ");
+        jvm.append(m_gcTime);
+        jvm.append(" msec in ");
+        jvm.append(m_gcCount);
+        jvm.append(" collections | Peak Heap Used: ");
+        jvm.append(m_maxHeapUsed / (1024 * 1024));
+        jvm.append(" MB");
+        if (jvmStats.isAllocationSupported())
+        {
+            jvm.append(" | Alloc: ");
+            jvm.append((secs > 0) ? (long)(m_allocatedBytes / secs / 1024) : 0);
+            jvm.append(" KB/s, ");
+            jvm.append((updates[modes] > 0) ? m_allocatedBytes / updates[modes] : 0);
+            jvm.append(" B/update");
+        }
+        System.out.println(jvm);
+    }
+
+    private void beginRecord(long time, int interval, double secs, String session, String mode,
+            int sessions)
+    {
+        m_line.setLength(0);
+        m_column = 0;
+        if (m_bJson)
+            m_line.append('{');
+        append(time);
+        append(interval);
+        append(Math.round(secs * 1000) / 1000.0);
+        append(session);
+        append(mode);
+        append(m_decodeLevel);
+        append(sessions);
+    }
+
+    private void appendCounts(long refreshes, long updates, long statuses, long finalStatuses,
+            int queueDepth)
+    {
+        append(refreshes);
+        append(updates);
+        append(statuses);
+        append(finalStatuses);
+        if (queueDepth >= 0)
+            append(queueDepth);
+        else
+            appendEmpty();
+    }
+
+    private void endRecord()
+    {
+        if (m_bJson)
+            m_line.append('}');
+        m_writer.println(m_line);
+    }
+
+    private void appendName()
+    {
+        if (m_bJson)
+        {
+            if (m_line.length() > 1)
+                m_line.append(',');
+            m_line.append('"');
+            m_line.append(COLUMNS[m_column]);
+            m_line.append("\":");
+        }
+        else if (m_column > 0)
+        {
+            m_line.append(',');
+        }
+        m_column++;
+    }
+
+    private void append(long value)
+    {
+        appendName();
+        m_line.append(value);
+    }
+
+    private void append(double value)
+    {
+        appendName();
+        m_line.append(value);
+    }
+
+    // session names are host:port or config names; quoted for JSON only
+    private void append(String value)
+    {
+        appendName();
+        if (m_bJson)
+            m_line.append('"');
+        m_line.append(value);
+        if (m_bJson)
+            m_line.append('"');
+    }
+
+    private void appendEmpty()
+    {
+        if (!m_bJson && m_column > 0)
+            m_line.append(',');
+        m_column++;
+    }
+}
+// //////////////////////////////////////////////////////////////////////////////
+// / End of file
+// //////////////////////////////////////////////////////////////////////////////
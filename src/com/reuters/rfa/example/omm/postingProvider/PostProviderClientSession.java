@@ -13,7 +13,6 @@ import com.reuters.rfa.example.omm.hybrid.OMMMsgReencoder;
 import com.reuters.rfa.example.utility.CommandLine;
 import com.reuters.rfa.example.utility.ExampleUtil;
 import com.reuters.rfa.example.utility.GenericOMMParser;
-import com.reuters.rfa.example.utility.Rounding;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMData;
 import com.reuters.rfa.omm.OMMElementEntry;
@@ -397,29 +396,22 @@ public class PostProviderClientSession implements Client
             _encoder.encodeDate(2006, 12, 25);
             // TRDPRC_1
             _encoder.encodeFieldEntryInit((short)6, OMMTypes.REAL);
-            double value = itemInfo.getTradePrice1();
-            int intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-            
             // Encode the real number with the price and the hint value.
-            _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+            itemInfo.getTradePrice1().encode(_encoder);
             
             // BID
             // Initialize the entry with the field id
             // and data type from RDMFieldDictionary for BID.
             _encoder.encodeFieldEntryInit((short)22, OMMTypes.REAL);
             
-            value = itemInfo.getBid();
-            intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-            _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+            itemInfo.getBid().encode(_encoder);
             
             // ASK
             // Initialize the entry with the field id
             // and data type from RDMFieldDictionary for ASK.
             _encoder.encodeFieldEntryInit((short)25, OMMTypes.REAL);
             
-            value = itemInfo.getAsk();
-            intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-            _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+            itemInfo.getAsk().encode(_encoder);
 
             // ACVOL_1
             _encoder.encodeFieldEntryInit((short)32, OMMTypes.REAL);
@@ -569,29 +561,22 @@ public class PostProviderClientSession implements Client
                 // and data type from RDMFieldDictionary for TRDPRC_1.
                 _encoder.encodeFieldEntryInit((short)6, OMMTypes.REAL);
                 
-                double value = itemInfo.getTradePrice1();
-                int intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-                
                 // Encode the real number with the price and the hint value.
-                _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+                itemInfo.getTradePrice1().encode(_encoder);
                 
                 // BID
                 // Initialize the entry with the field id
                 // and data type from RDMFieldDictionary for BID.
                 _encoder.encodeFieldEntryInit((short)22, OMMTypes.REAL);
                 
-                value = itemInfo.getBid();
-                intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-                _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+                itemInfo.getBid().encode(_encoder);
                 
                 // ASK
                 // Initialize the entry with the field id
                 // and data type from RDMFieldDictionary for ASK.
                 _encoder.encodeFieldEntryInit((short)25, OMMTypes.REAL);
                 
-                value = itemInfo.getAsk();
-                intValue = Rounding.roundFloat2Int((float)value, OMMNumeric.EXPONENT_NEG4);
-                _encoder.encodeReal(intValue, OMMNumeric.EXPONENT_NEG4);
+                itemInfo.getAsk().encode(_encoder);
                 
                 // ACVOL_1
                 // Initialize the entry with the field id
@@ -9,7 +9,6 @@ import com.reuters.rfa.common.Handle;
 import com.reuters.rfa.common.Token;
 import com.reuters.rfa.dictionary.FieldDictionary;
 import com.reuters.rfa.example.omm.privatestream.common.PSGenericOMMParser;
-import com.reuters.rfa.example.utility.Rounding;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMData;
 import com.reuters.rfa.omm.OMMElementEntry;
@@ -219,29 +218,22 @@ class PrivateStrmProvClientSession implements Client
                 // and data type from RDMFieldDictionary for TRDPRC_1.
                 _encoder.encodeFieldEntryInit((short)6, OMMTypes.REAL);
                 
-                double value = itemInfo.getTradePrice1();
-                long longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-                
                 // Encode the real32 number with the price and the hint value.
-                _encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+                itemInfo.getTradePrice1().encode(_encoder);
                 
                 // BID
                 // Initialize the entry with the field id
                 // and data type from RDMFieldDictionary for BID.
                 _encoder.encodeFieldEntryInit((short)22, OMMTypes.REAL);
                 
-                value = itemInfo.getBid();
-                longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-                _encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+                itemInfo.getBid().encode(_encoder);
                 
                 // ASK
                 // Initialize the entry with the field id
                 // and data type from RDMFieldDictionary for ASK.
                 _encoder.encodeFieldEntryInit((short)25, OMMTypes.REAL);
                 
-                value = itemInfo.getAsk();
-                longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-                _encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+                itemInfo.getAsk().encode(_encoder);
                 
                 // ACVOL_1
                 // Initialize the entry with the field id
@@ -467,27 +459,20 @@ class PrivateStrmProvClientSession implements Client
             _encoder.encodeDate(2006, 12, 25);
             // TRDPRC_1
             _encoder.encodeFieldEntryInit((short)6, OMMTypes.REAL);
-            double value = itemInfo.getTradePrice1();
-            long longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-            
             // Encode the real32 number with the price and the hint value.
-            _encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+            itemInfo.getTradePrice1().encode(_encoder);
             
             // BID
             // Initialize the entry with the field id and data type
             // from RDMFieldDictionary for BID.
             _encoder.encodeFieldEntryInit((short)22, OMMTypes.REAL);
-            value = itemInfo.getBid();
-            longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-            _encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+            itemInfo.getBid().encode(_encoder);
             
             // ASK
             // Initialize the entry with the field id and data type
             // from RDMFieldDictionary for ASK.
             _encoder.encodeFieldEntryInit((short)25, OMMTypes.REAL);
-            value = itemInfo.getAsk();
-            longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-            _encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+            itemInfo.getAsk().encode(_encoder);
 
             // ACVOL_1
             _encoder.encodeFieldEntryInit((short)32, OMMTypes.REAL);
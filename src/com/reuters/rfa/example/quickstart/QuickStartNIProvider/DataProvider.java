@@ -7,7 +7,6 @@ import com.reuters.rfa.common.Client;
 import com.reuters.rfa.common.Event;
 import com.reuters.rfa.common.Handle;
 import com.reuters.rfa.common.Token;
-import com.reuters.rfa.example.utility.Rounding;
 import com.reuters.rfa.omm.OMMAttribInfo;
 import com.reuters.rfa.omm.OMMElementList;
 import com.reuters.rfa.omm.OMMEncoder;
@@ -248,22 +247,16 @@ public class DataProvider implements Client
 		// TRDPRC_1
 		// Initialize the entry with the field id and data type from RDMFieldDictionary for TRDPRC_1.
 		encoder.encodeFieldEntryInit( (short)6, OMMTypes.REAL);  
-		double value = itemInfo.getTradePrice1();
-		long longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
 		// Encode the real number with the price and the hint value.
-		encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);	
+		itemInfo.getTradePrice1().encode(encoder);	
 		//	BID
 		// Initialize the entry with the field id and data type from RDMFieldDictionary for BID.
 		encoder.encodeFieldEntryInit( (short)22, OMMTypes.REAL);	 
-		value = itemInfo.getBid();
-		longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-		encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+		itemInfo.getBid().encode(encoder);
 		//	ASK
 		// Initialize the entry with the field id and data type from RDMFieldDictionary for ASK.
 		encoder.encodeFieldEntryInit( (short)25, OMMTypes.REAL);	 
-		value = itemInfo.getAsk();
-		longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-		encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+		itemInfo.getAsk().encode(encoder);
 		// 	ACVOL_1
 		// Initialize the entry with the field id and data type from RDMFieldDictionary for ACVOL_1.
 		encoder.encodeFieldEntryInit( (short)32, OMMTypes.REAL);  
@@ -312,22 +305,16 @@ public class DataProvider implements Client
 		//	TRDPRC_1
      // Initialize the entry with the field id and data type from RDMFieldDictionary for TRDPRC_1
 		encoder.encodeFieldEntryInit( (short)6, OMMTypes.REAL);  
-		double value = itemInfo.getTradePrice1();
-		long longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
 		// Encode the real number with the price and the hint value.
-		encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);	
+		itemInfo.getTradePrice1().encode(encoder);	
 		//	BID
 		// Initialize the entry with the field id and data type from RDMFieldDictionary for BID.
 		encoder.encodeFieldEntryInit( (short)22, OMMTypes.REAL);	 
-		value = itemInfo.getBid();
-		longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-		encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+		itemInfo.getBid().encode(encoder);
 		//	ASK
 		// Initialize the entry with the field id and data type from RDMFieldDictionary for ASK.
 		encoder.encodeFieldEntryInit( (short)25, OMMTypes.REAL);	 
-		value = itemInfo.getAsk();
-		longValue = Rounding.roundDouble2Long(value, OMMNumeric.EXPONENT_NEG4);
-		encoder.encodeReal(longValue, OMMNumeric.EXPONENT_NEG4);
+		itemInfo.getAsk().encode(encoder);
         // 	ACVOL_1
         encoder.encodeFieldEntryInit( (short)32, OMMTypes.REAL);
         encoder.encodeReal(itemInfo.getACVol1(), OMMNumeric.EXPONENT_0);
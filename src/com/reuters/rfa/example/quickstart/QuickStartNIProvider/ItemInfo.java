@@ -1,6 +1,8 @@
 package com.reuters.rfa.example.quickstart.QuickStartNIProvider;
 
 import com.reuters.rfa.common.Token;
+import com.reuters.rfa.example.utility.Price;
+import com.reuters.rfa.omm.OMMNumeric;
 
 // ItemInfo is a class that contains all the relevant information regarding to an
 // item.  It is used as the source of canned data for the QSProviderDemo.
@@ -8,9 +10,12 @@ public class ItemInfo
 {
 	String _name;
 
-	double _trdPrice= 10.0000;
-	double _bid= 9.8000; 
-	double _ask= 10.2000;
+	static final Price PRICE_STEP = Price.valueOf("0.0500", OMMNumeric.EXPONENT_NEG4);
+	static final Price PRICE_LIMIT = Price.valueOf("100.0000", OMMNumeric.EXPONENT_NEG4);
+
+	Price _trdPrice = Price.valueOf("10.0000", OMMNumeric.EXPONENT_NEG4);
+	Price _bid = Price.valueOf("9.8000", OMMNumeric.EXPONENT_NEG4);
+	Price _ask = Price.valueOf("10.2000", OMMNumeric.EXPONENT_NEG4);
 	long _acvol= 100;
 	Token _token;
 
@@ -22,25 +27,26 @@ public class ItemInfo
 	public String getName() { return _name; }
 
 
-	public double getTradePrice1() { return _trdPrice; }
-	public double getBid() { return _bid; }
-	public double getAsk() { return _ask; }
+	public Price getTradePrice1() { return _trdPrice; }
+	public Price getBid() { return _bid; }
+	public Price getAsk() { return _ask; }
 	public long getACVol1() { return _acvol; }
 
     public void increment()
     {
-    	if ((_trdPrice>=100.0000) || (_bid >= 100.0000) || (_ask >= 100.0000))
+    	if ((_trdPrice.compareTo(PRICE_LIMIT) >= 0) || (_bid.compareTo(PRICE_LIMIT) >= 0)
+                || (_ask.compareTo(PRICE_LIMIT) >= 0))
     	{
     		// reset prices
-    		_trdPrice = 10.0000;
-    		_bid = 9.8000;
-    		_ask = 10.2000;
+    		_trdPrice.set(100000, OMMNumeric.EXPONENT_NEG4);
+    		_bid.set(98000, OMMNumeric.EXPONENT_NEG4);
+    		_ask.set(102000, OMMNumeric.EXPONENT_NEG4);
     	}
     	else
     	{
-            _trdPrice += 0.0500; 
-            _bid += 0.0500;  
-            _ask += 0.0500; 
+            _trdPrice.add(PRICE_STEP);
+            _bid.add(PRICE_STEP);
+            _ask.add(PRICE_STEP);
     	}
 
         if (_acvol<1000000)
@@ -0,0 +1,447 @@
+package com.reuters.rfa.example.utility;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import com.reuters.rfa.dictionary.DictionaryException;
+import com.reuters.rfa.dictionary.FidDef;
+import com.reuters.rfa.dictionary.FieldDictionary;
+
+/**
+ * Utility class which loads a {@link FieldDictionary} from a precompiled
+ * binary image of the RDMFieldDictionary file instead of parsing the text
+ * file, to cut the startup time of short lived applications.
+ * <p>
+ * {@link #load(String, String)} looks for the image of the field dictionary
+ * file in the cache directory. If the image is missing, is damaged or was
+ * compiled from a different version of the file, the text file is parsed as
+ * before and the image is (re)generated for the next start. The enum
+ * dictionary is always read from the enumtype.def file, since the
+ * FieldDictionary interface has no way to add enum values other than
+ * parsing.
+ * <p>
+ * The cache directory is the value of the
+ * <code>com.reuters.rfa.example.dictionaryCache</code> system property, or
+ * <code>.rfa-dictionary-cache</code> in <code>user.home</code> by default.
+ * Setting the property to <code>off</code> disables the cache. An image is
+ * only checked against its source file and its CRC32, so the cache directory
+ * must not be writable by other users, which is why the default is not in
+ * the shared temporary directory.
+ * Images can also be compiled ahead of time with
+ *
+ * <pre>
+ * java com.reuters.rfa.example.utility.DictionaryCache RDMFieldDictionary...
+ * </pre>
+ *
+ * Each image <code>name.dict</code> is accompanied by <code>name.tags</code>,
+ * the <code>!tag</code> lines of the source file (Version, DictionaryId,
+ * ...), which are read with the text parser. The image is:
+ *
+ * <pre>
+ *   int   magic ('RDIC')
+ *   int   version
+ *   long  source file length
+ *   long  source file last modified, msec since the epoch
+ *   int   body length
+ *   long  CRC32 of the body
+ *   short source file path length, path bytes
+ * </pre>
+ *
+ * followed by the body:
+ *
+ * <pre>
+ *   int   number of fields
+ *   per field:
+ *     short fid, name, long name, OMM type, max OMM length,
+ *           Marketfeed type, max Marketfeed length, ripple fid, ripple name
+ * </pre>
+ *
+ * with strings written as a short length (-1 for null) followed by the
+ * ISO-8859-1 bytes.
+ * <p>
+ * A dictionary loaded from an image returns 0 from
+ * {@link FieldDictionary#size()} and from {@link FidDef#getExpandedLength()}.
+ * It decodes and encodes field lists exactly like a dictionary parsed
+ * from the text file, but should not be published to consumers with
+ * {@link FieldDictionary#encodeRDMFieldDictionary}, so providers keep
+ * parsing the text file.
+ */
+public class DictionaryCache
+{
+    public static final int MAGIC = 0x52444943; // "RDIC"
+    public static final int VERSION = 1;
+    public static final String CACHE_PROPERTY = "com.reuters.rfa.example.dictionaryCache";
+
+    static final int HEADER_SIZE = 38;
+
+    /**
+     * Returns a dictionary with the fields of <code>fieldFile</code> and the
+     * enums of <code>enumFile</code>, using the binary image of
+     * <code>fieldFile</code> when it is up to date.
+     */
+    public static FieldDictionary load(String fieldFile, String enumFile)
+            throws DictionaryException
+    {
+        FieldDictionary dictionary = loadFields(fieldFile);
+        FieldDictionary.readEnumTypeDef(dictionary, enumFile);
+        return dictionary;
+    }
+
+    /**
+     * Returns a dictionary with the fields of <code>fieldFile</code>, using
+     * the binary image when it is up to date.
+     */
+    public static FieldDictionary loadFields(String fieldFile) throws DictionaryException
+    {
+        File source = new File(fieldFile);
+        File image = imageFile(source);
+        if (image != null)
+        {
+            FieldDictionary dictionary = readImage(source, image);
+            if (dictionary != null)
+                return dictionary;
+        }
+
+        FieldDictionary dictionary = FieldDictionary.create();
+        FieldDictionary.readRDMFieldDictionary(dictionary, fieldFile);
+        if (image != null)
+        {
+            try
+            {
+                writeImage(dictionary, source, image);
+            }
+            catch (IOException e)
+            {
+                System.err.println("Unable to write dictionary cache " + image + ": "
+                        + e.getMessage());
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Compiles <code>fieldFile</code> into its image in the cache directory
+     * and returns the image file.
+     */
+    public static File compile(String fieldFile) throws DictionaryException, IOException
+    {
+        File source = new File(fieldFile);
+        File image = imageFile(source);
+        if (image == null)
+            throw new IOException("dictionary cache is disabled");
+        FieldDictionary dictionary = FieldDictionary.create();
+        FieldDictionary.readRDMFieldDictionary(dictionary, fieldFile);
+        writeImage(dictionary, source, image);
+        return image;
+    }
+
+    /**
+     * Returns the cache directory, or null if the cache is disabled.
+     */
+    public static File cacheDirectory()
+    {
+        String dir = System.getProperty(CACHE_PROPERTY);
+        if (dir == null || dir.length() == 0)
+            return new File(System.getProperty("user.home"), ".rfa-dictionary-cache");
+        if (dir.equals("off"))
+            return null;
+        return new File(dir);
+    }
+
+    static File imageFile(File source)
+    {
+        File dir = cacheDirectory();
+        if (dir == null)
+            return null;
+        String path = source.getAbsolutePath();
+        return new File(dir, source.getName() + '-' + Integer.toHexString(path.hashCode())
+                + ".dict");
+    }
+
+    static File tagsFile(File image)
+    {
+        String name = image.getName();
+        return new File(image.getParentFile(), name.substring(0, name.length() - 5) + ".tags");
+    }
+
+    /*
+     * Returns null if the image does not exist or does not match the source
+     * file; the dictionary is only created once the image has been verified.
+     */
+    static FieldDictionary readImage(File source, File image)
+    {
+        File tags = tagsFile(image);
+        if (!image.isFile() || !tags.isFile())
+            return null;
+
+        RandomAccessFile file = null;
+        try
+        {
+            file = new RandomAccessFile(image, "r");
+            FileChannel channel = file.getChannel();
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC
+                    || buf.getInt() != VERSION)
+                return null;
+            long length = buf.getLong();
+            long lastModified = buf.getLong();
+            int bodyLength = buf.getInt();
+            long crc = buf.getLong();
+            String path = readString(buf);
+            if (length != source.length() || lastModified != source.lastModified()
+                    || !source.getAbsolutePath().equals(path) || bodyLength != buf.remaining())
+                return null;
+
+            CRC32 checksum = new CRC32();
+            checksum.update(buf.duplicate());
+            if (checksum.getValue() != crc)
+                return null;
+
+            FieldDictionary dictionary = FieldDictionary.create();
+            FieldDictionary.readRDMFieldDictionary(dictionary, tags.getPath());
+            int count = buf.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                short fid = buf.getShort();
+                String name = readString(buf);
+                String longName = readString(buf);
+                short ommType = buf.getShort();
+                short maxOMMLength = buf.getShort();
+                short mfeedType = buf.getShort();
+                short maxMfeedLength = buf.getShort();
+                short rippleFid = buf.getShort();
+                String rippleName = readString(buf);
+                dictionary.addFidDef(fid, name, longName, ommType, maxOMMLength, mfeedType,
+                                     maxMfeedLength, rippleFid, rippleName);
+            }
+            return dictionary;
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+        catch (BufferUnderflowException e)
+        {
+            return null;
+        }
+        catch (DictionaryException e)
+        {
+            return null;
+        }
+        finally
+        {
+            close(file);
+        }
+    }
+
+    /*
+     * Writes the tags and the image to temporary files which are renamed
+     * into place, so concurrent starts never read a partial image.
+     */
+    static void writeImage(FieldDictionary dictionary, File source, File image) throws IOException
+    {
+        File dir = image.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+            throw new IOException("unable to create " + dir);
+
+        File tags = tagsFile(image);
+        File tmpTags = File.createTempFile(tags.getName(), ".tmp", dir);
+        File tmpImage = File.createTempFile(image.getName(), ".tmp", dir);
+        try
+        {
+            writeTags(source, tmpTags);
+
+            ByteBuffer body = encodeFields(dictionary);
+            CRC32 checksum = new CRC32();
+            checksum.update(body.array(), 0, body.limit());
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmpImage)));
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                out.writeInt(body.limit());
+                out.writeLong(checksum.getValue());
+                byte[] path = source.getAbsolutePath().getBytes("ISO-8859-1");
+                out.writeShort(path.length);
+                out.write(path);
+                out.write(body.array(), 0, body.limit());
+            }
+            finally
+            {
+                out.close();
+            }
+
+            rename(tmpTags, tags);
+            rename(tmpImage, image);
+        }
+        finally
+        {
+            tmpTags.delete();
+            tmpImage.delete();
+        }
+    }
+
+    static ByteBuffer encodeFields(FieldDictionary dictionary)
+    {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        buf.putInt(0);
+        int count = 0;
+        int min = dictionary.getMinNegFieldId();
+        int max = dictionary.getMaxFieldId();
+        for (int fid = min; fid <= max; fid++)
+        {
+            FidDef fidDef = dictionary.getFidDef((short)fid);
+            if (fidDef == null)
+                continue;
+            buf = ensureCapacity(buf, 4096);
+            buf.putShort((short)fid);
+            writeString(buf, fidDef.getName());
+            writeString(buf, fidDef.getLongName());
+            buf.putShort(fidDef.getOMMType());
+            buf.putShort(fidDef.getMaxOMMLength());
+            buf.putShort(fidDef.getMfeedType());
+            buf.putShort(fidDef.getMaxMfeedLength());
+            buf.putShort(fidDef.getRippleFieldId());
+            writeString(buf, fidDef.getRippleName());
+            count++;
+        }
+        buf.putInt(0, count);
+        buf.flip();
+        return buf;
+    }
+
+    /*
+     * Copies the "!tag" lines of the source file, which hold the dictionary
+     * properties.
+     */
+    static void writeTags(File source, File tags) throws IOException
+    {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(source),
+                "ISO-8859-1"));
+        PrintWriter out = null;
+        try
+        {
+            out = new PrintWriter(tags, "ISO-8859-1");
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                if (line.startsWith("!tag"))
+                    out.println(line);
+            }
+            if (out.checkError())
+                throw new IOException("unable to write " + tags);
+        }
+        finally
+        {
+            in.close();
+            if (out != null)
+                out.close();
+        }
+    }
+
+    static ByteBuffer ensureCapacity(ByteBuffer buf, int needed)
+    {
+        if (buf.remaining() >= needed)
+            return buf;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position()
+                + needed));
+        buf.flip();
+        bigger.put(buf);
+        return bigger;
+    }
+
+    static void writeString(ByteBuffer buf, String s)
+    {
+        if (s == null)
+        {
+            buf.putShort((short)-1);
+            return;
+        }
+        int length = Math.min(s.length(), 1024);
+        buf.putShort((short)length);
+        for (int i = 0; i < length; i++)
+            buf.put((byte)s.charAt(i));
+    }
+
+    static String readString(ByteBuffer buf)
+    {
+        int length = buf.getShort();
+        if (length < 0)
+            return null;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char)(buf.get() & 0xFF);
+        return new String(chars);
+    }
+
+    static void rename(File from, File to) throws IOException
+    {
+        if (from.renameTo(to))
+            return;
+        // renameTo does not replace an existing file on all platforms
+        to.delete();
+        if (!from.renameTo(to))
+            throw new IOException("unable to rename " + from + " to " + to);
+    }
+
+    static void close(RandomAccessFile file)
+    {
+        if (file == null)
+            return;
+        try
+        {
+            file.close();
+        }
+        catch (IOException e)
+        {
+        }
+    }
+
+    /**
+     * Compiles the given RDMFieldDictionary files into the cache directory.
+     */
+    public static void main(String[] args)
+    {
+        if (args.length == 0)
+        {
+            System.out.println("usage: java " + DictionaryCache.class.getName()
+                    + " RDMFieldDictionary...");
+            System.out.println("images are written to " + cacheDirectory() + ", set -D"
+                    + CACHE_PROPERTY + "=dir to change");
+            System.exit(1);
+        }
+        int failed = 0;
+        for (int i = 0; i < args.length; i++)
+        {
+            try
+            {
+                long start = System.currentTimeMillis();
+                File image = compile(args[i]);
+                System.out.println(args[i] + " -> " + image + " ("
+                        + (System.currentTimeMillis() - start) + " ms)");
+            }
+            catch (Exception e)
+            {
+                System.err.println(args[i] + ": " + e.getMessage());
+                failed++;
+            }
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
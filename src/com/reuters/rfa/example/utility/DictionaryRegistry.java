@@ -0,0 +1,169 @@
+package com.reuters.rfa.example.utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.reuters.rfa.dictionary.DictionaryException;
+import com.reuters.rfa.dictionary.FieldDictionary;
+
+/**
+ * Process wide registry of the field dictionaries, so that the parsers,
+ * sessions and re-encoders of one process share a single copy of each
+ * dictionary instead of loading their own.
+ * <p>
+ * Dictionaries read from files are kept by the path and modification time of
+ * the files: the first {@link #load(String, String) load} parses them and
+ * the following loads of the same files return the same instance.
+ * Downloaded dictionaries are added with {@link #register(FieldDictionary)},
+ * which returns the dictionary already registered for the same id and
+ * version, if any, so the caller can drop its own copy.
+ * {@link #get(int)} returns the current dictionary of an id, as used to decode
+ * a field list.
+ * <p>
+ * A registered dictionary is read by many threads and must not be modified;
+ * decode a new version of a dictionary into a new FieldDictionary and
+ * register that one.
+ */
+public final class DictionaryRegistry
+{
+    // dictionaries by file key, guarded by the class lock
+    private static final Map<String, FieldDictionary> FILES = new HashMap<String, FieldDictionary>();
+
+    // dictionaries by id and version, guarded by the class lock
+    private static final Map<String, FieldDictionary> VERSIONS = new HashMap<String, FieldDictionary>();
+
+    // copy on write, so decoders read the dictionaries without locking
+    private static volatile Map<Integer, FieldDictionary> IDS = Collections.emptyMap();
+
+    private DictionaryRegistry()
+    {
+    }
+
+    /**
+     * Returns the shared dictionary of the given files, loading it on first
+     * use. The field definitions may come from the binary image of
+     * {@link DictionaryCache}, so the dictionary is suited to decoding and
+     * encoding field lists but not to being published, see
+     * {@link #loadText(String, String)}.
+     */
+    public static synchronized FieldDictionary load(String fieldFile, String enumFile)
+            throws DictionaryException
+    {
+        String key = fileKey(fieldFile, enumFile);
+        FieldDictionary dictionary = FILES.get("text:" + key);
+        if (dictionary == null)
+            dictionary = FILES.get("image:" + key);
+        if (dictionary == null)
+        {
+            dictionary = shareVersion(DictionaryCache.load(fieldFile, enumFile), true);
+            FILES.put("image:" + key, dictionary);
+            putId(dictionary);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Returns the shared dictionary of the given files, parsed from the text
+     * files. Providers use this one, since they encode the dictionary for
+     * their consumers.
+     */
+    public static synchronized FieldDictionary loadText(String fieldFile, String enumFile)
+            throws DictionaryException
+    {
+        String key = "text:" + fileKey(fieldFile, enumFile);
+        FieldDictionary dictionary = FILES.get(key);
+        if (dictionary == null)
+        {
+            dictionary = FieldDictionary.create();
+            FieldDictionary.readRDMFieldDictionary(dictionary, fieldFile);
+            FieldDictionary.readEnumTypeDef(dictionary, enumFile);
+            shareVersion(dictionary, false);
+            FILES.put(key, dictionary);
+            putId(dictionary);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Registers a complete dictionary, typically downloaded from a provider.
+     *
+     * @return the dictionary registered before with the same id and field &
+     *         enum versions, or <code>dictionary</code> if there is none
+     */
+    public static synchronized FieldDictionary register(FieldDictionary dictionary)
+    {
+        dictionary = shareVersion(dictionary, true);
+        putId(dictionary);
+        return dictionary;
+    }
+
+    /**
+     * Returns the dictionary last loaded or registered with dictId, or null.
+     */
+    public static FieldDictionary get(int dictId)
+    {
+        if (dictId == 0)
+            dictId = 1; // dictId == 0 is the same as dictId 1
+        return IDS.get(Integer.valueOf(dictId));
+    }
+
+    /*
+     * Records the dictionary under its id & versions and returns the
+     * dictionary recorded before, if reuse is set and there is one.
+     */
+    private static FieldDictionary shareVersion(FieldDictionary dictionary, boolean reuse)
+    {
+        String fieldVersion = dictionary.getFieldProperty("Version");
+        String enumVersion = dictionary.getEnumProperty("Version");
+        if (fieldVersion == null || enumVersion == null)
+            return dictionary;
+
+        String key = dictId(dictionary) + "/" + fieldVersion + "/" + enumVersion;
+        FieldDictionary registered = VERSIONS.get(key);
+        if (registered == null)
+        {
+            VERSIONS.put(key, dictionary);
+            return dictionary;
+        }
+        return reuse ? registered : dictionary;
+    }
+
+    private static void putId(FieldDictionary dictionary)
+    {
+        HashMap<Integer, FieldDictionary> ids = new HashMap<Integer, FieldDictionary>(IDS);
+        ids.put(Integer.valueOf(dictId(dictionary)), dictionary);
+        IDS = Collections.unmodifiableMap(ids);
+    }
+
+    private static int dictId(FieldDictionary dictionary)
+    {
+        int dictId = dictionary.getDictId();
+        return dictId == 0 ? 1 : dictId;
+    }
+
+    /*
+     * The files are identified by their canonical path and modification time,
+     * so an updated file is loaded again.
+     */
+    private static String fileKey(String fieldFile, String enumFile)
+    {
+        return fileKey(new File(fieldFile)) + '|' + fileKey(new File(enumFile));
+    }
+
+    private static String fileKey(File file)
+    {
+        String path;
+        try
+        {
+            path = file.getCanonicalPath();
+        }
+        catch (IOException e)
+        {
+            path = file.getAbsolutePath();
+        }
+        return path + '@' + file.lastModified();
+    }
+}
@@ -1,8 +1,14 @@
 package com.reuters.rfa.example.utility;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.Iterator;
 import java.util.Vector;
 
@@ -46,24 +52,80 @@ import com.reuters.rfa.utility.HexDump;
 
 /**
  * The GenericOMMParser is used to read and initialize dictionaries and parse
- * any OMM message that is passed to it using the parse() method.
- * 
- * This class is not thread safe due to the static variables. The "CURRENT"
- * variables save state between methods, so another thread cannot change the
- * values. CURRENT_DICTIONARY requires only one FieldDictionary to be used at a
- * time. CURRENT_PAGE requires only one page to be parsed at a time.
+ * any OMM message that is passed to it.
+ * <p>
+ * Dictionaries are initialized once with the static initializeDictionary()
+ * methods and shared by all parsers. A parser instance formats a message into
+ * its own reusable buffer and writes it to its sink, an {@link Appendable} or
+ * an {@link OutputStream}, in one piece, so the messages printed by several
+ * threads are not interleaved.
+ * <p>
+ * An instance is not thread safe: the current dictionary and the current
+ * ANSI page are saved between methods. Use one instance per thread. The static
+ * parse() methods use an instance per calling thread.
  */
 public final class GenericOMMParser
 {
-    private static HashMap<Integer, FieldDictionary> DICTIONARIES = new HashMap<Integer, FieldDictionary>();
-    private static FieldDictionary CURRENT_DICTIONARY;
-    private static Page CURRENT_PAGE;
-
     private static boolean INTERNAL_DEBUG = false;
 
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    private static final ThreadLocal<GenericOMMParser> THREAD_PARSERS = new ThreadLocal<GenericOMMParser>()
+    {
+        protected GenericOMMParser initialValue()
+        {
+            return new GenericOMMParser();
+        }
+    };
+
+    private final Appendable _out;
+    private final OutputStream _stream;
+    private final StringBuilder _buf = new StringBuilder(1024);
+    private final StringBuilder _pageBuf = new StringBuilder(80);
+
+    private CharsetEncoder _encoder;
+    private ByteBuffer _bytes;
+
+    private FieldDictionary _currentDictionary;
+    private Page _currentPage;
+
+    /**
+     * Parser writing to System.out
+     */
+    public GenericOMMParser()
+    {
+        this(System.out);
+    }
+
+    /**
+     * Parser writing each message to ps
+     */
+    public GenericOMMParser(PrintStream ps)
+    {
+        this((OutputStream)ps);
+    }
+
+    /**
+     * Parser writing each message as characters to out
+     */
+    public GenericOMMParser(Appendable out)
+    {
+        _out = out;
+        _stream = null;
+    }
+
+    /**
+     * Parser writing each message as bytes of the default charset to out
+     */
+    public GenericOMMParser(OutputStream out)
+    {
+        _out = null;
+        _stream = out;
+    }
+
     /**
      * This method should be called one before parsing and data.
-     * 
+     *
      * @param fieldDictionaryFilename
      * @param enumDictionaryFilename
      * @throws DictionaryException if an error has occurred
@@ -71,16 +133,11 @@ public final class GenericOMMParser
     public static void initializeDictionary(String fieldDictionaryFilename,
             String enumDictionaryFilename) throws DictionaryException
     {
-        FieldDictionary dictionary = FieldDictionary.create();
         try
         {
-            FieldDictionary.readRDMFieldDictionary(dictionary, fieldDictionaryFilename);
+            DictionaryRegistry.load(fieldDictionaryFilename, enumDictionaryFilename);
             System.out.println("field dictionary read from RDMFieldDictionary file");
-
-            FieldDictionary.readEnumTypeDef(dictionary, enumDictionaryFilename);
             System.out.println("enum dictionary read from enumtype.def file");
-
-            initializeDictionary(dictionary);
         }
         catch (DictionaryException e)
         {
@@ -90,19 +147,14 @@ public final class GenericOMMParser
     }
 
     // This method can be used to initialize a downloaded dictionary
-    public synchronized static void initializeDictionary(FieldDictionary dict)
+    public static void initializeDictionary(FieldDictionary dict)
     {
-        int dictId = dict.getDictId();
-        if (dictId == 0)
-            dictId = 1; // dictId == 0 is the same as dictId 1
-        DICTIONARIES.put(new Integer(dictId), dict);
+        DictionaryRegistry.register(dict);
     }
 
     public static FieldDictionary getDictionary(int dictId)
     {
-        if (dictId == 0)
-            dictId = 1;
-        return (FieldDictionary)DICTIONARIES.get(new Integer(dictId));
+        return DictionaryRegistry.get(dictId);
     }
 
     /**
@@ -113,177 +165,316 @@ public final class GenericOMMParser
         parseMsg(msg, System.out);
     }
 
-    private static final String hintString(OMMMsg msg)
+    /**
+     * parse msg and print it in a table-nested format to the provided
+     * PrintStream
+     */
+    public static final void parseMsg(OMMMsg msg, PrintStream ps)
+    {
+        GenericOMMParser parser = THREAD_PARSERS.get();
+        parser._buf.setLength(0);
+        parser.formatMsg(msg, 0);
+        parser.flushTo(ps);
+    }
+
+    /**
+     * parse msg and print it in a table-nested format to the provided
+     * PrintStream
+     */
+    public static final void parseDataDefinition(OMMDataDefs datadefs, short dbtype,
+            PrintStream ps, int tabLevel)
+    {
+        GenericOMMParser parser = THREAD_PARSERS.get();
+        parser._buf.setLength(0);
+        parser.formatDataDefinition(datadefs, dbtype, tabLevel);
+        parser.flushTo(ps);
+    }
+
+    /**
+     * parse data and print it in a table-nested format to the System.out
+     */
+    public static final void parse(OMMData data)
+    {
+        parseData(data, System.out, 0);
+    }
+
+    /**
+     * parse data and print it in a table-nested format to the provided
+     * PrintStream
+     */
+    public static final void parseData(OMMData data, PrintStream ps, int tabLevel)
+    {
+        GenericOMMParser parser = THREAD_PARSERS.get();
+        parser._buf.setLength(0);
+        parser.formatData(data, tabLevel);
+        parser.flushTo(ps);
+    }
+
+    public static final void parseAnsiPageData(OMMData data, PrintStream ps, int tabLevel)
+    {
+        GenericOMMParser parser = THREAD_PARSERS.get();
+        parser._buf.setLength(0);
+        parser.formatAnsiPageData(data, tabLevel);
+        parser.flushTo(ps);
+    }
+
+    /**
+     * print msg in a table-nested format to the sink of this parser
+     */
+    public void print(OMMMsg msg)
+    {
+        _buf.setLength(0);
+        formatMsg(msg, 0);
+        flush();
+    }
+
+    /**
+     * print data in a table-nested format to the sink of this parser
+     */
+    public void print(OMMData data)
+    {
+        _buf.setLength(0);
+        formatData(data, 0);
+        flush();
+    }
+
+    /**
+     * Formats msg in a table-nested format without printing it.
+     *
+     * @return the text, valid until the next call to this parser
+     */
+    public CharSequence format(OMMMsg msg)
+    {
+        _buf.setLength(0);
+        formatMsg(msg, 0);
+        return _buf;
+    }
+
+    private void flush()
     {
-        StringBuilder buf = new StringBuilder(60);
+        if (_out != null)
+        {
+            try
+            {
+                _out.append(_buf);
+            }
+            catch (IOException e)
+            {
+                // like PrintStream, a failed print is not reported
+            }
+            _buf.setLength(0);
+        }
+        else
+        {
+            flushTo(_stream);
+        }
+    }
 
+    private void flushTo(OutputStream out)
+    {
+        if (_encoder == null)
+        {
+            _encoder = Charset.defaultCharset().newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            _bytes = ByteBuffer.allocate(4096);
+        }
+
+        int maxLength = (int)(_buf.length() * _encoder.maxBytesPerChar()) + 16;
+        if (_bytes.capacity() < maxLength)
+            _bytes = ByteBuffer.allocate(Math.max(maxLength, _bytes.capacity() * 2));
+
+        _encoder.reset();
+        _bytes.clear();
+        CharBuffer chars = CharBuffer.wrap(_buf);
+        _encoder.encode(chars, _bytes, true);
+        _encoder.flush(_bytes);
+        _buf.setLength(0);
+        try
+        {
+            out.write(_bytes.array(), 0, _bytes.position());
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            // like PrintStream, a failed print is not reported
+        }
+    }
+
+    private void appendHints(OMMMsg msg)
+    {
         boolean bAppend = true;
 
         if (msg.has(OMMMsg.HAS_ATTRIB_INFO))
         {
-            bAppend = append(buf, "HAS_ATTRIB_INFO", bAppend);
+            bAppend = appendHint("HAS_ATTRIB_INFO", bAppend);
         }
         if (msg.has(OMMMsg.HAS_CONFLATION_INFO))
         {
-            bAppend = append(buf, "HAS_CONFLATION_INFO", bAppend);
+            bAppend = appendHint("HAS_CONFLATION_INFO", bAppend);
         }
         if (msg.has(OMMMsg.HAS_HEADER))
         {
-            bAppend = append(buf, "HAS_HEADER", bAppend);
+            bAppend = appendHint("HAS_HEADER", bAppend);
         }
         if (msg.has(OMMMsg.HAS_ITEM_GROUP))
         {
-            bAppend = append(buf, "HAS_ITEM_GROUP", bAppend);
+            bAppend = appendHint("HAS_ITEM_GROUP", bAppend);
         }
         if (msg.has(OMMMsg.HAS_PERMISSION_DATA))
         {
-            bAppend = append(buf, "HAS_PERMISSION_DATA", bAppend);
+            bAppend = appendHint("HAS_PERMISSION_DATA", bAppend);
         }
         if (msg.has(OMMMsg.HAS_PRIORITY))
         {
-            bAppend = append(buf, "HAS_PRIORITY", bAppend);
+            bAppend = appendHint("HAS_PRIORITY", bAppend);
         }
         if (msg.has(OMMMsg.HAS_QOS))
         {
-            bAppend = append(buf, "HAS_QOS", bAppend);
+            bAppend = appendHint("HAS_QOS", bAppend);
         }
         if (msg.has(OMMMsg.HAS_QOS_REQ))
         {
-            bAppend = append(buf, "HAS_QOS_REQ", bAppend);
+            bAppend = appendHint("HAS_QOS_REQ", bAppend);
         }
         if (msg.has(OMMMsg.HAS_RESP_TYPE_NUM))
         {
-            bAppend = append(buf, "HAS_RESP_TYPE_NUM", bAppend);
+            bAppend = appendHint("HAS_RESP_TYPE_NUM", bAppend);
         }
         if (msg.has(OMMMsg.HAS_SEQ_NUM))
         {
-            bAppend = append(buf, "HAS_SEQ_NUM", bAppend);
+            bAppend = appendHint("HAS_SEQ_NUM", bAppend);
         }
         if (msg.has(OMMMsg.HAS_ID))
         {
-            bAppend = append(buf, "HAS_ID", bAppend);
+            bAppend = appendHint("HAS_ID", bAppend);
         }
         if (msg.has(OMMMsg.HAS_PUBLISHER_INFO))
         {
-            bAppend = append(buf, "HAS_PUBLISHER_INFO", bAppend);
+            bAppend = appendHint("HAS_PUBLISHER_INFO", bAppend);
         }
         if (msg.has(OMMMsg.HAS_STATE))
         {
-            bAppend = append(buf, "HAS_STATE", bAppend);
+            bAppend = appendHint("HAS_STATE", bAppend);
         }
         if (msg.has(OMMMsg.HAS_USER_RIGHTS))
         {
-            bAppend = append(buf, "HAS_USER_RIGHTS", bAppend);
+            bAppend = appendHint("HAS_USER_RIGHTS", bAppend);
         }
-
-        return buf.toString();
     }
 
-    private static boolean append(StringBuilder buf, String str, boolean first)
+    private boolean appendHint(String str, boolean first)
     {
         if (!first)
-        {
-            buf.append(" | ");
-            first = false;
-        }
-        else
-            first = false;
+            _buf.append(" | ");
 
-        buf.append(str);
-        return first;
+        _buf.append(str);
+        return false;
     }
 
-    /**
-     * parse msg and print it in a table-nested format to the provided
-     * PrintStream
-     */
-    public static final void parseMsg(OMMMsg msg, PrintStream ps)
+    private void newLine()
     {
-        parseMsg(msg, ps, 0);
+        _buf.append(NEWLINE);
     }
 
-    static final void parseMsg(OMMMsg msg, PrintStream ps, int tabLevel)
+    private void formatMsg(OMMMsg msg, int tabLevel)
     {
-        msg.getMsgType();
-        dumpIndent(ps, tabLevel);
-        ps.println("MESSAGE");
-        dumpIndent(ps, tabLevel + 1);
-        ps.println("Msg Type: " + OMMMsg.MsgType.toString(msg.getMsgType()));
-        dumpIndent(ps, tabLevel + 1);
-        ps.println("Msg Model Type: " + RDMMsgTypes.toString(msg.getMsgModelType()));
-        dumpIndent(ps, tabLevel + 1);
-        ps.println("Indication Flags: " + OMMMsg.Indication.indicationString(msg));
-
-        dumpIndent(ps, tabLevel + 1);
-        ps.println("Hint Flags: " + hintString(msg));
+        dumpIndent(tabLevel);
+        _buf.append("MESSAGE");
+        newLine();
+        dumpIndent(tabLevel + 1);
+        _buf.append("Msg Type: ").append(OMMMsg.MsgType.toString(msg.getMsgType()));
+        newLine();
+        dumpIndent(tabLevel + 1);
+        _buf.append("Msg Model Type: ").append(RDMMsgTypes.toString(msg.getMsgModelType()));
+        newLine();
+        dumpIndent(tabLevel + 1);
+        _buf.append("Indication Flags: ").append(OMMMsg.Indication.indicationString(msg));
+        newLine();
+
+        dumpIndent(tabLevel + 1);
+        _buf.append("Hint Flags: ");
+        appendHints(msg);
+        newLine();
 
         if ((msg.getDataType() == OMMTypes.ANSI_PAGE) && msg.isSet(OMMMsg.Indication.CLEAR_CACHE))
         {
-            CURRENT_PAGE = null;
+            _currentPage = null;
         }
 
         if (msg.has(OMMMsg.HAS_STATE))
         {
-            dumpIndent(ps, tabLevel + 1);
-            ps.println("State: " + msg.getState());
+            dumpIndent(tabLevel + 1);
+            _buf.append("State: ").append(msg.getState());
+            newLine();
         }
         if (msg.has(OMMMsg.HAS_PRIORITY))
         {
-            dumpIndent(ps, tabLevel + 1);
+            dumpIndent(tabLevel + 1);
             OMMPriority p = msg.getPriority();
             if (p != null)
-                ps.println("Priority: " + p.getPriorityClass() + "," + p.getCount());
+                _buf.append("Priority: ").append(p.getPriorityClass()).append(',')
+                        .append(p.getCount());
             else
-                ps.println("Priority: Error flag recieved but there is not priority present");
+                _buf.append("Priority: Error flag recieved but there is not priority present");
+            newLine();
         }
         if (msg.has(OMMMsg.HAS_QOS))
         {
-            dumpIndent(ps, tabLevel + 1);
-            ps.println("Qos: " + msg.getQos());
+            dumpIndent(tabLevel + 1);
+            _buf.append("Qos: ").append(msg.getQos());
+            newLine();
         }
         if (msg.has(OMMMsg.HAS_QOS_REQ))
         {
-            dumpIndent(ps, tabLevel + 1);
-            ps.println("QosReq: " + msg.getQosReq());
+            dumpIndent(tabLevel + 1);
+            _buf.append("QosReq: ").append(msg.getQosReq());
+            newLine();
         }
         if (msg.has(OMMMsg.HAS_ITEM_GROUP))
         {
-            dumpIndent(ps, tabLevel + 1);
-            ps.println("Group: " + msg.getItemGroup());
+            dumpIndent(tabLevel + 1);
+            _buf.append("Group: ").append(msg.getItemGroup());
+            newLine();
         }
         if (msg.has(OMMMsg.HAS_PERMISSION_DATA))
         {
-        	byte[] permdata = msg.getPermissionData();
-        	
-            dumpIndent(ps, tabLevel + 1);
-            ps.print("PermissionData: " + HexDump.toHexString(permdata, false));
-            ps.println(" ( " + HexDump.formatHexString(permdata) + " ) ");
+            byte[] permdata = msg.getPermissionData();
+
+            dumpIndent(tabLevel + 1);
+            _buf.append("PermissionData: ").append(HexDump.toHexString(permdata, false));
+            _buf.append(" ( ").append(HexDump.formatHexString(permdata)).append(" ) ");
+            newLine();
         }
         if (msg.has(OMMMsg.HAS_SEQ_NUM))
         {
-            dumpIndent(ps, tabLevel + 1);
-            ps.println("SeqNum: " + msg.getSeqNum());
+            dumpIndent(tabLevel + 1);
+            _buf.append("SeqNum: ").append(msg.getSeqNum());
+            newLine();
         }
 
         if (msg.has(OMMMsg.HAS_CONFLATION_INFO))
         {
-            dumpIndent(ps, tabLevel + 1);
-            ps.println("Conflation Count: " + msg.getConflationCount());
-            dumpIndent(ps, tabLevel + 1);
-            ps.println("Conflation Time: " + msg.getConflationTime());
+            dumpIndent(tabLevel + 1);
+            _buf.append("Conflation Count: ").append(msg.getConflationCount());
+            newLine();
+            dumpIndent(tabLevel + 1);
+            _buf.append("Conflation Time: ").append(msg.getConflationTime());
+            newLine();
         }
 
         if (msg.has(OMMMsg.HAS_RESP_TYPE_NUM))
         {
-            dumpIndent(ps, tabLevel + 1);
-            ps.print("RespTypeNum: " + msg.getRespTypeNum());
-            dumpRespTypeNum(msg, ps);
+            dumpIndent(tabLevel + 1);
+            _buf.append("RespTypeNum: ").append(msg.getRespTypeNum());
+            dumpRespTypeNum(msg);
         }
 
         if (msg.has(OMMMsg.HAS_ID))
         {
-            dumpIndent(ps, tabLevel + 1);
-            ps.println("Id: " + msg.getId());
+            dumpIndent(tabLevel + 1);
+            _buf.append("Id: ").append(msg.getId());
+            newLine();
         }
 
         if ((msg.has(OMMMsg.HAS_PUBLISHER_INFO)) || (msg.getMsgType() == OMMMsg.MsgType.POST))
@@ -291,131 +482,134 @@ public final class GenericOMMParser
             PublisherPrincipalIdentity pi = (PublisherPrincipalIdentity)msg.getPrincipalIdentity();
             if (pi != null)
             {
-                dumpIndent(ps, tabLevel + 1);
-                ps.println("Publisher Address: 0x" + Long.toHexString(pi.getPublisherAddress()));
-                dumpIndent(ps, tabLevel + 1);
-                ps.println("Publisher Id: " + pi.getPublisherId());
+                dumpIndent(tabLevel + 1);
+                _buf.append("Publisher Address: 0x")
+                        .append(Long.toHexString(pi.getPublisherAddress()));
+                newLine();
+                dumpIndent(tabLevel + 1);
+                _buf.append("Publisher Id: ").append(pi.getPublisherId());
+                newLine();
             }
         }
 
-        if (msg.has(OMMMsg.HAS_USER_RIGHTS) )
+        if (msg.has(OMMMsg.HAS_USER_RIGHTS))
         {
-        	dumpIndent(ps, tabLevel + 1);
-        	ps.println("User Rights Mask: " + OMMMsg.UserRights.userRightsString(msg.getUserRightsMask()));
+            dumpIndent(tabLevel + 1);
+            _buf.append("User Rights Mask: ")
+                    .append(OMMMsg.UserRights.userRightsString(msg.getUserRightsMask()));
+            newLine();
         }
 
         if (msg.has(OMMMsg.HAS_ATTRIB_INFO))
         {
-            dumpIndent(ps, tabLevel + 1);
-            ps.println("AttribInfo");
+            dumpIndent(tabLevel + 1);
+            _buf.append("AttribInfo");
+            newLine();
             OMMAttribInfo ai = msg.getAttribInfo();
             if (ai.has(OMMAttribInfo.HAS_SERVICE_NAME))
             {
-                dumpIndent(ps, tabLevel + 2);
-                ps.println("ServiceName: " + ai.getServiceName());
+                dumpIndent(tabLevel + 2);
+                _buf.append("ServiceName: ").append(ai.getServiceName());
+                newLine();
             }
             if (ai.has(OMMAttribInfo.HAS_SERVICE_ID))
             {
-                dumpIndent(ps, tabLevel + 2);
-                ps.println("ServiceId: " + ai.getServiceID());
+                dumpIndent(tabLevel + 2);
+                _buf.append("ServiceId: ").append(ai.getServiceID());
+                newLine();
             }
             if (ai.has(OMMAttribInfo.HAS_NAME))
             {
-                dumpIndent(ps, tabLevel + 2);
-                ps.println("Name: " + ai.getName());
+                dumpIndent(tabLevel + 2);
+                _buf.append("Name: ").append(ai.getName());
+                newLine();
             }
             if (ai.has(OMMAttribInfo.HAS_NAME_TYPE))
             {
-                dumpIndent(ps, tabLevel + 2);
-                ps.print("NameType: " + ai.getNameType());
+                dumpIndent(tabLevel + 2);
+                _buf.append("NameType: ").append(ai.getNameType());
                 if (msg.getMsgModelType() == RDMMsgTypes.LOGIN)
                 {
-                    ps.println(" (" + RDMUser.NameType.toString(ai.getNameType()) + ")");
+                    _buf.append(" (").append(RDMUser.NameType.toString(ai.getNameType()))
+                            .append(')');
                 }
                 else if (RDMInstrument.isInstrumentMsgModelType(msg.getMsgModelType()))
                 {
-
-                    ps.println(" (" + RDMInstrument.NameType.toString(ai.getNameType()) + ")");
-                }
-                else
-                {
-                    ps.println();
+                    _buf.append(" (").append(RDMInstrument.NameType.toString(ai.getNameType()))
+                            .append(')');
                 }
+                newLine();
             }
             if (ai.has(OMMAttribInfo.HAS_FILTER))
             {
-                dumpIndent(ps, tabLevel + 2);
-                ps.print("Filter: " + ai.getFilter());
+                dumpIndent(tabLevel + 2);
+                _buf.append("Filter: ").append(ai.getFilter());
                 if (msg.getMsgModelType() == RDMMsgTypes.DIRECTORY)
                 {
-                    ps.println(" (" + RDMService.Filter.toString(ai.getFilter()) + ")");
+                    _buf.append(" (").append(RDMService.Filter.toString(ai.getFilter()))
+                            .append(')');
                 }
                 else if (msg.getMsgModelType() == RDMMsgTypes.DICTIONARY)
                 {
-                    ps.println(" (" + RDMDictionary.Filter.toString(ai.getFilter()) + ")");
-                }
-                else
-                {
-                    ps.println();
+                    _buf.append(" (").append(RDMDictionary.Filter.toString(ai.getFilter()))
+                            .append(')');
                 }
+                newLine();
             }
             if (ai.has(OMMAttribInfo.HAS_ID))
             {
-                dumpIndent(ps, tabLevel + 2);
-                ps.println("ID: " + ai.getId());
+                dumpIndent(tabLevel + 2);
+                _buf.append("ID: ").append(ai.getId());
+                newLine();
             }
             if (ai.has(OMMAttribInfo.HAS_ATTRIB))
             {
-                dumpIndent(ps, tabLevel + 2);
-                ps.println("Attrib");
-                parseData(ai.getAttrib(), ps, tabLevel + 2);
+                dumpIndent(tabLevel + 2);
+                _buf.append("Attrib");
+                newLine();
+                formatData(ai.getAttrib(), tabLevel + 2);
             }
         }
 
-        dumpIndent(ps, tabLevel + 1);
-        ps.print("Payload: ");
+        dumpIndent(tabLevel + 1);
+        _buf.append("Payload: ");
         if (msg.getDataType() != OMMTypes.NO_DATA)
         {
-            ps.println(msg.getPayload().getEncodedLength() + " bytes");
-            parseData(msg.getPayload(), ps, tabLevel + 1);
+            _buf.append(msg.getPayload().getEncodedLength()).append(" bytes");
+            newLine();
+            formatData(msg.getPayload(), tabLevel + 1);
         }
         else
         {
-            ps.println("None");
+            _buf.append("None");
+            newLine();
         }
     }
 
-    /**
-     * parse msg and print it in a table-nested format to the provided
-     * PrintStream
-     */
-    public static final void parseDataDefinition(OMMDataDefs datadefs, short dbtype,
-            PrintStream ps, int tabLevel)
+    private void formatDataDefinition(OMMDataDefs datadefs, short dbtype, int tabLevel)
     {
         DataDefDictionary listDefDb = DataDefDictionary.create(dbtype);
         DataDefDictionary.decodeOMMDataDefs(listDefDb, datadefs);
 
-        ps.print("DATA_DEFINITIONS ");
+        _buf.append("DATA_DEFINITIONS ");
         for (Iterator listDefDbIter = listDefDb.iterator(); listDefDbIter.hasNext();)
         {
             DataDef listdef = (DataDef)listDefDbIter.next();
 
-            ps.print("Count: ");
-            ps.print(listdef.getCount());
-            ps.print(" DefId: ");
-            ps.println(listdef.getDataDefId());
+            _buf.append("Count: ").append(listdef.getCount());
+            _buf.append(" DefId: ").append(listdef.getDataDefId());
+            newLine();
 
             if (dbtype == OMMTypes.ELEMENT_LIST_DEF_DB)
             {
                 for (Iterator listdefIter = listdef.iterator(); listdefIter.hasNext();)
                 {
                     ElementEntryDef ommEntry = (ElementEntryDef)listdefIter.next();
-                    dumpIndent(ps, tabLevel + 1);
-                    ps.print("ELEMENT_ENTRY_DEF ");
-                    ps.print("Name: ");
-                    ps.print(ommEntry.getName());
-                    ps.print(" Type: ");
-                    ps.println(OMMTypes.toString(ommEntry.getDataType()));
+                    dumpIndent(tabLevel + 1);
+                    _buf.append("ELEMENT_ENTRY_DEF ");
+                    _buf.append("Name: ").append(ommEntry.getName());
+                    _buf.append(" Type: ").append(OMMTypes.toString(ommEntry.getDataType()));
+                    newLine();
                 }
             }
             else
@@ -423,22 +617,22 @@ public final class GenericOMMParser
                 for (Iterator listdefIter = listdef.iterator(); listdefIter.hasNext();)
                 {
                     FieldEntryDef ommEntry = (FieldEntryDef)listdefIter.next();
-                    dumpIndent(ps, tabLevel + 1);
-                    ps.print("FIELD_ENTRY_DEF ");
-                    ps.print("FID: ");
-                    ps.print(ommEntry.getFieldId());
-                    ps.print(" Type: ");
-                    ps.println(OMMTypes.toString(ommEntry.getDataType()));
+                    dumpIndent(tabLevel + 1);
+                    _buf.append("FIELD_ENTRY_DEF ");
+                    _buf.append("FID: ").append(ommEntry.getFieldId());
+                    _buf.append(" Type: ").append(OMMTypes.toString(ommEntry.getDataType()));
+                    newLine();
                 }
             }
         }
     }
 
-    private static void dumpRespTypeNum(OMMMsg msg, PrintStream ps)
+    private void dumpRespTypeNum(OMMMsg msg)
     {
         if (msg.getMsgType() == OMMMsg.MsgType.REFRESH_RESP)
         {
-            ps.println(" (" + OMMMsg.RespType.toString(msg.getRespTypeNum()) + ")");
+            _buf.append(" (").append(OMMMsg.RespType.toString(msg.getRespTypeNum())).append(')');
+            newLine();
         }
         else
         // msg.getMsgType() == OMMMsg.OMMMsg.MsgType.UPDATE_RESP
@@ -446,40 +640,29 @@ public final class GenericOMMParser
             if ((msg.getMsgModelType() >= RDMMsgTypes.MARKET_PRICE)
                     && (msg.getMsgModelType() <= RDMMsgTypes.HISTORY))
             {
-                ps.println(" (" + RDMInstrument.Update.toString(msg.getRespTypeNum()) + ")");
+                _buf.append(" (").append(RDMInstrument.Update.toString(msg.getRespTypeNum()))
+                        .append(')');
+                newLine();
             }
         }
     }
 
-    /**
-     * parse data and print it in a table-nested format to the System.out
-     */
-
-    public static final void parse(OMMData data)
-    {
-        parseData(data, System.out, 0);
-    }
-
-    private static final void parseAggregate(OMMData data, PrintStream ps, int tabLevel)
+    private void formatAggregate(OMMData data, int tabLevel)
     {
-        parseAggregateHeader(data, ps, tabLevel);
+        formatAggregateHeader(data, tabLevel);
         for (Iterator iter = ((OMMIterable)data).iterator(); iter.hasNext();)
         {
             OMMEntry entry = (OMMEntry)iter.next();
-            parseEntry(entry, ps, tabLevel + 1);
+            formatEntry(entry, tabLevel + 1);
         }
     }
 
-    /**
-     * parse data and print it in a table-nested format to the provided
-     * PrintStream
-     */
-    public static final void parseData(OMMData data, PrintStream ps, int tabLevel)
+    private void formatData(OMMData data, int tabLevel)
     {
         if (data.isBlank())
-            dumpBlank(ps);
+            dumpBlank();
         else if (OMMTypes.isAggregate(data.getType()))
-            parseAggregate(data, ps, tabLevel + 1);
+            formatAggregate(data, tabLevel + 1);
         else if ((data.getType() == OMMTypes.RMTES_STRING)
                 && ((OMMDataBuffer)data).hasPartialUpdates())
         {
@@ -487,40 +670,41 @@ public final class GenericOMMParser
             while (true)
             {
                 OMMDataBuffer partial = (OMMDataBuffer)iter.next();
-                ps.print("hpos: ");
-                ps.print(partial.horizontalPosition());
-                ps.print(", ");
-                ps.print(partial.toString());
+                _buf.append("hpos: ").append(partial.horizontalPosition());
+                _buf.append(", ").append(partial.toString());
                 if (iter.hasNext())
-                    ps.print("  |  ");
+                    _buf.append("  |  ");
                 else
                     break;
             }
-            ps.println();
+            newLine();
         }
         else if (data.getType() == OMMTypes.ANSI_PAGE)
         {
             // process ANSI with com.reuters.rfa.ansipage
-            parseAnsiPageData(data, ps, tabLevel);
+            formatAnsiPageData(data, tabLevel);
         }
         else if (data.getType() == OMMTypes.BUFFER || data.getType() == OMMTypes.OPAQUE_BUFFER)
         {
             if (data.getEncodedLength() <= 20)
             {
-                dumpIndent(ps, tabLevel + 1);
+                dumpIndent(tabLevel + 1);
                 // for small strings, print hex and try to print ASCII
-                ps.print(HexDump.toHexString(((OMMDataBuffer)data).getBytes(), false));
-                ps.print(" | ");
-                ps.println(data);
+                _buf.append(HexDump.toHexString(((OMMDataBuffer)data).getBytes(), false));
+                _buf.append(" | ").append(data);
+                newLine();
             }
             else
             {
                 if (INTERNAL_DEBUG)
                 {
-                    ps.println("Hex Format and Data Bytes: ");
-                    ps.println(HexDump.hexDump(((OMMDataBuffer)data).getBytes(), 50));
+                    _buf.append("Hex Format and Data Bytes: ");
+                    newLine();
+                    _buf.append(HexDump.hexDump(((OMMDataBuffer)data).getBytes(), 50));
+                    newLine();
 
-                    ps.println("Hex Format: ");
+                    _buf.append("Hex Format: ");
+                    newLine();
                 }
 
                 int lineSize = 32;
@@ -530,49 +714,52 @@ public final class GenericOMMParser
                 while (j < s.length())
                 {
                     if (j != 0)
-                        ps.println();
+                        newLine();
 
-                    dumpIndent(ps, 1);
+                    dumpIndent(1);
 
                     int end = j + lineSize;
                     if (end >= s.length())
                         end = s.length();
 
-                    for (int i = j; i < end; i++)
-                    {
-                        ps.print(s.charAt(i));
-                    }
+                    _buf.append(s, j, end);
                     j = j + lineSize;
                 }
 
-                ps.println("\nData Bytes: ");
-                dumpIndent(ps, 1);
-                ps.println(data);
+                _buf.append("\nData Bytes: ");
+                newLine();
+                dumpIndent(1);
+                _buf.append(data);
+                newLine();
             }
         }
         else if (data.getType() == OMMTypes.MSG)
         {
-            parseMsg((OMMMsg)data, ps, tabLevel + 1);
+            formatMsg((OMMMsg)data, tabLevel + 1);
         }
         else
         {
+            int length = _buf.length();
             try
             {
-                ps.println(data);
+                _buf.append(data);
             }
             catch (Exception e)
             {
+                _buf.setLength(length);
                 byte[] rawdata = data.getBytes();
-                ps.println(HexDump.hexDump(rawdata));
+                _buf.append(HexDump.hexDump(rawdata));
             }
+            newLine();
         }
     }
 
-    private static final void parseAggregateHeader(OMMData data, PrintStream ps, int tabLevel)
+    private void formatAggregateHeader(OMMData data, int tabLevel)
     {
-        dumpIndent(ps, tabLevel);
+        dumpIndent(tabLevel);
         short dataType = data.getType();
-        ps.println(OMMTypes.toString(dataType));
+        _buf.append(OMMTypes.toString(dataType));
+        newLine();
         switch (dataType)
         {
             case OMMTypes.FIELD_LIST:
@@ -580,7 +767,7 @@ public final class GenericOMMParser
                 // set DICTIONARY to the dictId for this field list
                 OMMFieldList fieldList = (OMMFieldList)data;
                 int dictId = fieldList.getDictId();
-                CURRENT_DICTIONARY = getDictionary(dictId);
+                _currentDictionary = getDictionary(dictId);
             }
                 break;
             case OMMTypes.SERIES:
@@ -588,16 +775,17 @@ public final class GenericOMMParser
                 OMMSeries s = (OMMSeries)data;
                 if (s.has(OMMSeries.HAS_SUMMARY_DATA))
                 {
-                    dumpIndent(ps, tabLevel + 1);
-                    ps.println("SUMMARY");
-                    parseData(s.getSummaryData(), ps, tabLevel + 1);
+                    dumpIndent(tabLevel + 1);
+                    _buf.append("SUMMARY");
+                    newLine();
+                    formatData(s.getSummaryData(), tabLevel + 1);
                 }
                 if (s.has(OMMSeries.HAS_DATA_DEFINITIONS))
                 {
-                    dumpIndent(ps, tabLevel + 1);
+                    dumpIndent(tabLevel + 1);
                     short dbtype = s.getDataType() == OMMTypes.FIELD_LIST ? OMMTypes.FIELD_LIST_DEF_DB
                             : OMMTypes.ELEMENT_LIST_DEF_DB;
-                    parseDataDefinition(s.getDataDefs(), dbtype, ps, tabLevel + 1);
+                    formatDataDefinition(s.getDataDefs(), dbtype, tabLevel + 1);
                 }
             }
                 break;
@@ -606,15 +794,16 @@ public final class GenericOMMParser
                 OMMMap s = (OMMMap)data;
 
                 String flagsString = ExampleUtil.mapFlagsString(s);
-                dumpIndent(ps, tabLevel);
-                ps.print("flags: ");
-                ps.println(flagsString);
+                dumpIndent(tabLevel);
+                _buf.append("flags: ").append(flagsString);
+                newLine();
 
                 if (s.has(OMMMap.HAS_SUMMARY_DATA))
                 {
-                    dumpIndent(ps, tabLevel + 1);
-                    ps.println("SUMMARY");
-                    parseData(s.getSummaryData(), ps, tabLevel + 1);
+                    dumpIndent(tabLevel + 1);
+                    _buf.append("SUMMARY");
+                    newLine();
+                    formatData(s.getSummaryData(), tabLevel + 1);
                 }
             }
                 break;
@@ -623,15 +812,16 @@ public final class GenericOMMParser
                 OMMVector s = (OMMVector)data;
 
                 String flagsString = ExampleUtil.vectorFlagsString(s);
-                dumpIndent(ps, tabLevel);
-                ps.print("flags: ");
-                ps.println(flagsString);
+                dumpIndent(tabLevel);
+                _buf.append("flags: ").append(flagsString);
+                newLine();
 
                 if (s.has(OMMVector.HAS_SUMMARY_DATA))
                 {
-                    dumpIndent(ps, tabLevel + 1);
-                    ps.println("SUMMARY");
-                    parseData(s.getSummaryData(), ps, tabLevel + 1);
+                    dumpIndent(tabLevel + 1);
+                    _buf.append("SUMMARY");
+                    newLine();
+                    formatData(s.getSummaryData(), tabLevel + 1);
                 }
             }
                 break;
@@ -640,26 +830,26 @@ public final class GenericOMMParser
                 OMMFilterList s = (OMMFilterList)data;
 
                 String flagsString = ExampleUtil.filterListFlagsString(s);
-                dumpIndent(ps, tabLevel);
-                ps.print("flags: ");
-                ps.println(flagsString);
+                dumpIndent(tabLevel);
+                _buf.append("flags: ").append(flagsString);
+                newLine();
             }
                 break;
         }
     }
 
-    private static final void dumpBlank(PrintStream ps)
+    private void dumpBlank()
     {
-        ps.println();
+        newLine();
     }
 
-    private static final void dumpIndent(PrintStream ps, int tabLevel)
+    private void dumpIndent(int tabLevel)
     {
         for (int i = 0; i < tabLevel; i++)
-            ps.print('\t');
+            _buf.append('\t');
     }
 
-    private static final void parseEntry(OMMEntry entry, PrintStream ps, int tabLevel)
+    private void formatEntry(OMMEntry entry, int tabLevel)
     {
         try
         {
@@ -669,12 +859,12 @@ public final class GenericOMMParser
                 case OMMTypes.FIELD_ENTRY:
                 {
                     OMMFieldEntry fe = (OMMFieldEntry)entry;
-                    if (CURRENT_DICTIONARY != null)
+                    if (_currentDictionary != null)
                     {
-                        FidDef fiddef = CURRENT_DICTIONARY.getFidDef(fe.getFieldId());
+                        FidDef fiddef = _currentDictionary.getFidDef(fe.getFieldId());
                         if (fiddef != null)
                         {
-                            dumpFieldEntryHeader(fe, fiddef, ps, tabLevel);
+                            dumpFieldEntryHeader(fe, fiddef, tabLevel);
                             OMMData data = null;
                             if (fe.getDataType() == OMMTypes.UNKNOWN)
                                 data = fe.getData(fiddef.getOMMType());
@@ -683,195 +873,189 @@ public final class GenericOMMParser
                                 data = fe.getData();
                             if (data.getType() == OMMTypes.ENUM)
                             {
-                                ps.print(CURRENT_DICTIONARY.expandedValueFor(fiddef.getFieldId(),
-                                                                             ((OMMEnum)data).getValue()));
-                                ps.print(" (");
-                                ps.print(data);
-                                ps.println(")");
+                                _buf.append(_currentDictionary.expandedValueFor(fiddef.getFieldId(),
+                                                                               ((OMMEnum)data).getValue()));
+                                _buf.append(" (").append(data).append(')');
+                                newLine();
                             }
                             else
-                                parseData(data, ps, tabLevel);
+                                formatData(data, tabLevel);
                         }
                         else
                         {
-                            ps.println("Received field id: " + fe.getFieldId()
-                                    + " - Not defined in dictionary");
+                            _buf.append("Received field id: ").append(fe.getFieldId())
+                                    .append(" - Not defined in dictionary");
+                            newLine();
                         }
                     }
                     else
                     {
-                        dumpFieldEntryHeader(fe, null, ps, tabLevel);
+                        dumpFieldEntryHeader(fe, null, tabLevel);
                         if (fe.getDataType() == OMMTypes.UNKNOWN)
                         {
                             OMMDataBuffer data = (OMMDataBuffer)fe.getData();
-                            ps.println(HexDump.toHexString(data.getBytes(), false));
+                            _buf.append(HexDump.toHexString(data.getBytes(), false));
+                            newLine();
                         }
                         else
                         // defined data already has type
                         {
                             OMMData data = fe.getData();
-                            parseData(data, ps, tabLevel);
+                            formatData(data, tabLevel);
                         }
                     }
-                    ps.flush();
                 }
                     break;
                 case OMMTypes.ELEMENT_ENTRY:
-                    dumpElementEntryHeader((OMMElementEntry)entry, ps, tabLevel);
-                    parseData(entry.getData(), ps, tabLevel);
+                    dumpElementEntryHeader((OMMElementEntry)entry, tabLevel);
+                    formatData(entry.getData(), tabLevel);
                     break;
                 case OMMTypes.MAP_ENTRY:
-                    dumpMapEntryHeader((OMMMapEntry)entry, ps, tabLevel);
+                    dumpMapEntryHeader((OMMMapEntry)entry, tabLevel);
                     if ((((OMMMapEntry)entry).getAction() != OMMMapEntry.Action.DELETE)
                             && entry.getDataType() != OMMTypes.NO_DATA)
-                        parseData(entry.getData(), ps, tabLevel);
+                        formatData(entry.getData(), tabLevel);
                     break;
                 case OMMTypes.VECTOR_ENTRY:
-                    dumpVectorEntryHeader((OMMVectorEntry)entry, ps, tabLevel);
+                    dumpVectorEntryHeader((OMMVectorEntry)entry, tabLevel);
                     if ((((OMMVectorEntry)entry).getAction() != OMMVectorEntry.Action.DELETE)
                             && (((OMMVectorEntry)entry).getAction() != OMMVectorEntry.Action.CLEAR))
-                        parseData(entry.getData(), ps, tabLevel);
+                        formatData(entry.getData(), tabLevel);
                     break;
                 case OMMTypes.FILTER_ENTRY:
-                    dumpFilterEntryHeader((OMMFilterEntry)entry, ps, tabLevel);
+                    dumpFilterEntryHeader((OMMFilterEntry)entry, tabLevel);
                     if (((OMMFilterEntry)entry).getAction() != OMMFilterEntry.Action.CLEAR)
-                        parseData(entry.getData(), ps, tabLevel);
+                        formatData(entry.getData(), tabLevel);
                     break;
                 default:
-                    dumpEntryHeader(entry, ps, tabLevel);
-                    parseData(entry.getData(), ps, tabLevel);
+                    dumpEntryHeader(entry, tabLevel);
+                    formatData(entry.getData(), tabLevel);
                     break;
             }
         }
         catch (OMMException e)
         {
-            ps.println("ERROR Invalid data: " + e.getMessage());
+            _buf.append("ERROR Invalid data: ").append(e.getMessage());
+            newLine();
         }
     }
 
-    private static final void dumpEntryHeader(OMMEntry entry, PrintStream ps, int tabLevel)
+    private void dumpEntryHeader(OMMEntry entry, int tabLevel)
     {
-        dumpIndent(ps, tabLevel);
-        ps.print(OMMTypes.toString(entry.getType()));
-        ps.print(": ");
+        dumpIndent(tabLevel);
+        _buf.append(OMMTypes.toString(entry.getType()));
+        _buf.append(": ");
         if (entry.getType() == OMMTypes.SERIES_ENTRY)
-            ps.println();
+            newLine();
         // else array entry value is on same line
     }
 
-    private static final void dumpFieldEntryHeader(OMMFieldEntry entry, FidDef def, PrintStream ps,
-            int tabLevel)
+    private void dumpFieldEntryHeader(OMMFieldEntry entry, FidDef def, int tabLevel)
     {
-        dumpIndent(ps, tabLevel);
-        ps.print(OMMTypes.toString(entry.getType()));
-        ps.print(" ");
-        ps.print(entry.getFieldId());
+        dumpIndent(tabLevel);
+        _buf.append(OMMTypes.toString(entry.getType()));
+        _buf.append(' ').append(entry.getFieldId());
         if (def == null)
         {
-            ps.print(": ");
+            _buf.append(": ");
         }
         else
         {
-            ps.print("/");
-            ps.print(def.getName());
-            ps.print(": ");
+            _buf.append('/').append(def.getName()).append(": ");
             if ((def.getOMMType() >= OMMTypes.BASE_FORMAT) || (def.getOMMType() == OMMTypes.ARRAY))
-                ps.println();
+                newLine();
         }
     }
 
-    private static final void dumpElementEntryHeader(OMMElementEntry entry, PrintStream ps,
-            int tabLevel)
+    private void dumpElementEntryHeader(OMMElementEntry entry, int tabLevel)
     {
-        dumpIndent(ps, tabLevel);
-        ps.print(OMMTypes.toString(entry.getType()));
-        ps.print(" ");
-        ps.print(entry.getName());
-        ps.print(": ");
+        dumpIndent(tabLevel);
+        _buf.append(OMMTypes.toString(entry.getType()));
+        _buf.append(' ').append(entry.getName()).append(": ");
         if ((entry.getDataType() >= OMMTypes.BASE_FORMAT)
                 || (entry.getDataType() == OMMTypes.ARRAY))
-            ps.println();
+            newLine();
 
     }
 
-    private static final void dumpFilterEntryHeader(OMMFilterEntry entry, PrintStream ps,
-            int tabLevel)
+    private void dumpFilterEntryHeader(OMMFilterEntry entry, int tabLevel)
     {
-        dumpIndent(ps, tabLevel);
-        ps.print(OMMTypes.toString(entry.getType()));
-        ps.print(" ");
-        ps.print(entry.getFilterId());
-        ps.print(" (");
-        ps.print(OMMFilterEntry.Action.toString(entry.getAction()));
+        dumpIndent(tabLevel);
+        _buf.append(OMMTypes.toString(entry.getType()));
+        _buf.append(' ').append(entry.getFilterId());
+        _buf.append(" (").append(OMMFilterEntry.Action.toString(entry.getAction()));
         if (entry.has(OMMFilterEntry.HAS_PERMISSION_DATA))
-            ps.print(", HasPermissionData");
+            _buf.append(", HasPermissionData");
         if (entry.has(OMMFilterEntry.HAS_DATA_FORMAT))
-            ps.print(", HasDataFormat");
-        ps.println(") : ");
+            _buf.append(", HasDataFormat");
+        _buf.append(") : ");
+        newLine();
 
         String flagsString = ExampleUtil.filterEntryFlagsString(entry);
-        dumpIndent(ps, tabLevel);
-        ps.print("flags: ");
-        ps.println(flagsString);
+        dumpIndent(tabLevel);
+        _buf.append("flags: ").append(flagsString);
+        newLine();
 
     }
 
-    private static final void dumpMapEntryHeader(OMMMapEntry entry, PrintStream ps, int tabLevel)
+    private void dumpMapEntryHeader(OMMMapEntry entry, int tabLevel)
     {
-        dumpIndent(ps, tabLevel);
-        ps.print(OMMTypes.toString(entry.getType()));
-        ps.print(" (");
-        ps.print(OMMMapEntry.Action.toString(entry.getAction()));
+        dumpIndent(tabLevel);
+        _buf.append(OMMTypes.toString(entry.getType()));
+        _buf.append(" (").append(OMMMapEntry.Action.toString(entry.getAction()));
         if (entry.has(OMMMapEntry.HAS_PERMISSION_DATA))
-            ps.print(", HasPermissionData");
-        ps.println(") : ");
+            _buf.append(", HasPermissionData");
+        _buf.append(") : ");
+        newLine();
 
         String flagsString = ExampleUtil.mapEntryFlagsString(entry);
-        dumpIndent(ps, tabLevel);
-        ps.print("flags: ");
-        ps.println(flagsString);
-
-        dumpIndent(ps, tabLevel);
-        ps.print("Key: ");
-        parseData(entry.getKey(), ps, 0);
-        dumpIndent(ps, tabLevel);
-        ps.println("Value: ");
-    }
-
-    private static final void dumpVectorEntryHeader(OMMVectorEntry entry, PrintStream ps,
-            int tabLevel)
-    {
-        dumpIndent(ps, tabLevel);
-        ps.print(OMMTypes.toString(entry.getType()));
-        ps.print(" ");
-        ps.print(entry.getPosition());
-        ps.print(" (");
-        ps.print(OMMVectorEntry.Action.vectorActionString(entry.getAction()));
+        dumpIndent(tabLevel);
+        _buf.append("flags: ").append(flagsString);
+        newLine();
+
+        dumpIndent(tabLevel);
+        _buf.append("Key: ");
+        formatData(entry.getKey(), 0);
+        dumpIndent(tabLevel);
+        _buf.append("Value: ");
+        newLine();
+    }
+
+    private void dumpVectorEntryHeader(OMMVectorEntry entry, int tabLevel)
+    {
+        dumpIndent(tabLevel);
+        _buf.append(OMMTypes.toString(entry.getType()));
+        _buf.append(' ').append(entry.getPosition());
+        _buf.append(" (").append(OMMVectorEntry.Action.vectorActionString(entry.getAction()));
         if (entry.has(OMMVectorEntry.HAS_PERMISSION_DATA))
-            ps.print(", HasPermissionData");
-        ps.println(") : ");
+            _buf.append(", HasPermissionData");
+        _buf.append(") : ");
+        newLine();
 
         String flagsString = ExampleUtil.vectorEntryFlagsString(entry);
-        dumpIndent(ps, tabLevel);
-        ps.print("flags: ");
-        ps.println(flagsString);
+        dumpIndent(tabLevel);
+        _buf.append("flags: ").append(flagsString);
+        newLine();
 
     }
 
-    public static final void parseAnsiPageData(OMMData data, PrintStream ps, int tabLevel)
+    private void formatAnsiPageData(OMMData data, int tabLevel)
     {
         boolean newPage = false;
-        if (CURRENT_PAGE == null)
+        if (_currentPage == null)
         {
-            CURRENT_PAGE = new Page();
+            _currentPage = new Page();
             newPage = true;
         }
 
         Vector<PageUpdate> pageUpdates = new Vector<PageUpdate>();
         ByteArrayInputStream bais = new ByteArrayInputStream(data.getBytes());
-        CURRENT_PAGE.decode(bais, pageUpdates);
+        _currentPage.decode(bais, pageUpdates);
         if (newPage)
-            ps.println(CURRENT_PAGE.toString()); // print the page if it is a refresh message
+        {
+            _buf.append(_currentPage.toString()); // print the page if it is a refresh message
+            newLine();
+        }
         else
         {
             // print the update string
@@ -879,17 +1063,19 @@ public final class GenericOMMParser
             while (iter.hasNext())
             {
                 PageUpdate u = (PageUpdate)iter.next();
-                StringBuilder buf = new StringBuilder(80);
+                _pageBuf.setLength(0);
                 for (short k = u.getBeginningColumn(); k < u.getEndingColumn(); k++)
                 {
-                    buf.append(CURRENT_PAGE.getChar(u.getRow(), k));
+                    _pageBuf.append(_currentPage.getChar(u.getRow(), k));
                 }
-                if (!(buf.toString()).equalsIgnoreCase(""))
+                if (_pageBuf.length() > 0)
                 {
-                    dumpIndent(ps, tabLevel);
-                    ps.println("Update String: " + buf.toString() + " (Row: " + u.getRow()
-                            + ", Begin Col: " + u.getBeginningColumn() + ", End Col: "
-                            + u.getEndingColumn() + ")");
+                    dumpIndent(tabLevel);
+                    _buf.append("Update String: ").append(_pageBuf);
+                    _buf.append(" (Row: ").append(u.getRow());
+                    _buf.append(", Begin Col: ").append(u.getBeginningColumn());
+                    _buf.append(", End Col: ").append(u.getEndingColumn()).append(')');
+                    newLine();
                 }
             }
         }
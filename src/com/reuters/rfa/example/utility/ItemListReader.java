@@ -0,0 +1,320 @@
+package com.reuters.rfa.example.utility;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.reuters.rfa.rdm.RDMMsgTypes;
+
+/**
+ * Utility class which streams item names from a file, one item per line, so
+ * large item universes can be requested while the file is still being read.
+ * <p>
+ * Each line has the form<br>
+ * <code>   itemName [serviceName [msgModelType]]</code><br>
+ * with the fields separated by spaces or tabs. The service name and message
+ * model type (e.g. <code>MARKET_BY_ORDER</code> or <code>7</code>) override the
+ * defaults given to the constructor for that line only; <code>-</code> keeps
+ * the default service. Empty lines and lines starting with '#' are skipped.
+ * <p>
+ * The file is either read in blocks through a stream or memory-mapped. In both
+ * cases lines are parsed from a reusable byte buffer and the only object
+ * created per line is the item name String. Service names and message model
+ * types are cached as long as consecutive lines use the same value.
+ * <p>
+ * Typical usage:
+ *
+ * <pre>
+ * ItemListReader reader = new ItemListReader(fileName, serviceName, RDMMsgTypes.MARKET_PRICE, false);
+ * while (reader.next())
+ *     request(reader.getServiceName(), reader.getItemName(), reader.getMsgModelType());
+ * reader.close();
+ * </pre>
+ *
+ * This class is not thread safe.
+ */
+public class ItemListReader
+{
+    private InputStream _stream;
+    private byte[] _readBuffer;
+    private int _readPosition;
+    private int _readLimit;
+    private MappedByteBuffer _mappedBuffer;
+    private RandomAccessFile _mappedFile;
+
+    private byte[] _line = new byte[256];
+    private int _lineLength;
+    private int _lineNumber;
+
+    private final String _defaultServiceName;
+    private final short _defaultMsgModelType;
+
+    private String _itemName;
+    private String _serviceName;
+    private short _msgModelType;
+
+    // caches of the last override values, compared byte by byte
+    private byte[] _lastService = new byte[32];
+    private int _lastServiceLength = -1;
+    private String _lastServiceName;
+    private byte[] _lastModel = new byte[32];
+    private int _lastModelLength = -1;
+    private short _lastMsgModelType;
+
+    /**
+     * Opens the item file.
+     *
+     * @param fileName name of the item file
+     * @param defaultServiceName service of the lines without a service
+     * @param defaultMsgModelType message model type of the lines without one
+     * @param memoryMapped true to memory-map the file, false to read it in
+     *            blocks
+     * @throws IOException if the file cannot be opened or is too large to be
+     *             mapped
+     */
+    public ItemListReader(String fileName, String defaultServiceName, short defaultMsgModelType,
+            boolean memoryMapped) throws IOException
+    {
+        _defaultServiceName = defaultServiceName;
+        _defaultMsgModelType = defaultMsgModelType;
+
+        if (memoryMapped)
+        {
+            _mappedFile = new RandomAccessFile(fileName, "r");
+            FileChannel channel = _mappedFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                _mappedFile.close();
+                throw new IOException(fileName + " is too large to be memory-mapped");
+            }
+            _mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        else
+        {
+            _stream = new FileInputStream(fileName);
+            _readBuffer = new byte[64 * 1024];
+        }
+    }
+
+    /**
+     * Advances to the next item of the file.
+     *
+     * @return false if the end of the file is reached
+     * @throws IOException if the file cannot be read
+     */
+    public boolean next() throws IOException
+    {
+        while (readLine())
+        {
+            _lineNumber++;
+            if (parseLine())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return name of the current item
+     */
+    public String getItemName()
+    {
+        return _itemName;
+    }
+
+    /**
+     * @return service of the current item
+     */
+    public String getServiceName()
+    {
+        return _serviceName;
+    }
+
+    /**
+     * @return message model type of the current item, -1 if the line has an
+     *         unknown message model type
+     */
+    public short getMsgModelType()
+    {
+        return _msgModelType;
+    }
+
+    /**
+     * @return line number of the current item
+     */
+    public int getLineNumber()
+    {
+        return _lineNumber;
+    }
+
+    /**
+     * Closes the file. The mapped buffer is released once it is garbage
+     * collected.
+     */
+    public void close()
+    {
+        try
+        {
+            if (_stream != null)
+                _stream.close();
+            if (_mappedFile != null)
+                _mappedFile.close();
+        }
+        catch (IOException e)
+        {
+        }
+        _stream = null;
+        _mappedFile = null;
+        _mappedBuffer = null;
+    }
+
+    // reads the next line, without the line terminator, into _line
+    private boolean readLine() throws IOException
+    {
+        _lineLength = 0;
+        int b = -1;
+        if (_mappedBuffer != null)
+        {
+            if (!_mappedBuffer.hasRemaining())
+                return false;
+            while (_mappedBuffer.hasRemaining())
+            {
+                b = _mappedBuffer.get();
+                if (b == '\n')
+                    break;
+                appendToLine(b);
+            }
+        }
+        else
+        {
+            if (_readPosition == _readLimit && !fillReadBuffer())
+                return false;
+            while (true)
+            {
+                if (_readPosition == _readLimit && !fillReadBuffer())
+                    break;
+                b = _readBuffer[_readPosition++];
+                if (b == '\n')
+                    break;
+                appendToLine(b);
+            }
+        }
+
+        if (_lineLength > 0 && _line[_lineLength - 1] == '\r')
+            _lineLength--;
+        return true;
+    }
+
+    private boolean fillReadBuffer() throws IOException
+    {
+        if (_stream == null)
+            return false;
+        int count = _stream.read(_readBuffer, 0, _readBuffer.length);
+        if (count <= 0)
+            return false;
+        _readPosition = 0;
+        _readLimit = count;
+        return true;
+    }
+
+    private void appendToLine(int b)
+    {
+        if (_lineLength == _line.length)
+        {
+            byte[] line = new byte[_line.length * 2];
+            System.arraycopy(_line, 0, line, 0, _lineLength);
+            _line = line;
+        }
+        _line[_lineLength++] = (byte)b;
+    }
+
+    // splits the current line into item name, service and message model type
+    @SuppressWarnings("deprecation")
+    private boolean parseLine()
+    {
+        int pos = skipBlanks(0);
+        if (pos == _lineLength || _line[pos] == '#')
+            return false;
+
+        int end = tokenEnd(pos);
+        // this deprecated constructor avoids the charset lookup of
+        // new String(byte[], int, int, String)
+        _itemName = new String(_line, 0, pos, end - pos);
+
+        _serviceName = _defaultServiceName;
+        _msgModelType = _defaultMsgModelType;
+
+        pos = skipBlanks(end);
+        if (pos < _lineLength)
+        {
+            end = tokenEnd(pos);
+            if (!(end - pos == 1 && _line[pos] == '-'))
+                _serviceName = serviceName(pos, end);
+
+            pos = skipBlanks(end);
+            if (pos < _lineLength)
+                _msgModelType = msgModelType(pos, tokenEnd(pos));
+        }
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    private String serviceName(int start, int end)
+    {
+        if (!sameBytes(_lastService, _lastServiceLength, start, end))
+        {
+            _lastService = copyToken(_lastService, start, end);
+            _lastServiceLength = end - start;
+            _lastServiceName = new String(_line, 0, start, end - start);
+        }
+        return _lastServiceName;
+    }
+
+    @SuppressWarnings("deprecation")
+    private short msgModelType(int start, int end)
+    {
+        if (!sameBytes(_lastModel, _lastModelLength, start, end))
+        {
+            _lastModel = copyToken(_lastModel, start, end);
+            _lastModelLength = end - start;
+            _lastMsgModelType = RDMMsgTypes.msgModelType(new String(_line, 0, start, end - start));
+        }
+        return _lastMsgModelType;
+    }
+
+    private boolean sameBytes(byte[] cached, int cachedLength, int start, int end)
+    {
+        if (cachedLength != end - start)
+            return false;
+        for (int i = 0; i < cachedLength; i++)
+        {
+            if (cached[i] != _line[start + i])
+                return false;
+        }
+        return true;
+    }
+
+    private byte[] copyToken(byte[] dest, int start, int end)
+    {
+        if (dest.length < end - start)
+            dest = new byte[end - start];
+        System.arraycopy(_line, start, dest, 0, end - start);
+        return dest;
+    }
+
+    private int skipBlanks(int pos)
+    {
+        while (pos < _lineLength && (_line[pos] == ' ' || _line[pos] == '\t'))
+            pos++;
+        return pos;
+    }
+
+    private int tokenEnd(int pos)
+    {
+        while (pos < _lineLength && _line[pos] != ' ' && _line[pos] != '\t')
+            pos++;
+        return pos;
+    }
+}
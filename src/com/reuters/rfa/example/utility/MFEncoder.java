@@ -3,7 +3,8 @@ package com.reuters.rfa.example.utility;
 import java.util.HashMap;
 
 /**
- * Marketfeed encoder class. Could be made more efficient.
+ * Marketfeed encoder class with String parameters, built on
+ * {@link MarketfeedEncoder}, which new code should use directly.
  * 
  * Usage: 1) Set each parameter for constructing header 2) Add each field by
  * using appendField method 3) use makeBuffer for returning MF message with
@@ -29,16 +30,9 @@ public class MFEncoder
     // private String _deltaRTL; // TODO not needed?
 
     // Internal parameters used in this class
-    private StringBuilder _buffer;
-    private StringBuilder _header;
+    private MarketfeedEncoder _fields;
+    private MarketfeedEncoder _message;
     private HashMap<String, MessageType> _msgTypeList;
-    private int _headerLength;
-
-    // Special characters
-    private static final char FS = '\034';
-    private static final char GS = '\035';
-    private static final char RS = '\036';
-    private static final char US = '\037';
 
     // Message type for identifying each message
     public static final MessageType SnapResponse = new MessageType("340");
@@ -50,10 +44,12 @@ public class MFEncoder
     static class MessageType
     {
         private String _msgType;
+        private int _opcode;
 
         public MessageType(String strType)
         {
             _msgType = strType;
+            _opcode = Integer.parseInt(strType);
         }
 
         public String toString()
@@ -64,8 +60,8 @@ public class MFEncoder
 
     public MFEncoder()
     {
-        _buffer = new StringBuilder(1500);
-        _header = new StringBuilder(1500);
+        _fields = new MarketfeedEncoder();
+        _message = new MarketfeedEncoder();
         _msgTypeList = new HashMap<String, MessageType>();
 
         // Mapping for setMessageType(String)
@@ -91,10 +87,8 @@ public class MFEncoder
         // _deltaRTL = "";
 
         // init internal variables
-        _header.setLength(0);
-        _buffer.setLength(0);
-        _headerLength = 0;
-
+        _fields.clear();
+        _message.clear();
     }
 
     public void setMessageType(MessageType msgType)
@@ -139,41 +133,17 @@ public class MFEncoder
 
     public void appendField(String fid, String value)
     {
-        // Allow append field after making buffer
-        if (_buffer.length() != 0 && _buffer.charAt(_buffer.length() - 1) == FS)
-            _buffer.deleteCharAt(_buffer.length() - 1);
-        _buffer.append(RS);
-        _buffer.append(fid);
-        _buffer.append(US);
-        _buffer.append(value);
+        _fields.appendField(Integer.parseInt(fid), value);
     }
 
     public void removeField(String fid)
     {
-        int startFieldPos, endValPos;
-        startFieldPos = _buffer.indexOf(String.valueOf(RS) + fid) + 1;
-        endValPos = _buffer.indexOf(String.valueOf(RS), startFieldPos);
-        // If can not find RS then endValPos is the end of _buffer
-        if (endValPos == -1)
-        {
-            endValPos = _buffer.length();
-        }
-        _buffer.delete(startFieldPos - 1, endValPos);
+        _fields.removeField(Integer.parseInt(fid));
     }
 
     public void changeFieldValue(String fid, String newValue)
     {
-        int startFieldPos, startValPos, endValPos;
-        startFieldPos = _buffer.indexOf(String.valueOf(RS) + fid) + 1;
-        startValPos = _buffer.indexOf(String.valueOf(US), startFieldPos) + 1;
-        endValPos = _buffer.indexOf(String.valueOf(RS), startValPos);
-        // If can not find RS then endValPos is the end of _buffer
-        if (endValPos == -1)
-        {
-            endValPos = _buffer.length();
-        }
-        _buffer.replace(startValPos, endValPos, newValue);
-
+        _fields.changeField(Integer.parseInt(fid), newValue);
     }
 
     private void validateElements()
@@ -183,132 +153,29 @@ public class MFEncoder
             throw new IllegalArgumentException("Message type is not set");
     }
 
-    private void makeSnapResponseHeader()
-    {
-        _header.append(FS);
-        _header.append(_msgType.toString());
-        _header.append(US);
-        _header.append(_tag);
-        _header.append(GS);
-        _header.append(_ricName);
-
-        if (_rStatus != "")
-        {
-            _header.append(RS);
-            _header.append(_rStatus);
-        }
-        _header.append(US);
-        _header.append(_fieldListNo);
-        _header.append(US);
-        _header.append(_rtl);
-    }
-
-    private void makeUpdateHeader()
-    {
-        _header.append(FS);
-        _header.append(_msgType.toString());
-        _header.append(US);
-        _header.append(_tag);
-        _header.append(GS);
-        _header.append(_ricName);
-        _header.append(US);
-        _header.append(_rtl);
-    }
-
-    private void makeCorrectionHeader()
-    {
-        _header.append(FS);
-        _header.append(_msgType.toString());
-        _header.append(US);
-        _header.append(_tag);
-        _header.append(GS);
-        _header.append(_ricName);
-        _header.append(US);
-        _header.append(_rtl);
-    }
-
-    private void makeClosingRunHeader()
-    {
-        _header.append(FS);
-        _header.append(_msgType.toString());
-        _header.append(US);
-        _header.append(_tag);
-        _header.append(GS);
-        _header.append(_ricName);
-        _header.append(US);
-        _header.append(_rtl);
-    }
-
-    private void makeVerifyHeader()
-    {
-        _header.append(FS);
-        _header.append(_msgType.toString());
-        _header.append(US);
-        _header.append(_tag);
-        _header.append(GS);
-        _header.append(_ricName);
-
-        if (_verSub != "")
-        {
-            _header.append(RS);
-            _header.append(_verSub);
-        }
-        _header.append(US);
-        _header.append(_fieldListNo);
-        _header.append(US);
-        _header.append(_rtl);
-    }
-
-    /*
-     * Not used loccally private void makeAggregateUpdateHeader() {
-     * _header.append(FS); _header.append(_msgType.toString());
-     * _header.append(GS); _header.append(_ricName); if(_deltaRTL != "") {
-     * _header.append(US); _header.append(_deltaRTL); } _header.append(US);
-     * _header.append(_rtl); }
-     */
     private void makeHeader()
     {
-        _header.setLength(0);
+        _message.startMessage(_msgType._opcode);
+        _message.appendTag(_tag);
+        _message.appendRic(_ricName);
 
-        if (_msgType == SnapResponse)
-        {
-            makeSnapResponseHeader();
-        }
-        else if (_msgType == Update)
+        if (_msgType == SnapResponse || _msgType == Verify)
         {
-            makeUpdateHeader();
+            String sub = (_msgType == SnapResponse) ? _rStatus : _verSub;
+            if (sub.length() != 0)
+                _message.appendStatus(sub);
+            _message.appendHeaderValue(_fieldListNo);
         }
-        else if (_msgType == Correction)
-        {
-            makeCorrectionHeader();
-        }
-        else if (_msgType == ClosingRun)
-        {
-            makeClosingRunHeader();
-        }
-        else if (_msgType == Verify)
-        {
-            makeVerifyHeader();
-        }
-
-        _headerLength = _header.length();
+        _message.appendHeaderValue(_rtl);
     }
 
     // Concatenate all elements previosly set into buffer
     public byte[] makeBuffer()
     {
-        // if previous buffer has header, delete old header for making new
-        // header
-        if (_buffer.length() != 0)
-            _buffer.delete(0, _headerLength);
         validateElements();
         makeHeader();
-        _buffer.insert(0, _header);
-
-        if (_buffer.charAt(_buffer.length() - 1) != FS)
-            _buffer.append(FS);
-        return (_buffer.toString()).getBytes();
-
+        _message.appendFields(_fields);
+        return _message.getBytes();
     }
 
     // Clear all to reuse buffer
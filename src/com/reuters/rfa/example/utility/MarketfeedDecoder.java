@@ -0,0 +1,589 @@
+package com.reuters.rfa.example.utility;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Marketfeed decoder which works on the bytes of a message in place.
+ * <p>
+ * {@link #setBuffer(ByteBuffer)} decodes the header; the fields are then
+ * iterated with {@link #nextField()} or looked up with
+ * {@link #findField(int)}, which make the field id and the offset and length
+ * of the value in the buffer available. The numeric accessors parse the value
+ * directly from the buffer, so decoding a message allocates nothing unless a
+ * String is asked for.
+ * <p>
+ * A message is
+ *
+ * <pre>
+ *   FS opcode [US tag] [RS ila] GS ric [RS status] [US fln] [US rtl]
+ *      {RS fid US value} FS
+ * </pre>
+ *
+ * where the field list number is present in responses (340) and verifies
+ * (318). The decoder keeps a reference to the buffer, which must not change
+ * while it is being decoded. A decoder is not thread safe.
+ */
+public class MarketfeedDecoder
+{
+    public static final byte FS = '\034';
+    public static final byte GS = '\035';
+    public static final byte RS = '\036';
+    public static final byte US = '\037';
+    public static final byte ESC = '\033';
+
+    public static final int CLOSING_RUN = 312;
+    public static final int UPDATE = 316;
+    public static final int CORRECTION = 317;
+    public static final int VERIFY = 318;
+    public static final int RESPONSE = 340;
+
+    private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+    private byte[] _array; // the message if set as an array
+    private ByteBuffer _buf; // the message if set as a ByteBuffer
+    private int _end;
+
+    private String _errorText;
+    private int _opcode;
+    private int _tagOffset;
+    private int _tagLength;
+    private int _ricOffset;
+    private int _ricLength;
+    private int _statusOffset;
+    private int _statusLength;
+    private int _fieldListNumber;
+    private int _rtl;
+    private boolean _hasRTL;
+
+    private int _fieldsOffset;
+    private int _position;
+    private int _fieldPosition;
+    private int _fieldId;
+    private int _valueOffset;
+    private int _valueLength;
+
+    public static boolean isDelimiter(byte b)
+    {
+        return FS <= b && b <= US;
+    }
+
+    /**
+     * Decodes the header of the message in buf.
+     *
+     * @return false if the header is not valid, see {@link #errorText()}
+     */
+    public boolean setBuffer(byte[] buf)
+    {
+        return setBuffer(buf, 0, buf.length);
+    }
+
+    public boolean setBuffer(byte[] buf, int offset, int length)
+    {
+        _array = buf;
+        _buf = null;
+        return decodeHeader(offset, offset + length);
+    }
+
+    /**
+     * Decodes the header of the message between the position and the limit
+     * of buf. The position and limit of buf are not changed.
+     */
+    public boolean setBuffer(ByteBuffer buf)
+    {
+        _array = null;
+        _buf = buf;
+        return decodeHeader(buf.position(), buf.limit());
+    }
+
+    public void clear()
+    {
+        _errorText = null;
+        _opcode = 0;
+        _tagOffset = _tagLength = 0;
+        _ricOffset = _ricLength = 0;
+        _statusOffset = _statusLength = 0;
+        _fieldListNumber = 0;
+        _rtl = 0;
+        _hasRTL = false;
+        _fieldsOffset = _position = _fieldPosition = _end;
+        _fieldId = 0;
+        _valueOffset = _valueLength = 0;
+    }
+
+    public boolean hasError()
+    {
+        return _errorText != null || (_array == null && _buf == null);
+    }
+
+    public String errorText()
+    {
+        return _errorText;
+    }
+
+    /**
+     * @return the message, wrapped in a ByteBuffer if it was set as an array
+     */
+    public ByteBuffer getBuffer()
+    {
+        if (_buf == null && _array != null)
+            _buf = ByteBuffer.wrap(_array);
+        return _buf;
+    }
+
+    public int getOpcode()
+    {
+        return _opcode;
+    }
+
+    public int getRTL()
+    {
+        return _rtl;
+    }
+
+    /**
+     * @return whether the header has an RTL, else {@link #getRTL()} is 0
+     */
+    public boolean hasRTL()
+    {
+        return _hasRTL;
+    }
+
+    public int getFieldListNumber()
+    {
+        return _fieldListNumber;
+    }
+
+    public int getTagOffset()
+    {
+        return _tagOffset;
+    }
+
+    public int getTagLength()
+    {
+        return _tagLength;
+    }
+
+    public int getRicOffset()
+    {
+        return _ricOffset;
+    }
+
+    public int getRicLength()
+    {
+        return _ricLength;
+    }
+
+    /**
+     * @return the length of the record status of a response or the sub code
+     *         of a verify, 0 if there is none
+     */
+    public int getStatusLength()
+    {
+        return _statusLength;
+    }
+
+    public int getStatusOffset()
+    {
+        return _statusOffset;
+    }
+
+    public String getRicName()
+    {
+        return toString(_ricOffset, _ricLength);
+    }
+
+    public String getTag()
+    {
+        return toString(_tagOffset, _tagLength);
+    }
+
+    /**
+     * @return the record status of a response or the sub code of a verify,
+     *         empty if there is none
+     */
+    public String getStatus()
+    {
+        return toString(_statusOffset, _statusLength);
+    }
+
+    /**
+     * Moves to the next field.
+     *
+     * @return false at the end of the message
+     */
+    public boolean nextField()
+    {
+        if (_position >= _end || get(_position) != RS)
+            return false;
+
+        _fieldPosition = _position;
+        int fidStart = _position + 1;
+        int fidEnd = scanValue(fidStart);
+        if (fidEnd >= _end || get(fidEnd) != US)
+        {
+            _errorText = "MISSING_US";
+            _position = _end;
+            return false;
+        }
+        _fieldId = (int)parseLong(fidStart, fidEnd, 0);
+        _valueOffset = fidEnd + 1;
+
+        int valueEnd = _valueOffset;
+        while (valueEnd < _end)
+        {
+            byte b = get(valueEnd);
+            if (b == RS || b == FS)
+                break;
+            valueEnd++;
+        }
+        _valueLength = valueEnd - _valueOffset;
+        _position = valueEnd;
+        return true;
+    }
+
+    /**
+     * Moves to the first field with fid.
+     *
+     * @return false if the message has no such field
+     */
+    public boolean findField(int fid)
+    {
+        rewind();
+        while (nextField())
+        {
+            if (_fieldId == fid)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the field at position, as returned by
+     * {@link #getFieldPosition()} for this message.
+     *
+     * @return false if there is no field at position
+     */
+    public boolean seekField(int position)
+    {
+        _position = position;
+        return nextField();
+    }
+
+    /**
+     * @return the position of the current field in the buffer
+     */
+    public int getFieldPosition()
+    {
+        return _fieldPosition;
+    }
+
+    /**
+     * Moves back before the first field.
+     */
+    public void rewind()
+    {
+        _position = _fieldsOffset;
+    }
+
+    public int getFieldId()
+    {
+        return _fieldId;
+    }
+
+    public int getValueOffset()
+    {
+        return _valueOffset;
+    }
+
+    public int getValueLength()
+    {
+        return _valueLength;
+    }
+
+    /**
+     * @return whether the value of the current field is a partial value,
+     *         which starts with the intra-field positioning sequence ESC [
+     */
+    public boolean isPartialValue()
+    {
+        return _valueLength >= 2 && get(_valueOffset) == ESC && get(_valueOffset + 1) == '[';
+    }
+
+    /**
+     * @return the value of the current field as an integer, or defaultValue
+     *         if it is blank or not a number
+     */
+    public long getLong(long defaultValue)
+    {
+        return parseLong(_valueOffset, _valueOffset + _valueLength, defaultValue);
+    }
+
+    /**
+     * @return the value of the current field as a decimal or fraction (e.g.
+     *         "12 3/4"), or defaultValue if it is blank or not a number
+     */
+    public double getDouble(double defaultValue)
+    {
+        int i = skipSpaces(_valueOffset, _valueOffset + _valueLength);
+        int end = _valueOffset + _valueLength;
+        while (end > i && get(end - 1) == ' ')
+            end--;
+        if (i == end)
+            return defaultValue;
+
+        boolean negative = false;
+        byte b = get(i);
+        if (b == '-' || b == '+')
+        {
+            negative = b == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean point = false;
+        for (; i < end; i++)
+        {
+            b = get(i);
+            if (b >= '0' && b <= '9')
+            {
+                if (digits < 18)
+                {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (point)
+                        scale++;
+                }
+                else if (!point)
+                {
+                    scale--;
+                }
+            }
+            else if (b == '.' && !point)
+            {
+                point = true;
+            }
+            else
+            {
+                break;
+            }
+        }
+        if (digits == 0)
+            return defaultValue;
+
+        double value = scale >= 0 ? mantissa / POW10[scale] : mantissa * POW10[-scale];
+        if (i < end)
+        {
+            // whole and fraction, e.g. "12 3/4"
+            if (get(i) != ' ' || point)
+                return defaultValue;
+            int slash = i + 1;
+            while (slash < end && get(slash) != '/')
+                slash++;
+            if (slash == end)
+                return defaultValue;
+            long numerator = parseLong(i + 1, slash, -1);
+            long denominator = parseLong(slash + 1, end, -1);
+            if (numerator < 0 || denominator <= 0)
+                return defaultValue;
+            value += (double)numerator / denominator;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Copies the value of the current field into dest.
+     *
+     * @return number of bytes copied
+     */
+    public int getBytes(byte[] dest, int offset)
+    {
+        if (_array != null)
+            System.arraycopy(_array, _valueOffset, dest, offset, _valueLength);
+        else
+        {
+            for (int i = 0; i < _valueLength; i++)
+                dest[offset + i] = _buf.get(_valueOffset + i);
+        }
+        return _valueLength;
+    }
+
+    /**
+     * @return the value of the current field as an ISO-8859-1 String
+     */
+    public String getString()
+    {
+        return toString(_valueOffset, _valueLength);
+    }
+
+    /**
+     * @return whether the value of the current field is the same as s
+     */
+    public boolean valueEquals(CharSequence s)
+    {
+        if (s.length() != _valueLength)
+            return false;
+        for (int i = 0; i < _valueLength; i++)
+        {
+            if ((get(_valueOffset + i) & 0xFF) != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean decodeHeader(int start, int end)
+    {
+        _end = end;
+        clear();
+        if (start >= end || get(start) != FS)
+            return error("MISSING_FS");
+
+        int pos = start + 1;
+        int valueEnd = scanValue(pos);
+        _opcode = (int)parseLong(pos, valueEnd, -1);
+        switch (_opcode)
+        {
+            case CLOSING_RUN:
+            case UPDATE:
+            case CORRECTION:
+            case VERIFY:
+            case RESPONSE:
+                break;
+            default:
+                return error("MISSING_OPC");
+        }
+        pos = valueEnd;
+
+        if (at(pos) == US) // TAG
+        {
+            _tagOffset = pos + 1;
+            pos = scanValue(_tagOffset);
+            _tagLength = pos - _tagOffset;
+        }
+        if (at(pos) == RS) // ILA
+            pos = scanValue(pos + 1);
+
+        if (at(pos) != GS)
+            return error("MISSING_RIC");
+        _ricOffset = pos + 1;
+        pos = scanValue(_ricOffset);
+        _ricLength = pos - _ricOffset;
+
+        if (at(pos) == RS) // R_STATUS or VER_SUB
+        {
+            _statusOffset = pos + 1;
+            pos = scanValue(_statusOffset);
+            _statusLength = pos - _statusOffset;
+        }
+
+        // FLN & RTL of responses and verifies, [delta RTL &] RTL of updates
+        int first = -1;
+        int second = -1;
+        if (at(pos) == US)
+        {
+            first = pos + 1;
+            pos = scanValue(first);
+            if (at(pos) == US)
+            {
+                second = pos + 1;
+                pos = scanValue(second);
+            }
+        }
+        if (_opcode == RESPONSE || _opcode == VERIFY)
+        {
+            if (first < 0)
+                return error("MISSING_FLN");
+            if (second < 0)
+                return error("MISSING_RTL");
+            _fieldListNumber = (int)parseLong(first, scanValue(first), 0);
+            _rtl = (int)parseLong(second, pos, 0);
+            _hasRTL = true;
+        }
+        else if (second >= 0)
+        {
+            _rtl = (int)parseLong(second, pos, 0);
+            _hasRTL = true;
+        }
+        else if (first >= 0)
+        {
+            _rtl = (int)parseLong(first, pos, 0);
+            _hasRTL = true;
+        }
+
+        if (pos < end && get(pos) != RS && get(pos) != FS)
+            return error("MISSING_RSD");
+        _fieldsOffset = _position = pos;
+        return true;
+    }
+
+    private byte get(int index)
+    {
+        return _array != null ? _array[index] : _buf.get(index);
+    }
+
+    private boolean error(String text)
+    {
+        _errorText = text;
+        _fieldsOffset = _position = _end;
+        return false;
+    }
+
+    /*
+     * Returns the byte at index, FS past the end of the message
+     */
+    private byte at(int index)
+    {
+        return index < _end ? get(index) : FS;
+    }
+
+    private int scanValue(int index)
+    {
+        while (index < _end && !isDelimiter(get(index)))
+            index++;
+        return index;
+    }
+
+    private int skipSpaces(int index, int end)
+    {
+        while (index < end && get(index) == ' ')
+            index++;
+        return index;
+    }
+
+    private long parseLong(int start, int end, long defaultValue)
+    {
+        int i = skipSpaces(start, end);
+        while (end > i && get(end - 1) == ' ')
+            end--;
+        if (i >= end)
+            return defaultValue;
+
+        boolean negative = false;
+        byte b = get(i);
+        if (b == '-' || b == '+')
+        {
+            negative = b == '-';
+            if (++i == end)
+                return defaultValue;
+        }
+        long r = 0;
+        for (; i < end; i++)
+        {
+            b = get(i);
+            if (b < '0' || b > '9')
+                return defaultValue;
+            r = r * 10 + (b - '0');
+        }
+        return negative ? -r : r;
+    }
+
+    private String toString(int offset, int length)
+    {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char)(get(offset + i) & 0xFF);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,429 @@
+package com.reuters.rfa.example.utility;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Marketfeed encoder which writes a message directly into a reusable
+ * ByteBuffer, with numeric field ids and values written without creating
+ * Strings.
+ * <p>
+ * Usage: 1) start a message with one of the start methods, or write the
+ * header piece by piece with {@link #startMessage(int)} and the append
+ * methods, 2) add the fields with appendField, 3) use {@link #getBuffer()}
+ * or {@link #getBytes()} to get the message, which ends it with FS. Fields
+ * can be changed or removed by field id until the encoder is started again.
+ * <p>
+ * An encoder is not thread safe.
+ *
+ * @see MarketfeedDecoder
+ */
+public class MarketfeedEncoder
+{
+    static final byte FS = MarketfeedDecoder.FS;
+    static final byte GS = MarketfeedDecoder.GS;
+    static final byte RS = MarketfeedDecoder.RS;
+    static final byte US = MarketfeedDecoder.US;
+
+    private ByteBuffer _buf;
+    private ByteBuffer _view;
+    private int _fieldsOffset; // -1 until the first field
+    private boolean _complete;
+    private final byte[] _digits = new byte[20];
+
+    public MarketfeedEncoder()
+    {
+        this(1500);
+    }
+
+    public MarketfeedEncoder(int capacity)
+    {
+        _buf = ByteBuffer.allocate(capacity);
+        _view = _buf.duplicate();
+        clear();
+    }
+
+    /**
+     * Clears the encoder, to encode only fields, e.g. to be added to a
+     * message with {@link #appendFields(MarketfeedEncoder)}.
+     */
+    public void clear()
+    {
+        _buf.clear();
+        _fieldsOffset = -1;
+        _complete = false;
+    }
+
+    /**
+     * Starts an update (316), correction (317) or closing run (312).
+     *
+     * @param rtl record transaction level, not written if negative
+     */
+    public void startUpdate(int opcode, CharSequence tag, CharSequence ric, long rtl)
+    {
+        startMessage(opcode);
+        appendTag(tag);
+        appendRic(ric);
+        if (rtl < 0)
+            appendHeaderValue("");
+        else
+            appendHeaderValue(rtl);
+    }
+
+    /**
+     * Starts a response (340).
+     *
+     * @param status record status, not written if null or empty
+     */
+    public void startResponse(CharSequence tag, CharSequence ric, CharSequence status,
+            int fieldListNumber, long rtl)
+    {
+        startMessage(MarketfeedDecoder.RESPONSE);
+        appendTag(tag);
+        appendRic(ric);
+        if (status != null && status.length() != 0)
+            appendStatus(status);
+        appendHeaderValue(fieldListNumber);
+        appendHeaderValue(rtl);
+    }
+
+    /**
+     * Starts a verify (318).
+     *
+     * @param subCode verify sub code, not written if null or empty
+     */
+    public void startVerify(CharSequence tag, CharSequence ric, CharSequence subCode,
+            int fieldListNumber, long rtl)
+    {
+        startMessage(MarketfeedDecoder.VERIFY);
+        appendTag(tag);
+        appendRic(ric);
+        if (subCode != null && subCode.length() != 0)
+            appendStatus(subCode);
+        appendHeaderValue(fieldListNumber);
+        appendHeaderValue(rtl);
+    }
+
+    /**
+     * Clears the encoder and writes FS and the opcode.
+     */
+    public void startMessage(int opcode)
+    {
+        clear();
+        put(FS);
+        putLong(opcode);
+    }
+
+    public void appendTag(CharSequence tag)
+    {
+        put(US);
+        putChars(tag);
+    }
+
+    public void appendRic(CharSequence ric)
+    {
+        put(GS);
+        putChars(ric);
+    }
+
+    /**
+     * Appends the record status of a response or the sub code of a verify.
+     */
+    public void appendStatus(CharSequence status)
+    {
+        put(RS);
+        putChars(status);
+    }
+
+    /**
+     * Appends a field list number or a record transaction level.
+     */
+    public void appendHeaderValue(long value)
+    {
+        put(US);
+        putLong(value);
+    }
+
+    public void appendHeaderValue(CharSequence value)
+    {
+        put(US);
+        putChars(value);
+    }
+
+    public void appendField(int fid, CharSequence value)
+    {
+        startField(fid);
+        putChars(value);
+    }
+
+    public void appendField(int fid, long value)
+    {
+        startField(fid);
+        putLong(value);
+    }
+
+    public void appendField(int fid, byte[] value, int offset, int length)
+    {
+        startField(fid);
+        ensureCapacity(length);
+        _buf.put(value, offset, length);
+    }
+
+    /**
+     * Appends the fields of another encoder.
+     */
+    public void appendFields(MarketfeedEncoder fields)
+    {
+        if (fields._fieldsOffset < 0)
+            return;
+        int length = fields.fieldsEnd() - fields._fieldsOffset;
+        reopen();
+        ensureCapacity(length);
+        if (_fieldsOffset < 0)
+            _fieldsOffset = _buf.position();
+        ByteBuffer src = fields._buf.duplicate();
+        src.limit(fields._fieldsOffset + length).position(fields._fieldsOffset);
+        _buf.put(src);
+    }
+
+    /**
+     * Removes the first field with fid.
+     *
+     * @return false if there is no such field
+     */
+    public boolean removeField(int fid)
+    {
+        reopen();
+        int start = findField(fid);
+        if (start < 0)
+            return false;
+        int end = valueEnd(start);
+        shift(end, start - end);
+        if (_buf.position() == _fieldsOffset)
+            _fieldsOffset = -1;
+        return true;
+    }
+
+    /**
+     * Replaces the value of the first field with fid.
+     *
+     * @return false if there is no such field
+     */
+    public boolean changeField(int fid, CharSequence value)
+    {
+        int valueStart = resizeValue(fid, value.length());
+        if (valueStart < 0)
+            return false;
+        int length = value.length();
+        for (int i = 0; i < length; i++)
+            _buf.put(valueStart + i, (byte)value.charAt(i));
+        return true;
+    }
+
+    /**
+     * Replaces the value of the first field with fid.
+     *
+     * @return false if there is no such field
+     */
+    public boolean changeField(int fid, byte[] value, int offset, int length)
+    {
+        int valueStart = resizeValue(fid, length);
+        if (valueStart < 0)
+            return false;
+        System.arraycopy(value, offset, _buf.array(), valueStart, length);
+        return true;
+    }
+
+    /**
+     * Ends the message with FS.
+     *
+     * @return the length of the message
+     */
+    public int complete()
+    {
+        if (!_complete)
+        {
+            put(FS);
+            _complete = true;
+        }
+        return _buf.position();
+    }
+
+    /**
+     * Completes the message and returns a view of it, from position 0 to the
+     * length of the message. The view is reused by the next call.
+     */
+    public ByteBuffer getBuffer()
+    {
+        int length = complete();
+        _view.limit(length).position(0);
+        return _view;
+    }
+
+    /**
+     * Completes the message and returns a copy of it.
+     */
+    public byte[] getBytes()
+    {
+        byte[] bytes = new byte[complete()];
+        System.arraycopy(_buf.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Completes the message and copies it into dest.
+     */
+    public void writeTo(ByteBuffer dest)
+    {
+        dest.put(_buf.array(), 0, complete());
+    }
+
+    private void startField(int fid)
+    {
+        reopen();
+        if (_fieldsOffset < 0)
+            _fieldsOffset = _buf.position();
+        put(RS);
+        putLong(fid);
+        put(US);
+    }
+
+    /*
+     * Removes FS so fields can be added after the message was completed
+     */
+    private void reopen()
+    {
+        if (_complete)
+        {
+            _buf.position(_buf.position() - 1);
+            _complete = false;
+        }
+    }
+
+    /*
+     * Resizes the value of the first field with fid to length, returns the
+     * index of the value or -1 if there is no such field
+     */
+    private int resizeValue(int fid, int length)
+    {
+        reopen();
+        int start = findField(fid);
+        if (start < 0)
+            return -1;
+        int valueStart = start;
+        while (_buf.get(valueStart) != US)
+            valueStart++;
+        valueStart++;
+        int end = valueEnd(start);
+        shift(end, length - (end - valueStart));
+        return valueStart;
+    }
+
+    private int fieldsEnd()
+    {
+        return _complete ? _buf.position() - 1 : _buf.position();
+    }
+
+    /*
+     * Returns the index of RS of the first field with fid, -1 if none
+     */
+    private int findField(int fid)
+    {
+        if (_fieldsOffset < 0)
+            return -1;
+        int end = _buf.position();
+        int i = _fieldsOffset;
+        while (i < end)
+        {
+            int start = i++;
+            boolean negative = false;
+            if (i < end && (_buf.get(i) == '-' || _buf.get(i) == '+'))
+                negative = _buf.get(i++) == '-';
+            int f = 0;
+            byte b;
+            while (i < end && (b = _buf.get(i)) != US)
+            {
+                f = f * 10 + (b - '0');
+                i++;
+            }
+            if ((negative ? -f : f) == fid)
+                return start;
+            i = valueEnd(start);
+        }
+        return -1;
+    }
+
+    private int valueEnd(int fieldStart)
+    {
+        int end = _buf.position();
+        int i = fieldStart + 1;
+        while (i < end && _buf.get(i) != RS)
+            i++;
+        return i;
+    }
+
+    /*
+     * Moves the bytes from index to the end by delta
+     */
+    private void shift(int index, int delta)
+    {
+        if (delta == 0)
+            return;
+        int end = _buf.position();
+        if (delta > 0)
+            ensureCapacity(delta);
+        byte[] array = _buf.array();
+        System.arraycopy(array, index, array, index + delta, end - index);
+        _buf.position(end + delta);
+    }
+
+    private void put(byte b)
+    {
+        ensureCapacity(1);
+        _buf.put(b);
+    }
+
+    private void putChars(CharSequence s)
+    {
+        if (s == null)
+            return;
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++)
+            _buf.put((byte)s.charAt(i));
+    }
+
+    private void putLong(long value)
+    {
+        if (value == Long.MIN_VALUE)
+        {
+            putChars(Long.toString(value));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0)
+        {
+            _buf.put((byte)'-');
+            value = -value;
+        }
+        int i = _digits.length;
+        do
+        {
+            _digits[--i] = (byte)('0' + value % 10);
+            value /= 10;
+        }
+        while (value != 0);
+        _buf.put(_digits, i, _digits.length - i);
+    }
+
+    private void ensureCapacity(int needed)
+    {
+        if (_buf.remaining() >= needed)
+            return;
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(_buf.capacity() * 2, _buf.position()
+                + needed));
+        _buf.flip();
+        bigger.put(_buf);
+        _buf = bigger;
+        _view = _buf.duplicate();
+    }
+}
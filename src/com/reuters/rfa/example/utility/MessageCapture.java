@@ -0,0 +1,293 @@
+package com.reuters.rfa.example.utility;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+
+import com.reuters.rfa.common.Handle;
+import com.reuters.rfa.omm.OMMAttribInfo;
+import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.session.omm.OMMItemEvent;
+
+/**
+ * Utility class which captures received OMM messages into memory-mapped
+ * segment files, to be replayed later by {@link MessageReplay} without a
+ * network connection.
+ * <p>
+ * The capture is a sequence of segment files named
+ * <code>fileName.0, fileName.1, ...</code> of a fixed size. Each segment
+ * starts with a header:
+ *
+ * <pre>
+ *   int   magic ('RCAP')
+ *   int   version
+ *   long  capture start, msec since the epoch
+ *   int   number of handles     (written to segment 0 on close, else -1)
+ *   long  number of messages    (written to segment 0 on close, else -1)
+ * </pre>
+ *
+ * followed by the message records:
+ *
+ * <pre>
+ *   int   record length, 0 marks the end of the segment
+ *   long  receive time, nsec since the capture start
+ *   int   handle id, numbered from 0 in order of the first message
+ *   byte  message type
+ *   byte  RWF major version
+ *   byte  RWF minor version
+ *   byte  flags, {@link #HAS_NAME} if the service & item names follow
+ *  [short service name length, service name bytes
+ *   short item name length, item name bytes]
+ *   byte[] encoded message, the rest of the record
+ * </pre>
+ *
+ * The names are written with the first message of a handle which has an
+ * attribute info (usually the refresh), since the service name is not part
+ * of the encoded message and updates carry no attribute info at all.
+ * <p>
+ * {@link #append(OMMItemEvent)} may be called from any number of dispatch
+ * threads; records are appended under a lock, so capturing changes the
+ * timing of the application and is meant for recording, not for
+ * measurements.
+ */
+public class MessageCapture
+{
+    public static final int MAGIC = 0x52434150; // "RCAP"
+    public static final int VERSION = 1;
+    public static final int SEGMENT_HEADER_SIZE = 28;
+    public static final int RECORD_HEADER_SIZE = 4 + 8 + 4 + 4;
+    public static final byte HAS_NAME = 1;
+
+    // offsets of the counts in the segment header
+    static final int HANDLE_COUNT_OFFSET = 16;
+    static final int MESSAGE_COUNT_OFFSET = 20;
+
+    private final String _fileName;
+    private final int _segmentSize;
+    private final long _startTime = System.currentTimeMillis();
+    private final long _startNanos = System.nanoTime();
+
+    private RandomAccessFile _file;
+    private MappedByteBuffer _segment;
+    private int _segmentCount;
+    private boolean _closed;
+
+    private final IdentityHashMap<Handle, Integer> _handleIds = new IdentityHashMap<Handle, Integer>();
+    // handles whose names are written
+    private boolean[] _named = new boolean[1024];
+    private long _messageCount;
+    private long _droppedCount;
+    private byte[] _msgBytes = new byte[4096];
+
+    /**
+     * Creates the first segment file.
+     *
+     * @param fileName base name of the segment files
+     * @param segmentSize size of each segment file in bytes
+     * @throws IOException if the segment file cannot be created
+     */
+    public MessageCapture(String fileName, int segmentSize) throws IOException
+    {
+        _fileName = fileName;
+        _segmentSize = segmentSize;
+        nextSegment();
+    }
+
+    /**
+     * Appends the message of the event, stamped with the current time.
+     * Messages which do not fit into a segment are dropped.
+     */
+    public synchronized void append(OMMItemEvent event)
+    {
+        if (_segment == null)
+            return;
+
+        long receiveTime = System.nanoTime() - _startNanos;
+        OMMMsg msg = event.getMsg();
+
+        int handleId = handleId(event.getHandle());
+        String serviceName = null;
+        String itemName = null;
+        if (!_named[handleId] && msg.has(OMMMsg.HAS_ATTRIB_INFO))
+        {
+            OMMAttribInfo attribInfo = msg.getAttribInfo();
+            serviceName = attribInfo.has(OMMAttribInfo.HAS_SERVICE_NAME) ? attribInfo
+                    .getServiceName() : "";
+            itemName = attribInfo.has(OMMAttribInfo.HAS_NAME) ? attribInfo.getName() : "";
+        }
+
+        // the encoded length is an upper bound of the bytes
+        int encodedLength = msg.getEncodedLength();
+        if (encodedLength > _msgBytes.length)
+            _msgBytes = new byte[Math.max(encodedLength, _msgBytes.length * 2)];
+        int msgLength = msg.getBytes(_msgBytes, 0);
+
+        int length = RECORD_HEADER_SIZE + msgLength;
+        if (itemName != null)
+            length += 4 + serviceName.length() + itemName.length();
+
+        // keep room for the end marker
+        if (length + 4 > _segment.remaining())
+        {
+            if (length + 4 > _segmentSize - SEGMENT_HEADER_SIZE)
+            {
+                _droppedCount++;
+                return;
+            }
+            try
+            {
+                nextSegment();
+            }
+            catch (IOException e)
+            {
+                System.out.println("ERROR: Capture stopped, unable to create segment "
+                        + _segmentCount + " of " + _fileName + ": " + e.getMessage());
+                closeSegment();
+                return;
+            }
+        }
+
+        MappedByteBuffer segment = _segment;
+        segment.putInt(length);
+        segment.putLong(receiveTime);
+        segment.putInt(handleId);
+        segment.put(msg.getMsgType());
+        segment.put(msg.getMajorVersion());
+        segment.put(msg.getMinorVersion());
+        if (itemName != null)
+        {
+            segment.put(HAS_NAME);
+            putString(segment, serviceName);
+            putString(segment, itemName);
+            _named[handleId] = true;
+        }
+        else
+        {
+            segment.put((byte)0);
+        }
+        segment.put(_msgBytes, 0, msgLength);
+        _messageCount++;
+    }
+
+    /**
+     * @return number of messages captured so far
+     */
+    public synchronized long getMessageCount()
+    {
+        return _messageCount;
+    }
+
+    /**
+     * @return number of messages dropped because they are larger than a
+     *         segment
+     */
+    public synchronized long getDroppedCount()
+    {
+        return _droppedCount;
+    }
+
+    /**
+     * Writes the counts into the header of the first segment and closes the
+     * capture.
+     */
+    public synchronized void close()
+    {
+        if (_closed)
+            return;
+        _closed = true;
+        closeSegment();
+
+        try
+        {
+            RandomAccessFile first = new RandomAccessFile(segmentName(_fileName, 0), "rw");
+            first.seek(HANDLE_COUNT_OFFSET);
+            first.writeInt(_handleIds.size());
+            first.writeLong(_messageCount);
+            first.close();
+        }
+        catch (IOException e)
+        {
+            System.out.println("ERROR: Unable to write the header of " + _fileName + ": "
+                    + e.getMessage());
+        }
+        System.out.println("Captured " + _messageCount + " messages of " + _handleIds.size()
+                + " handles into " + _segmentCount + " segments of " + _fileName
+                + (_droppedCount > 0 ? ", dropped " + _droppedCount : ""));
+    }
+
+    /**
+     * @return file name of a segment
+     */
+    public static String segmentName(String fileName, int segment)
+    {
+        return fileName + "." + segment;
+    }
+
+    private int handleId(Handle handle)
+    {
+        Integer id = _handleIds.get(handle);
+        if (id == null)
+        {
+            id = Integer.valueOf(_handleIds.size());
+            _handleIds.put(handle, id);
+            if (id.intValue() == _named.length)
+            {
+                boolean[] named = new boolean[_named.length * 2];
+                System.arraycopy(_named, 0, named, 0, _named.length);
+                _named = named;
+            }
+        }
+        return id.intValue();
+    }
+
+    private void nextSegment() throws IOException
+    {
+        closeSegment();
+
+        _file = new RandomAccessFile(segmentName(_fileName, _segmentCount), "rw");
+        _file.setLength(0);
+        _segment = _file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, _segmentSize);
+        _segment.putInt(MAGIC);
+        _segment.putInt(VERSION);
+        _segment.putLong(_startTime);
+        _segment.putInt(-1);
+        _segment.putLong(-1);
+        _segmentCount++;
+    }
+
+    private void closeSegment()
+    {
+        if (_segment != null)
+        {
+            // a new segment is zero filled, so the end marker is only
+            // needed if the record did not fit
+            if (_segment.remaining() >= 4)
+                _segment.putInt(0);
+            _segment.force();
+            _segment = null;
+        }
+        if (_file != null)
+        {
+            try
+            {
+                _file.close();
+            }
+            catch (IOException e)
+            {
+            }
+            _file = null;
+        }
+    }
+
+    // ISO-8859-1, names are ASCII in practice
+    private static void putString(ByteBuffer buffer, String value)
+    {
+        int length = value.length();
+        buffer.putShort((short)length);
+        for (int i = 0; i < length; i++)
+            buffer.put((byte)value.charAt(i));
+    }
+}
@@ -0,0 +1,366 @@
+package com.reuters.rfa.example.utility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+import com.reuters.rfa.common.Client;
+import com.reuters.rfa.common.Event;
+import com.reuters.rfa.common.EventQueue;
+import com.reuters.rfa.common.EventSource;
+import com.reuters.rfa.common.Handle;
+import com.reuters.rfa.common.InterestSpec;
+import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.omm.OMMPool;
+import com.reuters.rfa.session.omm.OMMItemEvent;
+
+/**
+ * Utility class which replays the messages captured by
+ * {@link MessageCapture} into a {@link Client}, as if they were dispatched by
+ * RFA.
+ * <p>
+ * Each message is decoded from the memory-mapped segment with
+ * {@link OMMPool#acquireMsgFor(byte[], int, byte, byte)} and passed to
+ * {@link Client#processEvent(Event)} in an {@link OMMItemEvent}. Messages of
+ * the same captured handle carry the same {@link Handle} and closure; the
+ * closure is created by a {@link ClosureFactory} when the first message of the
+ * handle is replayed.
+ * <p>
+ * Messages are replayed at their original pace (speed 1), faster or slower
+ * (e.g. speed 2 or 0.5) or as fast as possible (speed 0). The event and the
+ * message passed to the client are reused, so the client must not keep them
+ * after processEvent returns, just as with RFA.
+ * <p>
+ * Several instances may replay the same capture concurrently, each from its
+ * own thread. An instance is not thread safe.
+ */
+public class MessageReplay
+{
+    /**
+     * Creates the closure of a replayed handle.
+     */
+    public interface ClosureFactory
+    {
+        /**
+         * @param handleId id of the handle in the capture
+         * @param serviceName service of the item, null if not captured
+         * @param itemName name of the item, null if not captured
+         * @return closure of the events of the handle
+         */
+        Object closureFor(int handleId, String serviceName, String itemName);
+    }
+
+    private final String _fileName;
+    private final long _startTime;
+    private final int _handleCount;
+    private final long _messageCount;
+
+    private double _speed = 1;
+    private ClosureFactory _closureFactory;
+    private volatile boolean _stopped;
+
+    private final OMMPool _pool = OMMPool.create();
+    private final ReplayEvent _event = new ReplayEvent();
+    private ReplayHandle[] _handles = new ReplayHandle[1024];
+    private byte[] _msgBytes = new byte[4096];
+    private long _replayedCount;
+
+    /**
+     * Opens a capture.
+     *
+     * @param fileName base name of the segment files, as given to
+     *            {@link MessageCapture}
+     * @throws IOException if the first segment cannot be read or is not a
+     *             capture
+     */
+    public MessageReplay(String fileName) throws IOException
+    {
+        _fileName = fileName;
+        RandomAccessFile file = new RandomAccessFile(MessageCapture.segmentName(fileName, 0), "r");
+        try
+        {
+            if (file.readInt() != MessageCapture.MAGIC)
+                throw new IOException(fileName + " is not a message capture");
+            int version = file.readInt();
+            if (version != MessageCapture.VERSION)
+                throw new IOException(fileName + " has unsupported capture version " + version);
+            _startTime = file.readLong();
+            _handleCount = file.readInt();
+            _messageCount = file.readLong();
+        }
+        finally
+        {
+            file.close();
+        }
+    }
+
+    /**
+     * @param speed replay speed relative to the capture, 0 to replay as fast
+     *            as possible
+     */
+    public void setSpeed(double speed)
+    {
+        _speed = speed;
+    }
+
+    public void setClosureFactory(ClosureFactory closureFactory)
+    {
+        _closureFactory = closureFactory;
+    }
+
+    /**
+     * @return capture start time, msec since the epoch
+     */
+    public long getStartTime()
+    {
+        return _startTime;
+    }
+
+    /**
+     * @return number of handles in the capture, -1 if the capture was not
+     *         closed
+     */
+    public int getHandleCount()
+    {
+        return _handleCount;
+    }
+
+    /**
+     * @return number of messages in the capture, -1 if the capture was not
+     *         closed
+     */
+    public long getMessageCount()
+    {
+        return _messageCount;
+    }
+
+    /**
+     * @return number of messages replayed so far
+     */
+    public long getReplayedCount()
+    {
+        return _replayedCount;
+    }
+
+    /**
+     * Stops a replay in progress after the current message; may be called
+     * from any thread.
+     */
+    public void stop()
+    {
+        _stopped = true;
+    }
+
+    /**
+     * Replays all segments of the capture once into the client.
+     *
+     * @return number of messages replayed
+     * @throws IOException if a segment cannot be read
+     */
+    public long replay(Client client) throws IOException
+    {
+        long replayed = _replayedCount;
+        long startNanos = System.nanoTime();
+        for (int segment = 0; !_stopped; segment++)
+        {
+            File file = new File(MessageCapture.segmentName(_fileName, segment));
+            if (!file.exists())
+                break;
+
+            RandomAccessFile segmentFile = new RandomAccessFile(file, "r");
+            try
+            {
+                FileChannel channel = segmentFile.getChannel();
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                                      channel.size());
+                buffer.position(MessageCapture.SEGMENT_HEADER_SIZE);
+                replaySegment(buffer, client, startNanos);
+            }
+            finally
+            {
+                segmentFile.close();
+            }
+        }
+        return _replayedCount - replayed;
+    }
+
+    private void replaySegment(ByteBuffer buffer, Client client, long startNanos)
+    {
+        while (!_stopped && buffer.remaining() >= MessageCapture.RECORD_HEADER_SIZE)
+        {
+            int recordStart = buffer.position();
+            int length = buffer.getInt();
+            if (length == 0)
+                break;
+
+            long receiveTime = buffer.getLong();
+            int handleId = buffer.getInt();
+            buffer.get(); // message type, for tools reading the capture
+            byte majorVersion = buffer.get();
+            byte minorVersion = buffer.get();
+            byte flags = buffer.get();
+
+            String serviceName = null;
+            String itemName = null;
+            if ((flags & MessageCapture.HAS_NAME) != 0)
+            {
+                serviceName = getString(buffer);
+                itemName = getString(buffer);
+            }
+            ReplayHandle handle = handle(handleId, serviceName, itemName);
+
+            int msgLength = length - (buffer.position() - recordStart);
+            if (msgLength > _msgBytes.length)
+                _msgBytes = new byte[Math.max(msgLength, _msgBytes.length * 2)];
+            buffer.get(_msgBytes, 0, msgLength);
+
+            if (_speed > 0)
+                waitUntil(startNanos + (long)(receiveTime / _speed));
+
+            OMMMsg msg = _pool.acquireMsgFor(_msgBytes, msgLength, majorVersion, minorVersion);
+            _event._msg = msg;
+            _event._handle = handle;
+            client.processEvent(_event);
+            _event._msg = null;
+            _pool.releaseMsg(msg);
+            _replayedCount++;
+        }
+    }
+
+    private ReplayHandle handle(int handleId, String serviceName, String itemName)
+    {
+        if (handleId >= _handles.length)
+        {
+            ReplayHandle[] handles = new ReplayHandle[Math.max(handleId + 1, _handles.length * 2)];
+            System.arraycopy(_handles, 0, handles, 0, _handles.length);
+            _handles = handles;
+        }
+
+        ReplayHandle handle = _handles[handleId];
+        if (handle == null || (itemName != null && handle._itemName == null))
+        {
+            // the closure is created once, with the names if they are
+            // captured with the first message
+            if (handle == null)
+            {
+                handle = new ReplayHandle();
+                handle._closure = (_closureFactory == null) ? null : _closureFactory
+                        .closureFor(handleId, serviceName, itemName);
+                _handles[handleId] = handle;
+            }
+            handle._serviceName = serviceName;
+            handle._itemName = itemName;
+        }
+        return handle;
+    }
+
+    private static void waitUntil(long deadline)
+    {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0)
+        {
+            // parking is not precise, spin for the last 100 usec
+            if (remaining > 200 * 1000)
+                LockSupport.parkNanos(remaining - 100 * 1000);
+            else
+                Thread.yield();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String getString(ByteBuffer buffer)
+    {
+        int length = buffer.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, 0, 0, length);
+    }
+
+    /**
+     * Handle of a replayed item stream.
+     */
+    static class ReplayHandle implements Handle
+    {
+        Object _closure;
+        String _serviceName;
+        String _itemName;
+
+        public boolean isActive()
+        {
+            return true;
+        }
+
+        public String toString()
+        {
+            return "ReplayHandle " + _serviceName + ":" + _itemName;
+        }
+    }
+
+    /**
+     * Event passed to the client, reused for every message.
+     */
+    static class ReplayEvent implements OMMItemEvent
+    {
+        OMMMsg _msg;
+        ReplayHandle _handle;
+
+        public OMMMsg getMsg()
+        {
+            return _msg;
+        }
+
+        public int getType()
+        {
+            return Event.OMM_ITEM_EVENT;
+        }
+
+        public EventQueue getEventQueue()
+        {
+            return null;
+        }
+
+        public EventSource getEventSource()
+        {
+            return null;
+        }
+
+        public InterestSpec getInterestSpec()
+        {
+            return null;
+        }
+
+        public Object getClosure()
+        {
+            return _handle._closure;
+        }
+
+        public Handle getHandle()
+        {
+            return _handle;
+        }
+
+        public boolean isEventStreamClosed()
+        {
+            return _msg.isFinal();
+        }
+
+        public long getEventAge()
+        {
+            return 0;
+        }
+
+        public long getEventAgeNano()
+        {
+            return 0;
+        }
+
+        public String toString()
+        {
+            return "ReplayEvent " + _handle;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.reuters.rfa.example.utility;
+
+/**
+ * Wall clock time in microseconds since the epoch, for send and receive
+ * timestamps of latency measurements.
+ * <p>
+ * The time is taken from {@link System#nanoTime()} relative to a base read
+ * once per JVM, since {@link System#currentTimeMillis()} only has millisecond
+ * resolution. A provider and a consumer running in the same JVM share the
+ * base, so their timestamps are exactly comparable; between JVMs the bases
+ * may differ by up to the resolution of the wall clock.
+ */
+public class MicroClock
+{
+    private static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private MicroClock()
+    {
+    }
+
+    /**
+     * @return microseconds since the epoch
+     */
+    public static long currentTimeMicros()
+    {
+        return BASE_MICROS + (System.nanoTime() - BASE_NANOS) / 1000;
+    }
+}
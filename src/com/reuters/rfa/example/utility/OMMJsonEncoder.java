@@ -0,0 +1,664 @@
+package com.reuters.rfa.example.utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+
+import com.reuters.rfa.dictionary.FidDef;
+import com.reuters.rfa.dictionary.FieldDictionary;
+import com.reuters.rfa.omm.OMMAttribInfo;
+import com.reuters.rfa.omm.OMMData;
+import com.reuters.rfa.omm.OMMDataBuffer;
+import com.reuters.rfa.omm.OMMDateTime;
+import com.reuters.rfa.omm.OMMElementEntry;
+import com.reuters.rfa.omm.OMMEntry;
+import com.reuters.rfa.omm.OMMEnum;
+import com.reuters.rfa.omm.OMMException;
+import com.reuters.rfa.omm.OMMFieldEntry;
+import com.reuters.rfa.omm.OMMFieldList;
+import com.reuters.rfa.omm.OMMFilterEntry;
+import com.reuters.rfa.omm.OMMIterable;
+import com.reuters.rfa.omm.OMMMap;
+import com.reuters.rfa.omm.OMMMapEntry;
+import com.reuters.rfa.omm.OMMMsg;
+import com.reuters.rfa.omm.OMMNumeric;
+import com.reuters.rfa.omm.OMMSeries;
+import com.reuters.rfa.omm.OMMState;
+import com.reuters.rfa.omm.OMMTypes;
+import com.reuters.rfa.omm.OMMVector;
+import com.reuters.rfa.omm.OMMVectorEntry;
+import com.reuters.rfa.rdm.RDMMsgTypes;
+
+/**
+ * Encodes OMM messages as line-delimited JSON (NDJSON), one compact object
+ * per message, for log and analytics pipelines.
+ * <p>
+ * The object holds the message header (type, domain, indication flags,
+ * state, sequence number, attrib info) and the payload. Field lists and
+ * element lists become objects keyed by field or element name; field names
+ * and enumerated values are expanded with the dictionaries initialized in
+ * {@link GenericOMMParser}. Maps, vectors, series and filter lists become
+ * objects with an "entries" array, arrays become JSON arrays. REAL values are
+ * kept exact as mantissa and exponent, <code>{"m":13632,"e":-2}</code>, or
+ * mantissa and divisor for fractions, <code>{"m":5,"d":8}</code>. Blank
+ * values are null, buffers are hex strings.
+ * <p>
+ * The JSON is appended to a reusable buffer directly from the decoded data
+ * and written to the sink, an {@link Appendable} or an {@link OutputStream}
+ * as UTF-8, in one piece per message. The sink is not flushed. An instance is
+ * not thread safe; use one per thread.
+ */
+public class OMMJsonEncoder
+{
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Appendable _out;
+    private final OutputStream _stream;
+    private final StringBuilder _buf = new StringBuilder(1024);
+    private byte[] _bytes = new byte[256];
+
+    private CharsetEncoder _encoder;
+    private ByteBuffer _encoded;
+
+    /**
+     * Encoder writing each message as a line of characters to out
+     */
+    public OMMJsonEncoder(Appendable out)
+    {
+        _out = out;
+        _stream = null;
+    }
+
+    /**
+     * Encoder writing each message as a line of UTF-8 to out
+     */
+    public OMMJsonEncoder(OutputStream out)
+    {
+        _out = null;
+        _stream = out;
+    }
+
+    /**
+     * Encoder writing each message as a line of UTF-8 to ps
+     */
+    public OMMJsonEncoder(PrintStream ps)
+    {
+        this((OutputStream)ps);
+    }
+
+    /**
+     * Writes msg as one line to the sink of this encoder
+     */
+    public void write(OMMMsg msg)
+    {
+        _buf.setLength(0);
+        encodeMsg(msg);
+        _buf.append('\n');
+        flush();
+    }
+
+    /**
+     * Encodes msg without writing it.
+     *
+     * @return the JSON object, valid until the next call to this encoder
+     */
+    public CharSequence encode(OMMMsg msg)
+    {
+        _buf.setLength(0);
+        encodeMsg(msg);
+        return _buf;
+    }
+
+    private void flush()
+    {
+        if (_out != null)
+        {
+            try
+            {
+                _out.append(_buf);
+            }
+            catch (IOException e)
+            {
+                // like PrintStream, a failed write is not reported
+            }
+            return;
+        }
+
+        if (_encoder == null)
+        {
+            _encoder = Charset.forName("UTF-8").newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            _encoded = ByteBuffer.allocate(4096);
+        }
+
+        int maxLength = (int)(_buf.length() * _encoder.maxBytesPerChar()) + 16;
+        if (_encoded.capacity() < maxLength)
+            _encoded = ByteBuffer.allocate(Math.max(maxLength, _encoded.capacity() * 2));
+
+        _encoder.reset();
+        _encoded.clear();
+        _encoder.encode(CharBuffer.wrap(_buf), _encoded, true);
+        _encoder.flush(_encoded);
+        try
+        {
+            _stream.write(_encoded.array(), 0, _encoded.position());
+        }
+        catch (IOException e)
+        {
+            // like PrintStream, a failed write is not reported
+        }
+    }
+
+    private void encodeMsg(OMMMsg msg)
+    {
+        _buf.append("{\"type\":");
+        appendConstant(OMMMsg.MsgType.toString(msg.getMsgType()));
+        _buf.append(",\"domain\":");
+        appendConstant(RDMMsgTypes.toString(msg.getMsgModelType()));
+        _buf.append(",\"indication\":");
+        appendString(OMMMsg.Indication.indicationString(msg));
+
+        if (msg.has(OMMMsg.HAS_RESP_TYPE_NUM))
+            _buf.append(",\"respTypeNum\":").append(msg.getRespTypeNum());
+        if (msg.has(OMMMsg.HAS_SEQ_NUM))
+            _buf.append(",\"seqNum\":").append(msg.getSeqNum());
+        if (msg.has(OMMMsg.HAS_ID))
+            _buf.append(",\"id\":").append(msg.getId());
+        if (msg.has(OMMMsg.HAS_CONFLATION_INFO))
+        {
+            _buf.append(",\"conflationCount\":").append(msg.getConflationCount());
+            _buf.append(",\"conflationTime\":").append(msg.getConflationTime());
+        }
+        if (msg.has(OMMMsg.HAS_STATE))
+        {
+            _buf.append(",\"state\":");
+            appendState(msg.getState());
+        }
+
+        if (msg.has(OMMMsg.HAS_ATTRIB_INFO))
+        {
+            OMMAttribInfo ai = msg.getAttribInfo();
+            if (ai.has(OMMAttribInfo.HAS_SERVICE_NAME))
+            {
+                _buf.append(",\"service\":");
+                appendString(ai.getServiceName());
+            }
+            if (ai.has(OMMAttribInfo.HAS_SERVICE_ID))
+                _buf.append(",\"serviceId\":").append(ai.getServiceID());
+            if (ai.has(OMMAttribInfo.HAS_NAME))
+            {
+                _buf.append(",\"name\":");
+                appendString(ai.getName());
+            }
+            if (ai.has(OMMAttribInfo.HAS_NAME_TYPE))
+                _buf.append(",\"nameType\":").append(ai.getNameType());
+            if (ai.has(OMMAttribInfo.HAS_FILTER))
+                _buf.append(",\"filter\":").append(ai.getFilter());
+            if (ai.has(OMMAttribInfo.HAS_ID))
+                _buf.append(",\"attribId\":").append(ai.getId());
+            if (ai.has(OMMAttribInfo.HAS_ATTRIB))
+            {
+                _buf.append(",\"attrib\":");
+                encodeData(ai.getAttrib());
+            }
+        }
+
+        if (msg.getDataType() != OMMTypes.NO_DATA)
+        {
+            _buf.append(",\"payload\":");
+            encodeData(msg.getPayload());
+        }
+        _buf.append('}');
+    }
+
+    private void appendState(OMMState state)
+    {
+        _buf.append("{\"stream\":");
+        appendConstant(OMMState.Stream.toString(state.getStreamState()));
+        _buf.append(",\"data\":");
+        appendConstant(OMMState.Data.toString(state.getDataState()));
+        _buf.append(",\"code\":");
+        appendConstant(OMMState.Code.toString(state.getCode()));
+        _buf.append(",\"text\":");
+        appendString(state.getText());
+        _buf.append('}');
+    }
+
+    // INT32, UINT32 and REAL32 are still encoded by older providers
+    @SuppressWarnings("deprecation")
+    private void encodeData(OMMData data)
+    {
+        if (data.isBlank())
+        {
+            _buf.append("null");
+            return;
+        }
+
+        try
+        {
+            switch (data.getType())
+            {
+                case OMMTypes.INT32:
+                case OMMTypes.INT:
+                case OMMTypes.INT_1:
+                case OMMTypes.INT_2:
+                case OMMTypes.INT_4:
+                case OMMTypes.INT_8:
+                    _buf.append(((OMMNumeric)data).getLongValue());
+                    break;
+                case OMMTypes.UINT32:
+                case OMMTypes.UINT:
+                case OMMTypes.UINT_1:
+                case OMMTypes.UINT_2:
+                case OMMTypes.UINT_4:
+                case OMMTypes.UINT_8:
+                {
+                    long value = ((OMMNumeric)data).getLongValue();
+                    if (value >= 0)
+                        _buf.append(value);
+                    else
+                        // above Long.MAX_VALUE
+                        _buf.append(((OMMNumeric)data).toBigInteger());
+                }
+                    break;
+                case OMMTypes.FLOAT:
+                case OMMTypes.DOUBLE:
+                case OMMTypes.FLOAT_4:
+                case OMMTypes.DOUBLE_8:
+                {
+                    double value = ((OMMNumeric)data).toDouble();
+                    if (Double.isNaN(value) || Double.isInfinite(value))
+                        _buf.append("null");
+                    else
+                        _buf.append(value);
+                }
+                    break;
+                case OMMTypes.REAL32:
+                case OMMTypes.REAL:
+                case OMMTypes.REAL_4RB:
+                case OMMTypes.REAL_8RB:
+                    appendReal((OMMNumeric)data);
+                    break;
+                case OMMTypes.DATE:
+                case OMMTypes.DATE_4:
+                    _buf.append('"');
+                    appendDate((OMMDateTime)data);
+                    _buf.append('"');
+                    break;
+                case OMMTypes.TIME:
+                case OMMTypes.TIME_3:
+                case OMMTypes.TIME_5:
+                    _buf.append('"');
+                    appendTime((OMMDateTime)data);
+                    _buf.append('"');
+                    break;
+                case OMMTypes.DATETIME:
+                case OMMTypes.DATETIME_7:
+                case OMMTypes.DATETIME_9:
+                    _buf.append('"');
+                    appendDate((OMMDateTime)data);
+                    _buf.append('T');
+                    appendTime((OMMDateTime)data);
+                    _buf.append('"');
+                    break;
+                case OMMTypes.ENUM:
+                    _buf.append(((OMMEnum)data).getValue());
+                    break;
+                case OMMTypes.STATE:
+                    appendState((OMMState)data);
+                    break;
+                case OMMTypes.ASCII_STRING:
+                    appendAscii(data);
+                    break;
+                case OMMTypes.UTF8_STRING:
+                case OMMTypes.RMTES_STRING:
+                case OMMTypes.QOS:
+                case OMMTypes.XML:
+                    appendString(data.toString());
+                    break;
+                case OMMTypes.BUFFER:
+                case OMMTypes.OPAQUE_BUFFER:
+                case OMMTypes.ANSI_PAGE:
+                    appendHex(data);
+                    break;
+                case OMMTypes.NO_DATA:
+                    _buf.append("null");
+                    break;
+                case OMMTypes.FIELD_LIST:
+                    encodeFieldList((OMMFieldList)data);
+                    break;
+                case OMMTypes.ELEMENT_LIST:
+                    encodeElementList(data);
+                    break;
+                case OMMTypes.MAP:
+                    encodeMap((OMMMap)data);
+                    break;
+                case OMMTypes.VECTOR:
+                    encodeVector((OMMVector)data);
+                    break;
+                case OMMTypes.SERIES:
+                    encodeSeries((OMMSeries)data);
+                    break;
+                case OMMTypes.FILTER_LIST:
+                    encodeFilterList(data);
+                    break;
+                case OMMTypes.ARRAY:
+                    encodeArray(data);
+                    break;
+                case OMMTypes.MSG:
+                    encodeMsg((OMMMsg)data);
+                    break;
+                default:
+                    appendString(data.toString());
+                    break;
+            }
+        }
+        catch (OMMException e)
+        {
+            _buf.append("{\"error\":");
+            appendString(e.getMessage());
+            _buf.append('}');
+        }
+    }
+
+    private void encodeFieldList(OMMFieldList fieldList)
+    {
+        FieldDictionary dictionary = GenericOMMParser.getDictionary(fieldList.getDictId());
+        _buf.append('{');
+        boolean first = true;
+        for (Iterator iter = fieldList.iterator(); iter.hasNext();)
+        {
+            OMMFieldEntry fe = (OMMFieldEntry)iter.next();
+            if (!first)
+                _buf.append(',');
+            first = false;
+
+            short fieldId = fe.getFieldId();
+            FidDef fiddef = (dictionary == null) ? null : dictionary.getFidDef(fieldId);
+            if (fiddef == null)
+            {
+                // the field id as name, and the undecoded value as hex
+                _buf.append('"').append(fieldId).append("\":");
+                if (fe.getDataType() == OMMTypes.UNKNOWN)
+                    appendHex(fe.getData());
+                else
+                    encodeData(fe.getData());
+                continue;
+            }
+
+            appendString(fiddef.getName());
+            _buf.append(':');
+            OMMData data = (fe.getDataType() == OMMTypes.UNKNOWN) ? fe.getData(fiddef
+                    .getOMMType()) : fe.getData();
+            if (data.getType() == OMMTypes.ENUM && !data.isBlank())
+            {
+                String expanded = dictionary.expandedValueFor(fieldId, ((OMMEnum)data)
+                        .getValue());
+                if (expanded != null)
+                    appendString(expanded);
+                else
+                    _buf.append(((OMMEnum)data).getValue());
+            }
+            else
+            {
+                encodeData(data);
+            }
+        }
+        _buf.append('}');
+    }
+
+    private void encodeElementList(OMMData elementList)
+    {
+        _buf.append('{');
+        boolean first = true;
+        for (Iterator iter = ((OMMIterable)elementList).iterator(); iter.hasNext();)
+        {
+            OMMElementEntry ee = (OMMElementEntry)iter.next();
+            if (!first)
+                _buf.append(',');
+            first = false;
+            appendString(ee.getName());
+            _buf.append(':');
+            encodeData(ee.getData());
+        }
+        _buf.append('}');
+    }
+
+    private void encodeMap(OMMMap map)
+    {
+        _buf.append('{');
+        if (map.has(OMMMap.HAS_SUMMARY_DATA))
+        {
+            _buf.append("\"summary\":");
+            encodeData(map.getSummaryData());
+            _buf.append(',');
+        }
+        _buf.append("\"entries\":[");
+        boolean first = true;
+        for (Iterator iter = map.iterator(); iter.hasNext();)
+        {
+            OMMMapEntry entry = (OMMMapEntry)iter.next();
+            if (!first)
+                _buf.append(',');
+            first = false;
+            _buf.append("{\"action\":");
+            appendConstant(OMMMapEntry.Action.toString(entry.getAction()));
+            _buf.append(",\"key\":");
+            encodeData(entry.getKey());
+            if (entry.getAction() != OMMMapEntry.Action.DELETE
+                    && entry.getDataType() != OMMTypes.NO_DATA)
+            {
+                _buf.append(",\"value\":");
+                encodeData(entry.getData());
+            }
+            _buf.append('}');
+        }
+        _buf.append("]}");
+    }
+
+    private void encodeVector(OMMVector vector)
+    {
+        _buf.append('{');
+        if (vector.has(OMMVector.HAS_SUMMARY_DATA))
+        {
+            _buf.append("\"summary\":");
+            encodeData(vector.getSummaryData());
+            _buf.append(',');
+        }
+        _buf.append("\"entries\":[");
+        boolean first = true;
+        for (Iterator iter = vector.iterator(); iter.hasNext();)
+        {
+            OMMVectorEntry entry = (OMMVectorEntry)iter.next();
+            if (!first)
+                _buf.append(',');
+            first = false;
+            _buf.append("{\"position\":").append(entry.getPosition());
+            _buf.append(",\"action\":");
+            appendConstant(OMMVectorEntry.Action.vectorActionString(entry.getAction()));
+            if (entry.getAction() != OMMVectorEntry.Action.DELETE
+                    && entry.getAction() != OMMVectorEntry.Action.CLEAR)
+            {
+                _buf.append(",\"value\":");
+                encodeData(entry.getData());
+            }
+            _buf.append('}');
+        }
+        _buf.append("]}");
+    }
+
+    private void encodeSeries(OMMSeries series)
+    {
+        _buf.append('{');
+        if (series.has(OMMSeries.HAS_SUMMARY_DATA))
+        {
+            _buf.append("\"summary\":");
+            encodeData(series.getSummaryData());
+            _buf.append(',');
+        }
+        _buf.append("\"entries\":[");
+        boolean first = true;
+        for (Iterator iter = series.iterator(); iter.hasNext();)
+        {
+            OMMEntry entry = (OMMEntry)iter.next();
+            if (!first)
+                _buf.append(',');
+            first = false;
+            encodeData(entry.getData());
+        }
+        _buf.append("]}");
+    }
+
+    private void encodeFilterList(OMMData filterList)
+    {
+        _buf.append("{\"entries\":[");
+        boolean first = true;
+        for (Iterator iter = ((OMMIterable)filterList).iterator(); iter.hasNext();)
+        {
+            OMMFilterEntry entry = (OMMFilterEntry)iter.next();
+            if (!first)
+                _buf.append(',');
+            first = false;
+            _buf.append("{\"id\":").append(entry.getFilterId());
+            _buf.append(",\"action\":");
+            appendConstant(OMMFilterEntry.Action.toString(entry.getAction()));
+            if (entry.getAction() != OMMFilterEntry.Action.CLEAR)
+            {
+                _buf.append(",\"value\":");
+                encodeData(entry.getData());
+            }
+            _buf.append('}');
+        }
+        _buf.append("]}");
+    }
+
+    private void encodeArray(OMMData array)
+    {
+        _buf.append('[');
+        boolean first = true;
+        for (Iterator iter = ((OMMIterable)array).iterator(); iter.hasNext();)
+        {
+            OMMEntry entry = (OMMEntry)iter.next();
+            if (!first)
+                _buf.append(',');
+            first = false;
+            encodeData(entry.getData());
+        }
+        _buf.append(']');
+    }
+
+    private void appendReal(OMMNumeric real)
+    {
+        int hint = real.getHint();
+        _buf.append("{\"m\":").append(real.getLongValue());
+        if (hint <= OMMNumeric.EXPONENT_POS7)
+            _buf.append(",\"e\":").append(hint - OMMNumeric.EXPONENT_0);
+        else
+            _buf.append(",\"d\":").append(1 << (hint - OMMNumeric.DIVISOR_1));
+        _buf.append('}');
+    }
+
+    private void appendDate(OMMDateTime date)
+    {
+        appendPadded(date.getYear(), 4);
+        _buf.append('-');
+        appendPadded(date.getMonth(), 2);
+        _buf.append('-');
+        appendPadded(date.getDate(), 2);
+    }
+
+    private void appendTime(OMMDateTime time)
+    {
+        appendPadded(time.getHour(), 2);
+        _buf.append(':');
+        appendPadded(time.getMinute(), 2);
+        _buf.append(':');
+        appendPadded(time.getSecond(), 2);
+        _buf.append('.');
+        appendPadded(time.getMillisecond(), 3);
+    }
+
+    private void appendPadded(int value, int width)
+    {
+        int limit = 1;
+        for (int i = 1; i < width; i++)
+        {
+            limit *= 10;
+            if (value < limit)
+                _buf.append('0');
+        }
+        _buf.append(value);
+    }
+
+    /*
+     * Names of constants are printed as "MsgType.UPDATE_RESP" etc.; keep the
+     * part after the class name
+     */
+    private void appendConstant(String name)
+    {
+        _buf.append('"');
+        _buf.append(name, name.lastIndexOf('.') + 1, name.length());
+        _buf.append('"');
+    }
+
+    private void appendString(CharSequence s)
+    {
+        _buf.append('"');
+        if (s != null)
+        {
+            for (int i = 0; i < s.length(); i++)
+                appendChar(s.charAt(i));
+        }
+        _buf.append('"');
+    }
+
+    private void appendChar(char c)
+    {
+        if (c == '"' || c == '\\')
+            _buf.append('\\').append(c);
+        else if (c >= 0x20)
+            _buf.append(c);
+        else if (c == '\n')
+            _buf.append("\\n");
+        else if (c == '\r')
+            _buf.append("\\r");
+        else if (c == '\t')
+            _buf.append("\\t");
+        else
+            _buf.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+    }
+
+    private int copyBytes(OMMData data)
+    {
+        int length = data.getEncodedLength();
+        if (length > _bytes.length)
+            _bytes = new byte[Math.max(length, _bytes.length * 2)];
+        return data.getBytes(_bytes, 0);
+    }
+
+    // ASCII strings are escaped from the bytes, without a String
+    private void appendAscii(OMMData data)
+    {
+        int length = copyBytes(data);
+        _buf.append('"');
+        for (int i = 0; i < length; i++)
+            appendChar((char)(_bytes[i] & 0xFF));
+        _buf.append('"');
+    }
+
+    private void appendHex(OMMData data)
+    {
+        int length = copyBytes(data);
+        _buf.append('"');
+        for (int i = 0; i < length; i++)
+            _buf.append(HEX[(_bytes[i] >> 4) & 0xF]).append(HEX[_bytes[i] & 0xF]);
+        _buf.append('"');
+    }
+}
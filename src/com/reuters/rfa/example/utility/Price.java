@@ -0,0 +1,247 @@
+package com.reuters.rfa.example.utility;
+
+import com.reuters.rfa.omm.OMMEncoder;
+import com.reuters.rfa.omm.OMMException;
+import com.reuters.rfa.omm.OMMNumeric;
+
+/**
+ * Fixed-point price, a long mantissa and an exponent hint from
+ * {@link OMMNumeric} (EXPONENT_NEG14 to EXPONENT_POS7), as encoded in an OMM
+ * REAL. The value is <code>mantissa * 10^(hint - EXPONENT_0)</code>.
+ * <p>
+ * Prices are mutable so that the item of a provider can update its prices in
+ * place: the arithmetic methods change this price and return it. The result
+ * keeps the hint of this price; an operand with more decimals is rounded half
+ * away from zero, like {@link Rounding#roundDouble2Long(double, int)}.
+ * Overflow of the mantissa is not checked.
+ */
+public final class Price implements Comparable<Price>
+{
+    private static final long[] POW10 = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L,
+            10000000L, 100000000L, 1000000000L, 10000000000L, 100000000000L, 1000000000000L,
+            10000000000000L, 100000000000000L, 1000000000000000L, 10000000000000000L,
+            100000000000000000L, 1000000000000000000L };
+
+    private long _mantissa;
+    private int _hint;
+
+    public Price(long mantissa, int hint)
+    {
+        set(mantissa, hint);
+    }
+
+    public Price(Price price)
+    {
+        _mantissa = price._mantissa;
+        _hint = price._hint;
+    }
+
+    /**
+     * Parses a decimal number such as "-10.0500" with the given hint.
+     *
+     * @throws NumberFormatException if s is not a decimal number
+     */
+    public static Price valueOf(String s, int hint)
+    {
+        validateHint(hint);
+        int length = s.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+'))
+        {
+            negative = s.charAt(0) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int decimals = 0;
+        int digits = 0;
+        boolean point = false;
+        for (; i < length; i++)
+        {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9')
+            {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (point)
+                    decimals++;
+            }
+            else if (c == '.' && !point)
+            {
+                point = true;
+            }
+            else
+            {
+                throw new NumberFormatException("Invalid price \"" + s + "\"");
+            }
+        }
+        if (digits == 0)
+            throw new NumberFormatException("Invalid price \"" + s + "\"");
+
+        Price price = new Price(negative ? -mantissa : mantissa, OMMNumeric.EXPONENT_0
+                - decimals);
+        price.set(price.mantissaAt(hint), hint);
+        return price;
+    }
+
+    public long getMantissa()
+    {
+        return _mantissa;
+    }
+
+    public int getHint()
+    {
+        return _hint;
+    }
+
+    public Price set(long mantissa, int hint)
+    {
+        validateHint(hint);
+        _mantissa = mantissa;
+        _hint = hint;
+        return this;
+    }
+
+    public Price set(Price price)
+    {
+        _mantissa = price._mantissa;
+        _hint = price._hint;
+        return this;
+    }
+
+    public Price add(Price price)
+    {
+        _mantissa += price.mantissaAt(_hint);
+        return this;
+    }
+
+    public Price subtract(Price price)
+    {
+        _mantissa -= price.mantissaAt(_hint);
+        return this;
+    }
+
+    public Price multiply(long factor)
+    {
+        _mantissa *= factor;
+        return this;
+    }
+
+    public Price negate()
+    {
+        _mantissa = -_mantissa;
+        return this;
+    }
+
+    /**
+     * @return the mantissa of this price with the given hint, rounded half
+     *         away from zero if the hint has fewer decimals
+     */
+    public long mantissaAt(int hint)
+    {
+        if (hint == _hint)
+            return _mantissa;
+        validateHint(hint);
+        if (hint < _hint)
+            return _mantissa * pow10(_hint - hint);
+
+        long divisor = pow10(hint - _hint);
+        long quotient = _mantissa / divisor;
+        long remainder = _mantissa % divisor;
+        if (Math.abs(remainder) * 2 >= divisor)
+            quotient += (_mantissa < 0) ? -1 : 1;
+        return quotient;
+    }
+
+    /**
+     * Encodes this price as a REAL, after encodeFieldEntryInit(fid,
+     * OMMTypes.REAL).
+     */
+    public void encode(OMMEncoder encoder)
+    {
+        encoder.encodeReal(_mantissa, (byte)_hint);
+    }
+
+    public double toDouble()
+    {
+        int exponent = _hint - OMMNumeric.EXPONENT_0;
+        if (exponent >= 0)
+            return _mantissa * (double)POW10[exponent];
+        return _mantissa / (double)POW10[-exponent];
+    }
+
+    public int compareTo(Price price)
+    {
+        int hint = Math.min(_hint, price._hint);
+        long a = mantissaAt(hint);
+        long b = price.mantissaAt(hint);
+        return (a < b) ? -1 : ((a == b) ? 0 : 1);
+    }
+
+    public boolean equals(Object o)
+    {
+        return (o instanceof Price) && compareTo((Price)o) == 0;
+    }
+
+    public int hashCode()
+    {
+        // equal prices with different hints have the same normalized mantissa
+        long mantissa = _mantissa;
+        int hint = _hint;
+        while (mantissa != 0 && mantissa % 10 == 0)
+        {
+            mantissa /= 10;
+            hint++;
+        }
+        if (mantissa == 0)
+            hint = 0;
+        return (int)(mantissa ^ (mantissa >>> 32)) * 31 + hint;
+    }
+
+    /**
+     * Appends the price as a decimal number with the decimals of its hint,
+     * e.g. "10.0500" for EXPONENT_NEG4.
+     */
+    public StringBuilder appendTo(StringBuilder sb)
+    {
+        int exponent = _hint - OMMNumeric.EXPONENT_0;
+        if (exponent >= 0)
+        {
+            sb.append(_mantissa);
+            if (_mantissa != 0)
+            {
+                for (int i = 0; i < exponent; i++)
+                    sb.append('0');
+            }
+            return sb;
+        }
+
+        int decimals = -exponent;
+        long whole = _mantissa / POW10[decimals];
+        long fraction = Math.abs(_mantissa % POW10[decimals]);
+        if (_mantissa < 0 && whole == 0)
+            sb.append('-');
+        sb.append(whole).append('.');
+        for (long p = POW10[decimals - 1]; p > 1 && fraction < p; p /= 10)
+            sb.append('0');
+        return sb.append(fraction);
+    }
+
+    public String toString()
+    {
+        return appendTo(new StringBuilder(24)).toString();
+    }
+
+    private static long pow10(int n)
+    {
+        if (n >= POW10.length)
+            throw new OMMException("Error: Price scale 10^" + n + " is out of range!");
+        return POW10[n];
+    }
+
+    private static void validateHint(int hint)
+    {
+        if (hint < OMMNumeric.EXPONENT_NEG14 || hint > OMMNumeric.EXPONENT_POS7)
+            throw new OMMException("Error: Hint " + hint + " is not an exponent hint!");
+    }
+}